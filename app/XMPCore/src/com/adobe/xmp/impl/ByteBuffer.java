@@ -14,6 +14,8 @@ package com.adobe.xmp.impl;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 
 
 /**
@@ -131,6 +133,61 @@ public class ByteBuffer
 	}
 
 
+	/**
+	 * @return Returns the size of the inner byte array.
+	 */
+	public int capacity()
+	{
+		return buffer.length;
+	}
+	
+	
+	/**
+	 * Discards the content but keeps the inner byte array, so that the buffer can be reused.
+	 */
+	public void reset()
+	{
+		length = 0;
+		encoding = null;
+	}
+	
+	
+	/**
+	 * Writes the valid bytes to a stream without copying them.
+	 * 
+	 * @param out an <code>OutputStream</code>
+	 * @throws IOException Forwards stream exceptions.
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buffer, 0, length);
+	}
+	
+	
+	/**
+	 * @return Returns a copy of the valid bytes.
+	 */
+	public byte[] toByteArray()
+	{
+		byte[] result = new byte[length];
+		System.arraycopy(buffer, 0, result, 0, length);
+		return result;
+	}
+	
+	
+	/**
+	 * Decodes the valid bytes without copying them.
+	 * 
+	 * @param charsetName the encoding of the buffer
+	 * @return Returns the decoded string.
+	 * @throws UnsupportedEncodingException If the encoding is not supported.
+	 */
+	public String toString(String charsetName) throws UnsupportedEncodingException
+	{
+		return new String(buffer, 0, length, charsetName);
+	}
+
+
 //	/**
 //	 * <em>Note:</em> Only the byte up to length are valid!
 //	 * @return Returns the inner byte buffer.
@@ -319,8 +376,8 @@ public class ByteBuffer
 		if (requestedLength > buffer.length)
 		{
 			byte[] oldBuf = buffer;
-			buffer = new byte[oldBuf.length * 2];
-			System.arraycopy(oldBuf, 0, buffer, 0, oldBuf.length);
+			buffer = new byte[Math.max(oldBuf.length * 2, requestedLength)];
+			System.arraycopy(oldBuf, 0, buffer, 0, length);
 		}
 	}
 }
\ No newline at end of file
@@ -9,14 +9,8 @@
 
 package com.adobe.xmp.impl;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.Iterator;
 
-import org.w3c.dom.Attr;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-
 import com.adobe.xmp.XMPConst;
 import com.adobe.xmp.XMPError;
 import com.adobe.xmp.XMPException;
@@ -84,7 +78,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @return Returns an XMP metadata object (not normalized)
 	 * @throws XMPException Occurs if the parsing fails for any reason.
 	 */
-	static XMPMetaImpl parse(Node xmlRoot) throws XMPException
+	static XMPMetaImpl parse(XMLParserNode xmlRoot) throws XMPException
 	{
 		XMPMetaImpl xmp = new XMPMetaImpl();
 		rdf_RDF(xmp, xmlRoot);
@@ -101,7 +95,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param rdfRdfNode the top-level xml node
 	 * @throws XMPException thown on parsing errors
 	 */
-	static void rdf_RDF(XMPMetaImpl xmp, Node rdfRdfNode) throws XMPException
+	static void rdf_RDF(XMPMetaImpl xmp, XMLParserNode rdfRdfNode) throws XMPException
 	{
 		if (rdfRdfNode.hasAttributes())
 		{
@@ -124,12 +118,13 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param rdfRdfNode the top-level xml node
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static void rdf_NodeElementList(XMPMetaImpl xmp, XMPNode xmpParent, Node rdfRdfNode) 
+	private static void rdf_NodeElementList(XMPMetaImpl xmp, XMPNode xmpParent,
+			XMLParserNode rdfRdfNode) 
 		throws XMPException
 	{
-		for (int i = 0; i < rdfRdfNode.getChildNodes().getLength(); i++)
+		for (int i = 0; i < rdfRdfNode.getChildCount(); i++)
 		{
-			Node child = rdfRdfNode.getChildNodes().item(i);
+			XMLParserNode child = rdfRdfNode.getChild(i);
 			// filter whitespaces (and all text nodes)
 			if (!isWhitespaceNode(child))
 			{	
@@ -158,7 +153,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param isTopLevel Flag if the node is a top-level node
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static void rdf_NodeElement(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode,
+	private static void rdf_NodeElement(XMPMetaImpl xmp, XMPNode xmpParent, XMLParserNode xmlNode,
 			boolean isTopLevel) throws XMPException
 	{
 		int nodeTerm = getRDFTermKind (xmlNode);
@@ -201,15 +196,15 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param isTopLevel Flag if the node is a top-level node
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static void rdf_NodeElementAttrs(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode,
+	private static void rdf_NodeElementAttrs(XMPMetaImpl xmp, XMPNode xmpParent, XMLParserNode xmlNode,
 			boolean isTopLevel) throws XMPException
 	{
 		// Used to detect attributes that are mutually exclusive.
 		int exclusiveAttrs = 0;	
 	
-		for (int i = 0; i < xmlNode.getAttributes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 		{
-			Node attribute = xmlNode.getAttributes().item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			
 			// quick hack, ns declarations do not appear in C++
 			// ignore "ID" without namespace
@@ -277,17 +272,17 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param isTopLevel Flag if the node is a top-level node
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static void rdf_PropertyElementList(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlParent,
-			boolean isTopLevel) throws XMPException
+	private static void rdf_PropertyElementList(XMPMetaImpl xmp, XMPNode xmpParent,
+			XMLParserNode xmlParent, boolean isTopLevel) throws XMPException
 	{
-		for (int i = 0; i < xmlParent.getChildNodes().getLength(); i++)
+		for (int i = 0; i < xmlParent.getChildCount(); i++)
 		{
-			Node currChild = xmlParent.getChildNodes().item(i);
+			XMLParserNode currChild = xmlParent.getChild(i);
 			if (isWhitespaceNode(currChild))
 			{
 				continue;
 			}	
-			else if (currChild.getNodeType() != Node.ELEMENT_NODE)
+			else if (currChild.getNodeType() != XMLParserNode.ELEMENT_NODE)
 			{
 				throw new XMPException("Expected property element node not found", BADRDF);
 			}
@@ -358,7 +353,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param isTopLevel Flag if the node is a top-level node
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static void rdf_PropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode,
+	private static void rdf_PropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, XMLParserNode xmlNode,
 			boolean isTopLevel) throws XMPException
 	{
 		int nodeTerm = getRDFTermKind (xmlNode);
@@ -368,31 +363,18 @@ public class ParseRDF implements XMPError, XMPConst
 		}
 		
 		// remove the namespace-definitions from the list
-		NamedNodeMap attributes = xmlNode.getAttributes();
-		List nsAttrs = null;
-		for (int i = 0; i < attributes.getLength(); i++)
+		for (int i = xmlNode.getAttributeCount() - 1; i >= 0; i--)
 		{
-			Node attribute = attributes.item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			if ("xmlns".equals(attribute.getPrefix())  ||
 				(attribute.getPrefix() == null  &&  "xmlns".equals(attribute.getNodeName())))
 			{
-				if (nsAttrs == null)
-				{
-					nsAttrs = new ArrayList();
-				}
-				nsAttrs.add(attribute.getNodeName());
-			}
-		}
-		if (nsAttrs != null)
-		{
-			for (Object nsAttr : nsAttrs) {
-				String ns = (String) nsAttr;
-				attributes.removeNamedItem(ns);
+				xmlNode.removeAttribute(i);
 			}
 		}
 		
 		
-		if (attributes.getLength() > 3)
+		if (xmlNode.getAttributeCount() > 3)
 		{
 			// Only an emptyPropertyElt can have more than 3 attributes.
 			rdf_EmptyPropertyElement(xmp, xmpParent, xmlNode, isTopLevel);
@@ -403,9 +385,9 @@ public class ParseRDF implements XMPError, XMPConst
 			// it will usually tell what we should be dealing with. 
 			// The called routines must verify their specific syntax!
 	
-			for (int i = 0; i < attributes.getLength(); i++)
+			for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 			{
-				Node attribute = attributes.item(i);
+				XMLParserNode attribute = xmlNode.getAttribute(i);
 				String attrLocal = attribute.getLocalName();
 				String attrNS = attribute.getNamespaceURI();
 				String attrValue = attribute.getNodeValue();
@@ -446,10 +428,10 @@ public class ParseRDF implements XMPError, XMPConst
 
 			if (xmlNode.hasChildNodes())
 			{
-				for (int i = 0; i < xmlNode.getChildNodes().getLength(); i++)
+				for (int i = 0; i < xmlNode.getChildCount(); i++)
 				{
-					Node currChild = xmlNode.getChildNodes().item(i);
-					if (currChild.getNodeType() != Node.TEXT_NODE)
+					XMLParserNode currChild = xmlNode.getChild(i);
+					if (currChild.getNodeType() != XMLParserNode.TEXT_NODE)
 					{
 						rdf_ResourcePropertyElement (xmp, xmpParent, xmlNode, isTopLevel);
 						return;
@@ -483,7 +465,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @throws XMPException thown on parsing errors
 	 */
 	private static void rdf_ResourcePropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
-			Node xmlNode, boolean isTopLevel) throws XMPException
+			XMLParserNode xmlNode, boolean isTopLevel) throws XMPException
 	{
 		if (isTopLevel  &&  "iX:changes".equals(xmlNode.getNodeName()))
 		{
@@ -494,9 +476,9 @@ public class ParseRDF implements XMPError, XMPConst
 		XMPNode newCompound = addChildNode(xmp, xmpParent, xmlNode, "", isTopLevel);
 		
 		// walk through the attributes
-		for (int i = 0; i < xmlNode.getAttributes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 		{
-			Node attribute = xmlNode.getAttributes().item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			if ("xmlns".equals(attribute.getPrefix())  ||
 					(attribute.getPrefix() == null  &&  "xmlns".equals(attribute.getNodeName())))
 			{
@@ -522,15 +504,15 @@ public class ParseRDF implements XMPError, XMPConst
 
 		// walk through the children
 		
-		Node currChild = null;
+		XMLParserNode currChild = null;
 		boolean found = false;
 		int i;
-		for (i = 0; i < xmlNode.getChildNodes().getLength(); i++)
+		for (i = 0; i < xmlNode.getChildCount(); i++)
 		{
-			currChild = xmlNode.getChildNodes().item(i);
+			currChild = xmlNode.getChild(i);
 			if (!isWhitespaceNode(currChild))
 			{
-				if (currChild.getNodeType() == Node.ELEMENT_NODE  &&  !found)
+				if (currChild.getNodeType() == XMLParserNode.ELEMENT_NODE  &&  !found)
 				{
 					boolean isRDF = NS_RDF.equals(currChild.getNamespaceURI());
 					String childLocal = currChild.getLocalName();
@@ -614,13 +596,13 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @throws XMPException thown on parsing errors
 	 */	
 	private static void rdf_LiteralPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
-			Node xmlNode, boolean isTopLevel) throws XMPException
+			XMLParserNode xmlNode, boolean isTopLevel) throws XMPException
 	{
 		XMPNode newChild = addChildNode (xmp, xmpParent, xmlNode, null, isTopLevel);
 		
-		for (int i = 0; i < xmlNode.getAttributes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 		{
-			Node attribute = xmlNode.getAttributes().item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			if ("xmlns".equals(attribute.getPrefix())  ||
 					(attribute.getPrefix() == null  &&  "xmlns".equals(attribute.getNodeName())))
 			{
@@ -645,10 +627,10 @@ public class ParseRDF implements XMPError, XMPConst
 			}
 		}
 		String textValue = "";
-		for (int i = 0; i < xmlNode.getChildNodes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getChildCount(); i++)
 		{
-			Node child = xmlNode.getChildNodes().item(i);
-			if (child.getNodeType() == Node.TEXT_NODE)
+			XMLParserNode child = xmlNode.getChild(i);
+			if (child.getNodeType() == XMLParserNode.TEXT_NODE)
 			{
 				textValue += child.getNodeValue();
 			}
@@ -693,15 +675,15 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @throws XMPException thown on parsing errors
 	 */
 	private static void rdf_ParseTypeResourcePropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
-			Node xmlNode, boolean isTopLevel) throws XMPException
+			XMLParserNode xmlNode, boolean isTopLevel) throws XMPException
 	{
 		XMPNode newStruct = addChildNode (xmp, xmpParent, xmlNode, "", isTopLevel);
 		
 		newStruct.getOptions().setStruct(true);
 
-		for (int i = 0; i < xmlNode.getAttributes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 		{
-			Node attribute = xmlNode.getAttributes().item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			if ("xmlns".equals(attribute.getPrefix())  ||
 					(attribute.getPrefix() == null  &&  "xmlns".equals(attribute.getNodeName())))
 			{
@@ -809,15 +791,15 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param isTopLevel Flag if the node is a top-level node
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static void rdf_EmptyPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode,
-			boolean isTopLevel) throws XMPException
+	private static void rdf_EmptyPropertyElement(XMPMetaImpl xmp, XMPNode xmpParent,
+			XMLParserNode xmlNode, boolean isTopLevel) throws XMPException
 	{
 		boolean hasPropertyAttrs = false;
 		boolean hasResourceAttr = false;
 		boolean hasNodeIDAttr = false;
 		boolean hasValueAttr = false;
 		
-		Node valueNode = null;	// ! Can come from rdf:value or rdf:resource.
+		XMLParserNode valueNode = null;	// ! Can come from rdf:value or rdf:resource.
 		
 		if (xmlNode.hasChildNodes())
 		{
@@ -827,9 +809,9 @@ public class ParseRDF implements XMPError, XMPConst
 		}
 		
 		// First figure out what XMP this maps to and remember the XML node for a simple value.
-		for (int i = 0; i < xmlNode.getAttributes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 		{
-			Node attribute = xmlNode.getAttributes().item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			if ("xmlns".equals(attribute.getPrefix())  ||
 					(attribute.getPrefix() == null  &&  "xmlns".equals(attribute.getNodeName())))
 			{
@@ -924,9 +906,9 @@ public class ParseRDF implements XMPError, XMPConst
 			childIsStruct = true;
 		}
 		
-		for (int i = 0; i < xmlNode.getAttributes().getLength(); i++)
+		for (int i = 0; i < xmlNode.getAttributeCount(); i++)
 		{
-			Node attribute = xmlNode.getAttributes().item(i);
+			XMLParserNode attribute = xmlNode.getAttribute(i);
 			if (attribute == valueNode  ||
 				"xmlns".equals(attribute.getPrefix())  ||
 				(attribute.getPrefix() == null  &&  "xmlns".equals(attribute.getNodeName())))
@@ -982,7 +964,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @return Returns the newly created child node.
 	 * @throws XMPException thown on parsing errors
 	 */
-	private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, Node xmlNode,
+	private static XMPNode addChildNode(XMPMetaImpl xmp, XMPNode xmpParent, XMLParserNode xmlNode,
 			String value, boolean isTopLevel) throws XMPException
 	{
 		XMPSchemaRegistry registry = XMPMetaFactory.getSchemaRegistry();
@@ -1176,9 +1158,9 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @return Returns whether the node is a whitespace node, 
 	 * 		i.e. a text node that contains only whitespaces.
 	 */
-	private static boolean isWhitespaceNode(Node node)
+	private static boolean isWhitespaceNode(XMLParserNode node)
 	{
-		if (node.getNodeType() != Node.TEXT_NODE)
+		if (node.getNodeType() != XMLParserNode.TEXT_NODE)
 		{
 			return false;
 		}
@@ -1250,7 +1232,7 @@ public class ParseRDF implements XMPError, XMPConst
 	 * @param node an XML node 
 	 * @return Returns the term ID.
 	 */
-	private static int getRDFTermKind(Node node)
+	private static int getRDFTermKind(XMLParserNode node)
 	{
 		String localName = node.getLocalName();
 		String namespace = node.getNamespaceURI();
@@ -1258,8 +1240,8 @@ public class ParseRDF implements XMPError, XMPConst
 		if (
 				namespace == null  && 
 				("about".equals(localName) || "ID".equals(localName))  &&
-				(node instanceof Attr)  &&
-				NS_RDF.equals(((Attr) node).getOwnerElement().getNamespaceURI())
+				node.getNodeType() == XMLParserNode.ATTRIBUTE_NODE  &&
+				NS_RDF.equals(node.getParent().getNamespaceURI())
 		   )
 		{
 			namespace = NS_RDF; 
@@ -0,0 +1,264 @@
+// =================================================================================================
+// ADOBE SYSTEMS INCORPORATED
+// Copyright 2006 Adobe Systems Incorporated
+// All Rights Reserved
+//
+// NOTICE:  Adobe permits you to use, modify, and distribute this file in accordance with the terms
+// of the Adobe license agreement accompanying it.
+// =================================================================================================
+
+package com.adobe.xmp.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A compact XML node as delivered by {@link XMLParserNodeBuilder}. It carries only what
+ * {@link ParseRDF} reads: names, namespace, value, attributes and children.
+ * Compared to a W3C DOM it has no owner document, no sibling links and no lazily created
+ * node lists, and adjacent character data is stored as a single text node.
+ * <p>
+ * The node type constants have the same values as their <code>org.w3c.dom.Node</code>
+ * counterparts.
+ */
+final class XMLParserNode
+{
+	/** an element */
+	static final short ELEMENT_NODE = 1;
+	/** an attribute of an element */
+	static final short ATTRIBUTE_NODE = 2;
+	/** character data */
+	static final short TEXT_NODE = 3;
+	/** a processing instruction, name is the target, value the data */
+	static final short PROCESSING_INSTRUCTION_NODE = 7;
+	/** the document root */
+	static final short DOCUMENT_NODE = 9;
+
+	/** the node type */
+	private final short type;
+	/** the qualified name (or the processing instruction target) */
+	private final String name;
+	/** the namespace URI or <code>null</code> */
+	private final String namespaceURI;
+	/** the prefix or <code>null</code> */
+	private final String prefix;
+	/** the local name */
+	private final String localName;
+	/** the value for attribute, text and processing instruction nodes */
+	private String value;
+	/** the element that contains this node */
+	private XMLParserNode parent;
+	/** list of attributes, created on demand */
+	private List attributes = null;
+	/** list of children, created on demand */
+	private List children = null;
+
+
+	/**
+	 * Creates a node.
+	 *
+	 * @param type the node type
+	 * @param name the qualified name
+	 * @param namespaceURI the namespace URI, <code>null</code> or empty for none
+	 * @param value the value of a non-element node
+	 */
+	XMLParserNode(short type, String name, String namespaceURI, String value)
+	{
+		this.type = type;
+		this.name = name;
+		this.namespaceURI = namespaceURI != null  &&  namespaceURI.length() > 0 ?
+			namespaceURI : null;
+		this.value = value;
+
+		int colon = name != null ? name.indexOf(':') : -1;
+		if (colon >= 0)
+		{
+			this.prefix = name.substring(0, colon);
+			this.localName = name.substring(colon + 1);
+		}
+		else
+		{
+			this.prefix = null;
+			this.localName = name;
+		}
+	}
+
+
+	/**
+	 * @return Returns the node type.
+	 */
+	short getNodeType()
+	{
+		return type;
+	}
+
+
+	/**
+	 * @return Returns the qualified name.
+	 */
+	String getNodeName()
+	{
+		return name;
+	}
+
+
+	/**
+	 * @return Returns the namespace URI or <code>null</code>.
+	 */
+	String getNamespaceURI()
+	{
+		return namespaceURI;
+	}
+
+
+	/**
+	 * @return Returns the prefix or <code>null</code>.
+	 */
+	String getPrefix()
+	{
+		return prefix;
+	}
+
+
+	/**
+	 * @return Returns the local name.
+	 */
+	String getLocalName()
+	{
+		return localName;
+	}
+
+
+	/**
+	 * @return Returns the value of an attribute, text or processing instruction node.
+	 */
+	String getNodeValue()
+	{
+		return value;
+	}
+
+
+	/**
+	 * @return Returns the element this node belongs to, for attributes the owner element.
+	 */
+	XMLParserNode getParent()
+	{
+		return parent;
+	}
+
+
+	/**
+	 * @return Returns whether the node has children.
+	 */
+	boolean hasChildNodes()
+	{
+		return children != null  &&  children.size() > 0;
+	}
+
+
+	/**
+	 * @return Returns the number of children.
+	 */
+	int getChildCount()
+	{
+		return children != null ? children.size() : 0;
+	}
+
+
+	/**
+	 * @param index an index <code>0 &lt;= index &lt; getChildCount()</code>
+	 * @return Returns the child at the index.
+	 */
+	XMLParserNode getChild(int index)
+	{
+		return (XMLParserNode) children.get(index);
+	}
+
+
+	/**
+	 * @return Returns whether the node has attributes.
+	 */
+	boolean hasAttributes()
+	{
+		return attributes != null  &&  attributes.size() > 0;
+	}
+
+
+	/**
+	 * @return Returns the number of attributes.
+	 */
+	int getAttributeCount()
+	{
+		return attributes != null ? attributes.size() : 0;
+	}
+
+
+	/**
+	 * @param index an index <code>0 &lt;= index &lt; getAttributeCount()</code>
+	 * @return Returns the attribute at the index.
+	 */
+	XMLParserNode getAttribute(int index)
+	{
+		return (XMLParserNode) attributes.get(index);
+	}
+
+
+	/**
+	 * Removes an attribute.
+	 * @param index an index <code>0 &lt;= index &lt; getAttributeCount()</code>
+	 */
+	void removeAttribute(int index)
+	{
+		attributes.remove(index);
+	}
+
+
+	/**
+	 * @param attribute an attribute node to add
+	 */
+	void addAttribute(XMLParserNode attribute)
+	{
+		if (attributes == null)
+		{
+			attributes = new ArrayList(4);
+		}
+		attribute.parent = this;
+		attributes.add(attribute);
+	}
+
+
+	/**
+	 * @param child a node to add as last child
+	 */
+	void addChild(XMLParserNode child)
+	{
+		if (children == null)
+		{
+			children = new ArrayList(4);
+		}
+		child.parent = this;
+		children.add(child);
+	}
+
+
+	/**
+	 * Appends character data, merging it with a trailing text node if there is one.
+	 *
+	 * @param text the characters to add
+	 */
+	void appendText(String text)
+	{
+		int count = getChildCount();
+		if (count > 0)
+		{
+			XMLParserNode last = getChild(count - 1);
+			if (last.type == TEXT_NODE)
+			{
+				last.value += text;
+				return;
+			}
+		}
+		addChild(new XMLParserNode(TEXT_NODE, "#text", null, text));
+	}
+}
@@ -0,0 +1,153 @@
+// =================================================================================================
+// ADOBE SYSTEMS INCORPORATED
+// Copyright 2006 Adobe Systems Incorporated
+// All Rights Reserved
+//
+// NOTICE:  Adobe permits you to use, modify, and distribute this file in accordance with the terms
+// of the Adobe license agreement accompanying it.
+// =================================================================================================
+
+package com.adobe.xmp.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+
+/**
+ * SAX handler that builds a tree of {@link XMLParserNode}s while the packet is read.
+ * Comments and the document type declaration are dropped, adjacent character data
+ * (including CDATA sections) is merged into one text node.
+ * <p>
+ * The XML reader must be namespace aware and report the namespace declarations
+ * as attributes ("namespace-prefixes" feature), as {@link ParseRDF} skips and counts them.
+ */
+final class XMLParserNodeBuilder extends DefaultHandler
+{
+	/**
+	 * Orders attributes by their qualified name like the W3C DOM's attribute map does.
+	 * The order of attribute-form properties in the parsed metadata depends on it.
+	 */
+	private static final Comparator ATTRIBUTE_ORDER = new Comparator()
+	{
+		public int compare(Object a, Object b)
+		{
+			return ((XMLParserNode) a).getNodeName().compareTo(((XMLParserNode) b).getNodeName());
+		}
+	};
+
+	/** the document node */
+	private final XMLParserNode document =
+		new XMLParserNode(XMLParserNode.DOCUMENT_NODE, "#document", null, null);
+	/** the element that is currently open */
+	private XMLParserNode current = document;
+	/** collects character data until the next structural event */
+	private StringBuilder text = new StringBuilder();
+
+
+	/**
+	 * @return Returns the document node after the parsing has finished.
+	 */
+	XMLParserNode getDocument()
+	{
+		return document;
+	}
+
+
+	/**
+	 * @see org.xml.sax.ContentHandler#startElement(String, String, String, Attributes)
+	 */
+	public void startElement(String uri, String localName, String qName, Attributes attrs)
+		throws SAXException
+	{
+		flushText();
+		XMLParserNode element = new XMLParserNode(XMLParserNode.ELEMENT_NODE, qName, uri, null);
+		if (attrs.getLength() > 0)
+		{
+			XMLParserNode[] attributes = new XMLParserNode[attrs.getLength()];
+			for (int i = 0; i < attributes.length; i++)
+			{
+				attributes[i] = new XMLParserNode(XMLParserNode.ATTRIBUTE_NODE,
+					attrs.getQName(i), attrs.getURI(i), attrs.getValue(i));
+			}
+			Arrays.sort(attributes, ATTRIBUTE_ORDER);
+			for (int i = 0; i < attributes.length; i++)
+			{
+				element.addAttribute(attributes[i]);
+			}
+		}
+		current.addChild(element);
+		current = element;
+	}
+
+
+	/**
+	 * @see org.xml.sax.ContentHandler#endElement(String, String, String)
+	 */
+	public void endElement(String uri, String localName, String qName) throws SAXException
+	{
+		flushText();
+		current = current.getParent();
+	}
+
+
+	/**
+	 * @see org.xml.sax.ContentHandler#characters(char[], int, int)
+	 */
+	public void characters(char[] ch, int start, int length) throws SAXException
+	{
+		text.append(ch, start, length);
+	}
+
+
+	/**
+	 * @see org.xml.sax.ContentHandler#ignorableWhitespace(char[], int, int)
+	 */
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
+	{
+		text.append(ch, start, length);
+	}
+
+
+	/**
+	 * The target is interned because <code>XMPMetaParser</code> compares it by identity,
+	 * as the DOM parser did.
+	 *
+	 * @see org.xml.sax.ContentHandler#processingInstruction(String, String)
+	 */
+	public void processingInstruction(String target, String data) throws SAXException
+	{
+		flushText();
+		current.addChild(new XMLParserNode(XMLParserNode.PROCESSING_INSTRUCTION_NODE,
+			target.intern(), null, data != null ? data : ""));
+	}
+
+
+	/**
+	 * @see org.xml.sax.ContentHandler#endDocument()
+	 */
+	public void endDocument() throws SAXException
+	{
+		flushText();
+	}
+
+
+	/**
+	 * Adds the collected character data as text node to the current element.
+	 * Text outside of the root element is dropped like in a DOM.
+	 */
+	private void flushText()
+	{
+		if (text.length() > 0)
+		{
+			if (current != document)
+			{
+				current.appendText(text.toString());
+			}
+			text.setLength(0);
+		}
+	}
+}
@@ -17,16 +17,13 @@ import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.ProcessingInstruction;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 import com.adobe.xmp.XMPConst;
 import com.adobe.xmp.XMPError;
@@ -39,6 +36,10 @@ import com.adobe.xmp.options.ParseOptions;
  * This class replaces the <code>ExpatAdapter.cpp</code> and does the
  * XML-parsing and fixes the prefix. After the parsing several normalisations
  * are applied to the XMPTree.
+ * <p>
+ * The XML is read with a SAX parser into a compact {@link XMLParserNode} tree instead of 
+ * a W3C DOM, which keeps the peak memory of large packets close to the size of the
+ * resulting XMP tree.
  * 
  * @since 01.02.2006
  */
@@ -46,8 +47,8 @@ public class XMPMetaParser
 {
 	/**  */
 	private static final Object XMP_RDF = new Object();
-	/** the DOM Parser Factory, options are set */ 
-	private static DocumentBuilderFactory factory = createDocumentBuilderFactory();
+	/** the SAX Parser Factory, options are set */ 
+	private static SAXParserFactory factory = createParserFactory();
 
 	/**
 	 * Hidden constructor, initialises the SAX parser handler.
@@ -74,7 +75,7 @@ public class XMPMetaParser
 		ParameterAsserts.assertNotNull(input);
 		options = options != null ? options : new ParseOptions();
 
-		Document document = parseXml(input, options);
+		XMLParserNode document = parseXml(input, options);
 
 		boolean xmpmetaRequired = options.getRequireXMPMeta();
 		Object[] result = new Object[3];
@@ -82,7 +83,7 @@ public class XMPMetaParser
 		
 		if (result != null  &&  result[1] == XMP_RDF)
 		{
-			XMPMetaImpl xmp = ParseRDF.parse((Node) result[0]);
+			XMPMetaImpl xmp = ParseRDF.parse((XMLParserNode) result[0]);
 			xmp.setPacketHeader((String) result[2]);
 			
 			// Check if the XMP object shall be normalized
@@ -117,10 +118,10 @@ public class XMPMetaParser
 	 * @param input the input can be an <code>InputStream</code>, a <code>String</code> or 
 	 * 			a byte buffer containing the XMP packet.
 	 * @param options the parsing options
-	 * @return Returns the parsed XML document or an exception.
+	 * @return Returns the parsed XML document node or an exception.
 	 * @throws XMPException Thrown if the parsing fails for different reasons
 	 */
-	private static Document parseXml(Object input, ParseOptions options)
+	private static XMLParserNode parseXml(Object input, ParseOptions options)
 			throws XMPException
 	{
 		if (input instanceof InputStream)
@@ -144,10 +145,10 @@ public class XMPMetaParser
 	 *  
 	 * @param stream an <code>InputStream</code>
 	 * @param options the parsing options
-	 * @return Returns an XML DOM-Document.
+	 * @return Returns the XML document node.
 	 * @throws XMPException Thrown when the parsing fails.
 	 */
-	private static Document parseXmlFromInputStream(InputStream stream, ParseOptions options)
+	private static XMLParserNode parseXmlFromInputStream(InputStream stream, ParseOptions options)
 			throws XMPException
 	{
 		if (!options.getAcceptLatin1()  &&  !options.getFixControlChars())
@@ -177,10 +178,10 @@ public class XMPMetaParser
 	 * 
 	 * @param buffer a byte buffer containing the XMP packet
 	 * @param options the parsing options
-	 * @return Returns an XML DOM-Document.
+	 * @return Returns the XML document node.
 	 * @throws XMPException Thrown when the parsing fails.
 	 */
-	private static Document parseXmlFromBytebuffer(ByteBuffer buffer, ParseOptions options)
+	private static XMLParserNode parseXmlFromBytebuffer(ByteBuffer buffer, ParseOptions options)
 		throws XMPException
 	{
 		InputSource source = new InputSource(buffer.getByteStream());
@@ -232,10 +233,10 @@ public class XMPMetaParser
 	 *  
 	 * @param input a <code>String</code> containing the XMP packet
 	 * @param options the parsing options
-	 * @return Returns an XML DOM-Document.
+	 * @return Returns the XML document node.
 	 * @throws XMPException Thrown when the parsing fails.
 	 */
-	private static Document parseXmlFromString(String input, ParseOptions options)
+	private static XMLParserNode parseXmlFromString(String input, ParseOptions options)
 			throws XMPException
 	{
 		InputSource source = new InputSource(new StringReader(input));
@@ -261,16 +262,20 @@ public class XMPMetaParser
 	/**
 	 * Runs the XML-Parser. 
 	 * @param source an <code>InputSource</code>
-	 * @return Returns an XML DOM-Document.
+	 * @return Returns the XML document node.
 	 * @throws XMPException Wraps parsing and I/O-exceptions into an XMPException.
 	 */
-	private static Document parseInputSource(InputSource source) throws XMPException
+	private static XMLParserNode parseInputSource(InputSource source) throws XMPException
 	{
 		try
 		{
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			builder.setErrorHandler(null);
-			return builder.parse(source);
+			SAXParser parser = factory.newSAXParser();
+			XMLReader reader = parser.getXMLReader();
+			XMLParserNodeBuilder builder = new XMLParserNodeBuilder();
+			reader.setContentHandler(builder);
+			reader.setErrorHandler(builder);
+			reader.parse(source);
+			return builder.getDocument();
 		}
 		catch (SAXException e)
 		{
@@ -318,29 +323,28 @@ public class XMPMetaParser
 	 * </ol>
 	 * 
 	 */
-	private static Object[] findRootNode(Node root, boolean xmpmetaRequired, Object[] result)
+	private static Object[] findRootNode(XMLParserNode root, boolean xmpmetaRequired, Object[] result)
 	{
 		// Look among this parent's content for x:xapmeta or x:xmpmeta.
 		// The recursion for x:xmpmeta is broader than the strictly defined choice, 
 		// but gives us smaller code.
-		NodeList children = root.getChildNodes();
-		for (int i = 0; i < children.getLength(); i++)
+		for (int i = 0; i < root.getChildCount(); i++)
 		{
-			root = children.item(i);
-			if (Node.PROCESSING_INSTRUCTION_NODE == root.getNodeType()  &&
-				((ProcessingInstruction) root).getTarget() == XMPConst.XMP_PI)
+			XMLParserNode child = root.getChild(i);
+			if (XMLParserNode.PROCESSING_INSTRUCTION_NODE == child.getNodeType()  &&
+				child.getNodeName() == XMPConst.XMP_PI)
 			{
 				// Store the processing instructions content
 				if (result != null)
 				{	
-					result[2] = ((ProcessingInstruction) root).getData();
+					result[2] = child.getNodeValue();
 				}	
 			}
-			else if (Node.TEXT_NODE != root.getNodeType()  &&  
-				Node.PROCESSING_INSTRUCTION_NODE != root.getNodeType())
+			else if (XMLParserNode.TEXT_NODE != child.getNodeType()  &&  
+				XMLParserNode.PROCESSING_INSTRUCTION_NODE != child.getNodeType())
 			{	
-				String rootNS = root.getNamespaceURI();
-				String rootLocal = root.getLocalName();
+				String rootNS = child.getNamespaceURI();
+				String rootLocal = child.getLocalName();
 				if (
 						(
 							XMPConst.TAG_XMPMETA.equals(rootLocal)  ||  
@@ -350,7 +354,7 @@ public class XMPMetaParser
 				   )
 				{
 					// by not passing the RequireXMPMeta-option, the rdf-Node will be valid
-					return findRootNode(root, false, result);
+					return findRootNode(child, false, result);
 				}
 				else if (!xmpmetaRequired  &&
 						"RDF".equals(rootLocal)  &&
@@ -358,7 +362,7 @@ public class XMPMetaParser
 				{	
 					if (result != null)
 					{	
-						result[0] = root;
+						result[0] = child;
 						result[1] = XMP_RDF;
 					}	
 					return result;
@@ -366,7 +370,7 @@ public class XMPMetaParser
 				else
 				{
 					// continue searching
-					Object[] newResult = findRootNode(root, xmpmetaRequired, result);
+					Object[] newResult = findRootNode(child, xmpmetaRequired, result);
 					if (newResult != null)
 					{
 						return newResult;
@@ -386,15 +390,23 @@ public class XMPMetaParser
 
 	
 	/**
-	 * @return Creates, configures and returnes the document builder factory for
+	 * @return Creates, configures and returns the SAX parser factory for
 	 *         the Metadata Parser.
 	 */
-	private static DocumentBuilderFactory createDocumentBuilderFactory()
+	private static SAXParserFactory createParserFactory()
 	{
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		SAXParserFactory factory = SAXParserFactory.newInstance();
 		factory.setNamespaceAware(true);
-		factory.setIgnoringComments(true);
 		
+		try
+		{
+			// ParseRDF needs the namespace declarations as attributes, as in a DOM.
+			factory.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
+		}
+		catch (Exception e)
+		{
+			// Ignore, the parser keeps working without the declarations.
+		}		
 		try
 		{
 			// honor System parsing limits, e.g.
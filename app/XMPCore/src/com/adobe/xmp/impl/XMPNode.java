@@ -44,9 +44,9 @@ class XMPNode implements Comparable
 	/** link to the parent node */
 	private XMPNode parent;
 	/** list of child nodes, lazy initialized */
-	private List children = null; 
+	private XMPNodeList children = null; 
 	/** list of qualifier of the node, lazy initialized */
-	private List qualifier = null;
+	private XMPNodeList qualifier = null;
 	/** options describing the kind of the node */
 	private PropertyOptions options = null;
 	
@@ -514,6 +514,11 @@ class XMPNode implements Comparable
 	public void setName(String name)
 	{
 		this.name = name;
+		if (parent != null)
+		{
+			// the node is either a child or a qualifier of its parent
+			parent.invalidateIndexes();
+		}
 	}
 
 
@@ -819,11 +824,11 @@ class XMPNode implements Comparable
 	 * that its initialized.
 	 * @return Returns list of children that is lazy initialized.
 	 */
-	private List getChildren()
+	private XMPNodeList getChildren()
 	{
 		if (children == null)
 		{
-			children = new ArrayList(0);
+			children = new XMPNodeList(0);
 		}
 		return children;
 	}
@@ -841,11 +846,11 @@ class XMPNode implements Comparable
 	/**
 	 * @return Returns list of qualifier that is lazy initialized.
 	 */
-	private List getQualifier()
+	private XMPNodeList getQualifier()
 	{
 		if (qualifier == null)
 		{
-			qualifier = new ArrayList(0);
+			qualifier = new XMPNodeList(0);
 		}
 		return qualifier;
 	}
@@ -864,25 +869,32 @@ class XMPNode implements Comparable
 	}
 
 	
+	/**
+	 * Drops the name indexes of the children and qualifier lists,
+	 * called when one of the nodes is renamed.
+	 */
+	private void invalidateIndexes()
+	{
+		if (children != null)
+		{
+			children.invalidateIndex();
+		}
+		if (qualifier != null)
+		{
+			qualifier.invalidateIndex();
+		}
+	}
+
+	
 	/**
 	 * Internal find.
 	 * @param list the list to search in
 	 * @param expr the search expression
 	 * @return Returns the found node or <code>nulls</code>.
 	 */
-	private XMPNode find(List list, String expr)
+	private XMPNode find(XMPNodeList list, String expr)
 	{
-		
-		if (list != null)
-		{
-			for (Object o : list) {
-				XMPNode child = (XMPNode) o;
-				if (child.getName().equals(expr)) {
-					return child;
-				}
-			}
-		}	
-		return null;
+		return list != null ? list.find(expr) : null;
 	}
 	
 	
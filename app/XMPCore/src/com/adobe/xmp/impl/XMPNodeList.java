@@ -0,0 +1,229 @@
+// =================================================================================================
+// ADOBE SYSTEMS INCORPORATED
+// Copyright 2006 Adobe Systems Incorporated
+// All Rights Reserved
+//
+// NOTICE:  Adobe permits you to use, modify, and distribute this file in accordance with the terms
+// of the Adobe license agreement accompanying it.
+// =================================================================================================
+
+package com.adobe.xmp.impl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.adobe.xmp.XMPConst;
+
+
+/**
+ * The ordered list of children or qualifiers of an {@link XMPNode}.
+ * The nodes keep their insertion order, which is the order they are serialized in.
+ * <p>
+ * Lookups by name scan the list as long as it is short. For longer lists a map from name to
+ * node is built on the first lookup and kept up to date by the modifying methods,
+ * so that large schemas are not scanned once per property.
+ * Array items (all named "[]") are never indexed, a lookup for them always scans.
+ * <p>
+ * The index maps each name to its first node, which is the node a scan would find.
+ * Operations that could make the index disagree with a scan (replacing a node,
+ * adding a second node with an indexed name, renaming a node) drop it; it is rebuilt
+ * on the next lookup.
+ */
+final class XMPNodeList extends AbstractList
+{
+	/** lists with less nodes are scanned instead of indexed */
+	private static final int INDEX_THRESHOLD = 16;
+
+	/** the nodes in document order */
+	private final ArrayList nodes;
+	/** maps node names to nodes, lazy initialized */
+	private Map index = null;
+	/** flag if a name was found more than once when the index was built */
+	private boolean duplicates;
+
+
+	/**
+	 * Creates an empty list.
+	 *
+	 * @param capacity the initial capacity
+	 */
+	XMPNodeList(int capacity)
+	{
+		nodes = new ArrayList(capacity);
+	}
+
+
+	/**
+	 * @param name the node name to look for
+	 * @return Returns the first node with the name or <code>null</code>.
+	 */
+	XMPNode find(String name)
+	{
+		if (index == null)
+		{
+			if (nodes.size() < INDEX_THRESHOLD  ||  XMPConst.ARRAY_ITEM_NAME.equals(name))
+			{
+				return scan(name);
+			}
+			buildIndex();
+		}
+		else if (XMPConst.ARRAY_ITEM_NAME.equals(name))
+		{
+			return scan(name);
+		}
+		return (XMPNode) index.get(name);
+	}
+
+
+	/**
+	 * Drops the name index, it is rebuilt on the next lookup.
+	 * Must be called when a node of the list is renamed.
+	 */
+	void invalidateIndex()
+	{
+		index = null;
+	}
+
+
+	/**
+	 * @see java.util.AbstractList#get(int)
+	 */
+	public Object get(int index)
+	{
+		return nodes.get(index);
+	}
+
+
+	/**
+	 * @see java.util.AbstractCollection#size()
+	 */
+	public int size()
+	{
+		return nodes.size();
+	}
+
+
+	/**
+	 * @see java.util.AbstractList#add(int, Object)
+	 */
+	public void add(int index, Object element)
+	{
+		XMPNode node = (XMPNode) element;
+		nodes.add(index, node);
+		modCount++;
+
+		if (this.index != null  &&  isIndexed(node))
+		{
+			if (this.index.containsKey(node.getName()))
+			{
+				// the new node might precede the indexed one
+				this.index = null;
+			}
+			else
+			{
+				this.index.put(node.getName(), node);
+			}
+		}
+	}
+
+
+	/**
+	 * @see java.util.AbstractList#set(int, Object)
+	 */
+	public Object set(int index, Object element)
+	{
+		// also used when the list is sorted, where the nodes are transiently duplicated
+		this.index = null;
+		return nodes.set(index, element);
+	}
+
+
+	/**
+	 * @see java.util.AbstractList#remove(int)
+	 */
+	public Object remove(int index)
+	{
+		XMPNode node = (XMPNode) nodes.remove(index);
+		modCount++;
+
+		if (this.index != null  &&  isIndexed(node)  &&  this.index.get(node.getName()) == node)
+		{
+			if (duplicates)
+			{
+				// a later node with the same name has to take its place
+				this.index = null;
+			}
+			else
+			{
+				this.index.remove(node.getName());
+			}
+		}
+		return node;
+	}
+
+
+	/**
+	 * @see java.util.AbstractList#clear()
+	 */
+	public void clear()
+	{
+		nodes.clear();
+		modCount++;
+		index = null;
+	}
+
+
+	/**
+	 * Indexes all nodes except array items, the first node of a name wins.
+	 */
+	private void buildIndex()
+	{
+		index = new HashMap(nodes.size() * 4 / 3 + 1);
+		duplicates = false;
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			XMPNode node = (XMPNode) nodes.get(i);
+			if (isIndexed(node))
+			{
+				if (index.containsKey(node.getName()))
+				{
+					duplicates = true;
+				}
+				else
+				{
+					index.put(node.getName(), node);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @param name the node name to look for
+	 * @return Returns the first node with the name or <code>null</code>.
+	 */
+	private XMPNode scan(String name)
+	{
+		for (int i = 0; i < nodes.size(); i++)
+		{
+			XMPNode node = (XMPNode) nodes.get(i);
+			if (node.getName().equals(name))
+			{
+				return node;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * @param node a node
+	 * @return Returns whether the node is part of the index.
+	 */
+	private static boolean isIndexed(XMPNode node)
+	{
+		return !XMPConst.ARRAY_ITEM_NAME.equals(node.getName());
+	}
+}
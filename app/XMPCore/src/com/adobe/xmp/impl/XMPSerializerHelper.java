@@ -9,10 +9,11 @@
 
 package com.adobe.xmp.impl;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 
+import com.adobe.xmp.XMPError;
 import com.adobe.xmp.XMPException;
 import com.adobe.xmp.options.SerializeOptions;
 
@@ -25,6 +26,20 @@ import com.adobe.xmp.options.SerializeOptions;
  */
 public class XMPSerializerHelper
 {
+	/** initial size of the serialization buffers */
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+	/** larger buffers are not kept for reuse */
+	private static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+	/** a serialization buffer per thread, that is reused for subsequent serializations */
+	private static final ThreadLocal reusableBuffer = new ThreadLocal()
+	{
+		protected Object initialValue()
+		{
+			return new ByteBuffer(INITIAL_BUFFER_SIZE);
+		}
+	};
+	
+	
 	/**
 	 * Static method to serialize the metadata object. For each serialisation, a new XMPSerializer
 	 * instance is created, either XMPSerializerRDF or XMPSerializerPlain so thats its possible to 
@@ -38,6 +53,35 @@ public class XMPSerializerHelper
 	public static void serialize(XMPMetaImpl xmp, OutputStream out, 
 		SerializeOptions options)
 		throws XMPException
+	{
+		ByteBuffer buffer = obtainBuffer();
+		try
+		{
+			serialize(xmp, buffer, options);
+			buffer.writeTo(out);
+		}
+		catch (IOException e)
+		{
+			throw new XMPException("Error writing to the OutputStream", XMPError.UNKNOWN);
+		}
+		finally
+		{
+			releaseBuffer(buffer);
+		}
+	}		
+	
+
+	/**
+	 * Serializes the metadata object into a buffer.
+	 * 
+	 * @param xmp a metadata implementation object
+	 * @param buffer an empty buffer to serialize to
+	 * @param options serialization options, can be <code>null</code> for default.
+	 * @throws XMPException
+	 */
+	private static void serialize(XMPMetaImpl xmp, ByteBuffer buffer, 
+		SerializeOptions options)
+		throws XMPException
 	{
 		options = options != null ? options : new SerializeOptions();		
 		
@@ -46,8 +90,8 @@ public class XMPSerializerHelper
 		{
 			xmp.sort();
 		}
-		new XMPSerializerRDF().serialize(xmp, out, options);
-	}		
+		new XMPSerializerRDF().serialize(xmp, buffer, options);
+	}
 	
 
 	/**
@@ -68,18 +112,21 @@ public class XMPSerializerHelper
 		options = options != null ? options : new SerializeOptions();		
 		options.setEncodeUTF16BE(true);
 
-		ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
-		serialize(xmp, out, options);
-
+		ByteBuffer buffer = obtainBuffer();
 		try
 		{
-			return out.toString(options.getEncoding());
+			serialize(xmp, buffer, options);
+			return buffer.toString(options.getEncoding());
 		}
 		catch (UnsupportedEncodingException e)
 		{
 			// cannot happen as UTF-8/16LE/BE is required to be implemented in
 			// Java
-			return out.toString();
+			throw new XMPException("Unsupported encoding", XMPError.UNKNOWN);
+		}
+		finally
+		{
+			releaseBuffer(buffer);
 		}
 	}
 	
@@ -95,8 +142,53 @@ public class XMPSerializerHelper
 	public static byte[] serializeToBuffer(XMPMetaImpl xmp, SerializeOptions options)
 			throws XMPException
 	{
-		ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
-		serialize(xmp, out, options);
-		return out.toByteArray();
+		ByteBuffer buffer = obtainBuffer();
+		try
+		{
+			serialize(xmp, buffer, options);
+			return buffer.toByteArray();
+		}
+		finally
+		{
+			releaseBuffer(buffer);
+		}
+	}
+	
+	
+	/**
+	 * Takes the buffer of the current thread, so that a nested serialization
+	 * cannot use it at the same time.
+	 * 
+	 * @return Returns an empty buffer.
+	 */
+	private static ByteBuffer obtainBuffer()
+	{
+		ByteBuffer buffer = (ByteBuffer) reusableBuffer.get();
+		reusableBuffer.set(null);
+		if (buffer == null)
+		{
+			buffer = new ByteBuffer(INITIAL_BUFFER_SIZE);
+		}
+		buffer.reset();
+		return buffer;
+	}
+	
+	
+	/**
+	 * Keeps the buffer for the next serialization of the current thread,
+	 * unless it has grown too large.
+	 * 
+	 * @param buffer a buffer obtained by {@link #obtainBuffer()}
+	 */
+	private static void releaseBuffer(ByteBuffer buffer)
+	{
+		if (buffer.capacity() <= MAX_REUSED_BUFFER_SIZE)
+		{
+			reusableBuffer.set(buffer);
+		}
+		else
+		{
+			reusableBuffer.remove();
+		}
 	}
 }
\ No newline at end of file
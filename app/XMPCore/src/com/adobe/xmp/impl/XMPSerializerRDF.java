@@ -11,7 +11,6 @@ package com.adobe.xmp.impl;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -27,8 +26,9 @@ import com.adobe.xmp.options.SerializeOptions;
 
 /**
  * Serializes the <code>XMPMeta</code>-object using the standard RDF serialization format. 
- * The output is written to an <code>OutputStream</code> 
- * according to the <code>SerializeOptions</code>. 
+ * The output is encoded directly into a {@link ByteBuffer} 
+ * according to the <code>SerializeOptions</code>, 
+ * so that the padding can be computed from the buffer length in a single pass. 
  * 
  * @since   11.07.2006
  */
@@ -67,10 +67,14 @@ public class XMPSerializerRDF
 	
 	/** the metadata object to be serialized. */ 
 	private XMPMetaImpl xmp; 
-	/** the output stream to serialize to */ 
-	private CountOutputStream outputStream;
-	/** this writer is used to do the actual serialisation */
-	private OutputStreamWriter writer;
+	/** the buffer the encoded packet is written to */ 
+	private ByteBuffer buffer;
+	/** flag if the packet is encoded as UTF-16 big endian */
+	private boolean utf16BE;
+	/** flag if the packet is encoded as UTF-16 little endian */
+	private boolean utf16LE;
+	/** a high surrogate that waits for its low surrogate, or 0 */
+	private char highSurrogate;
 	/** the stored serialisation options */
 	private SerializeOptions options;
 	/** the size of one unicode char, for UTF-8 set to 1 
@@ -94,32 +98,52 @@ public class XMPSerializerRDF
 	public void serialize(XMPMeta xmp, OutputStream out, 
 			SerializeOptions options) throws XMPException
 	{
+		ByteBuffer packet = new ByteBuffer(DEFAULT_PAD * 2);
+		serialize(xmp, packet, options);
 		try
 		{
-			outputStream = new CountOutputStream(out); 
-			writer = new OutputStreamWriter(outputStream, options.getEncoding());
-			
+			packet.writeTo(out);
+		}
+		catch (IOException e)
+		{
+			throw new XMPException("Error writing to the OutputStream", XMPError.UNKNOWN);
+		}
+	}
+
+
+	/**
+	 * The actual serialisation. The packet is appended to the buffer, 
+	 * which has to be empty when the option <em>exactPacketLength</em> is set.
+	 * 
+	 * @param xmp the metadata object to be serialized
+	 * @param out the buffer to append the encoded packet to
+	 * @param options the serialization options
+	 * 
+	 * @throws XMPException If case of wrong options or any other serialisaton error.
+	 */
+	public void serialize(XMPMeta xmp, ByteBuffer out, 
+			SerializeOptions options) throws XMPException
+	{
+		try
+		{
+			this.buffer = out;
 			this.xmp = (XMPMetaImpl) xmp;
 			this.options = options;
 			this.padding = options.getPadding();
-
-			writer = new OutputStreamWriter(outputStream, options.getEncoding());
+			this.utf16BE = options.getEncodeUTF16BE();
+			this.utf16LE = !utf16BE  &&  options.getEncodeUTF16LE();
+			this.highSurrogate = 0;
 			
 			checkOptionsConsistence();
 			
 			// serializes the whole packet, but don't write the tail yet 
-			// and flush to make sure that the written bytes are calculated correctly
 			String tailStr = serializeAsRDF();
-			writer.flush();
 			
 			// adds padding
 			addPadding(tailStr.length());
 
 			// writes the tail
 			write(tailStr);
-			writer.flush();
-			
-			outputStream.close();
 		}
 		catch (IOException e)
 		{
@@ -139,7 +163,7 @@ public class XMPSerializerRDF
 		if (options.getExactPacketLength())
 		{
 			// the string length is equal to the length of the UTF-8 encoding
-			int minSize = outputStream.getBytesWritten() + tailLength * unicodeSize;
+			int minSize = buffer.length() + tailLength * unicodeSize;
 			if (minSize > padding)
 			{
 				throw new XMPException("Can't fit into specified packet size",
@@ -1222,7 +1246,7 @@ public class XMPSerializerRDF
 	{
 		for (int i = options.getBaseIndent() + times; i > 0; i--)
 		{
-			writer.write(options.getIndent());
+			write(options.getIndent());
 		}
 	}
 	
@@ -1234,7 +1258,7 @@ public class XMPSerializerRDF
 	 */
 	private void write(int c) throws IOException
 	{
-		writer.write(c);
+		encode((char) c);
 	}
 	
 	
@@ -1245,7 +1269,10 @@ public class XMPSerializerRDF
 	 */
 	private void write(String str) throws IOException
 	{
-		writer.write(str);
+		for (int i = 0; i < str.length(); i++)
+		{
+			encode(str.charAt(i));
+		}
 	}
 	
 	
@@ -1259,7 +1286,7 @@ public class XMPSerializerRDF
 	{
 		for (; number > 0; number--)
 		{
-			writer.write(c);
+			encode(c);
 		}
 	}
 	
@@ -1270,6 +1297,89 @@ public class XMPSerializerRDF
 	 */
 	private void writeNewline() throws IOException
 	{
-		writer.write(options.getNewline());
+		write(options.getNewline());
+	}
+	
+	
+	/**
+	 * Encodes a char into the buffer. The result is the same as with an 
+	 * <code>OutputStreamWriter</code>: surrogate pairs are combined, 
+	 * unpaired surrogates are replaced by '?' in UTF-8 and by U+FFFD in UTF-16.
+	 * 
+	 * @param c a char
+	 */
+	private void encode(char c)
+	{
+		if (highSurrogate != 0)
+		{
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c))
+			{
+				if (unicodeSize == 1)
+				{
+					int cp = Character.toCodePoint(high, c);
+					buffer.append((byte) (0xF0 | (cp >> 18)));
+					buffer.append((byte) (0x80 | ((cp >> 12) & 0x3F)));
+					buffer.append((byte) (0x80 | ((cp >> 6) & 0x3F)));
+					buffer.append((byte) (0x80 | (cp & 0x3F)));
+				}
+				else
+				{
+					encodeUnit(high);
+					encodeUnit(c);
+				}
+				return;
+			}
+			encodeUnit(unicodeSize == 1 ? '?' : '\uFFFD');
+		}
+		
+		if (Character.isHighSurrogate(c))
+		{
+			highSurrogate = c;
+		}
+		else if (Character.isLowSurrogate(c))
+		{
+			encodeUnit(unicodeSize == 1 ? '?' : '\uFFFD');
+		}
+		else
+		{
+			encodeUnit(c);
+		}
+	}
+	
+	
+	/**
+	 * Encodes a char that is not a surrogate, or a single UTF-16 code unit.
+	 * 
+	 * @param c a char
+	 */
+	private void encodeUnit(char c)
+	{
+		if (utf16BE)
+		{
+			buffer.append((byte) (c >> 8));
+			buffer.append((byte) c);
+		}
+		else if (utf16LE)
+		{
+			buffer.append((byte) c);
+			buffer.append((byte) (c >> 8));
+		}
+		else if (c < 0x80)
+		{
+			buffer.append((byte) c);
+		}
+		else if (c < 0x800)
+		{
+			buffer.append((byte) (0xC0 | (c >> 6)));
+			buffer.append((byte) (0x80 | (c & 0x3F)));
+		}
+		else
+		{
+			buffer.append((byte) (0xE0 | (c >> 12)));
+			buffer.append((byte) (0x80 | ((c >> 6) & 0x3F)));
+			buffer.append((byte) (0x80 | (c & 0x3F)));
+		}
 	}
 }
\ No newline at end of file
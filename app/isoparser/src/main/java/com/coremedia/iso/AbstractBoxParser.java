@@ -33,6 +33,7 @@ import static com.googlecode.mp4parser.util.CastUtils.l2i;
 public abstract class AbstractBoxParser implements BoxParser {
 
     private static Logger LOG = Logger.getLogger(AbstractBoxParser.class.getName());
+    private static final int USER_TYPE = IsoFile.fourCCtoInt(UserBox.TYPE);
 
     public abstract Box createBox(String type, byte[] userType, String parent);
 
@@ -57,7 +58,8 @@ public abstract class AbstractBoxParser implements BoxParser {
         }
 
 
-        String type = IsoTypeReader.read4cc(header);
+        int fourCC = header.getInt();
+        String type = IsoFile.intToFourCC(fourCC);
         byte[] usertype = null;
         long contentSize;
 
@@ -77,7 +79,7 @@ public abstract class AbstractBoxParser implements BoxParser {
         } else {
             contentSize = size - 8;
         }
-        if (UserBox.TYPE.equals(type)) {
+        if (fourCC == USER_TYPE) {
             ByteBuffer bb = ByteBuffer.allocate(16);
             byteChannel.read(bb);
             bb.rewind();
@@ -97,17 +99,17 @@ public abstract class AbstractBoxParser implements BoxParser {
         } else if (l2i(size - contentSize) == 16) {
             header = ByteBuffer.allocate(16);
             IsoTypeWriter.writeUInt32(header, 1);
-            header.put(IsoFile.fourCCtoBytes(type));
+            IsoTypeWriter.write4cc(header, type);
             IsoTypeWriter.writeUInt64(header, size);
         } else if (l2i(size - contentSize) == 24) {
             header = ByteBuffer.allocate(24);
             IsoTypeWriter.writeUInt32(header, size);
-            header.put(IsoFile.fourCCtoBytes(type));
+            IsoTypeWriter.write4cc(header, type);
             header.put(usertype);
         } else if (l2i(size - contentSize) == 32) {
             header = ByteBuffer.allocate(32);
             IsoTypeWriter.writeUInt32(header, size);
-            header.put(IsoFile.fourCCtoBytes(type));
+            IsoTypeWriter.write4cc(header, type);
             IsoTypeWriter.writeUInt64(header, size);
             header.put(usertype);
         } else {
@@ -19,6 +19,7 @@ package com.coremedia.iso;
 import com.coremedia.iso.boxes.Box;
 import com.coremedia.iso.boxes.MovieBox;
 import com.googlecode.mp4parser.AbstractContainerBox;
+import com.googlecode.mp4parser.BoxWriter;
 import com.googlecode.mp4parser.annotations.DoNotParseDetail;
 
 import java.io.Closeable;
@@ -30,7 +31,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The most upper container for ISO Boxes. It is a container box that is a file.
@@ -40,6 +44,8 @@ import java.nio.charset.StandardCharsets;
 public class IsoFile extends AbstractContainerBox implements Closeable {
     protected BoxParser boxParser = new PropertyBoxParserImpl();
     ReadableByteChannel byteChannel;
+    private boolean parseOnDemand;
+    private volatile BoxIndex boxIndex;
 
     public IsoFile() {
         super("");
@@ -59,6 +65,24 @@ public class IsoFile extends AbstractContainerBox implements Closeable {
         parse();
     }
 
+    /**
+     * Creates an IsoFile that only scans the box headers of the file. Container boxes are read and
+     * parsed when they are first accessed, so opening a file to look at the <code>moov</code> box
+     * does not read fragments, user data or any other box that is never looked at.
+     * The <code>fileChannel</code> must not be closed as long as the IsoFile is in use.
+     *
+     * @param fileChannel   the file to parse
+     * @param parseOnDemand <code>true</code> to parse container boxes on first access
+     * @throws IOException in case of an I/O error
+     */
+    public IsoFile(FileChannel fileChannel, boolean parseOnDemand) throws IOException {
+        super("");
+        this.byteChannel = fileChannel;
+        this.parseOnDemand = parseOnDemand;
+        boxParser = createBoxParser();
+        parse();
+    }
+
     public IsoFile(ReadableByteChannel byteChannel, BoxParser boxParser) throws IOException {
         super("");
         this.byteChannel = byteChannel;
@@ -73,11 +97,46 @@ public class IsoFile extends AbstractContainerBox implements Closeable {
     }
 
 
+    /**
+     * @return <code>true</code> if container boxes are parsed on first access
+     * @see #IsoFile(java.nio.channels.FileChannel, boolean)
+     */
+    @DoNotParseDetail
+    public boolean isParseOnDemand() {
+        return parseOnDemand;
+    }
+
     @Override
     public void _parseDetails(ByteBuffer content) {
         // there are no details to parse we should be just file
     }
 
+    /**
+     * Recursive lookups are answered from an index that is built once per class and dropped
+     * when any container box changes, so looking for e.g. all <code>TrackBox</code>es again
+     * and again doesn't walk the whole box tree each time.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    @DoNotParseDetail
+    public <T extends Box> List<T> getBoxes(Class<T> clazz, boolean recursive) {
+        if (!recursive) {
+            return super.getBoxes(clazz, false);
+        }
+        long modifications = getContainerModifications();
+        BoxIndex index = boxIndex;
+        if (index == null || index.modifications != modifications) {
+            index = new BoxIndex(modifications);
+            boxIndex = index;
+        }
+        List<? extends Box> boxes = index.boxesByClass.get(clazz);
+        if (boxes == null) {
+            boxes = super.getBoxes(clazz, true);
+            index.boxesByClass.put(clazz, boxes);
+        }
+        return new ArrayList<>((List<T>) boxes);
+    }
+
     public void parse(ReadableByteChannel inFC, ByteBuffer header, long contentSize, AbstractBoxParser abstractBoxParser) throws IOException {
         throw new IOException("This method is not meant to be called. Use #parse() directly.");
     }
@@ -131,11 +190,60 @@ public class IsoFile extends AbstractContainerBox implements Closeable {
 
     @DoNotParseDetail
     public static String bytesToFourCC(byte[] type) {
-        byte[] result = {0, 0, 0, 0};
-        if (type != null) {
-            System.arraycopy(type, 0, result, 0, Math.min(type.length, 4));
+        int fourCC = 0;
+        for (int i = 0; i < 4; i++) {
+            fourCC = fourCC << 8 | (type != null && i < type.length ? type[i] & 0xff : 0);
+        }
+        return intToFourCC(fourCC);
+    }
+
+    /**
+     * @param fourCC a box type, characters beyond the fourth are ignored, missing ones are zeros
+     * @return the type as it is written to a file: big endian, one byte per character
+     */
+    @DoNotParseDetail
+    public static int fourCCtoInt(String fourCC) {
+        int result = 0;
+        for (int i = 0; i < 4; i++) {
+            result = result << 8 | (fourCC != null && i < fourCC.length() ? (byte) fourCC.charAt(i) & 0xff : 0);
+        }
+        return result;
+    }
+
+    /**
+     * Types are decoded as ISO-8859-1, like {@link #bytesToFourCC(byte[])} does. Each type that
+     * is seen is remembered, so that parsing a file does not create a <code>String</code> per
+     * box but one per type.
+     *
+     * @param fourCC a box type as it is written to a file
+     * @return the type
+     */
+    @DoNotParseDetail
+    public static String intToFourCC(int fourCC) {
+        int slot = (fourCC * 0x9E3779B9) >>> (32 - FOURCC_TABLE_BITS);
+        FourCC entry = FOURCC_TABLE[slot];
+        if (entry == null || entry.code != fourCC) {
+            entry = new FourCC(fourCC, new String(new char[]{
+                    (char) (fourCC >>> 24), (char) (fourCC >>> 16 & 0xff),
+                    (char) (fourCC >>> 8 & 0xff), (char) (fourCC & 0xff)}));
+            // a race just replaces the entry with an equal one
+            FOURCC_TABLE[slot] = entry;
+        }
+        return entry.type;
+    }
+
+    // the known types by their hashed four character code, a colliding type replaces the entry
+    private static final int FOURCC_TABLE_BITS = 10;
+    private static final FourCC[] FOURCC_TABLE = new FourCC[1 << FOURCC_TABLE_BITS];
+
+    private static final class FourCC {
+        final int code;
+        final String type;
+
+        FourCC(int code, String type) {
+            this.code = code;
+            this.type = type;
         }
-        return new String(result, StandardCharsets.ISO_8859_1);
     }
 
 
@@ -176,21 +284,24 @@ public class IsoFile extends AbstractContainerBox implements Closeable {
     }
 
     public void getBox(WritableByteChannel os) throws IOException {
-        for (Box box : boxes) {
-
-            if (os instanceof FileChannel) {
-                long startPos = ((FileChannel) os).position();
-                box.getBox(os);
-                long size = ((FileChannel) os).position() - startPos;
-                assert size == box.getSize();
-            } else {
-                box.getBox(os);
+        try (BoxWriter writer = new BoxWriter(os)) {
+            for (Box box : boxes) {
+                writer.write(box);
             }
-
         }
     }
 
     public void close() throws IOException {
         this.byteChannel.close();
     }
+
+    private static class BoxIndex {
+        // the value of getContainerModifications() the index has been built for
+        final long modifications;
+        final Map<Class<?>, List<? extends Box>> boxesByClass = new ConcurrentHashMap<>();
+
+        BoxIndex(long modifications) {
+            this.modifications = modifications;
+        }
+    }
 }
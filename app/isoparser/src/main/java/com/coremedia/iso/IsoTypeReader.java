@@ -15,7 +15,7 @@
  */
 package com.coremedia.iso;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 public final class IsoTypeReader {
@@ -78,20 +78,23 @@ public final class IsoTypeReader {
      * @throws Error in case of an error in the underlying stream
      */
     public static String readString(ByteBuffer byteBuffer) {
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        int read;
-        while ((read = byteBuffer.get()) != 0) {
-            out.write(read);
+        int end = byteBuffer.position();
+        while (true) {
+            if (end == byteBuffer.limit()) {
+                throw new BufferUnderflowException();
+            }
+            if (byteBuffer.get(end) == 0) {
+                break;
+            }
+            end++;
         }
-        return Utf8.convert(out.toByteArray());
+        String s = Utf8.convert(byteBuffer, end - byteBuffer.position());
+        byteBuffer.get(); // the terminating zero
+        return s;
     }
 
     public static String readString(ByteBuffer byteBuffer, int length) {
-        byte[] buffer = new byte[length];
-        byteBuffer.get(buffer);
-        return Utf8.convert(buffer);
-
+        return Utf8.convert(byteBuffer, length);
     }
 
     public static long readUInt64(ByteBuffer byteBuffer) {
@@ -107,41 +110,27 @@ public final class IsoTypeReader {
     }
 
     public static double readFixedPoint1616(ByteBuffer bb) {
-        byte[] bytes = new byte[4];
-        bb.get(bytes);
-
-        int result = 0;
-        result |= ((bytes[0] << 24) & 0xFF000000);
-        result |= ((bytes[1] << 16) & 0xFF0000);
-        result |= ((bytes[2] << 8) & 0xFF00);
-        result |= ((bytes[3]) & 0xFF);
-        return ((double) result) / 65536;
-
+        return ((double) bb.getInt()) / 65536;
     }
 
     public static float readFixedPoint88(ByteBuffer bb) {
-        byte[] bytes = new byte[2];
-        bb.get(bytes);
-        short result = 0;
-        result |= ((bytes[0] << 8) & 0xFF00);
-        result |= ((bytes[1]) & 0xFF);
-        return ((float) result) / 256;
+        return ((float) bb.getShort()) / 256;
     }
 
     public static String readIso639(ByteBuffer bb) {
         int bits = readUInt16(bb);
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < 3; i++) {
-            int c = (bits >> (2 - i) * 5) & 0x1f;
-            result.append((char) (c + 0x60));
-        }
-        return result.toString();
+        return new String(new char[]{
+                (char) (((bits >> 10) & 0x1f) + 0x60),
+                (char) (((bits >> 5) & 0x1f) + 0x60),
+                (char) ((bits & 0x1f) + 0x60)});
     }
 
+    /**
+     * @return the four character code as a shared <code>String</code>, see
+     *         {@link IsoFile#intToFourCC(int)}
+     */
     public static String read4cc(ByteBuffer bb) {
-        byte[] b = new byte[4];
-        bb.get(b);
-        return IsoFile.bytesToFourCC(b);
+        return IsoFile.intToFourCC(bb.getInt());
     }
 
 }
@@ -77,19 +77,25 @@ public final class IsoTypeWriter {
     }
 
     public static void writeIso639(ByteBuffer bb, String language) {
-        if (language.getBytes().length != 3) {
+        if (language.length() != 3) {
             throw new IllegalArgumentException("\"" + language + "\" language string isn't exactly 3 characters long!");
         }
         int bits = 0;
         for (int i = 0; i < 3; i++) {
-            bits += (language.getBytes()[i] - 0x60) << (2 - i) * 5;
+            bits += (language.charAt(i) - 0x60) << (2 - i) * 5;
         }
         writeUInt16(bb, bits);
     }
 
     public static void writeUtf8String(ByteBuffer bb, String string) {
-
-        bb.put(Utf8.convert(string));
+        Utf8.write(bb, string);
         writeUInt8(bb, 0);
     }
+
+    /**
+     * Writes the same four bytes as <code>bb.put(IsoFile.fourCCtoBytes(fourCC))</code>.
+     */
+    public static void write4cc(ByteBuffer bb, String fourCC) {
+        bb.putInt(IsoFile.fourCCtoInt(fourCC));
+    }
 }
@@ -16,7 +16,6 @@
 package com.coremedia.iso;
 
 import com.coremedia.iso.boxes.Box;
-import com.googlecode.mp4parser.AbstractBox;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
@@ -26,11 +25,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A Property file based BoxFactory
+ * A Property file based BoxFactory. The mapping is resolved once per parent and box type;
+ * changes to the mapping after the first box has been created are not picked up.
  */
 public class PropertyBoxParserImpl extends AbstractBoxParser {
     Properties mapping;
@@ -71,58 +72,113 @@ public class PropertyBoxParserImpl extends AbstractBoxParser {
 
     Pattern p = Pattern.compile("(.*)\\((.*?)\\)");
 
-    @SuppressWarnings("unchecked")
+    // Resolved factories by parent type and box type. The property lookups, the
+    // constructor pattern and the reflective constructor lookup run once per
+    // combination instead of once per box, which matters for fragmented files
+    // with thousands of moof/traf/trun boxes.
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, BoxFactory>> factories =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, BoxFactory>>();
+    // uuid boxes are resolved by parent type and user type.
+    private final ConcurrentHashMap<String, BoxFactory> uuidFactories =
+            new ConcurrentHashMap<String, BoxFactory>();
+
     public Class<? extends Box> getClassForFourCc(String type, byte[] userType, String parent) {
-        FourCcToBox fourCcToBox = new FourCcToBox(type, userType, parent).invoke();
-        try {
-            return (Class<? extends Box>) Class.forName(fourCcToBox.clazzName);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+        return getFactory(type, userType, parent).constructor.getDeclaringClass();
     }
 
     @Override
     public Box createBox(String type, byte[] userType, String parent) {
+        return getFactory(type, userType, parent).create(type, userType, parent);
+    }
 
-        FourCcToBox fourCcToBox = new FourCcToBox(type, userType, parent).invoke();
-        String[] param = fourCcToBox.getParam();
-        String clazzName = fourCcToBox.getClazzName();
-        try {
+    private BoxFactory getFactory(String type, byte[] userType, String parent) {
+        if (userType != null) {
+            String key = parent + "-" + type + "[" + Hex.encodeHex(userType) + "]";
+            BoxFactory factory = uuidFactories.get(key);
+            if (factory == null) {
+                factory = new BoxFactory(new FourCcToBox(type, userType, parent).invoke());
+                uuidFactories.put(key, factory);
+            }
+            return factory;
+        }
+        // a null parent is looked up as "null-" + type, just like the parent named "null"
+        String parentKey = String.valueOf(parent);
+        ConcurrentHashMap<String, BoxFactory> byType = factories.get(parentKey);
+        if (byType == null) {
+            byType = new ConcurrentHashMap<String, BoxFactory>();
+            ConcurrentHashMap<String, BoxFactory> existing = factories.putIfAbsent(parentKey, byType);
+            if (existing != null) {
+                byType = existing;
+            }
+        }
+        BoxFactory factory = byType.get(type);
+        if (factory == null) {
+            factory = new BoxFactory(new FourCcToBox(type, null, parent).invoke());
+            byType.put(type, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * The constructor of a box class together with the arguments it takes, as
+     * resolved from a mapping entry like <code>com.example.SomeBox(type)</code>.
+     */
+    private static class BoxFactory {
+        private static final int USER_TYPE = 0;
+        private static final int TYPE = 1;
+        private static final int PARENT = 2;
+
+        private final Constructor<? extends Box> constructor;
+        private final int[] args;
+
+        @SuppressWarnings("unchecked")
+        BoxFactory(FourCcToBox fourCcToBox) {
+            String[] param = fourCcToBox.getParam();
             if (param[0].trim().length() == 0) {
                 param = new String[]{};
             }
-            Class clazz = Class.forName(clazzName);
-
             Class[] constructorArgsClazz = new Class[param.length];
-            Object[] constructorArgs = new Object[param.length];
+            args = new int[param.length];
             for (int i = 0; i < param.length; i++) {
-
                 if ("userType".equals(param[i])) {
-                    constructorArgs[i] = userType;
+                    args[i] = USER_TYPE;
                     constructorArgsClazz[i] = byte[].class;
                 } else if ("type".equals(param[i])) {
-                    constructorArgs[i] = type;
+                    args[i] = TYPE;
                     constructorArgsClazz[i] = String.class;
                 } else if ("parent".equals(param[i])) {
-                    constructorArgs[i] = parent;
+                    args[i] = PARENT;
                     constructorArgsClazz[i] = String.class;
                 } else {
                     throw new InternalError("No such param: " + param[i]);
                 }
-
-
             }
-            Constructor<AbstractBox> constructorObject;
             try {
-                if (param.length > 0) {
-                    constructorObject = clazz.getConstructor(constructorArgsClazz);
-                } else {
-                    constructorObject = clazz.getConstructor();
-                }
-
-                return constructorObject.newInstance(constructorArgs);
+                Class clazz = Class.forName(fourCcToBox.getClazzName());
+                constructor = clazz.getConstructor(constructorArgsClazz);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
             } catch (NoSuchMethodException e) {
                 throw new RuntimeException(e);
+            }
+        }
+
+        Box create(String type, byte[] userType, String parent) {
+            Object[] constructorArgs = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case USER_TYPE:
+                        constructorArgs[i] = userType;
+                        break;
+                    case TYPE:
+                        constructorArgs[i] = type;
+                        break;
+                    default:
+                        constructorArgs[i] = parent;
+                }
+            }
+            try {
+                return constructor.newInstance(constructorArgs);
             } catch (InvocationTargetException e) {
                 throw new RuntimeException(e);
             } catch (InstantiationException e) {
@@ -130,10 +186,6 @@ public class PropertyBoxParserImpl extends AbstractBoxParser {
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
-
-
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
         }
     }
 
@@ -15,6 +15,8 @@
  */
 package com.coremedia.iso;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -37,11 +39,76 @@ public final class Utf8 {
         }
     }
 
-    public static int utf8StringLengthInBytes(String utf8) {
-        if (utf8 != null) {
-            return utf8.getBytes(StandardCharsets.UTF_8).length;
+    /**
+     * Decodes <code>length</code> bytes at the buffer's position, straight from the backing array
+     * if there is one.
+     *
+     * @throws BufferUnderflowException if fewer bytes remain
+     */
+    public static String convert(ByteBuffer bb, int length) {
+        if (bb.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        String s;
+        if (bb.hasArray()) {
+            s = new String(bb.array(), bb.arrayOffset() + bb.position(), length, StandardCharsets.UTF_8);
+            bb.position(bb.position() + length);
         } else {
+            byte[] b = new byte[length];
+            bb.get(b);
+            s = new String(b, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    /**
+     * Writes the same bytes as <code>bb.put(convert(s))</code> without creating them first.
+     */
+    public static void write(ByteBuffer bb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bb.put((byte) c);
+            } else if (c < 0x800) {
+                bb.put((byte) (0xc0 | c >> 6));
+                bb.put((byte) (0x80 | c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                bb.put((byte) (0xf0 | cp >> 18));
+                bb.put((byte) (0x80 | cp >> 12 & 0x3f));
+                bb.put((byte) (0x80 | cp >> 6 & 0x3f));
+                bb.put((byte) (0x80 | cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // like String.getBytes, an unpaired surrogate can't be encoded
+                bb.put((byte) '?');
+            } else {
+                bb.put((byte) (0xe0 | c >> 12));
+                bb.put((byte) (0x80 | c >> 6 & 0x3f));
+                bb.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    public static int utf8StringLengthInBytes(String utf8) {
+        if (utf8 == null) {
             return 0;
         }
+        int length = 0;
+        for (int i = 0; i < utf8.length(); i++) {
+            char c = utf8.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < utf8.length() && Character.isLowSurrogate(utf8.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
     }
 }
@@ -16,7 +16,6 @@
 
 package com.coremedia.iso.boxes;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.Utf8;
@@ -79,9 +78,7 @@ public class ClassificationBox extends AbstractFullBox {
     @Override
     public void _parseDetails(ByteBuffer content) {
         parseVersionAndFlags(content);
-        byte[] cE = new byte[4];
-        content.get(cE);
-        classificationEntity = IsoFile.bytesToFourCC(cE);
+        classificationEntity = IsoTypeReader.read4cc(content);
         classificationTableIndex = IsoTypeReader.readUInt16(content);
         language = IsoTypeReader.readIso639(content);
         classificationInfo = IsoTypeReader.readString(content);
@@ -89,7 +86,7 @@ public class ClassificationBox extends AbstractFullBox {
 
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
-        byteBuffer.put(IsoFile.fourCCtoBytes(classificationEntity));
+        IsoTypeWriter.write4cc(byteBuffer, classificationEntity);
         IsoTypeWriter.writeUInt16(byteBuffer, classificationTableIndex);
         IsoTypeWriter.writeIso639(byteBuffer, language);
         byteBuffer.put(Utf8.convert(classificationInfo));
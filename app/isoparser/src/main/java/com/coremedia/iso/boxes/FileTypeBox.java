@@ -16,7 +16,6 @@
 
 package com.coremedia.iso.boxes;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractBox;
@@ -68,10 +67,10 @@ public class FileTypeBox extends AbstractBox {
 
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
-        byteBuffer.put(IsoFile.fourCCtoBytes(majorBrand));
+        IsoTypeWriter.write4cc(byteBuffer, majorBrand);
         IsoTypeWriter.writeUInt32(byteBuffer, minorVersion);
         for (String compatibleBrand : compatibleBrands) {
-            byteBuffer.put(IsoFile.fourCCtoBytes(compatibleBrand));
+            IsoTypeWriter.write4cc(byteBuffer, compatibleBrand);
         }
 
     }
@@ -17,7 +17,6 @@
 package com.coremedia.iso.boxes;
 
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.Utf8;
@@ -133,7 +132,7 @@ public class HandlerBox extends AbstractFullBox {
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
         IsoTypeWriter.writeUInt32(byteBuffer, shouldBeZeroButAppleWritesHereSomeValue);
-        byteBuffer.put(IsoFile.fourCCtoBytes(handlerType));
+        IsoTypeWriter.write4cc(byteBuffer, handlerType);
         IsoTypeWriter.writeUInt32(byteBuffer, a);
         IsoTypeWriter.writeUInt32(byteBuffer, b);
         IsoTypeWriter.writeUInt32(byteBuffer, c);
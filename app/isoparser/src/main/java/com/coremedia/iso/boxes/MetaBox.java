@@ -97,6 +97,12 @@ public class MetaBox extends AbstractContainerBox {
     }
 
 
+    @Override
+    protected boolean isParsedOnDemand() {
+        // version and flags are read in _parseDetails
+        return false;
+    }
+
     public boolean isMp4Box() {
         return version != -1 && flags != -1;
     }
@@ -16,8 +16,8 @@
 
 package com.coremedia.iso.boxes;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
+import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractBox;
 
 import java.nio.ByteBuffer;
@@ -59,7 +59,7 @@ public class OriginalFormatBox extends AbstractBox {
 
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
-        byteBuffer.put(IsoFile.fourCCtoBytes(dataFormat));
+        IsoTypeWriter.write4cc(byteBuffer, dataFormat);
     }
 
 
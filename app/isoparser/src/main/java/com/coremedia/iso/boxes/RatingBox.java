@@ -16,7 +16,6 @@
 
 package com.coremedia.iso.boxes;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.Utf8;
@@ -104,8 +103,8 @@ public class RatingBox extends AbstractFullBox {
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
-        byteBuffer.put(IsoFile.fourCCtoBytes(ratingEntity));
-        byteBuffer.put(IsoFile.fourCCtoBytes(ratingCriteria));
+        IsoTypeWriter.write4cc(byteBuffer, ratingEntity);
+        IsoTypeWriter.write4cc(byteBuffer, ratingCriteria);
         IsoTypeWriter.writeIso639(byteBuffer, language);
         byteBuffer.put(Utf8.convert(ratingInfo));
         byteBuffer.put((byte) 0);
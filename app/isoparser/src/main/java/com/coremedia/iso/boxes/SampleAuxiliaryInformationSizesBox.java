@@ -16,7 +16,6 @@
 
 package com.coremedia.iso.boxes;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractFullBox;
@@ -56,8 +55,8 @@ public class SampleAuxiliaryInformationSizesBox extends AbstractFullBox {
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
         if ((getFlags() & 1) == 1) {
-            byteBuffer.put(IsoFile.fourCCtoBytes(auxInfoType));
-            byteBuffer.put(IsoFile.fourCCtoBytes(auxInfoTypeParameter));
+            IsoTypeWriter.write4cc(byteBuffer, auxInfoType);
+            IsoTypeWriter.write4cc(byteBuffer, auxInfoTypeParameter);
         }
 
         IsoTypeWriter.writeUInt8(byteBuffer, defaultSampleInfoSize);
@@ -18,6 +18,8 @@ package com.coremedia.iso.boxes;
 
 import com.googlecode.mp4parser.AbstractContainerBox;
 
+import java.util.List;
+
 /**
  * The sample table contains all the time and data indexing of the media samples in a track. Using the tables
  * here, it is possible to locate samples in time, determine their type (e.g. I-frame or not), and determine their
@@ -41,7 +43,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public SampleDescriptionBox getSampleDescriptionBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof SampleDescriptionBox) {
                 return (SampleDescriptionBox) box;
             }
@@ -50,7 +52,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public SampleSizeBox getSampleSizeBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof SampleSizeBox) {
                 return (SampleSizeBox) box;
             }
@@ -59,7 +61,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public SampleToChunkBox getSampleToChunkBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof SampleToChunkBox) {
                 return (SampleToChunkBox) box;
             }
@@ -68,7 +70,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public ChunkOffsetBox getChunkOffsetBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof ChunkOffsetBox) {
                 return (ChunkOffsetBox) box;
             }
@@ -77,16 +79,18 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public void setChunkOffsetBox(ChunkOffsetBox b) {
-        for (int i = 0; i < boxes.size(); i++) {
-            Box box = boxes.get(i);
+        List<Box> children = getBoxes(); // parses the child boxes if that hasn't happened yet
+        for (int i = 0; i < children.size(); i++) {
+            Box box = children.get(i);
             if (box instanceof ChunkOffsetBox) {
                 boxes.set(i, b);
             }
         }
+        containerModified();
     }
 
     public TimeToSampleBox getTimeToSampleBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof TimeToSampleBox) {
                 return (TimeToSampleBox) box;
             }
@@ -95,7 +99,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public SyncSampleBox getSyncSampleBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof SyncSampleBox) {
                 return (SyncSampleBox) box;
             }
@@ -104,7 +108,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public CompositionTimeToSample getCompositionTimeToSample() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof CompositionTimeToSample) {
                 return (CompositionTimeToSample) box;
             }
@@ -113,7 +117,7 @@ public class SampleTableBox extends AbstractContainerBox {
     }
 
     public SampleDependencyTypeBox getSampleDependencyTypeBox() {
-        for (Box box : boxes) {
+        for (Box box : getBoxes()) {
             if (box instanceof SampleDependencyTypeBox) {
                 return (SampleDependencyTypeBox) box;
             }
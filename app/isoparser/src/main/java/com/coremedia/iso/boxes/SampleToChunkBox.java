@@ -19,12 +19,11 @@ package com.coremedia.iso.boxes;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractFullBox;
+import com.googlecode.mp4parser.util.SampleToChunkTable;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
@@ -92,21 +91,7 @@ public class SampleToChunkBox extends AbstractFullBox {
      * @return number of samples per chunk
      */
     public long[] blowup(int chunkCount) {
-        long[] numberOfSamples = new long[chunkCount];
-        int j = 0;
-        List<SampleToChunkBox.Entry> sampleToChunkEntries = new LinkedList<>(entries);
-        Collections.reverse(sampleToChunkEntries);
-        Iterator<Entry> iterator = sampleToChunkEntries.iterator();
-        SampleToChunkBox.Entry currentEntry = iterator.next();
-
-        for (int i = numberOfSamples.length; i > 1; i--) {
-            numberOfSamples[i - 1] = currentEntry.getSamplesPerChunk();
-            if (i == currentEntry.getFirstChunk()) {
-                currentEntry = iterator.next();
-            }
-        }
-        numberOfSamples[0] = currentEntry.getSamplesPerChunk();
-        return numberOfSamples;
+        return SampleToChunkTable.of(entries, chunkCount).blowup();
     }
 
     public static class Entry {
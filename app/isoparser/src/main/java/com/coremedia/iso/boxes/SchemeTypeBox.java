@@ -16,7 +16,6 @@
 
 package com.coremedia.iso.boxes;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.Utf8;
@@ -82,7 +81,7 @@ public class SchemeTypeBox extends AbstractFullBox {
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
-        byteBuffer.put(IsoFile.fourCCtoBytes(schemeType));
+        IsoTypeWriter.write4cc(byteBuffer, schemeType);
         IsoTypeWriter.writeUInt32(byteBuffer, schemeVersion);
         if ((getFlags() & 1) == 1) {
             byteBuffer.put(Utf8.convert(schemeUri));
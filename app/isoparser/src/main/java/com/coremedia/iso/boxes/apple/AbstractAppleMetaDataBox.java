@@ -6,6 +6,7 @@ import com.coremedia.iso.Utf8;
 import com.coremedia.iso.boxes.Box;
 import com.coremedia.iso.boxes.ContainerBox;
 import com.googlecode.mp4parser.AbstractBox;
+import com.googlecode.mp4parser.BoxWriter;
 import com.googlecode.mp4parser.util.ByteBufferByteChannel;
 
 import java.io.IOException;
@@ -29,6 +30,7 @@ public abstract class AbstractAppleMetaDataBox extends AbstractBox implements Co
     public void setBoxes(List<Box> boxes) {
         if (boxes.size() == 1 && boxes.get(0) instanceof AppleDataBox) {
             appleDataBox = (AppleDataBox) boxes.get(0);
+            containerModified();
         } else {
             throw new IllegalArgumentException("This box only accepts one AppleDataBox child");
         }
@@ -70,11 +72,7 @@ public abstract class AbstractAppleMetaDataBox extends AbstractBox implements Co
     }
 
     protected void getContent(ByteBuffer byteBuffer) {
-        try {
-            appleDataBox.getBox(new ByteBufferByteChannel(byteBuffer));
-        } catch (IOException e) {
-            throw new RuntimeException("The Channel is based on a ByteBuffer and therefore it shouldn't throw any exception");
-        }
+        BoxWriter.writeBox(appleDataBox, byteBuffer);
     }
 
     public long getNumOfBytesToFirstChild() {
@@ -16,7 +16,6 @@
 
 package com.coremedia.iso.boxes.apple;
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.Utf8;
@@ -52,7 +51,7 @@ public class AppleDataReferenceBox extends AbstractFullBox {
     @Override
     protected void getContent(ByteBuffer byteBuffer) {
         writeVersionAndFlags(byteBuffer);
-        byteBuffer.put(IsoFile.fourCCtoBytes(dataReferenceType));
+        IsoTypeWriter.write4cc(byteBuffer, dataReferenceType);
         IsoTypeWriter.writeUInt32(byteBuffer, dataReferenceSize);
         byteBuffer.put(Utf8.convert(dataReference));
     }
@@ -23,13 +23,11 @@ import com.coremedia.iso.boxes.ContainerBox;
 import com.googlecode.mp4parser.AbstractBox;
 
 import java.io.IOException;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -51,6 +49,7 @@ public final class MediaDataBox implements Box {
 
     public static final String TYPE = "mdat";
     public static final int BUFFER_SIZE = 10 * 1024 * 1024;
+    public static final int DEFAULT_WINDOW_COUNT = 4;
     ContainerBox parent;
 
     ByteBuffer header;
@@ -60,13 +59,25 @@ public final class MediaDataBox implements Box {
     private long startPosition;
     private long contentSize;
 
+    private int windowSize = BUFFER_SIZE;
+    private int windowCount = DEFAULT_WINDOW_COUNT;
 
-    private Map<Long, Reference<ByteBuffer>> cache = new HashMap<>();
+    /**
+     * The most recently used mapped windows of the file, keyed by their offset in the content.
+     * Windows start at multiples of <code>windowSize</code>.
+     */
+    private LinkedHashMap<Long, ByteBuffer> windows = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+            // There is no way to unmap a buffer explicitly. Dropping the window lets the mapping
+            // go as soon as no sample taken from it is referenced anymore.
+            return size() > windowCount;
+        }
+    };
 
 
     /**
-     * If the whole content is just in one mapped buffer keep a strong reference to it so it is
-     * not evicted from the cache.
+     * If the content has been read into memory it is kept here.
      */
     private ByteBuffer content;
 
@@ -145,40 +156,54 @@ public final class MediaDataBox implements Box {
             ((FileChannel) readableByteChannel).position(((FileChannel) readableByteChannel).position() + contentSize);
         } else {
             content = ChannelHelper.readFully(readableByteChannel, l2i(contentSize));
-            cache.put(0L, new SoftReference<>(content));
         }
     }
 
+    /**
+     * Limits the memory used to access the content of a large mdat that has been left in the file.
+     * At most <code>windowCount</code> windows of <code>windowSize</code> bytes are mapped at the
+     * same time, a sample that crosses a window boundary enlarges its window.
+     *
+     * @param windowSize  size of a mapped window in bytes
+     * @param windowCount number of windows kept mapped
+     */
+    public synchronized void setWindows(int windowSize, int windowCount) {
+        if (windowSize <= 0 || windowCount <= 0) {
+            throw new IllegalArgumentException("Window size and count must be positive");
+        }
+        this.windowSize = windowSize;
+        this.windowCount = windowCount;
+        windows.clear();
+    }
+
     public synchronized ByteBuffer getContent(long offset, int length) {
+        if (content != null) {
+            ByteBuffer sample = content.duplicate();
+            sample.position(l2i(offset));
+            sample.limit(l2i(offset + length));
+            return sample.slice();
+        }
 
-        for (Long chacheEntryOffset : cache.keySet()) {
-            if (chacheEntryOffset <= offset && offset <= chacheEntryOffset + BUFFER_SIZE) {
-                ByteBuffer cacheEntry = cache.get(chacheEntryOffset).get();
-                if ((cacheEntry != null) && ((chacheEntryOffset + cacheEntry.limit()) >= (offset + length))) {
-                    // CACHE HIT
-                    cacheEntry.position((int) (offset - chacheEntryOffset));
-                    ByteBuffer cachedSample = cacheEntry.slice();
-                    cachedSample.limit(length);
-                    return cachedSample;
-                }
+        long windowStart = offset - offset % windowSize;
+        ByteBuffer window = windows.get(windowStart);
+        if (window == null || windowStart + window.limit() < offset + length) {
+            // CACHE MISS
+            long windowEnd = Math.min(Math.max(windowStart + windowSize, offset + length), contentSize);
+            try {
+                window = fileChannel.map(FileChannel.MapMode.READ_ONLY, startPosition + windowStart, windowEnd - windowStart);
+            } catch (IOException e1) {
+                LOG.fine("Even mapping just " + (windowEnd - windowStart) + " bytes of the source file into the memory failed. " + e1);
+                throw new RuntimeException(
+                        "Delayed reading of mdat content failed. Make sure not to close " +
+                                "the FileChannel that has been used to create the IsoFile!", e1);
             }
+            windows.put(windowStart, window);
         }
-        // CACHE MISS
-        ByteBuffer cacheEntry;
-        try {
-            // Just mapping 10MB at a time. Seems reasonable.
-            cacheEntry = fileChannel.map(FileChannel.MapMode.READ_ONLY, startPosition + offset, Math.min(BUFFER_SIZE, contentSize - offset));
-        } catch (IOException e1) {
-            LOG.fine("Even mapping just 10MB of the source file into the memory failed. " + e1);
-            throw new RuntimeException(
-                    "Delayed reading of mdat content failed. Make sure not to close " +
-                            "the FileChannel that has been used to create the IsoFile!", e1);
-        }
-        cache.put(offset, new SoftReference<>(cacheEntry));
-        cacheEntry.position(0);
-        ByteBuffer cachedSample = cacheEntry.slice();
-        cachedSample.limit(length);
-        return cachedSample;
+        // CACHE HIT
+        ByteBuffer sample = window.duplicate();
+        sample.position(l2i(offset - windowStart));
+        sample.limit(l2i(offset - windowStart + length));
+        return sample.slice();
     }
 
 
@@ -186,4 +211,18 @@ public final class MediaDataBox implements Box {
         return header;
     }
 
+    /**
+     * @return the channel the content is still stored in or <code>null</code> if it has been read
+     */
+    FileChannel getFileChannel() {
+        return fileChannel;
+    }
+
+    /**
+     * @return position of the content in <code>getFileChannel()</code>
+     */
+    long getStartPosition() {
+        return startPosition;
+    }
+
 }
@@ -12,32 +12,37 @@ import com.coremedia.iso.boxes.fragment.TrackExtendsBox;
 import com.coremedia.iso.boxes.fragment.TrackFragmentBox;
 import com.coremedia.iso.boxes.fragment.TrackFragmentHeaderBox;
 import com.coremedia.iso.boxes.fragment.TrackRunBox;
+import com.googlecode.mp4parser.authoring.FileBackedSamples;
+import com.googlecode.mp4parser.util.SampleToChunkTable;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
 
 /**
  * Creates a list of <code>ByteBuffer</code>s that represent the samples of a given track.
  */
-public class SampleList extends AbstractList<ByteBuffer> {
+public class SampleList extends AbstractList<ByteBuffer> implements FileBackedSamples {
 
 
     long[] offsets;
     long[] sizes;
 
     IsoFile isoFile;
-    HashMap<MediaDataBox, Long> mdatStartCache = new HashMap<>();
-    HashMap<MediaDataBox, Long> mdatEndCache = new HashMap<>();
     MediaDataBox[] mdats;
+    // content start and end offset of the mdats, ascending like the mdats themselves
+    long[] mdatStarts;
+    long[] mdatEnds;
+
+    // fragment samples while they are collected, see addFragmentSamples
+    private long[] fragmentOffsets;
+    private long[] fragmentSizes;
+    private int fragmentSampleCount;
 
     /**
      * Gets a sorted random access optimized list of all sample offsets.
@@ -63,9 +68,7 @@ public class SampleList extends AbstractList<ByteBuffer> {
         final long[] chunkOffsets = chunkOffsetBox != null ? chunkOffsetBox.getChunkOffsets() : new long[0];
         if (sampleToChunkBox != null && sampleToChunkBox.getEntries().size() > 0 &&
                 chunkOffsets.length > 0 && sampleSizeBox != null && sampleSizeBox.getSampleCount() > 0) {
-            long[] numberOfSamplesInChunk = sampleToChunkBox.blowup(chunkOffsets.length);
-
-            int sampleIndex = 0;
+            SampleToChunkTable sampleToChunk = SampleToChunkTable.of(sampleToChunkBox.getEntries(), chunkOffsets.length);
 
             if (sampleSizeBox.getSampleSize() > 0) {
                 sizes = new long[l2i(sampleSizeBox.getSampleCount())];
@@ -75,30 +78,28 @@ public class SampleList extends AbstractList<ByteBuffer> {
             }
             offsets = new long[sizes.length];
 
-                for (int i = 0; i < numberOfSamplesInChunk.length; i++) {
-                    long thisChunksNumberOfSamples = numberOfSamplesInChunk[i];
+            int sampleIndex = 0;
+            for (int i = 0; i < chunkOffsets.length && sampleIndex < sizes.length; i++) {
+                int thisChunksNumberOfSamples = sampleToChunk.getSamplesInChunk(i);
                 long sampleOffset = chunkOffsets[i];
-                    for (int j = 0; j < thisChunksNumberOfSamples; j++) {
-                    long sampleSize = sizes[sampleIndex];
+                for (int j = 0; j < thisChunksNumberOfSamples && sampleIndex < sizes.length; j++) {
                     offsets[sampleIndex] = sampleOffset;
-                        sampleOffset += sampleSize;
-                        sampleIndex++;
-                    }
+                    sampleOffset += sizes[sampleIndex];
+                    sampleIndex++;
                 }
-
             }
+        }
 
         // Next we add all samples from the fragments
         // in most cases - I've never seen it different it's either normal or fragmented.        
         List<MovieExtendsBox> movieExtendsBoxes = trackBox.getParent().getBoxes(MovieExtendsBox.class);
 
         if (movieExtendsBoxes.size() > 0) {
-            Map<Long, Long> offsets2Sizes = new HashMap<>();
             List<TrackExtendsBox> trackExtendsBoxes = movieExtendsBoxes.get(0).getBoxes(TrackExtendsBox.class);
             for (TrackExtendsBox trackExtendsBox : trackExtendsBoxes) {
                 if (trackExtendsBox.getTrackId() == trackBox.getTrackHeaderBox().getTrackId()) {
                     for (MovieFragmentBox movieFragmentBox : trackBox.getIsoFile().getBoxes(MovieFragmentBox.class)) {
-                        offsets2Sizes.putAll(getOffsets(movieFragmentBox, trackBox.getTrackHeaderBox().getTrackId(), trackExtendsBox));
+                        addFragmentSamples(movieFragmentBox, trackBox.getTrackHeaderBox().getTrackId(), trackExtendsBox);
                     }
                 }
             }
@@ -108,32 +109,92 @@ public class SampleList extends AbstractList<ByteBuffer> {
                 offsets = new long[0];
             }
             
-            splitToArrays(offsets2Sizes);
+            appendFragmentSamples();
         }
         
-        // We have now a map from all sample offsets to their sizes
+        // We have now all sample offsets and their sizes
     }
 
-    private void splitToArrays(Map<Long, Long> offsets2Sizes) {
-        List<Long> keys = new ArrayList<>(offsets2Sizes.keySet());
-        Collections.sort(keys);
+    /**
+     * Appends the samples collected by {@link #addFragmentSamples} ordered by offset. Fragment
+     * samples are usually collected in ascending order already, then this is a plain copy.
+     * Otherwise they are sorted and of the samples at the same offset only the last one
+     * collected is kept.
+     */
+    private void appendFragmentSamples() {
+        if (fragmentSampleCount == 0) {
+            // no fragment samples, e.g. an initialization segment or an empty traf
+            return;
+        }
+        boolean ascending = true;
+        for (int i = 1; i < fragmentSampleCount && ascending; i++) {
+            ascending = fragmentOffsets[i - 1] < fragmentOffsets[i];
+        }
+        if (!ascending) {
+            sortFragmentSamples();
+        }
 
-        long[] nuSizes = new long[sizes.length + keys.size()];
+        long[] nuSizes = new long[sizes.length + fragmentSampleCount];
         System.arraycopy(sizes, 0, nuSizes, 0, sizes.length);
-        long[] nuOffsets = new long[offsets.length + keys.size()];
+        System.arraycopy(fragmentSizes, 0, nuSizes, sizes.length, fragmentSampleCount);
+        long[] nuOffsets = new long[offsets.length + fragmentSampleCount];
         System.arraycopy(offsets, 0, nuOffsets, 0, offsets.length);
-        for (int i = 0; i < keys.size(); i++) {
-            nuOffsets[i + offsets.length] = keys.get(i);
-            nuSizes[i + sizes.length] = offsets2Sizes.get(keys.get(i));
-        }
+        System.arraycopy(fragmentOffsets, 0, nuOffsets, offsets.length, fragmentSampleCount);
         sizes = nuSizes;
         offsets = nuOffsets;
+        fragmentOffsets = null;
+        fragmentSizes = null;
+        fragmentSampleCount = 0;
     }
-    
+
+    /**
+     * Stable merge sort by offset, then drops all but the last of equal offsets.
+     */
+    private void sortFragmentSamples() {
+        int n = fragmentSampleCount;
+        long[] offs = fragmentOffsets;
+        long[] szs = fragmentSizes;
+        long[] tmpOffs = new long[n];
+        long[] tmpSzs = new long[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int from = 0; from < n; from += 2 * width) {
+                int mid = Math.min(from + width, n);
+                int to = Math.min(from + 2 * width, n);
+                int i = from;
+                int j = mid;
+                for (int k = from; k < to; k++) {
+                    if (i < mid && (j >= to || offs[i] <= offs[j])) {
+                        tmpOffs[k] = offs[i];
+                        tmpSzs[k] = szs[i++];
+                    } else {
+                        tmpOffs[k] = offs[j];
+                        tmpSzs[k] = szs[j++];
+                    }
+                }
+            }
+            long[] t = offs;
+            offs = tmpOffs;
+            tmpOffs = t;
+            t = szs;
+            szs = tmpSzs;
+            tmpSzs = t;
+        }
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (i + 1 < n && offs[i] == offs[i + 1]) {
+                continue;
+            }
+            offs[count] = offs[i];
+            szs[count++] = szs[i];
+        }
+        fragmentOffsets = offs;
+        fragmentSizes = szs;
+        fragmentSampleCount = count;
+    }
+
     public SampleList(TrackFragmentBox traf) {
         sizes = new long[0];
         offsets = new long[0];
-        Map<Long, Long> offsets2Sizes = new HashMap<>();
         initIsoFile(traf.getIsoFile());
 
         final List<MovieFragmentBox> movieFragmentBoxList = isoFile.getBoxes(MovieFragmentBox.class);
@@ -143,25 +204,31 @@ public class SampleList extends AbstractList<ByteBuffer> {
             final List<TrackFragmentHeaderBox> trackFragmentHeaderBoxes = moof.getTrackFragmentHeaderBoxes();
             for (TrackFragmentHeaderBox tfhd : trackFragmentHeaderBoxes) {
                 if (tfhd.getTrackId() == trackId) {
-                    offsets2Sizes.putAll(getOffsets(moof, trackId, null));
+                    addFragmentSamples(moof, trackId, null);
                 }
             }
         }
-        splitToArrays(offsets2Sizes);
+        appendFragmentSamples();
     }
 
     private void initIsoFile(IsoFile isoFile) {
         this.isoFile = isoFile;
         // find all mdats first to be able to use them later with explicitly looking them up
         long currentOffset = 0;
-        LinkedList<MediaDataBox> mdats = new LinkedList<>();
+        List<MediaDataBox> mdats = new ArrayList<>();
+        long[] starts = new long[16];
+        long[] ends = new long[16];
         for (Box b : this.isoFile.getBoxes()) {
             long currentSize = b.getSize();
             if ("mdat".equals(b.getType())) {
                 if (b instanceof MediaDataBox) {
                     long contentOffset = currentOffset + ((MediaDataBox) b).getHeader().limit();
-                    mdatStartCache.put((MediaDataBox) b, contentOffset);
-                    mdatEndCache.put((MediaDataBox) b, contentOffset + currentSize);
+                    if (mdats.size() == starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                        ends = Arrays.copyOf(ends, ends.length * 2);
+                    }
+                    starts[mdats.size()] = contentOffset;
+                    ends[mdats.size()] = contentOffset + currentSize;
                     mdats.add((MediaDataBox) b);
                 } else {
                     throw new RuntimeException("Sample need to be in mdats and mdats need to be instanceof MediaDataBox");
@@ -169,7 +236,9 @@ public class SampleList extends AbstractList<ByteBuffer> {
             }
             currentOffset += currentSize;
         }
-        this.mdats = mdats.toArray(new MediaDataBox[0]);
+        this.mdats = mdats.toArray(new MediaDataBox[mdats.size()]);
+        this.mdatStarts = Arrays.copyOf(starts, mdats.size());
+        this.mdatEnds = Arrays.copyOf(ends, mdats.size());
     }
 
 
@@ -184,20 +253,51 @@ public class SampleList extends AbstractList<ByteBuffer> {
         // it is a two stage lookup: from index to offset to size
         long offset = offsets[index];
         int sampleSize = l2i(sizes[index]);
+        int mdat = findMediaDataBox(index);
+        return mdats[mdat].getContent(offset - mdatStarts[mdat], sampleSize);
+    }
+
+    public long getSampleSize(int index) {
+        return sizes[index];
+    }
+
+    public FileChannel getSampleChannel(int index) {
+        return mdats[findMediaDataBox(index)].getFileChannel();
+    }
+
+    public long getSamplePosition(int index) {
+        int mdat = findMediaDataBox(index);
+        return mdats[mdat].getStartPosition() + offsets[index] - mdatStarts[mdat];
+    }
 
-        for (MediaDataBox mediaDataBox : mdats) {
-            long start = mdatStartCache.get(mediaDataBox);
-            long end = mdatEndCache.get(mediaDataBox);
-            if ((start <= offset) && (offset + sampleSize <= end)) {
-                return mediaDataBox.getContent(offset - start, sampleSize);
+    private int findMediaDataBox(int index) {
+        long offset = offsets[index];
+        long sampleSize = sizes[index];
+
+        // the last mdat that starts at or before the sample
+        int low = 0;
+        int high = mdatStarts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mdatStarts[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
             }
         }
-
-        throw new RuntimeException("The sample with offset " + offset + " and size " + sampleSize + " is NOT located within an mdat");
+        if (found < 0 || offset + sampleSize > mdatEnds[found]) {
+            throw new RuntimeException("The sample with offset " + offset + " and size " + sampleSize + " is NOT located within an mdat");
+        }
+        return found;
     }
 
-    Map<Long, Long> getOffsets(MovieFragmentBox moof, long trackId, TrackExtendsBox trex) {
-        Map<Long, Long> offsets2Sizes = new HashMap<>();
+    /**
+     * Collects offset and size of the track's samples in the fragment in <code>trun</code> order,
+     * see {@link #appendFragmentSamples()}.
+     */
+    void addFragmentSamples(MovieFragmentBox moof, long trackId, TrackExtendsBox trex) {
         List<TrackFragmentBox> traf = moof.getBoxes(TrackFragmentBox.class);
         for (TrackFragmentBox trackFragmentBox : traf) {
             if (trackFragmentBox.getTrackFragmentHeaderBox().getTrackId() == trackId) {
@@ -217,27 +317,33 @@ public class SampleList extends AbstractList<ByteBuffer> {
                         final long sampleSize;
                         if (trun.isSampleSizePresent()) {
                             sampleSize = entry.getSampleSize();
-                            offsets2Sizes.put(offset + sampleBaseOffset, sampleSize);
-                            offset += sampleSize;
+                        } else if (tfhd.hasDefaultSampleSize()) {
+                            sampleSize = tfhd.getDefaultSampleSize();
                         } else {
-                            if (tfhd.hasDefaultSampleSize()) {
-                                sampleSize = tfhd.getDefaultSampleSize();
-                                offsets2Sizes.put(offset + sampleBaseOffset, sampleSize);
-                                offset += sampleSize;
-                            } else {
-                                if (trex == null) {
-                                    throw new RuntimeException("File doesn't contain trex box but track fragments aren't fully self contained. Cannot determine sample size.");
-                                }
-                                sampleSize = trex.getDefaultSampleSize();
-                                offsets2Sizes.put(offset + sampleBaseOffset, sampleSize);
-                                offset += sampleSize;
+                            if (trex == null) {
+                                throw new RuntimeException("File doesn't contain trex box but track fragments aren't fully self contained. Cannot determine sample size.");
                             }
+                            sampleSize = trex.getDefaultSampleSize();
                         }
+                        addFragmentSample(offset + sampleBaseOffset, sampleSize);
+                        offset += sampleSize;
                     }
                 }
             }
         }
-        return offsets2Sizes;
     }
 
-}
\ No newline at end of file
+    private void addFragmentSample(long offset, long size) {
+        if (fragmentOffsets == null) {
+            fragmentOffsets = new long[64];
+            fragmentSizes = new long[64];
+        } else if (fragmentSampleCount == fragmentOffsets.length) {
+            fragmentOffsets = Arrays.copyOf(fragmentOffsets, fragmentSampleCount * 2);
+            fragmentSizes = Arrays.copyOf(fragmentSizes, fragmentSampleCount * 2);
+        }
+        fragmentOffsets[fragmentSampleCount] = offset;
+        fragmentSizes[fragmentSampleCount] = size;
+        fragmentSampleCount++;
+    }
+
+}
@@ -17,7 +17,6 @@
 package com.coremedia.iso.boxes.sampleentry;
 
 
-import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeReader;
 import com.coremedia.iso.IsoTypeWriter;
 import com.googlecode.mp4parser.AbstractBox;
@@ -68,9 +67,7 @@ public class AmrSpecificBox extends AbstractBox {
 
     @Override
     public void _parseDetails(ByteBuffer content) {
-        byte[] v = new byte[4];
-        content.get(v);
-        vendor = IsoFile.bytesToFourCC(v);
+        vendor = IsoTypeReader.read4cc(content);
 
         decoderVersion = IsoTypeReader.readUInt8(content);
         modeSet = IsoTypeReader.readUInt16(content);
@@ -81,7 +78,7 @@ public class AmrSpecificBox extends AbstractBox {
 
 
     public void getContent(ByteBuffer byteBuffer) {
-        byteBuffer.put(IsoFile.fourCCtoBytes(vendor));
+        IsoTypeWriter.write4cc(byteBuffer, vendor);
         IsoTypeWriter.writeUInt8(byteBuffer, decoderVersion);
         IsoTypeWriter.writeUInt16(byteBuffer, modeSet);
         IsoTypeWriter.writeUInt8(byteBuffer, modeChangePeriod);
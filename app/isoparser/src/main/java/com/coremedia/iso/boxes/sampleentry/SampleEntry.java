@@ -22,14 +22,12 @@ import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.boxes.Box;
 import com.coremedia.iso.boxes.ContainerBox;
 import com.googlecode.mp4parser.AbstractBox;
+import com.googlecode.mp4parser.BoxWriter;
 import com.googlecode.mp4parser.util.ByteBufferByteChannel;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -67,15 +65,18 @@ public abstract class SampleEntry extends AbstractBox implements ContainerBox {
 
     public void setBoxes(List<Box> boxes) {
         this.boxes = new LinkedList<>(boxes);
+        containerModified();
     }
 
     public void addBox(Box b) {
         b.setParent(this);
         boxes.add(b);
+        containerModified();
     }
 
     public boolean removeBox(Box b) {
         b.setParent(this);
+        containerModified();
         return boxes.remove(b);
     }
 
@@ -135,17 +136,9 @@ public abstract class SampleEntry extends AbstractBox implements ContainerBox {
     }
 
     public void _writeChildBoxes(ByteBuffer bb) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        WritableByteChannel wbc = Channels.newChannel(baos);
-        try {
-            for (Box box : boxes) {
-                box.getBox(wbc);
-            }
-            wbc.close();
-        } catch (IOException e) {
-            throw new RuntimeException("Cannot happen. Everything should be in memory and therefore no exceptions.");
+        for (Box box : boxes) {
+            BoxWriter.writeBox(box, bb);
         }
-        bb.put(baos.toByteArray());
     }
 
     public long getNumOfBytesToFirstChild() {
@@ -26,11 +26,13 @@ import com.coremedia.iso.boxes.ContainerBox;
 import com.coremedia.iso.boxes.UserBox;
 import com.googlecode.mp4parser.annotations.DoNotParseDetail;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
@@ -48,6 +50,8 @@ import static com.googlecode.mp4parser.util.CastUtils.l2i;
 public abstract class AbstractBox implements Box {
     public static int MEM_MAP_THRESHOLD = 100 * 1024;
     private static Logger LOG = Logger.getLogger(AbstractBox.class.getName());
+    // counts changes of the children of any container, see IsoFile#getBoxes(Class, boolean)
+    private static final AtomicLong containerModifications = new AtomicLong();
 
     protected String type;
     private byte[] userType;
@@ -56,11 +60,30 @@ public abstract class AbstractBox implements Box {
     private ByteBuffer content;
     private ByteBuffer deadBytes = null;
 
+    // Set while the content has not been read yet, see #isParsedOnDemand()
+    private FileChannel source;
+    private long sourcePosition;
+    private long sourceSize;
+
 
     protected AbstractBox(String type) {
         this.type = type;
     }
 
+    /**
+     * Container boxes call this whenever boxes are added, removed or replaced after parsing.
+     */
+    protected static void containerModified() {
+        containerModifications.incrementAndGet();
+    }
+
+    /**
+     * @return a number that changes whenever {@link #containerModified()} is called
+     */
+    protected static long getContainerModifications() {
+        return containerModifications.get();
+    }
+
     protected AbstractBox(String type, byte[] userType) {
         this.type = type;
         this.userType = userType;
@@ -101,6 +124,15 @@ public abstract class AbstractBox implements Box {
      */
     @DoNotParseDetail
     public void parse(ReadableByteChannel readableByteChannel, ByteBuffer header, long contentSize, BoxParser boxParser) throws IOException {
+        boolean onDemand = isParsedOnDemand();
+        if (onDemand && readableByteChannel instanceof FileChannel) {
+            // Just remember where the content is. It is read when the box is first accessed.
+            source = (FileChannel) readableByteChannel;
+            sourcePosition = source.position();
+            sourceSize = contentSize;
+            source.position(sourcePosition + contentSize);
+            return;
+        }
         if (readableByteChannel instanceof FileChannel && contentSize > MEM_MAP_THRESHOLD) {
             // todo: if I map this here delayed I could use transferFrom/transferTo in the getBox method
             // todo: potentially this could speed up writing.
@@ -112,16 +144,69 @@ public abstract class AbstractBox implements Box {
             assert contentSize < Integer.MAX_VALUE;
             content = ChannelHelper.readFully(readableByteChannel, contentSize);
         }
-        if (!isParsed()) {
+        if (!isParsed() && !onDemand) {
             parseDetails();
         }
 
     }
 
+    /**
+     * Boxes that check <code>isParsed()</code> in all their accessors may keep their content
+     * unparsed until it is first accessed. When the box is read from an <code>IsoFile</code>
+     * created with <code>parseOnDemand</code> its content is not even read then. Containers
+     * parse their children straight from the file on first access, so the content of nested
+     * containers is not read before they are accessed either.
+     *
+     * @return <code>true</code> if the content can be parsed on first access
+     */
+    @DoNotParseDetail
+    protected boolean isParsedOnDemand() {
+        return false;
+    }
+
     public void getBox(WritableByteChannel os) throws IOException {
+        if (source != null) {
+            // content is still in the source file, copy it unparsed
+            ByteBuffer header = ByteBuffer.allocate(l2i(getSize() - sourceSize));
+            getHeader(header);
+            header.rewind();
+            ChannelHelper.writeFully(os, header);
+            long offset = 0;
+            while (offset < sourceSize) {
+                offset += source.transferTo(sourcePosition + offset, sourceSize - offset, os);
+            }
+            return;
+        }
         ByteBuffer bb = ByteBuffer.allocate(l2i(getSize()));
+        writeBox(bb);
+        bb.rewind();
+        os.write(bb);
+    }
+
+    /**
+     * Writes header and content of the box into <code>bb</code> exactly like
+     * {@link #getBox(WritableByteChannel)} writes them to a channel.
+     *
+     * @param bb the sink with at least <code>getSize()</code> bytes remaining
+     * @see BoxWriter#writeBox(Box, ByteBuffer)
+     */
+    final void writeBox(ByteBuffer bb) {
         getHeader(bb);
-        if (content == null) {
+        if (source != null) {
+            ByteBuffer raw = bb.slice();
+            raw.limit(l2i(sourceSize));
+            try {
+                while (raw.hasRemaining()) {
+                    if (source.read(raw, sourcePosition + raw.position()) < 0) {
+                        throw new EOFException("End of file while reading " + getType());
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Delayed reading of " + getType() + " content failed. Make sure not to close " +
+                        "the FileChannel that has been used to create the IsoFile!", e);
+            }
+            bb.position(bb.position() + raw.limit());
+        } else if (content == null) {
             getContent(bb);
             if (deadBytes != null) {
                 deadBytes.rewind();
@@ -133,8 +218,14 @@ public abstract class AbstractBox implements Box {
             content.rewind();
             bb.put(content);
         }
-        bb.rewind();
-        os.write(bb);
+    }
+
+    /**
+     * @return <code>true</code> if the box is written as its header followed by
+     *         <code>getContent</code> and nothing else
+     */
+    final boolean isWrittenByGetContent() {
+        return source == null && content == null && deadBytes == null;
     }
 
 
@@ -143,6 +234,18 @@ public abstract class AbstractBox implements Box {
      * which is done
      */
     synchronized final void parseDetails() {
+        if (source != null) {
+            FileChannel source = this.source;
+            this.source = null;
+            try {
+                if (!parseSource(source, sourcePosition, sourceSize)) {
+                    content = readSource(source);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Delayed reading of " + getType() + " content failed. Make sure not to close " +
+                        "the FileChannel that has been used to create the IsoFile!", e);
+            }
+        }
         if (content != null) {
             ByteBuffer content = this.content;
             this.content = null;
@@ -155,6 +258,37 @@ public abstract class AbstractBox implements Box {
         }
     }
 
+    /**
+     * Parses content that is still in the source file without reading it into memory first.
+     *
+     * @param source   the file the box has been read from
+     * @param position the position of the content in <code>source</code>
+     * @param size     the size of the content
+     * @return <code>false</code> if the content has to be read and given to
+     *         {@link #_parseDetails(java.nio.ByteBuffer)} instead
+     * @throws IOException in case of an I/O error
+     * @see #isParsedOnDemand()
+     */
+    @DoNotParseDetail
+    protected boolean parseSource(FileChannel source, long position, long size) throws IOException {
+        return false;
+    }
+
+    private ByteBuffer readSource(FileChannel source) throws IOException {
+        if (sourceSize > MEM_MAP_THRESHOLD) {
+            return source.map(FileChannel.MapMode.READ_ONLY, sourcePosition, sourceSize);
+        }
+        // positional reads leave the channel's position alone
+        ByteBuffer buf = ByteBuffer.allocate(l2i(sourceSize));
+        while (buf.hasRemaining()) {
+            if (source.read(buf, sourcePosition + buf.position()) < 0) {
+                throw new EOFException("End of file while reading " + getType());
+            }
+        }
+        buf.rewind();
+        return buf;
+    }
+
     /**
      * Sets the 'dead' bytes. These bytes are left if the content of the box
      * has been parsed but not all bytes have been used up.
@@ -172,7 +306,7 @@ public abstract class AbstractBox implements Box {
      * @return the box's size
      */
     public long getSize() {
-        long size = (content == null ? getContentSize() : content.limit());
+        long size = (source != null ? sourceSize : content == null ? getContentSize() : content.limit());
         size += (8 + // size|type
                 (size >= ((1L << 32) - 8) ? 8 : 0) + // 32bit - 8 byte size and type
                 (UserBox.TYPE.equals(getType()) ? 16 : 0));
@@ -211,7 +345,7 @@ public abstract class AbstractBox implements Box {
      * @return <code>true</code> whenever the content <code>ByteBuffer</code> is not <code>null</code>
      */
     public boolean isParsed() {
-        return content == null;
+        return content == null && source == null;
     }
 
 
@@ -258,16 +392,19 @@ public abstract class AbstractBox implements Box {
     }
 
     private boolean isSmallBox() {
+        if (source != null) {
+            return sourceSize < 1L << 32;
+        }
         return (content == null ? (getContentSize() + (deadBytes != null ? deadBytes.limit() : 0) + 8) : content.limit()) < 1L << 32;
     }
 
-    private void getHeader(ByteBuffer byteBuffer) {
+    void getHeader(ByteBuffer byteBuffer) {
         if (isSmallBox()) {
             IsoTypeWriter.writeUInt32(byteBuffer, this.getSize());
-            byteBuffer.put(IsoFile.fourCCtoBytes(getType()));
+            IsoTypeWriter.write4cc(byteBuffer, getType());
         } else {
             IsoTypeWriter.writeUInt32(byteBuffer, 1);
-            byteBuffer.put(IsoFile.fourCCtoBytes(getType()));
+            IsoTypeWriter.write4cc(byteBuffer, getType());
             IsoTypeWriter.writeUInt64(byteBuffer, getSize());
         }
         if (UserBox.TYPE.equals(getType())) {
@@ -17,14 +17,16 @@
 package com.googlecode.mp4parser;
 
 import com.coremedia.iso.BoxParser;
+import com.coremedia.iso.ChannelHelper;
+import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.boxes.Box;
 import com.coremedia.iso.boxes.ContainerBox;
 import com.googlecode.mp4parser.util.ByteBufferByteChannel;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -55,11 +57,18 @@ public abstract class AbstractContainerBox extends AbstractBox implements Contai
     }
 
     public List<Box> getBoxes() {
+        if (!isParsed()) {
+            parseDetails();
+        }
         return Collections.unmodifiableList(boxes);
     }
 
     public void setBoxes(List<Box> boxes) {
+        if (!isParsed()) {
+            parseDetails();
+        }
         this.boxes = new LinkedList<>(boxes);
+        containerModified();
     }
 
     public <T extends Box> List<T> getBoxes(Class<T> clazz) {
@@ -68,6 +77,9 @@ public abstract class AbstractContainerBox extends AbstractBox implements Contai
 
     @SuppressWarnings("unchecked")
     public <T extends Box> List<T> getBoxes(Class<T> clazz, boolean recursive) {
+        if (!isParsed()) {
+            parseDetails();
+        }
         List<T> boxesToBeReturned = new ArrayList<>(2);
         for (Box boxe : boxes) {
             //clazz.isInstance(boxe) / clazz == boxe.getClass()?
@@ -90,13 +102,21 @@ public abstract class AbstractContainerBox extends AbstractBox implements Contai
      * @param b will be added to the container
      */
     public void addBox(Box b) {
+        if (!isParsed()) {
+            parseDetails();
+        }
         b.setParent(this);
         boxes.add(b);
+        containerModified();
     }
 
     public void removeBox(Box b) {
+        if (!isParsed()) {
+            parseDetails();
+        }
         b.setParent(this);
         boxes.remove(b);
+        containerModified();
     }
 
     @Override
@@ -110,8 +130,28 @@ public abstract class AbstractContainerBox extends AbstractBox implements Contai
         parseChildBoxes(content);
     }
 
+    /**
+     * Plain containers parse their child boxes on first access when they are part of
+     * an <code>IsoFile</code> that has been created with <code>parseOnDemand</code>.
+     * Subclasses that parse own fields in <code>_parseDetails</code> must return <code>false</code>
+     * unless all their accessors make sure that the box is parsed.
+     *
+     * @return <code>true</code> if the box can be parsed on first access
+     */
+    @Override
+    protected boolean isParsedOnDemand() {
+        Box root = this;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root instanceof IsoFile && ((IsoFile) root).isParseOnDemand();
+    }
+
 
     public String toString() {
+        if (!isParsed()) {
+            parseDetails();
+        }
         StringBuilder buffer = new StringBuilder();
 
         buffer.append(this.getClass().getSimpleName()).append("[");
@@ -155,16 +195,42 @@ public abstract class AbstractContainerBox extends AbstractBox implements Contai
         }
     }
 
-    protected final void writeChildBoxes(ByteBuffer bb) {
-        WritableByteChannel wbc = new ByteBufferByteChannel(bb);
-        for (Box box : boxes) {
+    /**
+     * Parses the child boxes straight from the file. Children that are containers themselves
+     * just remember where their content is, see
+     * {@link AbstractBox#parse(java.nio.channels.ReadableByteChannel, java.nio.ByteBuffer, long, com.coremedia.iso.BoxParser)}.
+     * The channel's position is shared by all boxes of the file, so it is locked while the
+     * children are read.
+     */
+    @Override
+    protected boolean parseSource(FileChannel source, long position, long size) throws IOException {
+        long end = position + size;
+        synchronized (source) {
+            long restore = source.position();
             try {
-                box.getBox(wbc);
-            } catch (IOException e) {
-                // My WritableByteChannel won't throw any excpetion
-                throw new RuntimeException("Cannot happen to me", e);
+                source.position(position);
+                while (end - source.position() >= 8) { //  8 is the minimal size for a sane box
+                    boxes.add(boxParser.parseBox(source, this));
+                }
+                long remaining = end - source.position();
+                if (remaining < 0) {
+                    throw new IOException("Child boxes exceed the " + getType() + " box");
+                }
+                if (remaining != 0) {
+                    setDeadBytes(ChannelHelper.readFully(source, remaining));
+                    LOG.warning("Something's wrong with the sizes. There are dead bytes in a container box.");
+                }
+            } finally {
+                source.position(restore);
             }
         }
+        return true;
+    }
+
+    protected final void writeChildBoxes(ByteBuffer bb) {
+        for (Box box : boxes) {
+            BoxWriter.writeBox(box, bb);
+        }
     }
 
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser;
+
+import com.coremedia.iso.boxes.Box;
+import com.googlecode.mp4parser.util.ByteBufferByteChannel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.googlecode.mp4parser.util.CastUtils.l2i;
+
+/**
+ * Serializes box trees to a channel with few writes. Boxes are rendered into direct buffers
+ * that are taken from a pool shared by all writers and handed to the channel with gathering
+ * writes once enough has been collected. Only media data ('mdat') and boxes that don't fit
+ * into a buffer are written to the channel directly, so that sample data can still be
+ * transferred from channel to channel.
+ * <p/>
+ * The bytes written are exactly those of {@link Box#getBox(WritableByteChannel)}.
+ * Not thread-safe, the buffers are returned to the pool on {@link #close()}.
+ */
+public final class BoxWriter implements Closeable {
+    private static final int CHUNK_SIZE = 256 * 1024;
+    // the channel is written to when this many chunks are filled
+    private static final int MAX_CHUNKS = 16;
+    private static final int MAX_POOLED_CHUNKS = 16;
+    // pooled chunks are all zeros: some boxes (e.g. those using BitWriterBuffer) OR their bits
+    // into the buffer and rely on it being as clean as a freshly allocated one
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final byte[] ZEROS = new byte[8192];
+
+    // whether the classes are serialized by AbstractBox' own getBox
+    private static final Map<Class<?>, Boolean> IN_PLACE = new ConcurrentHashMap<>();
+    // whether the classes are AbstractContainerBoxes that write nothing but header and children
+    private static final Map<Class<?>, Boolean> PLAIN_CONTAINERS = new ConcurrentHashMap<>();
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer[] chunks = new ByteBuffer[MAX_CHUNKS];
+    // chunks[0] until chunks[used] (exclusive) have data, chunks[used - 1] is filled next
+    private int used;
+
+    /**
+     * @param channel the boxes are written to, it is not closed by {@link #close()}
+     */
+    public BoxWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes a box. Nothing might have been written to the channel until {@link #flush()} or
+     * {@link #close()} is called.
+     *
+     * @param box the box to be written
+     * @throws IOException if writing to the channel fails
+     */
+    public void write(Box box) throws IOException {
+        if ("mdat".equals(box.getType())) {
+            flush();
+            box.getBox(channel);
+            return;
+        }
+        long size = box.getSize();
+        if (size <= CHUNK_SIZE) {
+            writeBox(box, reserve((int) size));
+        } else if (isPlainContainer(box)) {
+            AbstractContainerBox container = (AbstractContainerBox) box;
+            ByteBuffer header = reserve(l2i(size - container.getContentSize()));
+            container.getHeader(header);
+            for (Box child : container.getBoxes()) {
+                write(child);
+            }
+        } else {
+            flush();
+            box.getBox(channel);
+        }
+    }
+
+    /**
+     * Writes everything collected so far to the channel.
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    public void flush() throws IOException {
+        if (used == 0) {
+            return;
+        }
+        for (int i = 0; i < used; i++) {
+            chunks[i].flip();
+        }
+        if (channel instanceof GatheringByteChannel) {
+            do {
+                ((GatheringByteChannel) channel).write(chunks, 0, used);
+            } while (chunks[used - 1].hasRemaining());
+        } else {
+            for (int i = 0; i < used; i++) {
+                while (chunks[i].hasRemaining()) {
+                    channel.write(chunks[i]);
+                }
+            }
+        }
+        for (int i = 0; i < used; i++) {
+            clear(chunks[i]);
+        }
+        used = 0;
+    }
+
+    private static void clear(ByteBuffer chunk) {
+        int filled = chunk.limit();
+        chunk.clear();
+        while (chunk.position() < filled) {
+            chunk.put(ZEROS, 0, Math.min(ZEROS.length, filled - chunk.position()));
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Flushes and returns the buffers to the pool. The channel is left open.
+     *
+     * @throws IOException if writing to the channel fails
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (int i = 0; i < chunks.length && chunks[i] != null; i++) {
+                if (i >= used && POOL.size() < MAX_POOLED_CHUNKS) {
+                    POOL.offer(chunks[i]);
+                }
+                chunks[i] = null;
+            }
+            used = 0;
+        }
+    }
+
+    /**
+     * @return a buffer of exactly <code>size</code> bytes in the current chunk
+     */
+    private ByteBuffer reserve(int size) throws IOException {
+        if (used == 0 || chunks[used - 1].remaining() < size) {
+            if (used == MAX_CHUNKS) {
+                flush();
+            }
+            if (chunks[used] == null) {
+                ByteBuffer chunk = POOL.poll();
+                chunks[used] = chunk != null ? chunk : ByteBuffer.allocateDirect(CHUNK_SIZE);
+            }
+            used++;
+        }
+        ByteBuffer chunk = chunks[used - 1];
+        ByteBuffer reserved = chunk.slice();
+        reserved.limit(size);
+        chunk.position(chunk.position() + size);
+        return reserved;
+    }
+
+    /**
+     * Writes a box into a buffer. Boxes that leave {@link AbstractBox#getBox(WritableByteChannel)}
+     * alone are rendered directly into the buffer, the others write to a channel backed by it.
+     *
+     * @param box    the box to be written
+     * @param target the buffer, its position is advanced by the size of the box
+     */
+    public static void writeBox(Box box, ByteBuffer target) {
+        int size = l2i(box.getSize());
+        ByteBuffer bb = target.slice();
+        bb.limit(size);
+        if (box instanceof AbstractBox && isWrittenInPlace(box.getClass())) {
+            ((AbstractBox) box).writeBox(bb);
+        } else {
+            try {
+                box.getBox(new ByteBufferByteChannel(bb));
+            } catch (IOException e) {
+                // the ByteBufferByteChannel won't throw any exception, reading a source might
+                throw new RuntimeException(e);
+            }
+        }
+        // like the buffer AbstractBox allocates for getBox: what is not written is zero
+        while (bb.hasRemaining()) {
+            bb.put((byte) 0);
+        }
+        target.position(target.position() + size);
+    }
+
+    private static boolean isWrittenInPlace(Class<?> clazz) {
+        Boolean inPlace = IN_PLACE.get(clazz);
+        if (inPlace == null) {
+            inPlace = getDeclaringClass(clazz, "getBox", WritableByteChannel.class) == AbstractBox.class;
+            IN_PLACE.put(clazz, inPlace);
+        }
+        return inPlace;
+    }
+
+    private static boolean isPlainContainer(Box box) {
+        if (!(box instanceof AbstractContainerBox) || !((AbstractBox) box).isWrittenByGetContent()) {
+            return false;
+        }
+        Class<?> clazz = box.getClass();
+        Boolean plain = PLAIN_CONTAINERS.get(clazz);
+        if (plain == null) {
+            plain = isWrittenInPlace(clazz) &&
+                    getDeclaringClass(clazz, "getSize") == AbstractBox.class &&
+                    getDeclaringClass(clazz, "getContentSize") == AbstractContainerBox.class &&
+                    getDeclaringClass(clazz, "getContent", ByteBuffer.class) == AbstractContainerBox.class;
+            PLAIN_CONTAINERS.put(clazz, plain);
+        }
+        return plain;
+    }
+
+    private static Class<?> getDeclaringClass(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return c;
+            } catch (NoSuchMethodException e) {
+                // declared further up
+            }
+        }
+        return null;
+    }
+}
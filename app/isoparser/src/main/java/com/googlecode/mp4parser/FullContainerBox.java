@@ -24,7 +24,6 @@ import com.googlecode.mp4parser.util.ByteBufferByteChannel;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,6 +39,7 @@ public abstract class FullContainerBox extends AbstractFullBox implements Contai
 
     public void setBoxes(List<Box> boxes) {
         this.boxes = new LinkedList<>(boxes);
+        containerModified();
     }
 
     public <T extends Box> List<T> getBoxes(Class<T> clazz) {
@@ -74,11 +74,13 @@ public abstract class FullContainerBox extends AbstractFullBox implements Contai
     public void addBox(Box b) {
         b.setParent(this);
         boxes.add(b);
+        containerModified();
     }
 
     public void removeBox(Box b) {
         b.setParent(null);
         boxes.remove(b);
+        containerModified();
     }
 
     public FullContainerBox(String type) {
@@ -137,15 +139,8 @@ public abstract class FullContainerBox extends AbstractFullBox implements Contai
     }
 
     protected final void writeChildBoxes(ByteBuffer bb) {
-        WritableByteChannel wbc = new ByteBufferByteChannel(bb);
         for (Box box : boxes) {
-            try {
-                box.getBox(wbc);
-            } catch (IOException e) {
-                // cannot happen since my WritableByteChannel won't throw any excpetion
-                throw new RuntimeException("Cannot happen.", e);
-            }
-
+            BoxWriter.writeBox(box, bb);
         }
     }
 
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.authoring;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * Implemented by sample lists (see {@link Track#getSamples()}) whose samples can be located in a
+ * file without reading them. Builders use it to copy sample data from channel to channel.
+ */
+public interface FileBackedSamples {
+
+    /**
+     * @param index sample number
+     * @return the size of the sample in bytes
+     */
+    long getSampleSize(int index);
+
+    /**
+     * @param index sample number
+     * @return the channel the sample is stored in or <code>null</code> if the sample is only
+     *         available as <code>ByteBuffer</code>
+     */
+    FileChannel getSampleChannel(int index);
+
+    /**
+     * @param index sample number
+     * @return the position of the sample in its channel
+     */
+    long getSamplePosition(int index);
+}
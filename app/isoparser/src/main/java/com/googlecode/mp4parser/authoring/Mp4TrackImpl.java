@@ -35,7 +35,7 @@ import com.coremedia.iso.boxes.fragment.TrackRunBox;
 import com.coremedia.iso.boxes.mdat.SampleList;
 
 import java.nio.ByteBuffer;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -85,7 +85,8 @@ public class Mp4TrackImpl extends AbstractTrack {
                 final List<TrackExtendsBox> trackExtendsBoxes = mvex.getBoxes(TrackExtendsBox.class);
                 for (TrackExtendsBox trex : trackExtendsBoxes) {
                     if (trex.getTrackId() == trackId) {
-                        List<Long> syncSampleList = new LinkedList<>();
+                        long[] syncSampleList = new long[64];
+                        int syncSampleCount = 0;
 
                         long sampleNumber = 1;
                         for (MovieFragmentBox movieFragmentBox : trackBox.getIsoFile().getBoxes(MovieFragmentBox.class)) {
@@ -138,7 +139,10 @@ public class Mp4TrackImpl extends AbstractTrack {
                                             }
                                             if (sampleFlags != null && !sampleFlags.isSampleIsDifferenceSample()) {
                                                 //iframe
-                                                syncSampleList.add(sampleNumber);
+                                                if (syncSampleCount == syncSampleList.length) {
+                                                    syncSampleList = Arrays.copyOf(syncSampleList, syncSampleCount * 2);
+                                                }
+                                                syncSampleList[syncSampleCount++] = sampleNumber;
                                             }
                                             sampleNumber++;
                                             first = false;
@@ -147,16 +151,10 @@ public class Mp4TrackImpl extends AbstractTrack {
                                 }
                             }
                         }
-                        // Warning: Crappy code
                         long[] oldSS = syncSamples;
-                        syncSamples = new long[syncSamples.length + syncSampleList.size()];
+                        syncSamples = new long[syncSamples.length + syncSampleCount];
                         System.arraycopy(oldSS, 0, syncSamples, 0, oldSS.length);
-                        final Iterator<Long> iterator = syncSampleList.iterator();
-                        int i = oldSS.length;
-                        while (iterator.hasNext()) {
-                            Long syncSampleNumber = iterator.next();
-                            syncSamples[i++] = syncSampleNumber;
-                        }
+                        System.arraycopy(syncSampleList, 0, syncSamples, oldSS.length, syncSampleCount);
                     }
                 }
             }
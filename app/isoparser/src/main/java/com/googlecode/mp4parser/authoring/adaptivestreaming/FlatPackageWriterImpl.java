@@ -32,8 +32,17 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 public class FlatPackageWriterImpl implements PackageWriter {
@@ -44,6 +53,7 @@ public class FlatPackageWriterImpl implements PackageWriter {
     private boolean debugOutput;
     private FragmentedMp4Builder ismvBuilder;
     ManifestWriter manifestWriter;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     public FlatPackageWriterImpl() {
         ismvBuilder = new FragmentedMp4Builder();
@@ -84,6 +94,16 @@ public class FlatPackageWriterImpl implements PackageWriter {
         this.manifestWriter = manifestWriter;
     }
 
+    /**
+     * Sets the number of threads the tracks are packaged with. Defaults to the number of
+     * available processors.
+     *
+     * @param threadCount maximum number of tracks processed at the same time
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     /**
      * Writes the movie given as <code>qualities</code> flattened into the
      * <code>outputDirectory</code>.
@@ -113,19 +133,45 @@ public class FlatPackageWriterImpl implements PackageWriter {
             muxed.getBox(muxedFileOutputStream.getChannel());
             muxedFileOutputStream.close();
         }
-        IsoFile isoFile = ismvBuilder.build(movieWithAdjustedTimescale);
         if (debugOutput) {
+            IsoFile isoFile = ismvBuilder.build(movieWithAdjustedTimescale);
             File allQualities = new File(outputDirectory, "debug_3_fragmented.mp4");
             FileOutputStream allQualis = new FileOutputStream(allQualities);
             isoFile.getBox(allQualis.getChannel());
             allQualis.close();
         }
 
-
+        // every track (quality) is fragmented and written by a task of its own, the manifest
+        // requires all of them to be finished.
+        Map<Track, List<Box>> fragmentsPerTrack = ismvBuilder.createMoofMdatPerTrack(movieWithAdjustedTimescale);
+        List<Callable<Void>> tasks = new ArrayList<>();
         for (Track track : movieWithAdjustedTimescale.getTracks()) {
+            tasks.add(new WriteTrackTask(track, movieWithAdjustedTimescale, fragmentsPerTrack.get(track)));
+        }
+        invokeAll(tasks);
+
+        FileWriter fw = new FileWriter(new File(outputDirectory, "Manifest"));
+        fw.write(manifestWriter.getManifest(movieWithAdjustedTimescale));
+        fw.close();
+
+    }
+
+    /**
+     * Writes the fragments of a single track into the track's bitrate directory.
+     */
+    private class WriteTrackTask implements Callable<Void> {
+        private final Track track;
+        private final Movie movie;
+        private final List<Box> fragments;
+
+        WriteTrackTask(Track track, Movie movie, List<Box> fragments) {
+            this.track = track;
+            this.movie = movie;
+            this.fragments = fragments;
+        }
+
+        public Void call() throws IOException {
             String bitrate = Long.toString(manifestWriter.getBitrate(track));
-            long trackId = track.getTrackMetaData().getTrackId();
-            Iterator<Box> boxIt = isoFile.getBoxes().iterator();
             File mediaOutDir;
             if (track.getMediaHeaderBox() instanceof SoundMediaHeaderBox) {
                 mediaOutDir = new File(outputDirectory, "audio");
@@ -134,38 +180,63 @@ public class FlatPackageWriterImpl implements PackageWriter {
                 mediaOutDir = new File(outputDirectory, "video");
             } else {
                 System.err.println("Skipping Track with handler " + track.getHandler() + " and " + track.getMediaHeaderBox().getClass().getSimpleName());
-                continue;
+                return null;
             }
             File bitRateOutputDir = new File(mediaOutDir, bitrate);
             bitRateOutputDir.mkdirs();
             LOG.finer("Created : " + bitRateOutputDir.getCanonicalPath());
 
-            long[] fragmentTimes = manifestWriter.calculateFragmentDurations(track, movieWithAdjustedTimescale);
+            long[] fragmentTimes = manifestWriter.calculateFragmentDurations(track, movie);
             long startTime = 0;
             int currentFragment = 0;
+            Iterator<Box> boxIt = fragments.iterator();
             while (boxIt.hasNext()) {
                 Box b = boxIt.next();
-                if (b instanceof MovieFragmentBox) {
-                    assert ((MovieFragmentBox) b).getTrackCount() == 1;
-                    if (((MovieFragmentBox) b).getTrackNumbers()[0] == trackId) {
-                        FileOutputStream fos = new FileOutputStream(new File(bitRateOutputDir, Long.toString(startTime)));
-                        startTime += fragmentTimes[currentFragment++];
-                        FileChannel fc = fos.getChannel();
-                        Box mdat = boxIt.next();
-                        assert mdat.getType().equals("mdat");
-                        b.getBox(fc); // moof
-                        mdat.getBox(fc); // mdat
-                        fc.truncate(fc.position());
-                        fc.close();
-                    }
-                }
-
+                assert b instanceof MovieFragmentBox && ((MovieFragmentBox) b).getTrackCount() == 1;
+                FileOutputStream fos = new FileOutputStream(new File(bitRateOutputDir, Long.toString(startTime)));
+                startTime += fragmentTimes[currentFragment++];
+                FileChannel fc = fos.getChannel();
+                Box mdat = boxIt.next();
+                assert mdat.getType().equals("mdat");
+                b.getBox(fc); // moof
+                mdat.getBox(fc); // mdat
+                fc.truncate(fc.position());
+                fc.close();
             }
+            return null;
         }
-        FileWriter fw = new FileWriter(new File(outputDirectory, "Manifest"));
-        fw.write(manifestWriter.getManifest(movieWithAdjustedTimescale));
-        fw.close();
+    }
 
+    /**
+     * Runs the tasks on at most <code>threadCount</code> threads and waits for all of them.
+     * The first failure is rethrown after the remaining tasks have been cancelled.
+     */
+    private <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, tasks.size())));
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the package");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
     private Movie removeUnknownTracks(Movie source) {
@@ -188,10 +259,21 @@ public class FlatPackageWriterImpl implements PackageWriter {
      * @param movie
      * @return a movie with timescales suitable for smooth streaming manifests
      */
-    public Movie correctTimescale(Movie movie) {
+    public Movie correctTimescale(final Movie movie) {
+        List<Callable<Track>> tasks = new ArrayList<>();
+        for (final Track track : movie.getTracks()) {
+            tasks.add(() -> new ChangeTimeScaleTrack(track, timeScale, ismvBuilder.getFragmentIntersectionFinder().sampleNumbers(track, movie)));
+        }
+        List<Track> tracks;
+        try {
+            tracks = invokeAll(tasks);
+        } catch (IOException e) {
+            // the tasks don't do I/O, this is an interruption or an unexpected checked exception
+            throw new RuntimeException(e);
+        }
         Movie nuMovie = new Movie();
-        for (Track track : movie.getTracks()) {
-            nuMovie.addTrack(new ChangeTimeScaleTrack(track, timeScale, ismvBuilder.getFragmentIntersectionFinder().sampleNumbers(track, movie)));
+        for (Track track : tracks) {
+            nuMovie.addTrack(track);
         }
         return nuMovie;
 
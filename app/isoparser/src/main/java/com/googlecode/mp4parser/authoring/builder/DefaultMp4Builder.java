@@ -41,12 +41,15 @@ import com.coremedia.iso.boxes.TimeToSampleBox;
 import com.coremedia.iso.boxes.TrackBox;
 import com.coremedia.iso.boxes.TrackHeaderBox;
 import com.googlecode.mp4parser.authoring.DateHelper;
+import com.googlecode.mp4parser.authoring.FileBackedSamples;
 import com.googlecode.mp4parser.authoring.Movie;
 import com.googlecode.mp4parser.authoring.Track;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
@@ -90,8 +93,15 @@ public class DefaultMp4Builder implements Mp4Builder {
             List<ByteBuffer> samples = track.getSamples();
             putSamples(track, samples);
             long[] sizes = new long[samples.size()];
-            for (int i = 0; i < sizes.length; i++) {
-                sizes[i] = samples.get(i).limit();
+            if (samples instanceof FileBackedSamples) {
+                // no need to read the samples just to get their sizes
+                for (int i = 0; i < sizes.length; i++) {
+                    sizes[i] = ((FileBackedSamples) samples).getSampleSize(i);
+                }
+            } else {
+                for (int i = 0; i < sizes.length; i++) {
+                    sizes[i] = samples.get(i).limit();
+                }
             }
             putSampleSizes(track, sizes);
         }
@@ -374,7 +384,8 @@ public class DefaultMp4Builder implements Mp4Builder {
 
     private class InterleaveChunkMdat implements Box {
         List<Track> tracks;
-        List<ByteBuffer> samples = new ArrayList<>();
+        // contiguous runs of sample data in the order they are written
+        List<SampleRange> ranges = new ArrayList<>();
         ContainerBox parent;
 
         long contentSize = 0;
@@ -407,11 +418,21 @@ public class DefaultMp4Builder implements Mp4Builder {
                         firstSampleOfChunk += chunkSizes[j];
                     }
 
+                    List<ByteBuffer> trackSamples = DefaultMp4Builder.this.track2Sample.get(track);
+                    FileBackedSamples fileBackedSamples = trackSamples instanceof FileBackedSamples ?
+                            (FileBackedSamples) trackSamples : null;
                     for (int j = l2i(firstSampleOfChunk); j < firstSampleOfChunk + chunkSizes[i]; j++) {
-
-                        ByteBuffer s = DefaultMp4Builder.this.track2Sample.get(track).get(j);
-                        contentSize += s.limit();
-                        samples.add((ByteBuffer) s.rewind());
+                        FileChannel channel = fileBackedSamples != null ? fileBackedSamples.getSampleChannel(j) : null;
+                        if (channel != null) {
+                            // just remember where the sample is, it is copied in getBox
+                            long size = fileBackedSamples.getSampleSize(j);
+                            addFileRange(channel, fileBackedSamples.getSamplePosition(j), size);
+                            contentSize += size;
+                        } else {
+                            ByteBuffer s = trackSamples.get(j);
+                            contentSize += s.limit();
+                            addBuffer((ByteBuffer) s.rewind());
+                        }
                     }
 
                 }
@@ -420,6 +441,25 @@ public class DefaultMp4Builder implements Mp4Builder {
 
         }
 
+        private void addFileRange(FileChannel channel, long position, long size) {
+            SampleRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last.channel == channel && last.position + last.size == position) {
+                last.size += size;
+            } else {
+                ranges.add(new SampleRange(channel, position, size));
+            }
+        }
+
+        private void addBuffer(ByteBuffer buffer) {
+            SampleRange last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last == null || last.channel != null) {
+                last = new SampleRange(null, 0, 0);
+                ranges.add(last);
+            }
+            last.buffers.add(buffer);
+            last.size += buffer.limit();
+        }
+
         public long getDataOffset() {
             Box b = this;
             long offset = 16;
@@ -457,7 +497,7 @@ public class DefaultMp4Builder implements Mp4Builder {
             } else {
                 IsoTypeWriter.writeUInt32(bb, 1);
             }
-            bb.put(IsoFile.fourCCtoBytes("mdat"));
+            IsoTypeWriter.write4cc(bb, "mdat");
             if (isSmallBox(size)) {
                 bb.put(new byte[8]);
             } else {
@@ -465,6 +505,16 @@ public class DefaultMp4Builder implements Mp4Builder {
             }
             bb.rewind();
             writableByteChannel.write(bb);
+            for (SampleRange range : ranges) {
+                if (range.channel != null) {
+                    transfer(range.channel, range.position, range.size, writableByteChannel);
+                } else {
+                    writeBuffers(range.buffers, writableByteChannel);
+                }
+            }
+        }
+
+        private void writeBuffers(List<ByteBuffer> samples, WritableByteChannel writableByteChannel) throws IOException {
             if (writableByteChannel instanceof GatheringByteChannel) {
                 List<ByteBuffer> nuSamples = unifyAdjacentBuffers(samples);
 
@@ -489,6 +539,36 @@ public class DefaultMp4Builder implements Mp4Builder {
 
     }
 
+    /**
+     * Sample data that is written as one piece: either a range of a file or a list of
+     * samples in memory.
+     */
+    private static class SampleRange {
+        final FileChannel channel;
+        final long position;
+        long size;
+        final List<ByteBuffer> buffers = new ArrayList<>();
+
+        SampleRange(FileChannel channel, long position, long size) {
+            this.channel = channel;
+            this.position = position;
+            this.size = size;
+        }
+    }
+
+    private static void transfer(FileChannel from, long position, long count, WritableByteChannel to) throws IOException {
+        // Transfer in chunks a bit less than 64MB like MediaDataBox does
+        long maxCount = (64 * 1024 * 1024) - (32 * 1024);
+        long offset = 0;
+        while (offset < count) {
+            long transferred = from.transferTo(position + offset, Math.min(maxCount, count - offset), to);
+            if (transferred <= 0) {
+                throw new EOFException("Sample data ends at " + (position + offset) + " but " + (count - offset) + " more bytes were expected");
+            }
+            offset += transferred;
+        }
+    }
+
     /**
      * Gets the chunk sizes for the given track.
      *
@@ -49,24 +49,34 @@ import com.coremedia.iso.boxes.fragment.TrackFragmentBox;
 import com.coremedia.iso.boxes.fragment.TrackFragmentHeaderBox;
 import com.coremedia.iso.boxes.fragment.TrackFragmentRandomAccessBox;
 import com.coremedia.iso.boxes.fragment.TrackRunBox;
+import com.googlecode.mp4parser.BoxWriter;
 import com.googlecode.mp4parser.authoring.DateHelper;
 import com.googlecode.mp4parser.authoring.Movie;
 import com.googlecode.mp4parser.authoring.Track;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import static com.googlecode.mp4parser.util.CastUtils.l2i;
@@ -147,23 +157,58 @@ public class FragmentedMp4Builder implements Mp4Builder {
 
     protected List<Box> createMoofMdat(final Movie movie) {
         List<Box> boxes = new LinkedList<>();
-        HashMap<Track, long[]> intersectionMap = new HashMap<>();
-        int maxNumberOfFragments = 0;
-        for (Track track : movie.getTracks()) {
-            long[] intersects = intersectionFinder.sampleNumbers(track, movie);
-            intersectionMap.put(track, intersects);
-            maxNumberOfFragments = Math.max(maxNumberOfFragments, intersects.length);
+        Fragments fragments = new Fragments(movie);
+        Box[] moofMdat;
+        while ((moofMdat = fragments.next()) != null) {
+            boxes.add(moofMdat[0]);
+            boxes.add(moofMdat[1]);
         }
+        return boxes;
+    }
 
+    /**
+     * Creates the fragments of a movie one after the other in the order of
+     * {@link #createMoofMdat(com.googlecode.mp4parser.authoring.Movie)}. Only the fragment
+     * handed out last is referenced, so creating all of them does not require the metadata
+     * of all of them in memory.
+     */
+    private class Fragments {
+        private final Movie movie;
+        private final Map<Track, long[]> intersectionMap = new HashMap<>();
+        private int maxNumberOfFragments;
+
+        private int cycle = -1;
+        private Iterator<Track> sortedTracks = Collections.<Track>emptyList().iterator();
+        private int sequence = 1;
+
+        Fragments(Movie movie) {
+            this.movie = movie;
+            for (Track track : movie.getTracks()) {
+                long[] intersects = intersectionFinder.sampleNumbers(track, movie);
+                intersectionMap.put(track, intersects);
+                maxNumberOfFragments = Math.max(maxNumberOfFragments, intersects.length);
+            }
+        }
 
-        int sequence = 1;
-        // this loop has two indices:
-
-        for (int cycle = 0; cycle < maxNumberOfFragments; cycle++) {
-
-            final List<Track> sortedTracks = sortTracksInSequence(movie.getTracks(), cycle, intersectionMap);
-
-            for (Track track : sortedTracks) {
+        private Track track;
+        private long startSample;
+        private long endSample;
+        private int sequenceNumber;
+
+        /**
+         * Moves to the next fragment without creating any boxes.
+         *
+         * @return <code>false</code> after the last fragment
+         */
+        boolean advance() {
+            while (true) {
+                while (!sortedTracks.hasNext()) {
+                    if (++cycle >= maxNumberOfFragments) {
+                        return false;
+                    }
+                    sortedTracks = sortTracksInSequence(movie.getTracks(), cycle, intersectionMap).iterator();
+                }
+                Track track = sortedTracks.next();
                 if (getAllowedHandlers().isEmpty() || getAllowedHandlers().contains(track.getHandler())) {
                     long[] startSamples = intersectionMap.get(track);
                     //some tracks may have less fragments -> skip them
@@ -175,14 +220,123 @@ public class FragmentedMp4Builder implements Mp4Builder {
 
                         // if startSample == endSample the cycle is empty!
                         if (startSample != endSample) {
-                            boxes.add(createMoof(startSample, endSample, track, sequence));
-                            boxes.add(createMdat(startSample, endSample, track, sequence++));
+                            this.track = track;
+                            this.startSample = startSample;
+                            this.endSample = endSample;
+                            this.sequenceNumber = sequence++;
+                            return true;
                         }
                     }
                 }
             }
         }
-        return boxes;
+
+        /**
+         * @return the next 'moof' and 'mdat' or <code>null</code> after the last fragment
+         */
+        Box[] next() {
+            if (!advance()) {
+                return null;
+            }
+            return new Box[]{
+                    createMoof(startSample, endSample, track, sequenceNumber),
+                    createMdat(startSample, endSample, track, sequenceNumber)};
+        }
+    }
+
+    /**
+     * Gets the 'moof' and 'mdat' boxes of
+     * {@link #createMoofMdat(com.googlecode.mp4parser.authoring.Movie)} grouped by track. Each
+     * list alternates 'moof' and 'mdat' of the track's fragments in file order. Only the
+     * fragments' sample ranges are stored, the boxes are created anew on every
+     * <code>get</code>. This way the lists of different tracks can be walked concurrently
+     * without any of them holding all its metadata.
+     *
+     * @param movie the concerned movie
+     * @return the fragments of every track in the movie, in the movie's track order
+     */
+    public Map<Track, List<Box>> createMoofMdatPerTrack(Movie movie) {
+        Map<Track, FragmentList> fragmentsPerTrack = new LinkedHashMap<>();
+        for (Track track : movie.getTracks()) {
+            fragmentsPerTrack.put(track, new FragmentList());
+        }
+        Fragments fragments = new Fragments(movie);
+        while (fragments.advance()) {
+            fragmentsPerTrack.get(fragments.track).add(fragments.track, fragments.startSample, fragments.endSample, fragments.sequenceNumber);
+        }
+        return new LinkedHashMap<Track, List<Box>>(fragmentsPerTrack);
+    }
+
+    /**
+     * The fragments of a movie, or of one of its tracks, as a list of alternating 'moof' and
+     * 'mdat' boxes.
+     */
+    private class FragmentList extends AbstractList<Box> {
+        private Track[] tracks = new Track[16];
+        private long[] startSamples = new long[16];
+        private long[] endSamples = new long[16];
+        private int[] sequenceNumbers = new int[16];
+        private int fragmentCount;
+
+        void add(Track track, long startSample, long endSample, int sequenceNumber) {
+            if (fragmentCount == startSamples.length) {
+                tracks = Arrays.copyOf(tracks, fragmentCount * 2);
+                startSamples = Arrays.copyOf(startSamples, fragmentCount * 2);
+                endSamples = Arrays.copyOf(endSamples, fragmentCount * 2);
+                sequenceNumbers = Arrays.copyOf(sequenceNumbers, fragmentCount * 2);
+            }
+            tracks[fragmentCount] = track;
+            startSamples[fragmentCount] = startSample;
+            endSamples[fragmentCount] = endSample;
+            sequenceNumbers[fragmentCount] = sequenceNumber;
+            fragmentCount++;
+        }
+
+        @Override
+        public Box get(int index) {
+            int fragment = index / 2;
+            if (index < 0 || fragment >= fragmentCount) {
+                throw new IndexOutOfBoundsException("Index " + index + " of " + size());
+            }
+            if (index % 2 == 0) {
+                return createMoof(startSamples[fragment], endSamples[fragment], tracks[fragment], sequenceNumbers[fragment]);
+            } else {
+                return createMdat(startSamples[fragment], endSamples[fragment], tracks[fragment], sequenceNumbers[fragment]);
+            }
+        }
+
+        @Override
+        public int size() {
+            return fragmentCount * 2;
+        }
+    }
+
+    /**
+     * The file written by {@link #build(com.googlecode.mp4parser.authoring.Movie, java.nio.channels.WritableByteChannel)}
+     * as seen by {@link #createMfra(com.googlecode.mp4parser.authoring.Movie, com.coremedia.iso.IsoFile)}.
+     * The fragments are created anew whenever the boxes are walked.
+     */
+    private static class StreamedIsoFile extends IsoFile {
+        StreamedIsoFile(final Box ftyp, final Box moov, final List<Box> fragments) {
+            boxes = new AbstractList<Box>() {
+                @Override
+                public Box get(int index) {
+                    switch (index) {
+                        case 0:
+                            return ftyp;
+                        case 1:
+                            return moov;
+                        default:
+                            return fragments.get(index - 2);
+                    }
+                }
+
+                @Override
+                public int size() {
+                    return fragments.size() + 2;
+                }
+            };
+        }
     }
 
     /**
@@ -204,6 +358,120 @@ public class FragmentedMp4Builder implements Mp4Builder {
         return isoFile;
     }
 
+    /**
+     * Writes the fragmented file for the movie directly to a channel. The result equals
+     * <code>build(movie).getBox(channel)</code> but the fragments are created one at a time:
+     * while the samples of one fragment are written the next 'moof' is created on a worker
+     * thread. No more than two fragments' metadata are in memory regardless of the movie's
+     * length. The worker also takes the random access points from each 'moof' it creates,
+     * together with the 'moof's offset in the file, and the 'tfra' boxes are built from those by
+     * {@link #createTfra(com.googlecode.mp4parser.authoring.Track, java.util.List)}.
+     * <p>
+     * Subclasses that override
+     * {@link #createMfra(com.googlecode.mp4parser.authoring.Movie, com.coremedia.iso.IsoFile)} or
+     * {@link #createTfra(com.googlecode.mp4parser.authoring.Track, com.coremedia.iso.IsoFile)}
+     * get their 'mfra' from those instead. The <code>IsoFile</code> they are given only keeps
+     * the fragments' sample ranges and creates their boxes again when they are walked.
+     *
+     * @param movie   data source
+     * @param channel the fragmented file is written to
+     * @throws IOException if writing to the channel fails
+     */
+    public void build(Movie movie, WritableByteChannel channel) throws IOException {
+        LOG.fine("Streaming movie " + movie);
+        Box ftyp = createFtyp(movie);
+        Box moov = createMoov(movie);
+        BoxWriter writer = new BoxWriter(channel);
+        writer.write(ftyp);
+        writer.write(moov);
+
+        final boolean mfraFromIsoFile = isOverridden("createMfra", Movie.class, IsoFile.class) ||
+                isOverridden("createTfra", Track.class, IsoFile.class);
+        final Fragments fragments = new Fragments(movie);
+        // filled on the worker thread, read after its last fragment has been taken
+        final FragmentList written = new FragmentList();
+        final Map<Track, RandomAccessPoints> randomAccessPoints = new LinkedHashMap<>();
+        for (Track track : movie.getTracks()) {
+            randomAccessPoints.put(track, new RandomAccessPoints(track, moov instanceof MovieBox ? (MovieBox) moov : null));
+        }
+        final long[] offset = {ftyp.getSize() + moov.getSize()};
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Callable<Box[]> nextFragment = () -> {
+                Box[] moofMdat = fragments.next();
+                if (moofMdat != null) {
+                    if (mfraFromIsoFile) {
+                        written.add(fragments.track, fragments.startSample, fragments.endSample, fragments.sequenceNumber);
+                    } else {
+                        for (Box box : moofMdat) {
+                            if (box instanceof MovieFragmentBox) {
+                                for (RandomAccessPoints points : randomAccessPoints.values()) {
+                                    points.add((MovieFragmentBox) box, offset[0]);
+                                }
+                            }
+                            offset[0] += box.getSize();
+                        }
+                    }
+                }
+                return moofMdat;
+            };
+            Future<Box[]> next = executor.submit(nextFragment);
+            Box[] moofMdat;
+            while ((moofMdat = getFragment(next)) != null) {
+                next = executor.submit(nextFragment);
+                for (Box box : moofMdat) {
+                    writer.write(box);
+                }
+            }
+
+            if (mfraFromIsoFile) {
+                writer.write(createMfra(movie, new StreamedIsoFile(ftyp, moov, written)));
+            } else {
+                List<Box> tfras = new ArrayList<>();
+                for (Map.Entry<Track, RandomAccessPoints> points : randomAccessPoints.entrySet()) {
+                    tfras.add(createTfra(points.getKey(), points.getValue().entries));
+                }
+                writer.write(createMfra(movie, tfras));
+            }
+        } finally {
+            executor.shutdownNow();
+            writer.close();
+        }
+    }
+
+    /**
+     * @return whether a subclass overrides the method of this class
+     */
+    private boolean isOverridden(String name, Class<?>... parameterTypes) {
+        for (Class<?> c = getClass(); c != FragmentedMp4Builder.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look further up
+            }
+        }
+        return false;
+    }
+
+    private static Box[] getFragment(Future<Box[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while creating the next fragment");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     protected Box createMdat(final long startSample, final long endSample, final Track track, final int i) {
 
         class Mdat implements Box {
@@ -234,7 +502,7 @@ public class FragmentedMp4Builder implements Mp4Builder {
                 final List<ByteBuffer> samples = ByteBufferHelper.mergeAdjacentBuffers(bbs);
                 ByteBuffer header = ByteBuffer.allocate(8);
                 IsoTypeWriter.writeUInt32(header, l2i(getSize()));
-                header.put(IsoFile.fourCCtoBytes(getType()));
+                IsoTypeWriter.write4cc(header, getType());
                 header.rewind();
                 writableByteChannel.write(header);
                 if (writableByteChannel instanceof GatheringByteChannel) {
@@ -523,72 +791,104 @@ public class FragmentedMp4Builder implements Mp4Builder {
      * @return a track fragment random access box.
      */
     protected Box createTfra(Track track, IsoFile isoFile) {
-        TrackFragmentRandomAccessBox tfra = new TrackFragmentRandomAccessBox();
-        tfra.setVersion(1); // use long offsets and times
-        List<TrackFragmentRandomAccessBox.Entry> offset2timeEntries = new LinkedList<>();
-        List<Box> boxes = isoFile.getBoxes();
+        RandomAccessPoints randomAccessPoints = new RandomAccessPoints(track, isoFile.getMovieBox());
         long offset = 0;
-        long duration = 0;
-        for (Box box : boxes) {
+        for (Box box : isoFile.getBoxes()) {
             if (box instanceof MovieFragmentBox) {
-                List<TrackFragmentBox> trafs = ((MovieFragmentBox) box).getBoxes(TrackFragmentBox.class);
-                for (int i = 0; i < trafs.size(); i++) {
-                    TrackFragmentBox traf = trafs.get(i);
-                    if (traf.getTrackFragmentHeaderBox().getTrackId() == track.getTrackMetaData().getTrackId()) {
-                        // here we are at the offset required for the current entry.
-                        List<TrackRunBox> truns = traf.getBoxes(TrackRunBox.class);
-                        for (int j = 0; j < truns.size(); j++) {
-                            List<TrackFragmentRandomAccessBox.Entry> offset2timeEntriesThisTrun = new LinkedList<>();
-                            TrackRunBox trun = truns.get(j);
-                            for (int k = 0; k < trun.getEntries().size(); k++) {
-                                TrackRunBox.Entry trunEntry = trun.getEntries().get(k);
-                                SampleFlags sf = null;
-                                if (k == 0 && trun.isFirstSampleFlagsPresent()) {
-                                    sf = trun.getFirstSampleFlags();
-                                } else if (trun.isSampleFlagsPresent()) {
-                                    sf = trunEntry.getSampleFlags();
-                                } else {
-                                    List<MovieExtendsBox> mvexs = isoFile.getMovieBox().getBoxes(MovieExtendsBox.class);
-                                    for (MovieExtendsBox mvex : mvexs) {
-                                        List<TrackExtendsBox> trexs = mvex.getBoxes(TrackExtendsBox.class);
-                                        for (TrackExtendsBox trex : trexs) {
-                                            if (trex.getTrackId() == track.getTrackMetaData().getTrackId()) {
-                                                sf = trex.getDefaultSampleFlags();
-                                            }
+                randomAccessPoints.add((MovieFragmentBox) box, offset);
+            }
+            offset += box.getSize();
+        }
+        return createTfra(track, randomAccessPoints.entries);
+    }
+
+    /**
+     * Creates a 'tfra' - track fragment random access box for the given track from its random
+     * access points.
+     *
+     * @param track   the concerned track
+     * @param entries the random access points of the track in file order
+     * @return a track fragment random access box.
+     */
+    protected Box createTfra(Track track, List<TrackFragmentRandomAccessBox.Entry> entries) {
+        TrackFragmentRandomAccessBox tfra = new TrackFragmentRandomAccessBox();
+        tfra.setVersion(1); // use long offsets and times
+        tfra.setEntries(entries);
+        tfra.setTrackId(track.getTrackMetaData().getTrackId());
+        return tfra;
+    }
+
+    /**
+     * The random access points of one track, collected from the 'moof' boxes of a file in file
+     * order.
+     */
+    private static class RandomAccessPoints {
+        private final Track track;
+        private final MovieBox moov;
+        private final List<TrackFragmentRandomAccessBox.Entry> entries = new LinkedList<>();
+        private long duration = 0;
+
+        RandomAccessPoints(Track track, MovieBox moov) {
+            this.track = track;
+            this.moov = moov;
+        }
+
+        /**
+         * @param moof   the next 'moof' of the file
+         * @param offset the position of the 'moof' in the file
+         */
+        void add(MovieFragmentBox moof, long offset) {
+            List<TrackFragmentBox> trafs = moof.getBoxes(TrackFragmentBox.class);
+            for (int i = 0; i < trafs.size(); i++) {
+                TrackFragmentBox traf = trafs.get(i);
+                if (traf.getTrackFragmentHeaderBox().getTrackId() == track.getTrackMetaData().getTrackId()) {
+                    // here we are at the offset required for the current entry.
+                    List<TrackRunBox> truns = traf.getBoxes(TrackRunBox.class);
+                    for (int j = 0; j < truns.size(); j++) {
+                        List<TrackFragmentRandomAccessBox.Entry> offset2timeEntriesThisTrun = new LinkedList<>();
+                        TrackRunBox trun = truns.get(j);
+                        for (int k = 0; k < trun.getEntries().size(); k++) {
+                            TrackRunBox.Entry trunEntry = trun.getEntries().get(k);
+                            SampleFlags sf = null;
+                            if (k == 0 && trun.isFirstSampleFlagsPresent()) {
+                                sf = trun.getFirstSampleFlags();
+                            } else if (trun.isSampleFlagsPresent()) {
+                                sf = trunEntry.getSampleFlags();
+                            } else {
+                                List<MovieExtendsBox> mvexs = moov.getBoxes(MovieExtendsBox.class);
+                                for (MovieExtendsBox mvex : mvexs) {
+                                    List<TrackExtendsBox> trexs = mvex.getBoxes(TrackExtendsBox.class);
+                                    for (TrackExtendsBox trex : trexs) {
+                                        if (trex.getTrackId() == track.getTrackMetaData().getTrackId()) {
+                                            sf = trex.getDefaultSampleFlags();
                                         }
                                     }
-
-                                }
-                                if (sf == null) {
-                                    throw new RuntimeException("Could not find any SampleFlags to indicate random access or not");
-                                }
-                                if (sf.getSampleDependsOn() == 2) {
-                                    offset2timeEntriesThisTrun.add(new TrackFragmentRandomAccessBox.Entry(
-                                            duration,
-                                            offset,
-                                            i + 1, j + 1, k + 1));
                                 }
-                                duration += trunEntry.getSampleDuration();
+
                             }
-                            if (offset2timeEntriesThisTrun.size() == trun.getEntries().size() && trun.getEntries().size() > 0) {
-                                // Oooops every sample seems to be random access sample
-                                // is this an audio track? I don't care.
-                                // I just use the first for trun sample for tfra random access
-                                offset2timeEntries.add(offset2timeEntriesThisTrun.get(0));
-                            } else {
-                                offset2timeEntries.addAll(offset2timeEntriesThisTrun);
+                            if (sf == null) {
+                                throw new RuntimeException("Could not find any SampleFlags to indicate random access or not");
+                            }
+                            if (sf.getSampleDependsOn() == 2) {
+                                offset2timeEntriesThisTrun.add(new TrackFragmentRandomAccessBox.Entry(
+                                        duration,
+                                        offset,
+                                        i + 1, j + 1, k + 1));
                             }
+                            duration += trunEntry.getSampleDuration();
+                        }
+                        if (offset2timeEntriesThisTrun.size() == trun.getEntries().size() && trun.getEntries().size() > 0) {
+                            // Oooops every sample seems to be random access sample
+                            // is this an audio track? I don't care.
+                            // I just use the first for trun sample for tfra random access
+                            entries.add(offset2timeEntriesThisTrun.get(0));
+                        } else {
+                            entries.addAll(offset2timeEntriesThisTrun);
                         }
                     }
                 }
             }
-
-
-            offset += box.getSize();
         }
-        tfra.setEntries(offset2timeEntries);
-        tfra.setTrackId(track.getTrackMetaData().getTrackId());
-        return tfra;
     }
 
     /**
@@ -601,9 +901,25 @@ public class FragmentedMp4Builder implements Mp4Builder {
      * @return a complete 'mfra' box
      */
     protected Box createMfra(Movie movie, IsoFile isoFile) {
-        MovieFragmentRandomAccessBox mfra = new MovieFragmentRandomAccessBox();
+        List<Box> tfras = new ArrayList<>();
         for (Track track : movie.getTracks()) {
-            mfra.addBox(createTfra(track, isoFile));
+            tfras.add(createTfra(track, isoFile));
+        }
+        return createMfra(movie, tfras);
+    }
+
+    /**
+     * Creates a 'mfra' - movie fragment random access box from the 'tfra' boxes of the movie's
+     * tracks and adds the 'mfro'.
+     *
+     * @param movie concerned movie
+     * @param tfras a 'tfra' for each track of the movie
+     * @return a complete 'mfra' box
+     */
+    protected Box createMfra(Movie movie, List<Box> tfras) {
+        MovieFragmentRandomAccessBox mfra = new MovieFragmentRandomAccessBox();
+        for (Box tfra : tfras) {
+            mfra.addBox(tfra);
         }
 
         MovieFragmentRandomAccessOffsetBox mfro = new MovieFragmentRandomAccessOffsetBox();
@@ -21,6 +21,7 @@ import com.googlecode.mp4parser.authoring.Movie;
 import com.googlecode.mp4parser.authoring.Mp4TrackImpl;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
@@ -29,7 +30,9 @@ import java.util.List;
  */
 public class MovieCreator {
     public static Movie build(ReadableByteChannel channel) throws IOException {
-        IsoFile isoFile = new IsoFile(channel);
+        // Files are only scanned, the tracks then read what they need from moov (and moof).
+        IsoFile isoFile = channel instanceof FileChannel ?
+                new IsoFile((FileChannel) channel, true) : new IsoFile(channel);
         Movie m = new Movie();
         List<TrackBox> trackBoxes = isoFile.getMovieBox().getBoxes(TrackBox.class);
         for (TrackBox trackBox : trackBoxes) {
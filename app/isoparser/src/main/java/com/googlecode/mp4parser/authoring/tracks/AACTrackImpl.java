@@ -32,13 +32,12 @@ import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.DecoderConfigDescrip
 import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.ESDescriptor;
 import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.SLConfigDescriptor;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -86,53 +85,65 @@ public class AACTrackImpl extends AbstractTrack {
     long maxBitRate;
     long avgBitRate;
 
-    private BufferedInputStream inputStream;
     private List<ByteBuffer> samples;
-    boolean readSamples = false;
     List<TimeToSampleBox.Entry> stts;
     private String lang = "und";
 
 
     public AACTrackImpl(InputStream inputStream, String lang) throws IOException {
         this.lang = lang;
-        parse(inputStream);
+        parse(FrameIndex.readFully(inputStream), null, 0);
      }
 
     public AACTrackImpl(InputStream inputStream) throws IOException {
-        parse(inputStream);
+        parse(FrameIndex.readFully(inputStream), null, 0);
      }
 
-    private void parse(InputStream inputStream) throws IOException {
-        this.inputStream = new BufferedInputStream(inputStream);
-        stts = new LinkedList<>();
+    /**
+     * Creates the track from an ADTS file without reading it into memory. The file is mapped
+     * and the samples are slices of the mapping. The channel must stay open as long as the
+     * track is used.
+     *
+     * @param fileChannel the ADTS stream
+     * @param lang        the track's language
+     */
+    public AACTrackImpl(FileChannel fileChannel, String lang) throws IOException {
+        this.lang = lang;
+        parse(FrameIndex.map(fileChannel), fileChannel, fileChannel.position());
+    }
 
-        if (!readVariables()) {
+    public AACTrackImpl(FileChannel fileChannel) throws IOException {
+        parse(FrameIndex.map(fileChannel), fileChannel, fileChannel.position());
+    }
+
+    private void parse(ByteBuffer data, FileChannel fileChannel, long position) throws IOException {
+        if (!readVariables(data)) {
             throw new IOException();
         }
 
-        samples = new LinkedList<>();
-        if (!readSamples()) {
+        FrameIndex frames = FrameIndex.build(data, new AdtsFrameParser());
+        if (frames.getFrameCount() == 0) {
             throw new IOException();
         }
+        samples = frames.getSamples(fileChannel, position);
+        stts = frames.getDecodingTimeEntries();
 
         double packetsPerSecond = (double)samplerate / 1024.0;
         double duration = samples.size() / packetsPerSecond;
 
+        // the bitrate over the last second, i.e. the last (int) packetsPerSecond samples
+        int window = (int) packetsPerSecond;
         long dataSize = 0;
-        LinkedList<Integer> queue = new LinkedList<>();
-        for (int i = 0; i < samples.size(); i++) {
-            int size = samples.get(i).capacity();
+        int currSize = 0;
+        for (int i = 0; i < frames.getFrameCount(); i++) {
+            int size = frames.getSampleSize(i);
             dataSize += size;
-            queue.add(size);
-            while (queue.size() > packetsPerSecond) {
-                queue.pop();
+            currSize += size;
+            if (i >= window) {
+                currSize -= frames.getSampleSize(i - window);
             }
-            if (queue.size() == (int) packetsPerSecond) {
-                int currSize = 0;
-                for (int j = 0 ; j < queue.size(); j++) {
-                    currSize += queue.get(j);
-                }
-                double currBitrate = 8.0 * currSize / queue.size() * packetsPerSecond;
+            if (i >= window - 1) {
+                double currBitrate = 8.0 * currSize / window * packetsPerSecond;
                 if (currBitrate > maxBitRate) {
                     maxBitRate = (int)currBitrate;
                 }
@@ -174,8 +185,7 @@ public class AACTrackImpl extends AbstractTrack {
 
         descriptor.setDecoderConfigDescriptor(decoderConfigDescriptor);
 
-        ByteBuffer data = descriptor.serialize();
-        esds.setData(data);
+        esds.setData(descriptor.serialize());
         audioSampleEntry.addBox(esds);
         sampleDescriptionBox.addBox(audioSampleEntry);
 
@@ -225,15 +235,11 @@ public class AACTrackImpl extends AbstractTrack {
         return null;
     }
 
-    private boolean readVariables() throws IOException {
-        byte[] data = new byte[100];
-        inputStream.mark(100);
-        if (100 != inputStream.read(data, 0, 100)) {
+    private boolean readVariables(ByteBuffer data) throws IOException {
+        if (data.remaining() < 100) {
             return false;
         }
-        inputStream.reset(); // Rewind
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        BitReaderBuffer brb = new BitReaderBuffer(bb);
+        BitReaderBuffer brb = new BitReaderBuffer(data.duplicate());
         int syncword = brb.readBits(12);
         if (syncword != 0xfff) {
             return false;
@@ -252,44 +258,32 @@ public class AACTrackImpl extends AbstractTrack {
         return true;
     }
 
-    private boolean readSamples() throws IOException {
-        if (readSamples) {
-            return true;
+    /**
+     * ADTS frames, the samples are the raw data blocks without the ADTS header.
+     */
+    private static class AdtsFrameParser implements FrameIndex.FrameParser {
+        public int getHeaderSize() {
+            return 7;
         }
 
-        readSamples = true;
-        byte[] header = new byte[15];
-        boolean ret = false;
-        inputStream.mark(15);
-        while (-1 != inputStream.read(header)) {
-            ret = true;
-            ByteBuffer bb = ByteBuffer.wrap(header);
-            inputStream.reset();
-            BitReaderBuffer brb = new BitReaderBuffer(bb);
-            int syncword = brb.readBits(12);
-            if (syncword != 0xfff) {
-                return false;
+        public int getFrameSize(ByteBuffer data, int position) {
+            if ((data.get(position) & 0xff) != 0xff || (data.get(position + 1) & 0xf0) != 0xf0) {
+                return -1;
             }
-            brb.readBits(3);
-            int protectionAbsent = brb.readBits(1);
-            brb.readBits(14);
-            int frameSize = brb.readBits(13);
-            int bufferFullness = brb.readBits(11);
-            int noBlocks = brb.readBits(2);
-            int used = (int) Math.ceil(brb.getPosition() / 8.0);
-            if (protectionAbsent == 0) {
-                used += 2;
-            }
-            inputStream.skip(used);
-            frameSize -= used;
-//            System.out.println("Size: " + frameSize + " fullness: " + bufferFullness + " no blocks: " + noBlocks);
-            byte[] data = new byte[frameSize];
-            inputStream.read(data);
-            samples.add(ByteBuffer.wrap(data));
-            stts.add(new TimeToSampleBox.Entry(1, 1024));
-            inputStream.mark(15);
+            int frameSize = (data.get(position + 3) & 0x03) << 11 |
+                    (data.get(position + 4) & 0xff) << 3 |
+                    (data.get(position + 5) & 0xe0) >> 5;
+            return frameSize >= getSampleOffset(data, position) ? frameSize : -1;
+        }
+
+        public int getSampleOffset(ByteBuffer data, int position) {
+            // two more bytes of CRC if protection_absent is not set
+            return (data.get(position + 1) & 0x01) == 0 ? 9 : 7;
+        }
+
+        public int getDuration(ByteBuffer data, int position) {
+            return 1024;
         }
-        return ret;
     }
 
     @Override
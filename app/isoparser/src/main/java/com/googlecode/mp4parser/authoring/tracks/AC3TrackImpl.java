@@ -16,8 +16,8 @@ import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.BitReaderBuffer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 
 public class AC3TrackImpl extends AbstractTrack {
@@ -38,27 +38,40 @@ public class AC3TrackImpl extends AbstractTrack {
     int frameSize;
     int[][][][] bitRateAndFrameSizeTable;
 
-    private InputStream inputStream;
     private List<ByteBuffer> samples;
-    boolean readSamples = false;
     List<TimeToSampleBox.Entry> stts;
     private String lang = "und";
 
     public AC3TrackImpl(InputStream fin, String lang) throws IOException {
         this.lang = lang;
-        parse(fin);
+        parse(FrameIndex.readFully(fin), null, 0);
     }
 
     public AC3TrackImpl(InputStream fin) throws IOException {
-        parse(fin);
+        parse(FrameIndex.readFully(fin), null, 0);
     }
 
-    private void parse(InputStream fin) throws IOException {
-        inputStream = fin;
+    /**
+     * Creates the track from an AC-3 file without reading it into memory. The file is mapped
+     * and the samples are slices of the mapping. The channel must stay open as long as the
+     * track is used.
+     *
+     * @param fileChannel the AC-3 elementary stream
+     * @param lang        the track's language
+     */
+    public AC3TrackImpl(FileChannel fileChannel, String lang) throws IOException {
+        this.lang = lang;
+        parse(FrameIndex.map(fileChannel), fileChannel, fileChannel.position());
+    }
+
+    public AC3TrackImpl(FileChannel fileChannel) throws IOException {
+        parse(FrameIndex.map(fileChannel), fileChannel, fileChannel.position());
+    }
+
+    private void parse(ByteBuffer data, FileChannel fileChannel, long position) throws IOException {
         bitRateAndFrameSizeTable = new int[19][2][3][2];
-        stts = new LinkedList<>();
         initBitRateAndFrameSizeTable();
-        if (!readVariables()) {
+        if (!readVariables(data)) {
             throw new IOException();
         }
 
@@ -86,10 +99,12 @@ public class AC3TrackImpl extends AbstractTrack {
         trackMetaData.setLanguage(lang);
         trackMetaData.setTimescale(samplerate); // Audio tracks always use samplerate as timescale
 
-        samples = new LinkedList<>();
-        if (!readSamples()) {
+        FrameIndex frames = FrameIndex.build(data, new SyncFrameParser());
+        if (frames.getFrameCount() == 0) {
             throw new IOException();
         }
+        samples = frames.getSamples(fileChannel, position);
+        stts = frames.getDecodingTimeEntries();
     }
 
 
@@ -134,15 +149,11 @@ public class AC3TrackImpl extends AbstractTrack {
         return null;
     }
 
-    private boolean readVariables() throws IOException {
-        byte[] data = new byte[100];
-        inputStream.mark(100);
-        if (100 != inputStream.read(data, 0, 100)) {
+    private boolean readVariables(ByteBuffer data) throws IOException {
+        if (data.remaining() < 100) {
             return false;
         }
-        inputStream.reset(); // Rewind
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        BitReaderBuffer brb = new BitReaderBuffer(bb);
+        BitReaderBuffer brb = new BitReaderBuffer(data.duplicate());
         int syncword = brb.readBits(16);
         if (syncword != 0xb77) {
             return false;
@@ -248,26 +259,33 @@ public class AC3TrackImpl extends AbstractTrack {
         return true;
     }
 
-    private boolean readSamples() throws IOException {
-        if (readSamples) {
-            return true;
+    /**
+     * AC-3 syncframes, the frame size follows from frmsizecod and the stream's fscod.
+     */
+    private class SyncFrameParser implements FrameIndex.FrameParser {
+        public int getHeaderSize() {
+            return 5;
         }
-        readSamples = true;
-        byte[] header = new byte[5];
-        boolean ret = false;
-        inputStream.mark(5);
-        while (-1 != inputStream.read(header)) {
-            ret = true;
-            int frmsizecode = header[4] & 63;
-            calcBitrateAndFrameSize(frmsizecode);
-            inputStream.reset();
-            byte[] data = new byte[frameSize];
-            inputStream.read(data);
-            samples.add(ByteBuffer.wrap(data));
-            stts.add(new TimeToSampleBox.Entry(1, 1536));
-            inputStream.mark(5);
+
+        public int getFrameSize(ByteBuffer data, int position) {
+            if (data.get(position) != 0x0b || data.get(position + 1) != 0x77) {
+                return -1;
+            }
+            int frmsizecode = (data.get(position + 4) & 63) >>> 1;
+            if (frmsizecode > 18) {
+                return -1;
+            }
+            int frameSize = 2 * bitRateAndFrameSizeTable[frmsizecode][data.get(position + 4) & 1][fscod][1];
+            return frameSize > 0 ? frameSize : -1;
+        }
+
+        public int getSampleOffset(ByteBuffer data, int position) {
+            return 0;
+        }
+
+        public int getDuration(ByteBuffer data, int position) {
+            return 1536;
         }
-        return ret;
     }
 
     private void initBitRateAndFrameSizeTable() {
@@ -23,21 +23,25 @@ import com.coremedia.iso.boxes.SubSampleInformationBox;
 import com.coremedia.iso.boxes.TimeToSampleBox;
 import com.coremedia.iso.boxes.sampleentry.AudioSampleEntry;
 import com.googlecode.mp4parser.authoring.AbstractTrack;
+import com.googlecode.mp4parser.authoring.FileBackedSamples;
 import com.googlecode.mp4parser.authoring.Track;
 import com.googlecode.mp4parser.authoring.TrackMetaData;
 import com.googlecode.mp4parser.boxes.mp4.ESDescriptorBox;
 import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.DecoderConfigDescriptor;
 import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.ESDescriptor;
+import com.googlecode.mp4parser.util.CompositionTimeTable;
+import com.googlecode.mp4parser.util.TimeToSampleTable;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -47,6 +51,12 @@ import java.util.List;
 public class AppendTrack extends AbstractTrack {
     Track[] tracks;
     SampleDescriptionBox stsd;
+    // the merged views are built on first use, the appended tracks must not change afterwards
+    private AppendedSampleList samples;
+    private List<TimeToSampleBox.Entry> decodingTimeEntries;
+    private List<CompositionTimeToSample.Entry> compositionTimeEntries;
+    private long[] syncSamples;
+    private List<SampleDependencyTypeBox.Entry> sampleDependencies;
 
     public AppendTrack(Track... tracks) throws IOException {
         this.tracks = tracks;
@@ -242,101 +252,71 @@ public class AppendTrack extends AbstractTrack {
     }
 
 
-    public List<ByteBuffer> getSamples() {
-        ArrayList<ByteBuffer> lists = new ArrayList<>();
-
-        for (Track track : tracks) {
-            lists.addAll(track.getSamples());
+    public synchronized List<ByteBuffer> getSamples() {
+        if (samples == null) {
+            samples = new AppendedSampleList(tracks);
         }
-
-        return lists;
+        return samples;
     }
 
     public SampleDescriptionBox getSampleDescriptionBox() {
         return stsd;
     }
 
-    public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
-        if (tracks[0].getDecodingTimeEntries() != null && !tracks[0].getDecodingTimeEntries().isEmpty()) {
-            List<long[]> lists = new LinkedList<>();
+    public synchronized List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
+        if (decodingTimeEntries == null && tracks[0].getDecodingTimeEntries() != null && !tracks[0].getDecodingTimeEntries().isEmpty()) {
+            List<TimeToSampleBox.Entry> returnDecodingEntries = new ArrayList<>();
             for (Track track : tracks) {
-                lists.add(TimeToSampleBox.blowupTimeToSamples(track.getDecodingTimeEntries()));
-            }
-
-            LinkedList<TimeToSampleBox.Entry> returnDecodingEntries = new LinkedList<>();
-            for (long[] list : lists) {
-                for (long nuDecodingTime : list) {
-                    if (returnDecodingEntries.isEmpty() || returnDecodingEntries.getLast().getDelta() != nuDecodingTime) {
-                        TimeToSampleBox.Entry e = new TimeToSampleBox.Entry(1, nuDecodingTime);
-                        returnDecodingEntries.add(e);
-                    } else {
-                        TimeToSampleBox.Entry e = returnDecodingEntries.getLast();
-                        e.setCount(e.getCount() + 1);
-                    }
-                }
+                TimeToSampleTable table = TimeToSampleTable.of(track.getDecodingTimeEntries());
+                table.appendEntries(returnDecodingEntries, 0, table.getSampleCount());
             }
-            return returnDecodingEntries;
-        } else {
-            return null;
+            decodingTimeEntries = returnDecodingEntries;
         }
+        return decodingTimeEntries;
     }
 
-    public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
-        if (tracks[0].getCompositionTimeEntries() != null && !tracks[0].getCompositionTimeEntries().isEmpty()) {
-            List<int[]> lists = new LinkedList<>();
+    public synchronized List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
+        if (compositionTimeEntries == null && tracks[0].getCompositionTimeEntries() != null && !tracks[0].getCompositionTimeEntries().isEmpty()) {
+            List<CompositionTimeToSample.Entry> returnCompositionEntries = new ArrayList<>();
             for (Track track : tracks) {
-                lists.add(CompositionTimeToSample.blowupCompositionTimes(track.getCompositionTimeEntries()));
+                CompositionTimeTable table = CompositionTimeTable.of(track.getCompositionTimeEntries());
+                table.appendEntries(returnCompositionEntries, 0, table.getSampleCount());
             }
-            LinkedList<CompositionTimeToSample.Entry> compositionTimeEntries = new LinkedList<>();
-            for (int[] list : lists) {
-                for (int compositionTime : list) {
-                    if (compositionTimeEntries.isEmpty() || compositionTimeEntries.getLast().getOffset() != compositionTime) {
-                        CompositionTimeToSample.Entry e = new CompositionTimeToSample.Entry(1, compositionTime);
-                        compositionTimeEntries.add(e);
-                    } else {
-                        CompositionTimeToSample.Entry e = compositionTimeEntries.getLast();
-                        e.setCount(e.getCount() + 1);
-                    }
-                }
-            }
-            return compositionTimeEntries;
-        } else {
-            return null;
+            compositionTimeEntries = returnCompositionEntries;
         }
+        return compositionTimeEntries;
     }
 
-    public long[] getSyncSamples() {
-        if (tracks[0].getSyncSamples() != null && tracks[0].getSyncSamples().length > 0) {
+    public synchronized long[] getSyncSamples() {
+        if (syncSamples == null && tracks[0].getSyncSamples() != null && tracks[0].getSyncSamples().length > 0) {
             int numSyncSamples = 0;
             for (Track track : tracks) {
                 numSyncSamples += track.getSyncSamples().length;
             }
             long[] returnSyncSamples = new long[numSyncSamples];
 
+            AppendedSampleList appendedSamples = (AppendedSampleList) getSamples();
             int pos = 0;
-            long samplesBefore = 0;
-            for (Track track : tracks) {
-                for (long l : track.getSyncSamples()) {
+            for (int i = 0; i < tracks.length; i++) {
+                long samplesBefore = appendedSamples.getFirstSample(i);
+                for (long l : tracks[i].getSyncSamples()) {
                     returnSyncSamples[pos++] = samplesBefore + l;
                 }
-                samplesBefore += track.getSamples().size();
             }
-            return returnSyncSamples;
-        } else {
-            return null;
+            syncSamples = returnSyncSamples;
         }
+        return syncSamples;
     }
 
-    public List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
-        if (tracks[0].getSampleDependencies() != null && !tracks[0].getSampleDependencies().isEmpty()) {
-            List<SampleDependencyTypeBox.Entry> list = new LinkedList<>();
+    public synchronized List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
+        if (sampleDependencies == null && tracks[0].getSampleDependencies() != null && !tracks[0].getSampleDependencies().isEmpty()) {
+            List<SampleDependencyTypeBox.Entry> list = new ArrayList<>();
             for (Track track : tracks) {
                 list.addAll(track.getSampleDependencies());
             }
-            return list;
-        } else {
-            return null;
+            sampleDependencies = list;
         }
+        return sampleDependencies;
     }
 
     public TrackMetaData getTrackMetaData() {
@@ -355,4 +335,87 @@ public class AppendTrack extends AbstractTrack {
         return tracks[0].getSubsampleInformationBox();
     }
 
+    /**
+     * The samples of all tracks one after another. Nothing is copied, a sample is looked up in
+     * the list of the track it belongs to. Samples that are located in a file stay locatable.
+     */
+    private static class AppendedSampleList extends AbstractList<ByteBuffer> implements FileBackedSamples {
+        private final List<ByteBuffer>[] lists;
+        // the samples of lists[i] are firstSamples[i] until firstSamples[i + 1] (exclusive)
+        private final int[] firstSamples;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        AppendedSampleList(Track[] tracks) {
+            lists = new List[tracks.length];
+            firstSamples = new int[tracks.length + 1];
+            for (int i = 0; i < tracks.length; i++) {
+                lists[i] = tracks[i].getSamples();
+                firstSamples[i + 1] = firstSamples[i] + lists[i].size();
+            }
+        }
+
+        int getFirstSample(int list) {
+            return firstSamples[list];
+        }
+
+        @Override
+        public ByteBuffer get(int index) {
+            int list = findList(index);
+            return lists[list].get(index - firstSamples[list]);
+        }
+
+        @Override
+        public int size() {
+            return firstSamples[lists.length];
+        }
+
+        public long getSampleSize(int index) {
+            int list = findList(index);
+            if (lists[list] instanceof FileBackedSamples) {
+                return ((FileBackedSamples) lists[list]).getSampleSize(index - firstSamples[list]);
+            }
+            return lists[list].get(index - firstSamples[list]).limit();
+        }
+
+        public FileChannel getSampleChannel(int index) {
+            int list = findList(index);
+            if (lists[list] instanceof FileBackedSamples) {
+                return ((FileBackedSamples) lists[list]).getSampleChannel(index - firstSamples[list]);
+            }
+            return null;
+        }
+
+        /**
+         * @return the position of the sample in its channel or -1 if the sample is not located
+         *         in a file, i.e. {@link #getSampleChannel(int)} returns <code>null</code>
+         */
+        public long getSamplePosition(int index) {
+            int list = findList(index);
+            if (lists[list] instanceof FileBackedSamples) {
+                return ((FileBackedSamples) lists[list]).getSamplePosition(index - firstSamples[list]);
+            }
+            return -1;
+        }
+
+        /**
+         * @return the last list starting at or before <code>index</code>, empty lists start
+         *         where the next one starts and are skipped that way
+         */
+        private int findList(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int low = 0;
+            int high = lists.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (firstSamples[mid] <= index) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+    }
 }
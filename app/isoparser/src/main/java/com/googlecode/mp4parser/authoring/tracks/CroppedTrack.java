@@ -22,11 +22,15 @@ import com.coremedia.iso.boxes.SampleDescriptionBox;
 import com.coremedia.iso.boxes.SubSampleInformationBox;
 import com.coremedia.iso.boxes.TimeToSampleBox;
 import com.googlecode.mp4parser.authoring.AbstractTrack;
+import com.googlecode.mp4parser.authoring.FileBackedSamples;
 import com.googlecode.mp4parser.authoring.Track;
 import com.googlecode.mp4parser.authoring.TrackMetaData;
+import com.googlecode.mp4parser.util.CompositionTimeTable;
+import com.googlecode.mp4parser.util.TimeToSampleTable;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
 import java.util.List;
 
 /**
@@ -42,6 +46,8 @@ public class CroppedTrack extends AbstractTrack {
     private int fromSample;
     private int toSample;
     private long[] syncSampleArray;
+    private List<TimeToSampleBox.Entry> decodingTimeEntries;
+    private List<CompositionTimeToSample.Entry> compositionTimeEntries;
 
     public CroppedTrack(Track origTrack, long fromSample, long toSample) {
         this.origTrack = origTrack;
@@ -52,73 +58,41 @@ public class CroppedTrack extends AbstractTrack {
     }
 
     public List<ByteBuffer> getSamples() {
-        return origTrack.getSamples().subList(fromSample, toSample);
+        List<ByteBuffer> samples = origTrack.getSamples();
+        if (samples instanceof FileBackedSamples) {
+            return new CroppedSampleList(samples, fromSample, toSample);
+        }
+        return samples.subList(fromSample, toSample);
     }
 
     public SampleDescriptionBox getSampleDescriptionBox() {
         return origTrack.getSampleDescriptionBox();
     }
 
-    public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
-        if (origTrack.getDecodingTimeEntries() != null && !origTrack.getDecodingTimeEntries().isEmpty()) {
-            // todo optimize! too much long is allocated but then not used
-            long[] decodingTimes = TimeToSampleBox.blowupTimeToSamples(origTrack.getDecodingTimeEntries());
-            long[] nuDecodingTimes = new long[toSample - fromSample];
-            System.arraycopy(decodingTimes, fromSample, nuDecodingTimes, 0, toSample - fromSample);
-
-            LinkedList<TimeToSampleBox.Entry> returnDecodingEntries = new LinkedList<>();
-
-            for (long nuDecodingTime : nuDecodingTimes) {
-                if (returnDecodingEntries.isEmpty() || returnDecodingEntries.getLast().getDelta() != nuDecodingTime) {
-                    TimeToSampleBox.Entry e = new TimeToSampleBox.Entry(1, nuDecodingTime);
-                    returnDecodingEntries.add(e);
-                } else {
-                    TimeToSampleBox.Entry e = returnDecodingEntries.getLast();
-                    e.setCount(e.getCount() + 1);
-                }
-            }
-            return returnDecodingEntries;
-        } else {
-            return null;
+    synchronized public List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
+        if (decodingTimeEntries == null && origTrack.getDecodingTimeEntries() != null && !origTrack.getDecodingTimeEntries().isEmpty()) {
+            decodingTimeEntries = TimeToSampleTable.of(origTrack.getDecodingTimeEntries()).getEntries(fromSample, toSample);
         }
+        return decodingTimeEntries;
     }
 
-    public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
-        if (origTrack.getCompositionTimeEntries() != null && !origTrack.getCompositionTimeEntries().isEmpty()) {
-            int[] compositionTime = CompositionTimeToSample.blowupCompositionTimes(origTrack.getCompositionTimeEntries());
-            int[] nuCompositionTimes = new int[toSample - fromSample];
-            System.arraycopy(compositionTime, fromSample, nuCompositionTimes, 0, toSample - fromSample);
-
-            LinkedList<CompositionTimeToSample.Entry> returnDecodingEntries = new LinkedList<>();
-
-            for (int nuDecodingTime : nuCompositionTimes) {
-                if (returnDecodingEntries.isEmpty() || returnDecodingEntries.getLast().getOffset() != nuDecodingTime) {
-                    CompositionTimeToSample.Entry e = new CompositionTimeToSample.Entry(1, nuDecodingTime);
-                    returnDecodingEntries.add(e);
-                } else {
-                    CompositionTimeToSample.Entry e = returnDecodingEntries.getLast();
-                    e.setCount(e.getCount() + 1);
-                }
-            }
-            return returnDecodingEntries;
-        } else {
-            return null;
+    synchronized public List<CompositionTimeToSample.Entry> getCompositionTimeEntries() {
+        if (compositionTimeEntries == null && origTrack.getCompositionTimeEntries() != null && !origTrack.getCompositionTimeEntries().isEmpty()) {
+            compositionTimeEntries = CompositionTimeTable.of(origTrack.getCompositionTimeEntries()).getEntries(fromSample, toSample);
         }
+        return compositionTimeEntries;
     }
 
     synchronized public long[] getSyncSamples() {
         if (this.syncSampleArray == null) {
-            if (origTrack.getSyncSamples() != null && origTrack.getSyncSamples().length > 0) {
-                List<Long> syncSamples = new LinkedList<>();
-                for (long l : origTrack.getSyncSamples()) {
-                    if (l >= fromSample && l < toSample) {
-                        syncSamples.add(l - fromSample);
-                    }
-                }
-                syncSampleArray = new long[syncSamples.size()];
+            long[] origSyncSamples = origTrack.getSyncSamples();
+            if (origSyncSamples != null && origSyncSamples.length > 0) {
+                // sync samples are ascending, the ones in range are a contiguous part of them
+                int from = firstIndexNotBelow(origSyncSamples, fromSample);
+                int to = firstIndexNotBelow(origSyncSamples, toSample);
+                syncSampleArray = new long[Math.max(0, to - from)];
                 for (int i = 0; i < syncSampleArray.length; i++) {
-                    syncSampleArray[i] = syncSamples.get(i);
-
+                    syncSampleArray[i] = origSyncSamples[from + i] - fromSample;
                 }
                 return syncSampleArray;
             } else {
@@ -129,6 +103,20 @@ public class CroppedTrack extends AbstractTrack {
         }
     }
 
+    private static int firstIndexNotBelow(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     public List<SampleDependencyTypeBox.Entry> getSampleDependencies() {
         if (origTrack.getSampleDependencies() != null && !origTrack.getSampleDependencies().isEmpty()) {
             return origTrack.getSampleDependencies().subList(fromSample, toSample);
@@ -153,4 +141,52 @@ public class CroppedTrack extends AbstractTrack {
         return origTrack.getSubsampleInformationBox();
     }
 
-}
\ No newline at end of file
+    /**
+     * A sub list that keeps the samples locatable in their file.
+     */
+    private static class CroppedSampleList extends AbstractList<ByteBuffer> implements FileBackedSamples {
+        private final List<ByteBuffer> samples;
+        private final FileBackedSamples fileBackedSamples;
+        private final int fromSample;
+        private final int toSample;
+
+        CroppedSampleList(List<ByteBuffer> samples, int fromSample, int toSample) {
+            if (fromSample < 0 || toSample > samples.size() || fromSample > toSample) {
+                throw new IndexOutOfBoundsException("Samples " + fromSample + " to " + toSample + " of " + samples.size());
+            }
+            this.samples = samples;
+            this.fileBackedSamples = (FileBackedSamples) samples;
+            this.fromSample = fromSample;
+            this.toSample = toSample;
+        }
+
+        @Override
+        public ByteBuffer get(int index) {
+            return samples.get(translate(index));
+        }
+
+        @Override
+        public int size() {
+            return toSample - fromSample;
+        }
+
+        public long getSampleSize(int index) {
+            return fileBackedSamples.getSampleSize(translate(index));
+        }
+
+        public FileChannel getSampleChannel(int index) {
+            return fileBackedSamples.getSampleChannel(translate(index));
+        }
+
+        public long getSamplePosition(int index) {
+            return fileBackedSamples.getSamplePosition(translate(index));
+        }
+
+        private int translate(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return fromSample + index;
+        }
+    }
+}
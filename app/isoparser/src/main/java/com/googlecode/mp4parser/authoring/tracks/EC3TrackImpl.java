@@ -13,10 +13,10 @@ import com.googlecode.mp4parser.authoring.TrackMetaData;
 import com.googlecode.mp4parser.boxes.EC3SpecificBox;
 import com.googlecode.mp4parser.boxes.mp4.objectdescriptors.BitReaderBuffer;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,27 +38,41 @@ public class EC3TrackImpl extends AbstractTrack {
 
     List<BitStreamInfo> entries = new LinkedList<>();
 
-    private BufferedInputStream inputStream;
     private List<ByteBuffer> samples;
-    List<TimeToSampleBox.Entry> stts = new LinkedList<>();
+    List<TimeToSampleBox.Entry> stts;
     private String lang = "und";
 
     public EC3TrackImpl(InputStream fin, String lang) throws IOException {
         this.lang = lang;
-        parse(fin);
+        parse(FrameIndex.readFully(fin), null, 0);
     }
 
     public EC3TrackImpl(InputStream fin) throws IOException {
-        parse(fin);
+        parse(FrameIndex.readFully(fin), null, 0);
     }
 
-    private void parse(InputStream fin) throws IOException {
-        inputStream = new BufferedInputStream(fin);
+    /**
+     * Creates the track from an E-AC-3 file without reading it into memory. The file is
+     * mapped and the samples are slices of the mapping. The channel must stay open as long as
+     * the track is used.
+     *
+     * @param fileChannel the E-AC-3 elementary stream
+     * @param lang        the track's language
+     */
+    public EC3TrackImpl(FileChannel fileChannel, String lang) throws IOException {
+        this.lang = lang;
+        parse(FrameIndex.map(fileChannel), fileChannel, fileChannel.position());
+    }
+
+    public EC3TrackImpl(FileChannel fileChannel) throws IOException {
+        parse(FrameIndex.map(fileChannel), fileChannel, fileChannel.position());
+    }
 
+    private void parse(ByteBuffer data, FileChannel fileChannel, long position) throws IOException {
         boolean done = false;
-        inputStream.mark(10000);
+        int offset = data.position();
         while (!done) {
-            BitStreamInfo bsi = readVariables();
+            BitStreamInfo bsi = readVariables(data, offset);
             if (bsi == null) {
                 throw new IOException();
             }
@@ -69,13 +83,10 @@ public class EC3TrackImpl extends AbstractTrack {
             }
             if (!done) {
                 entries.add(bsi);
-                long skipped = inputStream.skip(bsi.frameSize);
-                assert skipped == bsi.frameSize;
+                offset += bsi.frameSize;
             }
         }
 
-        inputStream.reset();
-
         if (entries.size() == 0) {
             throw new IOException();
         }
@@ -124,10 +135,10 @@ public class EC3TrackImpl extends AbstractTrack {
         trackMetaData.setLanguage(lang);
         trackMetaData.setTimescale(samplerate); // Audio tracks always use samplerate as timescale
 
-        samples = new LinkedList<>();
-        if (!readSamples()) {
-            throw new IOException();
-        }
+        // a sample is one frame of every substream
+        FrameIndex frames = FrameIndex.build(data, new SampleParser());
+        samples = frames.getSamples(fileChannel, position);
+        stts = frames.getDecodingTimeEntries();
     }
 
 
@@ -172,14 +183,12 @@ public class EC3TrackImpl extends AbstractTrack {
         return null;
     }
 
-    private BitStreamInfo readVariables() throws IOException {
-        byte[] data = new byte[200];
-        inputStream.mark(200);
-        if (200 != inputStream.read(data, 0, 200)) {
+    private BitStreamInfo readVariables(ByteBuffer data, int position) throws IOException {
+        if (data.limit() - position < 200) {
             return null;
         }
-        inputStream.reset(); // Rewind
-        ByteBuffer bb = ByteBuffer.wrap(data);
+        ByteBuffer bb = data.duplicate();
+        bb.position(position);
         BitReaderBuffer brb = new BitReaderBuffer(bb);
         int syncword = brb.readBits(16);
         if (syncword != 0xb77) {
@@ -395,19 +404,25 @@ public class EC3TrackImpl extends AbstractTrack {
         return entry;
     }
 
-    private boolean readSamples() throws IOException {
-        int read = frameSize;
-        boolean ret = false;
-        while (frameSize == read) {
-            ret = true;
-            byte[] data = new byte[frameSize];
-            read = inputStream.read(data);
-            if (read == frameSize) {
-                samples.add(ByteBuffer.wrap(data));
-                stts.add(new TimeToSampleBox.Entry(1, 1536));
-            }
+    /**
+     * Samples of the summed up frame size of all substreams.
+     */
+    private class SampleParser implements FrameIndex.FrameParser {
+        public int getHeaderSize() {
+            return 2;
+        }
+
+        public int getFrameSize(ByteBuffer data, int position) {
+            return data.get(position) == 0x0b && data.get(position + 1) == 0x77 ? frameSize : -1;
+        }
+
+        public int getSampleOffset(ByteBuffer data, int position) {
+            return 0;
+        }
+
+        public int getDuration(ByteBuffer data, int position) {
+            return 1536;
         }
-        return ret;
     }
 
     public static class BitStreamInfo extends EC3SpecificBox.Entry {
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.authoring.tracks;
+
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.googlecode.mp4parser.authoring.FileBackedSamples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offsets, sizes and durations of the frames of an audio elementary stream (ADTS, AC-3,
+ * E-AC-3) in parallel primitive arrays. The samples are slices of the stream, nothing is
+ * copied per frame.
+ * <p/>
+ * Large streams are cut into chunks that are indexed concurrently. A chunk starts at the first
+ * position that is followed by a chain of valid frame headers, the chunks are then stitched
+ * together: a chunk whose first frame is not where the previous chunk's last frame ends is
+ * indexed again from there.
+ */
+final class FrameIndex {
+    // below this size a single thread is faster than splitting the stream
+    private static final int MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+    // frame headers that must follow a position before a chunk starts there
+    private static final int SYNC_CONFIRMATIONS = 4;
+
+    /**
+     * Reads the headers of one kind of frame.
+     */
+    interface FrameParser {
+        /**
+         * @return number of bytes needed to read a frame header
+         */
+        int getHeaderSize();
+
+        /**
+         * @param data     the stream
+         * @param position absolute position in <code>data</code> with at least
+         *                 {@link #getHeaderSize()} bytes remaining
+         * @return the size of the frame including its header or <code>-1</code> if there is no
+         *         valid frame header at <code>position</code>
+         */
+        int getFrameSize(ByteBuffer data, int position);
+
+        /**
+         * @return number of bytes at the start of the frame that are not part of the sample
+         */
+        int getSampleOffset(ByteBuffer data, int position);
+
+        /**
+         * @return duration of the frame in samples of the audio
+         */
+        int getDuration(ByteBuffer data, int position);
+    }
+
+    private final ByteBuffer data;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final int[] durations;
+
+    private FrameIndex(ByteBuffer data, int[] offsets, int[] sizes, int[] durations) {
+        this.data = data;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.durations = durations;
+    }
+
+    /**
+     * Indexes the frames from the position of <code>data</code> up to its limit or the first
+     * position that does not start a frame, whatever comes first. A truncated frame at the end
+     * of the stream is dropped.
+     *
+     * @param data   the stream, must not be modified as long as the index is used
+     * @param parser reads the frame headers
+     * @return the index
+     */
+    static FrameIndex build(ByteBuffer data, FrameParser parser) throws IOException {
+        int start = data.position();
+        int end = data.limit();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunks = Math.min(threads * 4, (end - start) / MIN_CHUNK_SIZE);
+        if (threads < 2 || chunks < 2) {
+            return build(data, Arrays.asList(walk(data, parser, start, end)));
+        }
+        List<Callable<Chunk>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int from = chunkStart(start, end, chunks, i);
+            int until = chunkStart(start, end, chunks, i + 1);
+            if (i == 0) {
+                tasks.add(() -> walk(data, parser, from, until));
+            } else {
+                tasks.add(() -> walk(data, parser, findSync(data, parser, from, until), until));
+            }
+        }
+
+        List<Chunk> stitched = new ArrayList<>(chunks);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks));
+        List<Future<Chunk>> futures = new ArrayList<>(chunks);
+        try {
+            for (Callable<Chunk> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            int position = start;
+            for (int i = 0; i < chunks; i++) {
+                Chunk chunk = getChunk(futures.get(i));
+                if (chunk.from != position || !chunk.complete) {
+                    // the chunk synchronized on something that only looks like a frame
+                    chunk = walk(data, parser, position, Math.max(position, chunkStart(start, end, chunks, i + 1)));
+                }
+                stitched.add(chunk);
+                if (!chunk.complete) {
+                    break;
+                }
+                position = chunk.to;
+            }
+        } finally {
+            // the chunks after a truncation or an interruption are not needed anymore
+            for (Future<Chunk> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        return build(data, stitched);
+    }
+
+    private static int chunkStart(int start, int end, int chunks, int chunk) {
+        return start + (int) ((long) (end - start) * chunk / chunks);
+    }
+
+    private static FrameIndex build(ByteBuffer data, List<Chunk> chunks) {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            count += chunk.count;
+        }
+        int[] offsets = new int[count];
+        int[] sizes = new int[count];
+        int[] durations = new int[count];
+        int i = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.offsets, 0, offsets, i, chunk.count);
+            System.arraycopy(chunk.sizes, 0, sizes, i, chunk.count);
+            System.arraycopy(chunk.durations, 0, durations, i, chunk.count);
+            i += chunk.count;
+        }
+        return new FrameIndex(data, offsets, sizes, durations);
+    }
+
+    /**
+     * Finds the first position in <code>from</code> until <code>until</code> that starts a chain
+     * of {@link #SYNC_CONFIRMATIONS} frames or a chain that reaches the end of the stream.
+     *
+     * @return the position or <code>until</code> if there is none
+     */
+    private static int findSync(ByteBuffer data, FrameParser parser, int from, int until) {
+        for (int position = from; position < until; position++) {
+            int next = position;
+            int frames = 0;
+            while (frames < SYNC_CONFIRMATIONS && data.limit() - next >= parser.getHeaderSize()) {
+                int frameSize = parser.getFrameSize(data, next);
+                if (frameSize <= 0) {
+                    break;
+                }
+                next += frameSize;
+                frames++;
+            }
+            if (frames == SYNC_CONFIRMATIONS || (frames > 0 && data.limit() - next < parser.getHeaderSize())) {
+                return position;
+            }
+        }
+        return until;
+    }
+
+    /**
+     * Indexes the frames that start at <code>from</code> until the first frame that starts at
+     * or after <code>until</code>. The chunk is incomplete if there is no valid frame header
+     * before.
+     */
+    private static Chunk walk(ByteBuffer data, FrameParser parser, int from, int until) {
+        Chunk chunk = new Chunk(from, Math.max(16, (until - from) / 256));
+        int position = from;
+        while (position < until && data.limit() - position >= parser.getHeaderSize()) {
+            int frameSize = parser.getFrameSize(data, position);
+            if (frameSize <= 0 || frameSize > data.limit() - position) {
+                // not a frame or a truncated one, the stream ends here
+                chunk.complete = false;
+                break;
+            }
+            int sampleOffset = parser.getSampleOffset(data, position);
+            chunk.add(position + sampleOffset, frameSize - sampleOffset, parser.getDuration(data, position));
+            position += frameSize;
+        }
+        chunk.to = position;
+        return chunk;
+    }
+
+    private static Chunk getChunk(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing frames");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    int getFrameCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the size of the frame's sample, i.e. without the bytes skipped by
+     *         {@link FrameParser#getSampleOffset(ByteBuffer, int)}
+     */
+    int getSampleSize(int frame) {
+        return sizes[frame];
+    }
+
+    /**
+     * @return decoding time entries, adjacent frames with equal duration share an entry
+     */
+    List<TimeToSampleBox.Entry> getDecodingTimeEntries() {
+        List<TimeToSampleBox.Entry> stts = new LinkedList<>();
+        TimeToSampleBox.Entry last = null;
+        for (int duration : durations) {
+            if (last != null && last.getDelta() == duration) {
+                last.setCount(last.getCount() + 1);
+            } else {
+                last = new TimeToSampleBox.Entry(1, duration);
+                stts.add(last);
+            }
+        }
+        return stts;
+    }
+
+    /**
+     * @param fileChannel the channel <code>data</code> was mapped from or <code>null</code>
+     * @param position    the channel position <code>data</code> starts at
+     * @return the samples as slices of the stream
+     */
+    List<ByteBuffer> getSamples(FileChannel fileChannel, long position) {
+        return new FrameSampleList(fileChannel, position - data.position());
+    }
+
+    private class FrameSampleList extends AbstractList<ByteBuffer> implements FileBackedSamples {
+        private final FileChannel fileChannel;
+        private final long base;
+
+        FrameSampleList(FileChannel fileChannel, long base) {
+            this.fileChannel = fileChannel;
+            this.base = base;
+        }
+
+        @Override
+        public ByteBuffer get(int index) {
+            ByteBuffer sample = data.duplicate();
+            sample.limit(offsets[index] + sizes[index]);
+            sample.position(offsets[index]);
+            return sample.slice();
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+
+        public long getSampleSize(int index) {
+            return sizes[index];
+        }
+
+        public FileChannel getSampleChannel(int index) {
+            return fileChannel;
+        }
+
+        public long getSamplePosition(int index) {
+            return base + offsets[index];
+        }
+    }
+
+    private static class Chunk {
+        final int from;
+        int to;
+        boolean complete = true;
+        int[] offsets;
+        int[] sizes;
+        int[] durations;
+        int count;
+
+        Chunk(int from, int capacity) {
+            this.from = from;
+            offsets = new int[capacity];
+            sizes = new int[capacity];
+            durations = new int[capacity];
+        }
+
+        void add(int offset, int size, int duration) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+                durations = Arrays.copyOf(durations, count * 2);
+            }
+            offsets[count] = offset;
+            sizes[count] = size;
+            durations[count] = duration;
+            count++;
+        }
+    }
+
+    /**
+     * Reads the rest of the stream into a buffer.
+     */
+    static ByteBuffer readFully(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[Math.max(inputStream.available(), 8192)];
+        int size = 0;
+        int read;
+        while ((read = inputStream.read(buffer, size, buffer.length - size)) != -1) {
+            size += read;
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        return ByteBuffer.wrap(buffer, 0, size);
+    }
+
+    /**
+     * Maps the channel from its position to its end.
+     */
+    static ByteBuffer map(FileChannel fileChannel) throws IOException {
+        long size = fileChannel.size() - fileChannel.position();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The stream is too large to be mapped (" + size + " bytes)");
+        }
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, fileChannel.position(), size);
+    }
+}
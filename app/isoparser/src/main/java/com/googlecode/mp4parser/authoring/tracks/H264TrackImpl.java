@@ -19,7 +19,9 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,8 +37,7 @@ public class H264TrackImpl extends AbstractTrack {
     TrackMetaData trackMetaData = new TrackMetaData();
     SampleDescriptionBox sampleDescriptionBox;
 
-    private ReaderWrapper reader;
-    private List<ByteBuffer> samples;
+    private NalSampleList samples;
     boolean readSamples = false;
 
     List<TimeToSampleBox.Entry> stts;
@@ -53,8 +54,6 @@ public class H264TrackImpl extends AbstractTrack {
     private int height;
     private int timescale;
     private int frametick;
-    private int currentScSize;
-    private int prevScSize;
 
     private SEIMessage seiMessage;
     int frameNrInGop = 0;
@@ -63,33 +62,60 @@ public class H264TrackImpl extends AbstractTrack {
 
     public H264TrackImpl(InputStream inputStream, String lang, long timescale) throws IOException {
         this.lang = lang;
-        if (timescale > 1000) {
-            this.timescale = (int)timescale; //e.g. 23976
-            frametick = 1000;
-            determineFrameRate = false;
-        } else {
-            throw new IllegalArgumentException("Timescale must be specified in milliseconds!");
-        }
-        parse(inputStream);
+        setTimescale(timescale);
+        parse(FrameIndex.readFully(inputStream));
     }
 
     public H264TrackImpl(InputStream inputStream, String lang) throws IOException {
         this.lang = lang;
-        parse(inputStream);
+        parse(FrameIndex.readFully(inputStream));
     }
 
     public H264TrackImpl(InputStream inputStream) throws IOException {
-        parse(inputStream);
+        parse(FrameIndex.readFully(inputStream));
+    }
+
+    /**
+     * Creates the track from an Annex B file without reading it into memory. The file is
+     * mapped and the samples are assembled from the mapped NAL units when they are requested.
+     * The channel must stay open as long as the track is used.
+     *
+     * @param fileChannel the H.264 elementary stream
+     * @param lang        the track's language
+     * @param timescale   the timescale in milliseconds (e.g. 23976)
+     */
+    public H264TrackImpl(FileChannel fileChannel, String lang, long timescale) throws IOException {
+        this.lang = lang;
+        setTimescale(timescale);
+        parse(FrameIndex.map(fileChannel));
+    }
+
+    public H264TrackImpl(FileChannel fileChannel, String lang) throws IOException {
+        this.lang = lang;
+        parse(FrameIndex.map(fileChannel));
+    }
+
+    public H264TrackImpl(FileChannel fileChannel) throws IOException {
+        parse(FrameIndex.map(fileChannel));
+    }
+
+    private void setTimescale(long timescale) {
+        if (timescale > 1000) {
+            this.timescale = (int)timescale; //e.g. 23976
+            frametick = 1000;
+            determineFrameRate = false;
+        } else {
+            throw new IllegalArgumentException("Timescale must be specified in milliseconds!");
+        }
     }
 
-    private void parse(InputStream inputStream) throws IOException {
-        this.reader = new ReaderWrapper(inputStream);
+    private void parse(ByteBuffer data) throws IOException {
         stts = new LinkedList<>();
         ctts = new LinkedList<>();
         sdtp = new LinkedList<>();
         stss = new LinkedList<>();
 
-        samples = new LinkedList<>();
+        samples = new NalSampleList(data.slice());
         if (!readSamples()) {
             throw new IOException();
         }
@@ -202,27 +228,35 @@ public class H264TrackImpl extends AbstractTrack {
         return true;
     }
 
-    private boolean findNextStartcode() throws IOException {
-        byte[] test = {-1, -1, -1, -1};
-
-        int c;
-        while ((c = reader.read()) != -1) {
-            test[0] = test[1];
-            test[1] = test[2];
-            test[2] = test[3];
-            test[3] = (byte) c;
-            if (test[0] == 0 && test[1] == 0 && test[2] == 0 && test[3] == 1) {
-                prevScSize = currentScSize;
-                currentScSize = 4;
-                return true;
+    /**
+     * Finds the next start code (0x000001 or 0x00000001) that lies entirely within
+     * <code>from</code> and the buffer's limit.
+     *
+     * @return the position of the start code's first byte, its size in the upper half or
+     *         <code>-1</code> if there is none
+     */
+    private static long findNextStartcode(ByteBuffer data, int from) {
+        int limit = data.limit();
+        int i = from + 2;
+        while (i < limit) {
+            if (data.get(i) == 1 && data.get(i - 1) == 0 && data.get(i - 2) == 0) {
+                if (i - 3 >= from && data.get(i - 3) == 0) {
+                    return (4L << 32) | (i - 3);
+                }
+                return (3L << 32) | (i - 2);
             }
-            if (test[0] == 0 && test[1] == 0 && test[2] == 1) {
-                prevScSize = currentScSize;
-                currentScSize = 3;
-                return true;
+            // a start code needs two zero bytes, skip whole words without any
+            if (i + 8 <= limit && !hasZeroByte(data.getLong(i))) {
+                i += 8;
+            } else {
+                i++;
             }
         }
-        return false;
+        return -1;
+    }
+
+    private static boolean hasZeroByte(long word) {
+        return ((word - 0x0101010101010101L) & ~word & 0x8080808080808080L) != 0;
     }
 
     private enum NALActions {
@@ -236,96 +270,145 @@ public class H264TrackImpl extends AbstractTrack {
 
         readSamples = true;
 
+        ByteBuffer data = samples.data;
+        long startcode = findNextStartcode(data, 0);
+        if (startcode == -1) {
+            return true;
+        }
+        int pos = (int) startcode + (int) (startcode >>> 32);
 
-        findNextStartcode();
-        reader.mark();
-        long pos = reader.getPos();
+        int frameNr = 0;
 
-        ArrayList<byte[]> buffered = new ArrayList<>();
+        // the data after the last start code is not known to be complete and dropped
+        while ((startcode = findNextStartcode(data, pos)) != -1) {
+            int size = (int) startcode - pos;
+            if (size > 0) {
+                ByteBuffer nal = (ByteBuffer) data.duplicate().position(pos).limit(pos + size);
+                nal = nal.slice();
+                int type = nal.get(0);
+                int nal_ref_idc = (type >> 5) & 3;
+                int nal_unit_type = type & 0x1f;
+                LOG.fine("Found startcode at " + (pos - 4) + " Type: " + nal_unit_type + " ref idc: " + nal_ref_idc + " (size " + size + ")");
+                NALActions action = handleNALUnit(nal_ref_idc, nal_unit_type, nal);
+                switch (action) {
+                    case IGNORE:
+                        break;
+
+                    case BUFFER:
+                        samples.addNal(pos, size);
+                        break;
+
+                    case STORE:
+                        int stdpValue = 22;
+                        frameNr++;
+                        samples.addNal(pos, size);
+                        samples.closeSample();
+                        boolean IdrPicFlag = false;
+                        if (nal_unit_type == 5) {
+                            stdpValue += 16;
+                            IdrPicFlag = true;
+                        }
+                        SliceHeader sh = new SliceHeader(nal, seqParameterSet, pictureParameterSet, IdrPicFlag);
+                        if (sh.slice_type == SliceHeader.SliceType.B) {
+                            stdpValue += 4;
+                        }
+                        LOG.fine("Adding sample with size " + samples.getSampleSize(samples.size() - 1) + " and header " + sh);
+                        stts.add(new TimeToSampleBox.Entry(1, frametick));
+                        if (nal_unit_type == 5) { // IDR Picture
+                            stss.add(frameNr);
+                        }
+                        if (seiMessage.n_frames == 0) {
+                            frameNrInGop = 0;
+                        }
+                        int offset = 0;
+                        if (seiMessage.clock_timestamp_flag) {
+                            offset = seiMessage.n_frames - frameNrInGop;
+                        } else if (seiMessage.removal_delay_flag) {
+                            offset = seiMessage.dpb_removal_delay / 2;
+                        }
+                        ctts.add(new CompositionTimeToSample.Entry(1, offset * frametick));
+                        sdtp.add(new SampleDependencyTypeBox.Entry(stdpValue));
+                        frameNrInGop++;
+                        break;
 
-        int frameNr = 0;
+                    case END:
+                        return true;
 
-        while (findNextStartcode()) {
-            long newpos = reader.getPos();
-            int size = (int) (newpos - pos - prevScSize);
-            reader.reset();
-            byte[] data = new byte[size ];
-            reader.read(data);
-            int type = data[0];
-            int nal_ref_idc = (type >> 5) & 3;
-            int nal_unit_type = type & 0x1f;
-            LOG.fine("Found startcode at " + (pos -4)  + " Type: " + nal_unit_type + " ref idc: " + nal_ref_idc + " (size " + size + ")");
-            NALActions action = handleNALUnit(nal_ref_idc, nal_unit_type, data);
-            switch (action) {
-                case IGNORE:
-                    break;
 
-                case BUFFER:
-                    buffered.add(data);
-                    break;
+                }
+            }
+            pos = (int) startcode + (int) (startcode >>> 32);
+        }
+        return true;
+    }
 
-                case STORE:
-                    int stdpValue = 22;
-                    frameNr++;
-                    buffered.add(data);
-                    ByteBuffer bb = createSample(buffered);
-                    boolean IdrPicFlag = false;
-                    if (nal_unit_type == 5) {
-                        stdpValue += 16;
-                        IdrPicFlag = true;
-                    }
-                    ByteArrayInputStream bs = cleanBuffer(buffered.get(buffered.size() - 1));
-                    SliceHeader sh = new SliceHeader(bs, seqParameterSet, pictureParameterSet, IdrPicFlag);
-                    if (sh.slice_type == SliceHeader.SliceType.B) {
-                        stdpValue += 4;
-                    }
-                    LOG.fine("Adding sample with size " + bb.capacity() + " and header " + sh);
-                    buffered.clear();
-                    samples.add(bb);
-                    stts.add(new TimeToSampleBox.Entry(1, frametick));
-                    if (nal_unit_type == 5) { // IDR Picture
-                        stss.add(frameNr);
-                    }
-                    if (seiMessage.n_frames == 0) {
-                        frameNrInGop = 0;
-                    }
-                    int offset = 0;
-                    if (seiMessage.clock_timestamp_flag) {
-                        offset = seiMessage.n_frames - frameNrInGop;
-                    } else if (seiMessage.removal_delay_flag) {
-                        offset = seiMessage.dpb_removal_delay / 2;
-                    }
-                    ctts.add(new CompositionTimeToSample.Entry(1, offset * frametick));
-                    sdtp.add(new SampleDependencyTypeBox.Entry(stdpValue));
-                    frameNrInGop++;
-                    break;
+    /**
+     * The samples as NAL units of the underlying buffer. Only positions and sizes are stored,
+     * a sample is put together with four byte NAL unit sizes instead of the start codes each
+     * time it is requested.
+     */
+    private static class NalSampleList extends AbstractList<ByteBuffer> {
+        private final ByteBuffer data;
+        private int[] nalPositions = new int[1024];
+        private int[] nalSizes = new int[1024];
+        private int nalCount;
+        // the NAL units of sample i are firstNals[i] until firstNals[i + 1] (exclusive)
+        private int[] firstNals = new int[1024];
+        private int sampleCount;
+
+        NalSampleList(ByteBuffer data) {
+            this.data = data;
+        }
 
-                case END:
-                    return true;
+        void addNal(int position, int size) {
+            if (nalCount == nalPositions.length) {
+                nalPositions = Arrays.copyOf(nalPositions, nalCount * 2);
+                nalSizes = Arrays.copyOf(nalSizes, nalCount * 2);
+            }
+            nalPositions[nalCount] = position;
+            nalSizes[nalCount] = size;
+            nalCount++;
+        }
 
+        /**
+         * Makes all NAL units added since the last call a sample.
+         */
+        void closeSample() {
+            if (sampleCount + 2 > firstNals.length) {
+                firstNals = Arrays.copyOf(firstNals, firstNals.length * 2);
+            }
+            sampleCount++;
+            firstNals[sampleCount] = nalCount;
+        }
 
+        int getSampleSize(int index) {
+            int size = 0;
+            for (int nal = firstNals[index]; nal < firstNals[index + 1]; nal++) {
+                size += nalSizes[nal] + 4;
             }
-            pos = newpos;
-            reader.seek(currentScSize);
-            reader.mark();
+            return size;
         }
-        return true;
-    }
 
-    private ByteBuffer createSample(List<byte[]> buffers) {
-        int outsize = 0;
-        for (int i = 0; i < buffers.size(); i++) {
-            outsize += buffers.get(i).length + 4;
+        @Override
+        public ByteBuffer get(int index) {
+            if (index < 0 || index >= sampleCount) {
+                throw new IndexOutOfBoundsException("Sample " + index + " of " + sampleCount);
+            }
+            ByteBuffer sample = ByteBuffer.allocate(getSampleSize(index));
+            ByteBuffer source = data.duplicate();
+            for (int nal = firstNals[index]; nal < firstNals[index + 1]; nal++) {
+                sample.putInt(nalSizes[nal]);
+                source.limit(nalPositions[nal] + nalSizes[nal]).position(nalPositions[nal]);
+                sample.put(source);
+            }
+            sample.rewind();
+            return sample;
         }
-        byte[] output = new byte[outsize];
 
-        ByteBuffer bb = ByteBuffer.wrap(output);
-        for (int i = 0; i < buffers.size(); i++) {
-            bb.putInt(buffers.get(i).length);
-            bb.put(buffers.get(i));
+        @Override
+        public int size() {
+            return sampleCount;
         }
-        bb.rewind();
-        return bb;
     }
 
     private ByteArrayInputStream cleanBuffer(byte[] data) {
@@ -347,7 +430,13 @@ public class H264TrackImpl extends AbstractTrack {
         return new ByteArrayInputStream(output, 0, outPos);
     }
 
-    private NALActions handleNALUnit(int nal_ref_idc, int nal_unit_type, byte[] data) throws IOException {
+    private static byte[] toArray(ByteBuffer nal) {
+        byte[] data = new byte[nal.remaining()];
+        nal.duplicate().get(data);
+        return data;
+    }
+
+    private NALActions handleNALUnit(int nal_ref_idc, int nal_unit_type, ByteBuffer nal) throws IOException {
         NALActions action;
         switch (nal_unit_type) {
             case 1:
@@ -359,13 +448,13 @@ public class H264TrackImpl extends AbstractTrack {
                 break;
 
             case 6:
-                seiMessage = new SEIMessage(cleanBuffer(data), seqParameterSet);
+                seiMessage = new SEIMessage(cleanBuffer(toArray(nal)), seqParameterSet);
                 action = NALActions.BUFFER;
                 break;
 
             case 9:
 //                printAccessUnitDelimiter(data);
-                int type = data[1] >> 5;
+                int type = nal.get(1) >> 5;
                 LOG.fine("Access unit delimiter type: " + type);
                 action = NALActions.BUFFER;
                 break;
@@ -373,6 +462,7 @@ public class H264TrackImpl extends AbstractTrack {
 
             case 7:
                 if (seqParameterSet == null) {
+                    byte[] data = toArray(nal);
                     ByteArrayInputStream is = cleanBuffer(data);
                     is.read();
                     seqParameterSet = SeqParameterSet.read(is);
@@ -384,6 +474,7 @@ public class H264TrackImpl extends AbstractTrack {
 
             case 8:
                 if (pictureParameterSet == null) {
+                    byte[] data = toArray(nal);
                     ByteArrayInputStream is = new ByteArrayInputStream(data);
                     is.read();
                     pictureParameterSet = PictureParameterSet.read(is);
@@ -446,8 +537,22 @@ public class H264TrackImpl extends AbstractTrack {
         public int delta_pic_order_cnt_bottom;
 
         public SliceHeader(InputStream is, SeqParameterSet sps, PictureParameterSet pps, boolean IdrPicFlag) throws IOException {
+            this(skipNalHeader(is), sps, pps, IdrPicFlag);
+        }
+
+        /**
+         * Parses the header of a slice NAL unit that still contains emulation prevention bytes.
+         */
+        public SliceHeader(ByteBuffer nal, SeqParameterSet sps, PictureParameterSet pps, boolean IdrPicFlag) throws IOException {
+            this(new CAVLCReader((ByteBuffer) nal.duplicate().position(nal.position() + 1), true), sps, pps, IdrPicFlag);
+        }
+
+        private static CAVLCReader skipNalHeader(InputStream is) throws IOException {
             is.read();
-            CAVLCReader reader = new CAVLCReader(is);
+            return new CAVLCReader(is);
+        }
+
+        private SliceHeader(CAVLCReader reader, SeqParameterSet sps, PictureParameterSet pps, boolean IdrPicFlag) throws IOException {
             first_mb_in_slice = reader.readUE("SliceHeader: first_mb_in_slice");
             switch (reader.readUE("SliceHeader: slice_type")) {
                 case 0:
@@ -516,54 +621,6 @@ public class H264TrackImpl extends AbstractTrack {
         }
     }
 
-    private class ReaderWrapper {
-        private InputStream inputStream;
-        private long pos = 0;
-
-        private long markPos = 0;
-
-
-        private ReaderWrapper(InputStream inputStream) {
-            this.inputStream = inputStream;
-        }
-
-        int read() throws IOException {
-            pos++;
-            return inputStream.read();
-        }
-
-        long read(byte[] data) throws IOException {
-            long read = inputStream.read(data);
-            pos += read;
-            return read;
-        }
-
-        long seek(int dist) throws IOException {
-            long seeked = inputStream.skip(dist);
-            pos += seeked;
-            return seeked;
-        }
-
-        public long getPos() {
-            return pos;
-        }
-
-        public void mark() {
-            int i = 1048576;
-            LOG.fine("Marking with " + i + " at " + pos);
-            inputStream.mark(i);
-            markPos = pos;
-        }
-
-
-        public void reset() throws IOException {
-            long diff = pos - markPos;
-            LOG.fine("Resetting to " + markPos + " (pos is " + pos + ") which makes the buffersize " + diff);
-            inputStream.reset();
-            pos = markPos;
-        }
-    }
-
     public class SEIMessage {
 
         int payloadType = 0;
@@ -27,11 +27,11 @@ import com.googlecode.mp4parser.authoring.AbstractTrack;
 import com.googlecode.mp4parser.authoring.TrackMetaData;
 import com.googlecode.mp4parser.boxes.threegpp26245.FontTableBox;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
@@ -43,13 +43,23 @@ import java.util.List;
 public class TextTrackImpl extends AbstractTrack {
     TrackMetaData trackMetaData = new TrackMetaData();
     SampleDescriptionBox sampleDescriptionBox;
-    List<Line> subs = new LinkedList<>();
+    List<Line> subs;
 
     public List<Line> getSubs() {
         return subs;
     }
 
     public TextTrackImpl() {
+        this(new ArrayList<Line>());
+    }
+
+    /**
+     * @param subs the subtitles in display order, e.g. as read by
+     *             {@link com.googlecode.mp4parser.srt.SrtParser}. Their texts are only
+     *             asked for when the samples are read.
+     */
+    public TextTrackImpl(List<Line> subs) {
+        this.subs = subs;
         sampleDescriptionBox = new SampleDescriptionBox();
         TextSampleEntry tx3g = new TextSampleEntry("tx3g");
         tx3g.setDataReferenceIndex(1);
@@ -72,28 +82,49 @@ public class TextTrackImpl extends AbstractTrack {
 
 
     public List<ByteBuffer> getSamples() {
-        List<ByteBuffer> samples = new LinkedList<>();
+        final int[] sampleLines = getSampleLines();
+        return new AbstractList<ByteBuffer>() {
+            @Override
+            public ByteBuffer get(int index) {
+                int line = sampleLines[index];
+                if (line == -1) {
+                    return ByteBuffer.wrap(new byte[]{0, 0});
+                }
+                byte[] text = subs.get(line).getText().getBytes(StandardCharsets.UTF_8);
+                ByteBuffer sample = ByteBuffer.allocate(2 + text.length);
+                sample.putShort((short) text.length);
+                sample.put(text);
+                sample.rewind();
+                return sample;
+            }
+
+            @Override
+            public int size() {
+                return sampleLines.length;
+            }
+        };
+    }
+
+    /**
+     * @return for each sample the index of the sub it shows or <code>-1</code> for the empty
+     *         samples that fill the gaps between subs
+     */
+    private int[] getSampleLines() {
+        int[] sampleLines = new int[subs.size() * 2];
+        int samples = 0;
         long lastEnd = 0;
+        int i = 0;
         for (Line sub : subs) {
-            long silentTime = sub.from - lastEnd;
+            long silentTime = sub.getFrom() - lastEnd;
             if (silentTime > 0) {
-                samples.add(ByteBuffer.wrap(new byte[]{0, 0}));
+                sampleLines[samples++] = -1;
             } else if (silentTime < 0) {
                 throw new Error("Subtitle display times may not intersect");
             }
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            DataOutputStream dos = new DataOutputStream(baos);
-            try {
-                dos.writeShort(sub.text.getBytes(StandardCharsets.UTF_8).length);
-                dos.write(sub.text.getBytes(StandardCharsets.UTF_8));
-                dos.close();
-            } catch (IOException e) {
-                throw new Error("VM is broken. Does not support UTF-8");
-            }
-            samples.add(ByteBuffer.wrap(baos.toByteArray()));
-            lastEnd = sub.to;
+            sampleLines[samples++] = i++;
+            lastEnd = sub.getTo();
         }
-        return samples;
+        return Arrays.copyOf(sampleLines, samples);
     }
 
     public SampleDescriptionBox getSampleDescriptionBox() {
@@ -104,14 +135,14 @@ public class TextTrackImpl extends AbstractTrack {
         List<TimeToSampleBox.Entry> stts = new LinkedList<>();
         long lastEnd = 0;
         for (Line sub : subs) {
-            long silentTime = sub.from - lastEnd;
+            long silentTime = sub.getFrom() - lastEnd;
             if (silentTime > 0) {
                 stts.add(new TimeToSampleBox.Entry(1, silentTime));
             } else if (silentTime < 0) {
                 throw new Error("Subtitle display times may not intersect");
             }
-            stts.add(new TimeToSampleBox.Entry(1, sub.to - sub.from));
-            lastEnd = sub.to;
+            stts.add(new TimeToSampleBox.Entry(1, sub.getTo() - sub.getFrom()));
+            lastEnd = sub.getTo();
         }
         return stts;
     }
@@ -7,7 +7,7 @@ import com.coremedia.iso.boxes.Box;
 import com.coremedia.iso.boxes.TrackHeaderBox;
 import com.coremedia.iso.boxes.fragment.TrackFragmentHeaderBox;
 import com.googlecode.mp4parser.AbstractFullBox;
-import com.googlecode.mp4parser.util.Path;
+import com.googlecode.mp4parser.util.CompiledBoxPath;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -21,6 +21,10 @@ import java.util.Objects;
 
 
 public abstract class AbstractSampleEncryptionBox extends AbstractFullBox {
+    private static final CompiledBoxPath TKHDS = CompiledBoxPath.compile("/moov[0]/trak/tkhd");
+    private static final CompiledBoxPath TENC = CompiledBoxPath.compile("../mdia[0]/minf[0]/stbl[0]/stsd[0]/enc.[0]/sinf[0]/schi[0]/tenc[0]");
+    private static final CompiledBoxPath UUID_TENC = CompiledBoxPath.compile("../mdia[0]/minf[0]/stbl[0]/stsd[0]/enc.[0]/sinf[0]/schi[0]/uuid[0]");
+
     int algorithmId = -1;
     int ivSize = -1;
     byte[] kid = {-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1};
@@ -48,12 +52,12 @@ public abstract class AbstractSampleEncryptionBox extends AbstractFullBox {
             kid = new byte[16];
             content.get(kid);
         } else {
-            List<Box> tkhds = Path.getPaths(this, "/moov[0]/trak/tkhd");
+            List<Box> tkhds = TKHDS.getAll(this);
             for (Box tkhd : tkhds) {
                 if (((TrackHeaderBox) tkhd).getTrackId() == this.getParent().getBoxes(TrackFragmentHeaderBox.class).get(0).getTrackId()) {
-                    AbstractTrackEncryptionBox tenc = (AbstractTrackEncryptionBox) Path.getPath(tkhd, "../mdia[0]/minf[0]/stbl[0]/stsd[0]/enc.[0]/sinf[0]/schi[0]/tenc[0]");
+                    AbstractTrackEncryptionBox tenc = (AbstractTrackEncryptionBox) TENC.getFirst(tkhd);
                     if (tenc == null) {
-                        tenc = (AbstractTrackEncryptionBox) Path.getPath(tkhd, "../mdia[0]/minf[0]/stbl[0]/stsd[0]/enc.[0]/sinf[0]/schi[0]/uuid[0]");
+                        tenc = (AbstractTrackEncryptionBox) UUID_TENC.getFirst(tkhd);
                     }
                     useThisIvSize = tenc.getDefaultIvSize();
                 }
@@ -21,19 +21,35 @@ OR OTHER DEALINGS IN THE SOFTWARE.
 package com.googlecode.mp4parser.h264.read;
 
 import com.googlecode.mp4parser.h264.CharCache;
+import com.googlecode.mp4parser.h264.Debug;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * A dummy implementation of H264 RBSP reading
+ * <p/>
+ * Bits are served from a 64 bit cache that is refilled a byte or, if possible, a whole word
+ * at a time. Readers created for a NAL unit remove the emulation prevention bytes
+ * (0x000003) while refilling.
  *
  * @author Stanislav Vitvitskiy
  */
 public class BitstreamReader {
-    private InputStream is;
-    private int curByte;
-    private int nextByte;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private final InputStream is;
+    private final ByteBuffer buffer;
+    private final boolean removeEmulationPrevention;
+    // the next cacheBits bits of the stream, most significant bit first, the rest is zero
+    private long cache;
+    private int cacheBits;
+    // number of zero bytes preceding the next byte of the source, emulation prevention only
+    private int zeros;
+    // bits read of the current byte, 8 once its last bit is read and until the next byte is
+    // touched
     int nBit;
     protected static int bitsRead;
 
@@ -41,8 +57,23 @@ public class BitstreamReader {
 
     public BitstreamReader(InputStream is) throws IOException {
         this.is = is;
-        curByte = is.read();
-        nextByte = is.read();
+        this.buffer = null;
+        this.removeEmulationPrevention = false;
+    }
+
+    /**
+     * Reads the buffer's remaining bytes.
+     *
+     * @param buffer                    the data, its position is not changed
+     * @param removeEmulationPrevention <code>true</code> if the buffer holds a NAL unit that
+     *                                  still contains emulation prevention bytes,
+     *                                  <code>false</code> if it's plain RBSP
+     */
+    public BitstreamReader(ByteBuffer buffer, boolean removeEmulationPrevention) {
+        this.is = null;
+        // slice() also makes it big endian
+        this.buffer = buffer.slice();
+        this.removeEmulationPrevention = removeEmulationPrevention;
     }
 
     /*
@@ -51,16 +82,21 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#read1Bit()
       */
     public int read1Bit() throws IOException {
-        if (nBit == 8) {
-            advance();
-            if (curByte == -1) {
+        if (cacheBits == 0) {
+            refill();
+            if (cacheBits == 0) {
+                if (nBit == 8) {
+                    nBit = 0;
+                }
                 return -1;
             }
         }
-        int res = (curByte >> (7 - nBit)) & 1;
-        nBit++;
+        int res = (int) (cache >>> 63);
+        consume(1);
 
-        debugBits.append(res == 0 ? '0' : '1');
+        if (Debug.debug) {
+            debugBits.append(res == 0 ? '0' : '1');
+        }
         ++bitsRead;
 
         return res;
@@ -75,20 +111,73 @@ public class BitstreamReader {
         if (n > 64)
             throw new IllegalArgumentException("Can not readByte more then 64 bit");
 
-        long val = 0;
+        if (n > 32) {
+            long high = readNBit(n - 32);
+            return high << 32 | readNBit(32);
+        }
+        if (n <= 0) {
+            return 0;
+        }
+        if (cacheBits < n) {
+            refill();
+            if (cacheBits < n) {
+                // end of stream, bit by bit like it always was
+                long val = 0;
+                for (int i = 0; i < n; i++) {
+                    val <<= 1;
+                    val |= read1Bit();
+                }
+                return val;
+            }
+        }
+        long val = cache >>> (64 - n);
+        consume(n);
 
-        for (int i = 0; i < n; i++) {
-            val <<= 1;
-            val |= read1Bit();
+        if (Debug.debug) {
+            appendDebugBits(val, n);
         }
+        bitsRead += n;
 
         return val;
     }
 
-    private void advance() throws IOException {
-        curByte = nextByte;
-        nextByte = is.read();
-        nBit = 0;
+    /**
+     * Reads an unsigned exp-Golomb code. The leading zeros are counted in the cache, codes
+     * that are not entirely in the cache are read bit by bit.
+     *
+     * @return the decoded value
+     * @throws IOException if the underlying stream fails
+     */
+    protected int readExpGolomb() throws IOException {
+        if (cacheBits < 64) {
+            refill();
+        }
+        int cnt = Long.numberOfLeadingZeros(cache);
+        int length = 2 * cnt + 1;
+        if (length <= cacheBits) {
+            long code = cache >>> (64 - length);
+            consume(length);
+
+            if (Debug.debug) {
+                appendDebugBits(code, length);
+            }
+            bitsRead += length;
+
+            return (int) (code - 1);
+        }
+
+        cnt = 0;
+        while (read1Bit() == 0)
+            cnt++;
+
+        int res = 0;
+        if (cnt > 0) {
+            long val = readNBit(cnt);
+
+            res = (int) ((1 << cnt) - 1 + val);
+        }
+
+        return res;
     }
 
     /*
@@ -97,13 +186,20 @@ public class BitstreamReader {
       * @see ua.org.jplayer.javcodec.h264.RBSPInputStream#readByte()
       */
     public int readByte() throws IOException {
-        if (nBit > 0) {
-            advance();
+        if (nBit > 0 && nBit < 8) {
+            // skip the rest of the current byte
+            consume(8 - nBit);
         }
-
-        int res = curByte;
-
-        advance();
+        nBit = 0;
+        if (cacheBits < 8) {
+            refill();
+            if (cacheBits < 8) {
+                return -1;
+            }
+        }
+        int res = (int) (cache >>> 56);
+        consume(8);
+        nBit = 0;
 
         return res;
     }
@@ -115,13 +211,20 @@ public class BitstreamReader {
       */
     public boolean moreRBSPData() throws IOException {
         if (nBit == 8) {
-            advance();
+            nBit = 0;
         }
-        int tail = 1 << (8 - nBit - 1);
-        int mask = ((tail << 1) - 1);
-        boolean hasTail = (curByte & mask) == tail;
+        if (cacheBits < 64) {
+            refill();
+        }
+        if (cacheBits == 0) {
+            return false;
+        }
+        // remaining bits of the current byte
+        int remaining = 8 - nBit;
+        long tail = 1L << (remaining - 1);
+        boolean hasTail = (cache >>> (64 - remaining)) == tail;
 
-        return !(curByte == -1 || (nextByte == -1 && hasTail));
+        return !(cacheBits == remaining && hasTail);
     }
 
     public long getBitPosition() {
@@ -146,29 +249,20 @@ public class BitstreamReader {
         if (n > 8)
             throw new IllegalArgumentException("N should be less then 8");
         if (nBit == 8) {
-            advance();
-            if (curByte == -1) {
-                return -1;
-            }
+            nBit = 0;
         }
-        int[] bits = new int[16 - nBit];
-
-        int cnt = 0;
-        for (int i = nBit; i < 8; i++) {
-            bits[cnt++] = (curByte >> (7 - i)) & 0x1;
+        if (cacheBits < 64) {
+            refill();
         }
-
-        for (int i = 0; i < 8; i++) {
-            bits[cnt++] = (nextByte >> (7 - i)) & 0x1;
+        if (cacheBits == 0) {
+            return -1;
         }
-
-        int result = 0;
-        for (int i = 0; i < n; i++) {
-            result <<= 1;
-            result |= bits[i];
+        if (n <= 0) {
+            return 0;
         }
-
-        return result;
+        // bits past the end of the stream read as ones
+        long bits = cacheBits < 64 ? cache | (-1L >>> cacheBits) : cache;
+        return (int) (bits >>> (64 - n));
     }
 
     /*
@@ -191,4 +285,60 @@ public class BitstreamReader {
     public int getCurBit() {
         return nBit;
     }
+
+    private void consume(int n) {
+        cache = n == 64 ? 0 : cache << n;
+        cacheBits -= n;
+        nBit = (nBit + n - 1) % 8 + 1;
+    }
+
+    /**
+     * Fills the cache with as many whole bytes as fit.
+     */
+    private void refill() throws IOException {
+        if (cacheBits == 0 && buffer != null && buffer.remaining() >= 8 && zeros < 2) {
+            long word = buffer.getLong(buffer.position());
+            // without zero bytes there is no emulation prevention to take care of
+            if (!removeEmulationPrevention || ((word - ONES) & ~word & HIGHS) == 0) {
+                buffer.position(buffer.position() + 8);
+                cache = word;
+                cacheBits = 64;
+                zeros = 0;
+                return;
+            }
+        }
+        while (cacheBits <= 56) {
+            int b = nextSourceByte();
+            if (b == -1) {
+                return;
+            }
+            cache |= (long) b << (56 - cacheBits);
+            cacheBits += 8;
+        }
+    }
+
+    private int nextSourceByte() throws IOException {
+        int b = readSourceByte();
+        if (removeEmulationPrevention) {
+            if (b == 3 && zeros >= 2) {
+                zeros = 0;
+                b = readSourceByte();
+            }
+            zeros = b == 0 ? zeros + 1 : 0;
+        }
+        return b;
+    }
+
+    private int readSourceByte() throws IOException {
+        if (buffer != null) {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+        return is.read();
+    }
+
+    private void appendDebugBits(long val, int n) {
+        for (int i = n - 1; i >= 0; i--) {
+            debugBits.append(((val >>> i) & 1) == 0 ? '0' : '1');
+        }
+    }
 }
\ No newline at end of file
@@ -25,7 +25,9 @@ import com.googlecode.mp4parser.h264.BTree;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
+import static com.googlecode.mp4parser.h264.Debug.debug;
 import static com.googlecode.mp4parser.h264.Debug.println;
 
 
@@ -35,10 +37,15 @@ public class CAVLCReader extends BitstreamReader {
         super(is);
     }
 
+    public CAVLCReader(ByteBuffer buffer, boolean removeEmulationPrevention) {
+        super(buffer, removeEmulationPrevention);
+    }
+
     public long readNBit(int n, String message) throws IOException {
         long val = readNBit(n);
 
-        trace(message, String.valueOf(val));
+        if (debug)
+            trace(message, String.valueOf(val));
 
         return val;
     }
@@ -51,18 +58,7 @@ public class CAVLCReader extends BitstreamReader {
      * @throws java.io.IOException
      */
     private int readUE() throws IOException {
-        int cnt = 0;
-        while (read1Bit() == 0)
-            cnt++;
-
-        int res = 0;
-        if (cnt > 0) {
-            long val = readNBit(cnt);
-
-            res = (int) ((1 << cnt) - 1 + val);
-        }
-
-        return res;
+        return readExpGolomb();
     }
 
     /*
@@ -74,7 +70,8 @@ public class CAVLCReader extends BitstreamReader {
     public int readUE(String message) throws IOException {
         int res = readUE();
 
-        trace(message, String.valueOf(res));
+        if (debug)
+            trace(message, String.valueOf(res));
 
         return res;
     }
@@ -85,7 +82,8 @@ public class CAVLCReader extends BitstreamReader {
         int sign = ((val & 0x1) << 1) - 1;
         val = ((val >> 1) + (val & 0x1)) * sign;
 
-        trace(message, String.valueOf(val));
+        if (debug)
+            trace(message, String.valueOf(val));
 
         return val;
     }
@@ -94,7 +92,8 @@ public class CAVLCReader extends BitstreamReader {
 
         boolean res = read1Bit() != 0;
 
-        trace(message, res ? "1" : "0");
+        if (debug)
+            trace(message, res ? "1" : "0");
 
         return res;
     }
@@ -140,7 +139,8 @@ public class CAVLCReader extends BitstreamReader {
             }
             Object i = bt.getValue();
             if (i != null) {
-                trace(message, i.toString());
+                if (debug)
+                    trace(message, i.toString());
                 return i;
             }
         }
@@ -151,7 +151,8 @@ public class CAVLCReader extends BitstreamReader {
         while (read1Bit() == 0)
             count++;
 
-        trace(message, String.valueOf(count));
+        if (debug)
+            trace(message, String.valueOf(count));
 
         return count;
     }
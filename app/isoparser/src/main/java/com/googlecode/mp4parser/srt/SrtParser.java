@@ -19,33 +19,52 @@ import com.googlecode.mp4parser.authoring.tracks.TextTrackImpl;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
 
 /**
  * Parses a .srt file and creates a Track for it.
+ * <p/>
+ * The file is read line by line through a small buffer. Only the display times of the subtitles
+ * and where their texts are end up in memory: positions in the file if it is read from a
+ * <code>FileChannel</code>, the texts themselves otherwise. The texts of a file are read again
+ * when the samples are, so the channel must stay open as long as the track is used.
  */
 public class SrtParser {
+    private static final int BUFFER_SIZE = 8192;
+
     public static TextTrackImpl parse(InputStream is) throws IOException {
-        LineNumberReader r = new LineNumberReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-        TextTrackImpl track = new TextTrackImpl();
-        String numberString;
-        while ((numberString = r.readLine()) != null) {
-            String timeString = r.readLine();
-            String lineString = "";
-            String s;
-            while (!((s = r.readLine()) == null || s.trim().equals(""))) {
-                lineString += s + "\n";
+        return parse(Channels.newChannel(is));
+    }
+
+    public static TextTrackImpl parse(ReadableByteChannel channel) throws IOException {
+        LineReader r = new LineReader(channel);
+        Subtitles subs = new Subtitles(channel instanceof FileChannel ? (FileChannel) channel : null);
+        while (r.readLine()) {
+            // the number of the subtitle is not needed
+            if (!r.readLine()) {
+                throw new IOException("Subtitle " + (subs.size() + 1) + " has no display time");
+            }
+            String timeString = r.getLine();
+            long textStart = r.getNextLineStart();
+            long textEnd = textStart;
+            subs.startText();
+            while (r.readLine() && !r.isBlank()) {
+                textEnd = r.getNextLineStart();
+                subs.appendText(r);
             }
 
             long startTime = parse(timeString.split("-->")[0]);
             long endTime = parse(timeString.split("-->")[1]);
 
-            track.getSubs().add(new TextTrackImpl.Line(startTime, endTime, lineString));
-
+            subs.add(startTime, endTime, textStart, textEnd);
         }
-        return track;
+        return new TextTrackImpl(subs);
     }
 
     private static long parse(String in) {
@@ -57,4 +76,238 @@ public class SrtParser {
         return hours * 60 * 60 * 1000 + minutes * 60 * 1000 + seconds * 1000 + millies;
 
     }
+
+    /**
+     * Splits a channel into lines ended by <code>\n</code>, <code>\r</code> or
+     * <code>\r\n</code> like <code>BufferedReader.readLine()</code>. Works on the UTF-8 bytes,
+     * neither byte of a line break is ever part of a multi-byte character.
+     */
+    private static class LineReader {
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // channel position of the first byte in the buffer
+        private long bufferStart;
+        private boolean eof;
+        // current line within the buffer: [lineStart, lineEnd), the next line starts at next
+        private int lineStart;
+        private int lineEnd;
+        private int next;
+
+        LineReader(ReadableByteChannel channel) throws IOException {
+            this.channel = channel;
+            if (channel instanceof FileChannel) {
+                bufferStart = ((FileChannel) channel).position();
+            }
+            buffer.flip();
+        }
+
+        /**
+         * @return <code>false</code> at the end of the channel
+         */
+        boolean readLine() throws IOException {
+            int position = next;
+            while (true) {
+                while (position < buffer.limit()) {
+                    byte b = buffer.get(position);
+                    if (b == '\n' || b == '\r') {
+                        if (b == '\r' && position + 1 == buffer.limit() && !eof) {
+                            // can't tell \r from \r\n yet
+                            position = fill(position);
+                            continue;
+                        }
+                        lineStart = next;
+                        lineEnd = position;
+                        next = position + 1;
+                        if (b == '\r' && next < buffer.limit() && buffer.get(next) == '\n') {
+                            next++;
+                        }
+                        return true;
+                    }
+                    position++;
+                }
+                if (eof) {
+                    if (next == buffer.limit()) {
+                        return false;
+                    }
+                    // the last line has no line break
+                    lineStart = next;
+                    lineEnd = buffer.limit();
+                    next = buffer.limit();
+                    return true;
+                }
+                position = fill(position);
+            }
+        }
+
+        /**
+         * Drops the lines before the current one and reads more of the channel.
+         *
+         * @return <code>position</code> after the buffer has been moved
+         */
+        private int fill(int position) throws IOException {
+            int shift = next;
+            buffer.position(shift);
+            buffer.compact();
+            bufferStart += shift;
+            next = 0;
+            position -= shift;
+            if (!buffer.hasRemaining()) {
+                // a line longer than the buffer
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            if (channel.read(buffer) == -1) {
+                eof = true;
+            }
+            buffer.flip();
+            return position;
+        }
+
+        String getLine() {
+            return new String(buffer.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return whether the line is empty after <code>String.trim()</code>
+         */
+        boolean isBlank() {
+            for (int i = lineStart; i < lineEnd; i++) {
+                // bytes of multi-byte characters are all negative
+                if (buffer.get(i) > ' ' || buffer.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long getNextLineStart() {
+            return bufferStart + next;
+        }
+
+        void copyLine(byte[] target, int offset) {
+            System.arraycopy(buffer.array(), lineStart, target, offset, lineEnd - lineStart);
+        }
+
+        int getLineLength() {
+            return lineEnd - lineStart;
+        }
+    }
+
+    /**
+     * The subtitles as parallel arrays. The texts are kept as UTF-8 with each line ended by
+     * <code>\n</code>, or read from the file again with the original line breaks.
+     */
+    private static class Subtitles extends AbstractList<TextTrackImpl.Line> {
+        private final FileChannel fileChannel;
+        private long[] from = new long[64];
+        private long[] to = new long[64];
+        // texts in the file: [textStart, textEnd), otherwise in text: [textStart, textEnd)
+        private long[] textStart = new long[64];
+        private long[] textEnd = new long[64];
+        private byte[] text;
+        private int textSize;
+        private int currentTextStart;
+        private int size;
+
+        Subtitles(FileChannel fileChannel) {
+            this.fileChannel = fileChannel;
+            if (fileChannel == null) {
+                text = new byte[BUFFER_SIZE];
+            }
+        }
+
+        void startText() {
+            currentTextStart = textSize;
+        }
+
+        void appendText(LineReader r) {
+            if (text == null) {
+                return;
+            }
+            int length = r.getLineLength();
+            if (textSize + length + 1 > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + length + 1));
+            }
+            r.copyLine(text, textSize);
+            textSize += length;
+            text[textSize++] = '\n';
+        }
+
+        void add(long from, long to, long fileTextStart, long fileTextEnd) {
+            if (size == this.from.length) {
+                this.from = Arrays.copyOf(this.from, size * 2);
+                this.to = Arrays.copyOf(this.to, size * 2);
+                textStart = Arrays.copyOf(textStart, size * 2);
+                textEnd = Arrays.copyOf(textEnd, size * 2);
+            }
+            this.from[size] = from;
+            this.to[size] = to;
+            if (text == null) {
+                textStart[size] = fileTextStart;
+                textEnd[size] = fileTextEnd;
+            } else {
+                textStart[size] = currentTextStart;
+                textEnd[size] = textSize;
+            }
+            size++;
+        }
+
+        @Override
+        public TextTrackImpl.Line get(final int index) {
+            return new TextTrackImpl.Line(from[index], to[index], null) {
+                @Override
+                public String getText() {
+                    return readText(index);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private String readText(int index) {
+            if (text != null) {
+                int start = (int) textStart[index];
+                return new String(text, start, (int) textEnd[index] - start, StandardCharsets.UTF_8);
+            }
+            ByteBuffer raw = ByteBuffer.allocate((int) (textEnd[index] - textStart[index]));
+            try {
+                while (raw.hasRemaining()) {
+                    if (fileChannel.read(raw, textStart[index] + raw.position()) == -1) {
+                        throw new IOException("The subtitle file has been truncated");
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return new String(normalizeLineBreaks(raw.array()), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Replaces <code>\r\n</code> and <code>\r</code> by <code>\n</code> and ends the last
+         * line with one.
+         */
+        private static byte[] normalizeLineBreaks(byte[] raw) {
+            byte[] normalized = new byte[raw.length + 1];
+            int length = 0;
+            for (int i = 0; i < raw.length; i++) {
+                if (raw[i] == '\r') {
+                    normalized[length++] = '\n';
+                    if (i + 1 < raw.length && raw[i + 1] == '\n') {
+                        i++;
+                    }
+                } else {
+                    normalized[length++] = raw[i];
+                }
+            }
+            if (length > 0 && normalized[length - 1] != '\n') {
+                normalized[length++] = '\n';
+            }
+            return Arrays.copyOf(normalized, length);
+        }
+    }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.util;
+
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.ContainerBox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A box path as understood by {@link Path}, e.g. <code>/moov[0]/trak/mdia[0]/hdlr</code>,
+ * that is parsed once and then evaluated without allocating anything but the result. The box
+ * types of the components are regular expressions, the usual ones (four literal characters or
+ * <code>.</code> as wildcard) are compared to the boxes' types as integer four character codes.
+ * <p/>
+ * Instances are immutable and can be shared, e.g. as constants.
+ */
+public final class CompiledBoxPath {
+    private static final Pattern COMPONENT = Pattern.compile("(....|\\.\\.)(\\[(.*)\\])?");
+
+    private final String path;
+    private final Step[] steps;
+
+    private CompiledBoxPath(String path, Step[] steps) {
+        this.path = path;
+        this.steps = steps;
+    }
+
+    /**
+     * Parses a path.
+     *
+     * @param path absolute (starting with <code>/</code>) or relative path
+     * @return the compiled path
+     * @throws IllegalArgumentException if a component is neither <code>..</code> nor a
+     *                                  four character type with an optional <code>[index]</code>
+     */
+    public static CompiledBoxPath compile(String path) {
+        List<Step> steps = new ArrayList<>();
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end == start) {
+                // a leading (or doubled) slash starts over at the IsoFile
+                steps.add(Step.ROOT);
+            } else {
+                steps.add(Step.parse(path.substring(start, end)));
+            }
+            start = end + 1;
+        }
+        return new CompiledBoxPath(path, steps.toArray(new Step[steps.size()]));
+    }
+
+    /**
+     * @param box the box relative paths start at, any box of the file for absolute paths
+     * @return the first box on the path in document order or <code>null</code> if there is none
+     */
+    public Box getFirst(Box box) {
+        List<Box> result = new ArrayList<>(1);
+        find(box, 0, result, true);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * @param box the box relative paths start at, any box of the file for absolute paths
+     * @return all boxes on the path in document order
+     */
+    public List<Box> getAll(Box box) {
+        List<Box> result = new ArrayList<>();
+        find(box, 0, result, false);
+        return result;
+    }
+
+    /**
+     * @return whether <code>box</code> is one of the boxes on this absolute path
+     */
+    public boolean matches(Box box) {
+        return getAll(box).contains(box);
+    }
+
+    private boolean find(Box box, int step, List<Box> result, boolean firstOnly) {
+        if (step == steps.length) {
+            result.add(box);
+            return firstOnly;
+        }
+        Step s = steps[step];
+        if (s == Step.ROOT) {
+            Box root = box;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+            return find(root, step + 1, result, firstOnly);
+        } else if (s.parent) {
+            return box.getParent() != null && find(box.getParent(), step + 1, result, firstOnly);
+        } else if (!(box instanceof ContainerBox)) {
+            return false;
+        }
+        int currentIndex = 0;
+        for (Box child : ((ContainerBox) box).getBoxes()) {
+            if (s.matches(child.getType())) {
+                if (s.index == -1 || s.index == currentIndex) {
+                    if (find(child, step + 1, result, firstOnly)) {
+                        return true;
+                    }
+                    if (s.index != -1) {
+                        return false;
+                    }
+                }
+                currentIndex++;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+    private static final class Step {
+        static final Step ROOT = new Step(false, 0, 0, false, null, -1);
+
+        final boolean parent;
+        // four character code with zeros at the wildcard positions and the mask selecting the
+        // other positions, valid if the type is made of ISO-8859-1 literals and wildcards only
+        final int type;
+        final int mask;
+        final boolean plain;
+        final Pattern pattern;
+        final int index;
+
+        private Step(boolean parent, int type, int mask, boolean plain, Pattern pattern, int index) {
+            this.parent = parent;
+            this.type = type;
+            this.mask = mask;
+            this.plain = plain;
+            this.pattern = pattern;
+            this.index = index;
+        }
+
+        static Step parse(String component) {
+            Matcher m = COMPONENT.matcher(component);
+            if (!m.matches()) {
+                throw new IllegalArgumentException(component + " is invalid path.");
+            }
+            String type = m.group(1);
+            if ("..".equals(type)) {
+                return new Step(true, 0, 0, false, null, -1);
+            }
+            int index = m.group(2) != null ? Integer.parseInt(m.group(3)) : -1;
+            int fourcc = 0;
+            int mask = 0;
+            boolean plain = true;
+            for (int i = 0; i < 4; i++) {
+                char c = type.charAt(i);
+                fourcc <<= 8;
+                mask <<= 8;
+                if (c != '.') {
+                    fourcc |= c;
+                    mask |= 0xff;
+                }
+                plain &= c <= 0xff && "\\[](){}*+?|^$".indexOf(c) == -1;
+            }
+            return new Step(false, fourcc, mask, plain, Pattern.compile(type), index);
+        }
+
+        boolean matches(String boxType) {
+            if (plain && boxType.length() == 4) {
+                int fourcc = 0;
+                int i = 0;
+                for (; i < 4; i++) {
+                    char c = boxType.charAt(i);
+                    // the wildcard doesn't match line terminators, leave these to the regex
+                    if (c > 0xff || c == '\n' || c == '\r' || c == '\u0085') {
+                        break;
+                    }
+                    fourcc = fourcc << 8 | c;
+                }
+                if (i == 4) {
+                    return (fourcc & mask) == type;
+                }
+            }
+            return pattern.matcher(boxType).matches();
+        }
+    }
+}
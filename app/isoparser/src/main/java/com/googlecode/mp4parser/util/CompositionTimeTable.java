@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.util;
+
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Run-length encoded composition time offsets ('ctts') in parallel primitive arrays.
+ * Sample numbers are zero-based.
+ */
+public final class CompositionTimeTable {
+    // run i covers the samples firstSamples[i] until firstSamples[i + 1] (exclusive)
+    private final int[] firstSamples;
+    private final int[] offsets;
+    private final int runs;
+
+    private CompositionTimeTable(int[] firstSamples, int[] offsets, int runs) {
+        this.firstSamples = firstSamples;
+        this.offsets = offsets;
+        this.runs = runs;
+    }
+
+    /**
+     * Builds the table from box entries. Entries without samples are dropped and adjacent
+     * entries with equal offset are merged.
+     *
+     * @param entries 'ctts' entries, may be <code>null</code>
+     * @return the table
+     */
+    public static CompositionTimeTable of(List<CompositionTimeToSample.Entry> entries) {
+        int size = entries != null ? entries.size() : 0;
+        int[] firstSamples = new int[size + 1];
+        int[] offsets = new int[size];
+        int runs = 0;
+        int sample = 0;
+        // the tracks' entry lists are often linked lists, never access them by index
+        Iterator<CompositionTimeToSample.Entry> iterator = size > 0 ? entries.iterator() : null;
+        for (int i = 0; i < size; i++) {
+            CompositionTimeToSample.Entry entry = iterator.next();
+            if (entry.getCount() == 0) {
+                continue;
+            }
+            if (runs == 0 || offsets[runs - 1] != entry.getOffset()) {
+                firstSamples[runs] = sample;
+                offsets[runs] = entry.getOffset();
+                runs++;
+            }
+            sample += entry.getCount();
+        }
+        firstSamples[runs] = sample;
+        return new CompositionTimeTable(firstSamples, offsets, runs);
+    }
+
+    public int getSampleCount() {
+        return firstSamples[runs];
+    }
+
+    /**
+     * @param sample zero-based sample number
+     * @return the composition time offset of the sample
+     */
+    public int getOffset(int sample) {
+        if (sample < 0 || sample >= getSampleCount()) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " of " + getSampleCount());
+        }
+        return offsets[RunLengthSearch.find(firstSamples, runs, sample)];
+    }
+
+    /**
+     * Gets the entries describing the samples <code>fromSample</code> until
+     * <code>toSample</code> (exclusive).
+     */
+    public List<CompositionTimeToSample.Entry> getEntries(int fromSample, int toSample) {
+        List<CompositionTimeToSample.Entry> entries = new ArrayList<>();
+        appendEntries(entries, fromSample, toSample);
+        return entries;
+    }
+
+    /**
+     * Appends the entries describing the samples <code>fromSample</code> until
+     * <code>toSample</code> (exclusive) to <code>entries</code>. The first appended run is
+     * merged into the last entry of the list if the offsets are equal.
+     */
+    public void appendEntries(List<CompositionTimeToSample.Entry> entries, int fromSample, int toSample) {
+        if (fromSample >= toSample) {
+            return;
+        }
+        if (fromSample < 0 || toSample > getSampleCount()) {
+            throw new IndexOutOfBoundsException("Samples " + fromSample + " to " + toSample + " of " + getSampleCount());
+        }
+        for (int run = RunLengthSearch.find(firstSamples, runs, fromSample); run < runs && firstSamples[run] < toSample; run++) {
+            int count = java.lang.Math.min(firstSamples[run + 1], toSample) - java.lang.Math.max(firstSamples[run], fromSample);
+            CompositionTimeToSample.Entry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+            if (last != null && last.getOffset() == offsets[run]) {
+                last.setCount(last.getCount() + count);
+            } else {
+                entries.add(new CompositionTimeToSample.Entry(count, offsets[run]));
+            }
+        }
+    }
+}
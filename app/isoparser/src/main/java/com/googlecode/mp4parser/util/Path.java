@@ -18,20 +18,18 @@ package com.googlecode.mp4parser.util;
 
 import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.boxes.Box;
-import com.coremedia.iso.boxes.ContainerBox;
 
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Path {
 
     private Path() {
     }
 
-    static Pattern component = Pattern.compile("(....|\\.\\.)(\\[(.*)\\])?");
+    private static final int MAX_COMPILED_PATHS = 64;
+    private static final Map<String, CompiledBoxPath> compiledPaths = new ConcurrentHashMap<>();
 
     public static String createPath(Box box) {
         return createPath(box, "");
@@ -49,67 +47,38 @@ public class Path {
         }
     }
 
+    /**
+     * @see CompiledBoxPath#getFirst(Box)
+     */
     public static Box getPath(Box box, String path) {
-        List<Box> all = getPaths(box, path);
-        return all.isEmpty() ? null : all.get(0);
+        return compile(path).getFirst(box);
     }
 
-
+    /**
+     * @see CompiledBoxPath#getAll(Box)
+     */
     public static List<Box> getPaths(Box box, String path) {
-        if (path.startsWith("/")) {
-            Box isoFile = box;
-            while (isoFile.getParent() != null) {
-                isoFile = isoFile.getParent();
-            }
-            assert isoFile instanceof IsoFile : isoFile.getType() + " has no parent";
-            return getPaths(isoFile, path.substring(1));
-        } else if (path.isEmpty()) {
-            return Collections.singletonList(box);
-        } else {
-            String later;
-            String now;
-            if (path.contains("/")) {
-                later = path.substring(path.indexOf('/') + 1);
-                now = path.substring(0, path.indexOf('/'));
-            } else {
-                now = path;
-                later = "";
-            }
-
-            Matcher m = component.matcher(now);
-            if (m.matches()) {
-                String type = m.group(1);
-                if ("..".equals(type)) {
-                    return getPaths(box.getParent(), later);
-                } else {
-                    int index = -1;
-                    if (m.group(2) != null) {
-                        // we have a specific index
-                        String indexString = m.group(3);
-                        index = Integer.parseInt(indexString);
-                    }
-                    List<Box> children = new LinkedList<>();
-                    int currentIndex = 0;
-                    for (Box box1 : ((ContainerBox) box).getBoxes()) {
-                        if (box1.getType().matches(type)) {
-                            if (index == -1 || index == currentIndex) {
-                                children.addAll(getPaths(box1, later));
-                            }
-                            currentIndex++;
-                        }
-                    }
-                    return children;
-                }
-            } else {
-                throw new RuntimeException(now + " is invalid path.");
-            }
-        }
-
+        return compile(path).getAll(box);
     }
 
-
     public static boolean isContained(Box box, String path) {
         assert path.startsWith("/") : "Absolute path required";
-        return getPaths(box, path).contains(box);
+        return compile(path).matches(box);
+    }
+
+    /**
+     * Gets the compiled path from a small cache. Code that evaluates the same path over and
+     * over should keep the {@link CompiledBoxPath} itself.
+     */
+    private static CompiledBoxPath compile(String path) {
+        CompiledBoxPath compiledPath = compiledPaths.get(path);
+        if (compiledPath == null) {
+            if (compiledPaths.size() >= MAX_COMPILED_PATHS) {
+                compiledPaths.clear();
+            }
+            compiledPath = CompiledBoxPath.compile(path);
+            compiledPaths.put(path, compiledPath);
+        }
+        return compiledPath;
     }
 }
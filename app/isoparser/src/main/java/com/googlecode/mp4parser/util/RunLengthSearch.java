@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.util;
+
+/**
+ * Binary search shared by the run-length encoded sample tables.
+ */
+final class RunLengthSearch {
+    private RunLengthSearch() {
+    }
+
+    /**
+     * Finds the run that contains <code>value</code>.
+     *
+     * @param starts ascending start values of the runs
+     * @param runs   number of valid runs in <code>starts</code>
+     * @param value  a value not smaller than <code>starts[0]</code>
+     * @return the last index <code>i &lt; runs</code> with <code>starts[i] &lt;= value</code>
+     */
+    static int find(int[] starts, int runs, int value) {
+        int low = 0;
+        int high = runs - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
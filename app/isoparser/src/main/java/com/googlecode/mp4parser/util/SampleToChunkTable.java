@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.util;
+
+import com.coremedia.iso.boxes.SampleToChunkBox;
+
+import java.util.Iterator;
+import java.util.List;
+
+import static com.googlecode.mp4parser.util.CastUtils.l2i;
+
+/**
+ * Run-length encoded sample to chunk mapping ('stsc') in parallel primitive arrays. Chunk and
+ * sample numbers are zero-based, unlike in the box.
+ */
+public final class SampleToChunkTable {
+    // run i covers the chunks firstChunks[i] until firstChunks[i + 1] (exclusive), each with
+    // samplesPerChunk[i] samples, the first sample of the run is firstSamples[i].
+    private final int[] firstChunks;
+    private final int[] firstSamples;
+    private final int[] samplesPerChunk;
+    private final int runs;
+
+    private SampleToChunkTable(int[] firstChunks, int[] firstSamples, int[] samplesPerChunk, int runs) {
+        this.firstChunks = firstChunks;
+        this.firstSamples = firstSamples;
+        this.samplesPerChunk = samplesPerChunk;
+        this.runs = runs;
+    }
+
+    /**
+     * Builds the table from box entries. Each entry applies from its first chunk up to the
+     * first chunk of the next entry, the last one up to <code>chunkCount</code>.
+     *
+     * @param entries    'stsc' entries
+     * @param chunkCount overall number of chunks
+     * @return the table
+     */
+    public static SampleToChunkTable of(List<SampleToChunkBox.Entry> entries, int chunkCount) {
+        int size = entries.size();
+        int[] firstChunks = new int[size + 1];
+        int[] firstSamples = new int[size + 1];
+        int[] samplesPerChunk = new int[size];
+        int runs = 0;
+        long sample = 0;
+        // the entries are often a linked list, never access them by index
+        Iterator<SampleToChunkBox.Entry> iterator = entries.iterator();
+        SampleToChunkBox.Entry next = iterator.hasNext() ? iterator.next() : null;
+        for (int i = 0; i < size && chunkCount > 0; i++) {
+            SampleToChunkBox.Entry entry = next;
+            next = iterator.hasNext() ? iterator.next() : null;
+            int first = i == 0 ? 0 : (int) java.lang.Math.min(entry.getFirstChunk() - 1, chunkCount);
+            int end = next != null ? (int) java.lang.Math.min(next.getFirstChunk() - 1, chunkCount) : chunkCount;
+            if (end <= first) {
+                continue;
+            }
+            firstChunks[runs] = first;
+            firstSamples[runs] = l2i(sample);
+            samplesPerChunk[runs] = l2i(entry.getSamplesPerChunk());
+            sample += (long) (end - first) * samplesPerChunk[runs];
+            runs++;
+        }
+        firstChunks[runs] = chunkCount;
+        firstSamples[runs] = l2i(sample);
+        return new SampleToChunkTable(firstChunks, firstSamples, samplesPerChunk, runs);
+    }
+
+    public int getChunkCount() {
+        return firstChunks[runs];
+    }
+
+    public int getSampleCount() {
+        return firstSamples[runs];
+    }
+
+    /**
+     * @param chunk zero-based chunk number
+     * @return number of samples in the chunk
+     */
+    public int getSamplesInChunk(int chunk) {
+        return samplesPerChunk[findChunkRun(chunk)];
+    }
+
+    /**
+     * @param chunk zero-based chunk number
+     * @return zero-based number of the first sample in the chunk
+     */
+    public int getFirstSampleInChunk(int chunk) {
+        int run = findChunkRun(chunk);
+        return firstSamples[run] + (chunk - firstChunks[run]) * samplesPerChunk[run];
+    }
+
+    /**
+     * @param sample zero-based sample number
+     * @return zero-based number of the chunk that contains the sample
+     */
+    public int getChunk(int sample) {
+        if (sample < 0 || sample >= getSampleCount()) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " of " + getSampleCount());
+        }
+        int run = RunLengthSearch.find(firstSamples, runs, sample);
+        // runs with empty chunks contain no samples, the search skips them
+        return firstChunks[run] + (sample - firstSamples[run]) / samplesPerChunk[run];
+    }
+
+    /**
+     * @return number of samples for every single chunk
+     */
+    public long[] blowup() {
+        long[] numberOfSamples = new long[getChunkCount()];
+        for (int run = 0; run < runs; run++) {
+            for (int chunk = firstChunks[run]; chunk < firstChunks[run + 1]; chunk++) {
+                numberOfSamples[chunk] = samplesPerChunk[run];
+            }
+        }
+        return numberOfSamples;
+    }
+
+    private int findChunkRun(int chunk) {
+        if (chunk < 0 || chunk >= getChunkCount()) {
+            throw new IndexOutOfBoundsException("Chunk " + chunk + " of " + getChunkCount());
+        }
+        return RunLengthSearch.find(firstChunks, runs, chunk);
+    }
+}
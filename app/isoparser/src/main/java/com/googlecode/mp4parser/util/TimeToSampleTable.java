@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012 Sebastian Annies, Hamburg
+ *
+ * Licensed under the Apache License, Version 2.0 (the License);
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an AS IS BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.googlecode.mp4parser.util;
+
+import com.coremedia.iso.boxes.TimeToSampleBox;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.googlecode.mp4parser.util.CastUtils.l2i;
+
+/**
+ * Run-length encoded decoding times ('stts') in parallel primitive arrays. Sample numbers are
+ * zero-based. Lookups in both directions are binary searches over the runs, nothing is expanded
+ * per sample.
+ */
+public final class TimeToSampleTable {
+    // run i covers the samples firstSamples[i] until firstSamples[i + 1] (exclusive),
+    // each lasting deltas[i] and the first one decoded at firstTimes[i].
+    private final int[] firstSamples;
+    private final long[] firstTimes;
+    private final long[] deltas;
+    private final int runs;
+
+    private TimeToSampleTable(int[] firstSamples, long[] firstTimes, long[] deltas, int runs) {
+        this.firstSamples = firstSamples;
+        this.firstTimes = firstTimes;
+        this.deltas = deltas;
+        this.runs = runs;
+    }
+
+    /**
+     * Builds the table from box entries. Entries without samples are dropped and adjacent
+     * entries with equal delta are merged.
+     *
+     * @param entries 'stts' entries, may be <code>null</code>
+     * @return the table
+     */
+    public static TimeToSampleTable of(List<TimeToSampleBox.Entry> entries) {
+        int size = entries != null ? entries.size() : 0;
+        int[] firstSamples = new int[size + 1];
+        long[] firstTimes = new long[size + 1];
+        long[] deltas = new long[size];
+        int runs = 0;
+        long sample = 0;
+        long time = 0;
+        // the tracks' entry lists are often linked lists, never access them by index
+        Iterator<TimeToSampleBox.Entry> iterator = size > 0 ? entries.iterator() : null;
+        for (int i = 0; i < size; i++) {
+            TimeToSampleBox.Entry entry = iterator.next();
+            if (entry.getCount() == 0) {
+                continue;
+            }
+            if (runs == 0 || deltas[runs - 1] != entry.getDelta()) {
+                firstSamples[runs] = l2i(sample);
+                firstTimes[runs] = time;
+                deltas[runs] = entry.getDelta();
+                runs++;
+            }
+            sample += entry.getCount();
+            time += entry.getCount() * entry.getDelta();
+        }
+        firstSamples[runs] = l2i(sample);
+        firstTimes[runs] = time;
+        return new TimeToSampleTable(firstSamples, firstTimes, deltas, runs);
+    }
+
+    public int getSampleCount() {
+        return firstSamples[runs];
+    }
+
+    /**
+     * @return sum of all deltas
+     */
+    public long getDuration() {
+        return firstTimes[runs];
+    }
+
+    /**
+     * @param sample zero-based sample number, <code>getSampleCount()</code> gives the duration
+     * @return the decoding time of the sample
+     */
+    public long getDecodingTime(int sample) {
+        if (sample == getSampleCount()) {
+            return getDuration();
+        }
+        int run = findRun(sample);
+        return firstTimes[run] + (sample - firstSamples[run]) * deltas[run];
+    }
+
+    /**
+     * @param sample zero-based sample number
+     * @return the duration of the sample
+     */
+    public long getDelta(int sample) {
+        return deltas[findRun(sample)];
+    }
+
+    /**
+     * Finds the sample that is being decoded at the given time, i.e. the last sample that
+     * has a decoding time less than or equal to <code>time</code>.
+     *
+     * @param time time in the track's timescale
+     * @return zero-based sample number, <code>0</code> for negative times, the last sample for
+     *         times past the end and <code>-1</code> if the table is empty
+     */
+    public int getSampleAt(long time) {
+        if (runs == 0) {
+            return -1;
+        }
+        if (time >= firstTimes[runs]) {
+            return getSampleCount() - 1;
+        }
+        int low = 0;
+        int high = runs - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstTimes[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (time < firstTimes[low]) {
+            return 0;
+        }
+        return firstSamples[low] + l2i((time - firstTimes[low]) / deltas[low]);
+    }
+
+    /**
+     * Gets the entries describing the samples <code>fromSample</code> until
+     * <code>toSample</code> (exclusive).
+     */
+    public List<TimeToSampleBox.Entry> getEntries(int fromSample, int toSample) {
+        List<TimeToSampleBox.Entry> entries = new ArrayList<>();
+        appendEntries(entries, fromSample, toSample);
+        return entries;
+    }
+
+    /**
+     * Appends the entries describing the samples <code>fromSample</code> until
+     * <code>toSample</code> (exclusive) to <code>entries</code>. The first appended run is
+     * merged into the last entry of the list if the deltas are equal.
+     */
+    public void appendEntries(List<TimeToSampleBox.Entry> entries, int fromSample, int toSample) {
+        if (fromSample >= toSample) {
+            return;
+        }
+        if (toSample > getSampleCount()) {
+            throw new IndexOutOfBoundsException("Sample " + toSample + " of " + getSampleCount());
+        }
+        for (int run = findRun(fromSample); run < runs && firstSamples[run] < toSample; run++) {
+            long count = java.lang.Math.min(firstSamples[run + 1], toSample) - java.lang.Math.max(firstSamples[run], fromSample);
+            TimeToSampleBox.Entry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+            if (last != null && last.getDelta() == deltas[run]) {
+                last.setCount(last.getCount() + count);
+            } else {
+                entries.add(new TimeToSampleBox.Entry(count, deltas[run]));
+            }
+        }
+    }
+
+    private int findRun(int sample) {
+        if (sample < 0 || sample >= getSampleCount()) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " of " + getSampleCount());
+        }
+        return RunLengthSearch.find(firstSamples, runs, sample);
+    }
+}
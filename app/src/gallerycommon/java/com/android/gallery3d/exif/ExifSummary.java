@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.exif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The handful of EXIF fields the gallery needs for browsing: rotation,
+ * dimensions, capture time, location and camera model, plus the camera
+ * settings shown in the details view. Unlike
+ * {@link ExifInterface#readExif(InputStream)}, {@link #read(InputStream)}
+ * only visits IFD0, the EXIF IFD and the GPS IFD, never loads the thumbnail
+ * and keeps no tag objects around.
+ * <p>
+ * A summary instance is reusable but not thread safe.
+ */
+public class ExifSummary {
+    private static final short TAG_ORIENTATION =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_ORIENTATION);
+    private static final short TAG_IMAGE_WIDTH =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_IMAGE_WIDTH);
+    private static final short TAG_IMAGE_LENGTH =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_IMAGE_LENGTH);
+    private static final short TAG_PIXEL_X_DIMENSION =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_PIXEL_X_DIMENSION);
+    private static final short TAG_PIXEL_Y_DIMENSION =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_PIXEL_Y_DIMENSION);
+    private static final short TAG_MAKE =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_MAKE);
+    private static final short TAG_MODEL =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_MODEL);
+    private static final short TAG_FLASH =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_FLASH);
+    private static final short TAG_APERTURE_VALUE =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_APERTURE_VALUE);
+    private static final short TAG_ISO_SPEED_RATINGS =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_ISO_SPEED_RATINGS);
+    private static final short TAG_WHITE_BALANCE =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_WHITE_BALANCE);
+    private static final short TAG_EXPOSURE_TIME =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_EXPOSURE_TIME);
+    private static final short TAG_FOCAL_LENGTH =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_FOCAL_LENGTH);
+    private static final short TAG_DATE_TIME =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_DATE_TIME);
+    private static final short TAG_DATE_TIME_ORIGINAL =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_DATE_TIME_ORIGINAL);
+    private static final short TAG_GPS_LATITUDE =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_LATITUDE);
+    private static final short TAG_GPS_LATITUDE_REF =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_LATITUDE_REF);
+    private static final short TAG_GPS_LONGITUDE =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_LONGITUDE);
+    private static final short TAG_GPS_LONGITUDE_REF =
+            ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_LONGITUDE_REF);
+
+    private static final String DATETIME_FORMAT_STR = "yyyy:MM:dd HH:mm:ss";
+
+    private static final int PARSE_OPTIONS = ExifParser.OPTION_IFD_0
+            | ExifParser.OPTION_IFD_EXIF | ExifParser.OPTION_IFD_GPS;
+
+    // Used only for its tag definitions.
+    private final ExifInterface mInterface = new ExifInterface();
+    private final DateFormat mDateTimeFormat =
+            new SimpleDateFormat(DATETIME_FORMAT_STR);
+    private final ParsePosition mParsePosition = new ParsePosition(0);
+
+    /** Clockwise rotation in degrees: 0, 90, 180 or 270. */
+    public int rotation;
+    public int width;
+    public int height;
+    /** Capture time in milliseconds, or 0 if unknown. */
+    public long dateTakenInMs;
+    public boolean hasLocation;
+    public double latitude;
+    public double longitude;
+    public String model;
+    public String make;
+    /** Flash, ISO and white balance values, or -1 if absent. */
+    public int flash;
+    public int iso;
+    public int whiteBalance;
+    /** Aperture value, exposure time and focal length, or NaN if absent. */
+    public double aperture;
+    public double exposureTime;
+    public double focalLength;
+
+    private Rational[] mLatitude;
+    private Rational[] mLongitude;
+    private String mLatitudeRef;
+    private String mLongitudeRef;
+    private long mDateTimeInMs;
+
+    public void clear() {
+        rotation = 0;
+        width = 0;
+        height = 0;
+        dateTakenInMs = 0;
+        hasLocation = false;
+        latitude = 0;
+        longitude = 0;
+        model = null;
+        make = null;
+        flash = -1;
+        iso = -1;
+        whiteBalance = -1;
+        aperture = Double.NaN;
+        exposureTime = Double.NaN;
+        focalLength = Double.NaN;
+        mLatitude = null;
+        mLongitude = null;
+        mLatitudeRef = null;
+        mLongitudeRef = null;
+        mDateTimeInMs = 0;
+    }
+
+    /**
+     * Replaces the content of this summary with the fields found in the
+     * given JPEG stream. The stream is not closed.
+     *
+     * @return false if the stream has no EXIF data.
+     */
+    public boolean read(InputStream inputStream)
+            throws IOException, ExifInvalidFormatException {
+        clear();
+        boolean found = false;
+        ExifParser parser = ExifParser.parse(inputStream, PARSE_OPTIONS, mInterface);
+        int event = parser.next();
+        while (event != ExifParser.EVENT_END) {
+            switch (event) {
+                case ExifParser.EVENT_NEW_TAG: {
+                    ExifTag tag = parser.getTag();
+                    if (!tag.hasValue()) {
+                        parser.registerForTagValue(tag);
+                    } else {
+                        found |= processTag(tag);
+                    }
+                    break;
+                }
+                case ExifParser.EVENT_VALUE_OF_REGISTERED_TAG:
+                    found |= processTag(parser.getTag());
+                    break;
+            }
+            event = parser.next();
+        }
+        if (dateTakenInMs == 0) dateTakenInMs = mDateTimeInMs;
+        if (mLatitude != null && mLongitude != null && mLatitudeRef != null
+                && mLongitudeRef != null && mLatitude.length >= 3 && mLongitude.length >= 3) {
+            latitude = ExifInterface.convertLatOrLongToDouble(mLatitude, mLatitudeRef);
+            longitude = ExifInterface.convertLatOrLongToDouble(mLongitude, mLongitudeRef);
+            hasLocation = true;
+        }
+        return found;
+    }
+
+    private boolean processTag(ExifTag tag) {
+        short id = tag.getTagId();
+        int ifd = tag.getIfd();
+        if (ifd == IfdId.TYPE_IFD_0) {
+            if (id == TAG_ORIENTATION) {
+                rotation = ExifInterface.getRotationForOrientationValue(
+                        (short) tag.getValueAsInt(0));
+            } else if (id == TAG_IMAGE_WIDTH) {
+                if (width == 0) width = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_IMAGE_LENGTH) {
+                if (height == 0) height = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_MODEL) {
+                model = trim(tag.getValueAsString());
+            } else if (id == TAG_MAKE) {
+                make = trim(tag.getValueAsString());
+            } else if (id == TAG_DATE_TIME) {
+                mDateTimeInMs = parseDateTime(tag.getValueAsString());
+            } else {
+                return false;
+            }
+        } else if (ifd == IfdId.TYPE_IFD_EXIF) {
+            // The EXIF IFD dimensions describe the compressed image and win
+            // over the (often stale) IFD0 values.
+            if (id == TAG_PIXEL_X_DIMENSION) {
+                width = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_PIXEL_Y_DIMENSION) {
+                height = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_DATE_TIME_ORIGINAL) {
+                dateTakenInMs = parseDateTime(tag.getValueAsString());
+            } else if (id == TAG_FLASH) {
+                flash = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_ISO_SPEED_RATINGS) {
+                iso = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_WHITE_BALANCE) {
+                whiteBalance = (int) tag.forceGetValueAsLong(0);
+            } else if (id == TAG_APERTURE_VALUE) {
+                aperture = toDouble(tag);
+            } else if (id == TAG_EXPOSURE_TIME) {
+                exposureTime = toDouble(tag);
+            } else if (id == TAG_FOCAL_LENGTH) {
+                focalLength = toDouble(tag);
+            } else {
+                return false;
+            }
+        } else if (ifd == IfdId.TYPE_IFD_GPS) {
+            if (id == TAG_GPS_LATITUDE) {
+                mLatitude = tag.getValueAsRationals();
+            } else if (id == TAG_GPS_LONGITUDE) {
+                mLongitude = tag.getValueAsRationals();
+            } else if (id == TAG_GPS_LATITUDE_REF) {
+                mLatitudeRef = trim(tag.getValueAsString());
+            } else if (id == TAG_GPS_LONGITUDE_REF) {
+                mLongitudeRef = trim(tag.getValueAsString());
+            } else {
+                return false;
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    // Reads a value the way MediaDetails shows it.
+    private static double toDouble(ExifTag tag) {
+        int type = tag.getDataType();
+        if (type == ExifTag.TYPE_UNSIGNED_RATIONAL || type == ExifTag.TYPE_RATIONAL) {
+            return tag.getValueAsRational(0).toDouble();
+        }
+        return tag.forceGetValueAsLong(0);
+    }
+
+    // ASCII values are often padded with spaces or NULs, e.g. "W ".
+    private static String trim(String value) {
+        return value == null ? null : value.trim();
+    }
+
+    private long parseDateTime(String value) {
+        if (value == null) return 0;
+        mParsePosition.setIndex(0);
+        mParsePosition.setErrorIndex(-1);
+        Date date = mDateTimeFormat.parse(value, mParsePosition);
+        return date == null ? 0 : date.getTime();
+    }
+}
@@ -23,6 +23,7 @@ import android.os.Looper;
 
 import com.android.gallery3d.data.DataManager;
 import com.android.gallery3d.data.DownloadCache;
+import com.android.gallery3d.data.ExifIndex;
 import com.android.gallery3d.data.ImageCacheService;
 import com.android.gallery3d.util.ThreadPool;
 
@@ -31,6 +32,8 @@ public interface GalleryApp {
 
     ImageCacheService getImageCacheService();
     DownloadCache getDownloadCache();
+    /** Returns null while there is no external storage to keep it in. */
+    ExifIndex getExifIndex();
     ThreadPool getThreadPool();
 
     Context getAndroidContext();
@@ -19,9 +19,12 @@ package com.android.gallery3d.app;
 import android.app.Application;
 import android.content.Context;
 import android.os.AsyncTask;
+import android.os.Environment;
 
 import com.android.gallery3d.data.DataManager;
 import com.android.gallery3d.data.DownloadCache;
+import com.android.gallery3d.data.ExifIndex;
+import com.android.gallery3d.data.ExifIndexer;
 import com.android.gallery3d.data.ImageCacheService;
 import com.android.gallery3d.gadget.WidgetUtils;
 import com.android.gallery3d.picasasource.PicasaSource;
@@ -35,12 +38,14 @@ public class GalleryAppImpl extends Application implements GalleryApp {
 
     private static final String DOWNLOAD_FOLDER = "download";
     private static final long DOWNLOAD_CAPACITY = 64 * 1024 * 1024; // 64M
+    private static final String EXIF_INDEX_FILE = "exifindex";
 
     private ImageCacheService mImageCacheService;
     private Object mLock = new Object();
     private DataManager mDataManager;
     private ThreadPool mThreadPool;
     private DownloadCache mDownloadCache;
+    private ExifIndex mExifIndex;
 
     @Override
     public void onCreate() {
@@ -102,6 +107,25 @@ public class GalleryAppImpl extends Application implements GalleryApp {
         return mDownloadCache;
     }
 
+    @Override
+    public ExifIndex getExifIndex() {
+        // Mapping the index may block on file I/O, same as the image cache.
+        synchronized (mLock) {
+            if (mExifIndex == null) {
+                File cacheDir = getExternalCacheDir();
+                // No external storage yet, try again on the next lookup.
+                if (cacheDir == null) return null;
+                mExifIndex = new ExifIndex(new File(cacheDir, EXIF_INDEX_FILE));
+                // Bring the index up to date in the background; lookups keep
+                // answering from the previous version meanwhile.
+                getThreadPool().submit(new ExifIndexer(mExifIndex,
+                        Environment.getExternalStoragePublicDirectory(
+                                Environment.DIRECTORY_DCIM)));
+            }
+            return mExifIndex;
+        }
+    }
+
     private void initializeAsyncTask() {
         // AsyncTask class needs to be loaded in UI thread.
         // So we load it here to comply the rule.
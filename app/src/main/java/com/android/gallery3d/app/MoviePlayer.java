@@ -39,6 +39,8 @@ import com.android.gallery3d.common.ApiHelper;
 import com.android.gallery3d.common.BlobCache;
 import com.android.gallery3d.util.CacheManager;
 import com.android.gallery3d.util.GalleryUtils;
+import com.android.gallery3d.util.ThreadPool.Job;
+import com.android.gallery3d.util.VideoMetadata;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -81,6 +83,8 @@ public class MoviePlayer implements
 
     private long mResumeableTime = Long.MAX_VALUE;
     private int mVideoPosition = 0;
+    // Duration from the file header, used until the player is prepared.
+    private int mProbedDurationMs = 0;
     private boolean mHasPaused = false;
     private int mLastSystemUiVis = 0;
 
@@ -127,6 +131,7 @@ public class MoviePlayer implements
         mVideoView.setOnErrorListener(this);
         mVideoView.setOnCompletionListener(this);
         mVideoView.setVideoURI(mUri);
+        probeVideo(movieActivity);
 
         Intent ai = movieActivity.getIntent();
         boolean virtualize = ai.getBooleanExtra(VIRTUALIZE_EXTRA, false);
@@ -246,7 +251,7 @@ public class MoviePlayer implements
         mHasPaused = true;
         mHandler.removeCallbacksAndMessages(null);
         mVideoPosition = mVideoView.getCurrentPosition();
-        mBookmarker.setBookmark(mUri, mVideoPosition, mVideoView.getDuration());
+        mBookmarker.setBookmark(mUri, mVideoPosition, getDuration());
         mVideoView.suspend();
         mResumeableTime = System.currentTimeMillis() + RESUMEABLE_TIMEOUT;
     }
@@ -281,11 +286,29 @@ public class MoviePlayer implements
             return 0;
         }
         int position = mVideoView.getCurrentPosition();
-        int duration = mVideoView.getDuration();
+        int duration = getDuration();
         mController.setTimes(position, duration, 0, 0);
         return position;
     }
 
+    // Reads the duration from the file header while the player prepares, so
+    // the time bar is complete right away. Streams are left to the player.
+    private void probeVideo(MovieActivity movieActivity) {
+        ((GalleryApp) movieActivity.getApplication()).getThreadPool().submit(
+                (Job<VideoMetadata>) jc -> VideoMetadata.get(mContext, mUri),
+                future -> {
+                    final VideoMetadata metadata = future.get();
+                    if (metadata != null) {
+                        mHandler.post(() -> mProbedDurationMs = (int) metadata.durationMs);
+                    }
+                });
+    }
+
+    private int getDuration() {
+        int duration = mVideoView.getDuration();
+        return duration > 0 ? duration : mProbedDurationMs;
+    }
+
     private void startVideo() {
         // For streams that we expect to be slow to start up, show a
         // progress spinner until playback starts.
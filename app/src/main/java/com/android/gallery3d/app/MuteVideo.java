@@ -56,7 +56,7 @@ public class MuteVideo {
         showProgressDialog();
         new Thread(() -> {
         try {
-            VideoUtils.startMute(mFilePath, mDstFileInfo);
+            VideoUtils.startMute(mActivity, mFilePath, mDstFileInfo);
             SaveVideoFileUtils.insertContent(
                     mDstFileInfo, mActivity.getContentResolver(), mUri);
         } catch (IOException e) {
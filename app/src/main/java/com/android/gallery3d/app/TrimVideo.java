@@ -36,6 +36,9 @@ import android.widget.VideoView;
 import com.android.gallery3d.R;
 import com.android.gallery3d.util.SaveVideoFileInfo;
 import com.android.gallery3d.util.SaveVideoFileUtils;
+import com.android.gallery3d.util.ThreadPool.Job;
+import com.android.gallery3d.util.VideoMetadata;
+import com.android.gallery3d.util.VideoSeekIndex;
 
 import java.io.File;
 import java.io.IOException;
@@ -64,6 +67,10 @@ public class TrimVideo extends Activity implements
     private boolean mHasPaused = false;
 
     private String mSrcVideoPath = null;
+    // Duration from the file header, used until the player is prepared.
+    private int mProbedDurationMs = 0;
+    // Sync samples of the source, the trim start is snapped to them.
+    private VideoSeekIndex mSeekIndex = null;
     private static final String TIME_STAMP_NAME = "'TRIM'_yyyyMMdd_HHmmss";
     private SaveVideoFileInfo mDstFileInfo = null;
 
@@ -102,10 +109,49 @@ public class TrimVideo extends Activity implements
         mVideoView.setOnErrorListener(this);
         mVideoView.setOnCompletionListener(this);
         mVideoView.setVideoURI(mUri);
+        probeVideo();
 
         playVideo();
     }
 
+    // Reads the duration from the file header and indexes the sync samples
+    // while the player prepares. The trim itself finds the rotation and the
+    // index in the same cache entries.
+    private void probeVideo() {
+        if (mSrcVideoPath == null) return;
+        ((GalleryApp) getApplication()).getThreadPool().submit(
+                (Job<VideoMetadata>) jc -> VideoMetadata.get(mContext, mSrcVideoPath),
+                future -> {
+                    final VideoMetadata metadata = future.get();
+                    if (metadata != null) {
+                        mHandler.post(() -> mProbedDurationMs = (int) metadata.durationMs);
+                    }
+                });
+        ((GalleryApp) getApplication()).getThreadPool().submit(
+                (Job<VideoSeekIndex>) jc -> VideoSeekIndex.get(mContext, mSrcVideoPath),
+                future -> {
+                    final VideoSeekIndex seekIndex = future.get();
+                    if (seekIndex != null) {
+                        mHandler.post(() -> {
+                            mSeekIndex = seekIndex;
+                            snapTrimStartTime();
+                        });
+                    }
+                });
+    }
+
+    // The trim can only start at a sync sample, show where it really does.
+    private void snapTrimStartTime() {
+        if (mSeekIndex != null && mTrimStartTime > 0) {
+            mTrimStartTime = mSeekIndex.snapBackward(mTrimStartTime);
+        }
+    }
+
+    private int getDuration() {
+        int duration = mVideoView.getDuration();
+        return duration > 0 ? duration : mProbedDurationMs;
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -187,7 +233,7 @@ public class TrimVideo extends Activity implements
             mVideoView.pause();
         }
 
-        int duration = mVideoView.getDuration();
+        int duration = getDuration();
         if (duration > 0 && mTrimEndTime == 0) {
             mTrimEndTime = duration;
         }
@@ -214,7 +260,7 @@ public class TrimVideo extends Activity implements
 
         // Considering that we only trim at sync frame, we don't want to trim
         // when the time interval is too short or too close to the origin.
-        return delta >= 100 && Math.abs(mVideoView.getDuration() - delta) >= 100;
+        return delta >= 100 && Math.abs(getDuration() - delta) >= 100;
     }
 
     private void trimVideo() {
@@ -227,7 +273,7 @@ public class TrimVideo extends Activity implements
 
         new Thread(() -> {
             try {
-                VideoUtils.startTrim(mSrcFile, mDstFileInfo.mFile,
+                VideoUtils.startTrim(mContext, mSrcFile, mDstFileInfo.mFile,
                         mTrimStartTime, mTrimEndTime);
                 // Update the database for adding a new video file.
                 SaveVideoFileUtils.insertContent(mDstFileInfo,
@@ -293,6 +339,7 @@ public class TrimVideo extends Activity implements
         mVideoView.seekTo(time);
         mTrimStartTime = start;
         mTrimEndTime = end;
+        snapTrimStartTime();
         setProgress();
     }
 
@@ -19,6 +19,7 @@
 
 package com.android.gallery3d.app;
 
+import android.content.Context;
 import android.media.MediaCodec.BufferInfo;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
@@ -28,13 +29,15 @@ import android.util.Log;
 
 import com.android.gallery3d.common.ApiHelper;
 import com.android.gallery3d.util.SaveVideoFileInfo;
+import com.android.gallery3d.util.VideoMetadata;
+import com.android.gallery3d.util.VideoSeekIndex;
 import com.coremedia.iso.IsoFile;
-import com.coremedia.iso.boxes.TimeToSampleBox;
 import com.googlecode.mp4parser.authoring.Movie;
 import com.googlecode.mp4parser.authoring.Track;
 import com.googlecode.mp4parser.authoring.builder.DefaultMp4Builder;
 import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
 import com.googlecode.mp4parser.authoring.tracks.CroppedTrack;
+import com.googlecode.mp4parser.util.TimeToSampleTable;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -43,7 +46,6 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -55,10 +57,10 @@ public class VideoUtils {
     /**
      * Remove the sound track.
      */
-    public static void startMute(String filePath, SaveVideoFileInfo dstFileInfo)
-            throws IOException {
+    public static void startMute(Context context, String filePath,
+            SaveVideoFileInfo dstFileInfo) throws IOException {
         if (ApiHelper.HAS_MEDIA_MUXER) {
-            genVideoUsingMuxer(filePath, dstFileInfo.mFile.getPath(), -1, -1,
+            genVideoUsingMuxer(context, filePath, dstFileInfo.mFile.getPath(), -1, -1,
                     false, true);
         } else {
             startMuteUsingMp4Parser(filePath, dstFileInfo);
@@ -68,13 +70,13 @@ public class VideoUtils {
     /**
      * Shortens/Crops tracks
      */
-    public static void startTrim(File src, File dst, int startMs, int endMs)
-            throws IOException {
+    public static void startTrim(Context context, File src, File dst,
+            int startMs, int endMs) throws IOException {
         if (ApiHelper.HAS_MEDIA_MUXER) {
-            genVideoUsingMuxer(src.getPath(), dst.getPath(), startMs, endMs,
+            genVideoUsingMuxer(context, src.getPath(), dst.getPath(), startMs, endMs,
                     true, true);
         } else {
-            trimUsingMp4Parser(src, dst, startMs, endMs);
+            trimUsingMp4Parser(context, src, dst, startMs, endMs);
         }
     }
 
@@ -114,6 +116,7 @@ public class VideoUtils {
     }
 
     /**
+     * @param context used to look up the cached metadata of the source.
      * @param srcPath the path of source video file.
      * @param dstPath the path of destination video file.
      * @param startMs starting time in milliseconds for trimming. Set to
@@ -124,9 +127,9 @@ public class VideoUtils {
      * @param useVideo true if keep the video track from the source.
      * @throws IOException
      */
-    private static void genVideoUsingMuxer(String srcPath, String dstPath,
-            int startMs, int endMs, boolean useAudio, boolean useVideo)
-            throws IOException {
+    private static void genVideoUsingMuxer(Context context, String srcPath,
+            String dstPath, int startMs, int endMs, boolean useAudio,
+            boolean useVideo) throws IOException {
         // Set up MediaExtractor to read from the source.
         MediaExtractor extractor = new MediaExtractor();
         extractor.setDataSource(srcPath);
@@ -168,15 +171,23 @@ public class VideoUtils {
             bufferSize = DEFAULT_BUFFER_SIZE;
         }
 
-        // Set up the orientation and starting time for extractor.
-        MediaMetadataRetriever retrieverSrc = new MediaMetadataRetriever();
-        retrieverSrc.setDataSource(srcPath);
-        String degreesString = retrieverSrc.extractMetadata(
-                MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
-        if (degreesString != null) {
-            int degrees = Integer.parseInt(degreesString);
-            if (degrees >= 0) {
-                muxer.setOrientationHint(degrees);
+        // Set up the orientation and starting time for extractor. The
+        // rotation usually comes from the metadata cache, only sources that
+        // are no MP4 files need the retriever.
+        VideoMetadata metadata = VideoMetadata.get(context, srcPath);
+        if (metadata != null) {
+            muxer.setOrientationHint(metadata.rotation);
+        } else {
+            MediaMetadataRetriever retrieverSrc = new MediaMetadataRetriever();
+            retrieverSrc.setDataSource(srcPath);
+            String degreesString = retrieverSrc.extractMetadata(
+                    MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            retrieverSrc.release();
+            if (degreesString != null) {
+                int degrees = Integer.parseInt(degreesString);
+                if (degrees >= 0) {
+                    muxer.setOrientationHint(degrees);
+                }
             }
         }
 
@@ -226,8 +237,8 @@ public class VideoUtils {
         return;
     }
 
-    private static void trimUsingMp4Parser(File src, File dst, int startMs, int endMs)
-            throws FileNotFoundException, IOException {
+    private static void trimUsingMp4Parser(Context context, File src, File dst,
+            int startMs, int endMs) throws FileNotFoundException, IOException {
         RandomAccessFile randomAccessFile = new RandomAccessFile(src, "r");
         Movie movie = MovieCreator.build(randomAccessFile.getChannel());
 
@@ -235,14 +246,16 @@ public class VideoUtils {
         List<Track> tracks = movie.getTracks();
         movie.setTracks(new LinkedList<>());
 
-        double startTime = startMs / 1000;
-        double endTime = endMs / 1000;
+        double startTime = startMs / 1000.0;
+        double endTime = endMs / 1000.0;
 
         boolean timeCorrected = false;
 
         // Here we try to find a track that has sync samples. Since we can only
         // start decoding at such a sample we SHOULD make sure that the start of
-        // the new fragment is exactly such a frame.
+        // the new fragment is exactly such a frame. The trim screen has
+        // usually indexed the sync samples of the source already.
+        VideoSeekIndex seekIndex = null;
         for (Track track : tracks) {
             if (track.getSyncSamples() != null && track.getSyncSamples().length > 0) {
                 if (timeCorrected) {
@@ -255,78 +268,59 @@ public class VideoUtils {
                             "The startTime has already been corrected by" +
                             " another track with SyncSample. Not Supported.");
                 }
-                startTime = correctTimeToSyncSample(track, startTime, false);
-                endTime = correctTimeToSyncSample(track, endTime, true);
+                seekIndex = VideoSeekIndex.get(context, src.getPath());
+                if (seekIndex == null || seekIndex.getSyncSampleCount() == 0) {
+                    seekIndex = VideoSeekIndex.of(track);
+                }
+                startTime = correctTimeToSyncSample(seekIndex, startMs, false);
+                endTime = correctTimeToSyncSample(seekIndex, endMs, true);
                 timeCorrected = true;
             }
         }
 
         for (Track track : tracks) {
-            long currentSample = 0;
-            double currentTime = 0;
-            long startSample = -1;
-            long endSample = -1;
-
-            for (int i = 0; i < track.getDecodingTimeEntries().size(); i++) {
-                TimeToSampleBox.Entry entry = track.getDecodingTimeEntries().get(i);
-                for (int j = 0; j < entry.getCount(); j++) {
-                    // entry.getDelta() is the amount of time the current sample
-                    // covers.
-
-                    if (currentTime <= startTime) {
-                        // current sample is still before the new starttime
-                        startSample = currentSample;
-                    }
-                    if (currentTime <= endTime) {
-                        // current sample is after the new start time and still
-                        // before the new endtime
-                        endSample = currentSample;
-                    } else {
-                        // current sample is after the end of the cropped video
-                        break;
-                    }
-                    currentTime += (double) entry.getDelta()
-                            / (double) track.getTrackMetaData().getTimescale();
-                    currentSample++;
-                }
-            }
+            TimeToSampleTable decodingTimes = TimeToSampleTable.of(track.getDecodingTimeEntries());
+            double timescale = track.getTrackMetaData().getTimescale();
+            long startSample = lastSampleAtOrBefore(decodingTimes, timescale, startTime);
+            long endSample = lastSampleAtOrBefore(decodingTimes, timescale, endTime);
             movie.addTrack(new CroppedTrack(track, startSample, endSample));
         }
         writeMovieIntoFile(dst, movie);
         randomAccessFile.close();
     }
 
-    private static double correctTimeToSyncSample(Track track, double cutHere,
-            boolean next) {
-        double[] timeOfSyncSamples = new double[track.getSyncSamples().length];
-        long currentSample = 0;
-        double currentTime = 0;
-        for (int i = 0; i < track.getDecodingTimeEntries().size(); i++) {
-            TimeToSampleBox.Entry entry = track.getDecodingTimeEntries().get(i);
-            for (int j = 0; j < entry.getCount(); j++) {
-                if (Arrays.binarySearch(track.getSyncSamples(), currentSample + 1) >= 0) {
-                    // samples always start with 1 but we start with zero
-                    // therefore +1
-                    timeOfSyncSamples[Arrays.binarySearch(
-                            track.getSyncSamples(), currentSample + 1)] = currentTime;
-                }
-                currentTime += (double) entry.getDelta()
-                        / (double) track.getTrackMetaData().getTimescale();
-                currentSample++;
+    // Returns the last sample that starts at or before the given time in
+    // seconds, or -1 if there is none.
+    private static int lastSampleAtOrBefore(TimeToSampleTable decodingTimes,
+            double timescale, double time) {
+        int low = 0;
+        int high = decodingTimes.getSampleCount() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (decodingTimes.getDecodingTime(mid) / timescale <= time) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
             }
         }
-        double previous = 0;
-        for (double timeOfSyncSample : timeOfSyncSamples) {
-            if (timeOfSyncSample > cutHere) {
-                if (next) {
-                    return timeOfSyncSample;
-                } else {
-                    return previous;
-                }
-            }
-            previous = timeOfSyncSample;
+        return found;
+    }
+
+    // Returns the exact time in seconds of the sync sample to cut at: the
+    // last one at or before cutHereMs, or with next the first one after it.
+    private static double correctTimeToSyncSample(VideoSeekIndex seekIndex,
+            int cutHereMs, boolean next) {
+        int count = seekIndex.getSyncSampleCount();
+        int after = seekIndex.findAfter(cutHereMs);
+        if (after == count) {
+            return seekIndex.getTime(count - 1);
+        } else if (next) {
+            return seekIndex.getTime(after);
+        } else {
+            return after > 0 ? seekIndex.getTime(after - 1) : 0;
         }
-        return timeOfSyncSamples[timeOfSyncSamples.length - 1];
     }
 
 }
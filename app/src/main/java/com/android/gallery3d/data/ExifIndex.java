@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.data;
+
+import com.android.gallery3d.common.Utils;
+import com.android.gallery3d.exif.ExifSummary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// ExifIndex is a read-only, memory-mapped sidecar holding the EXIF summary
+// (see ExifSummary) of every indexed JPEG. Rows are keyed by the crc64 of the
+// file path and validated against the file modification time, so a lookup is
+// one hash probe and a few absolute reads from the mapped file.
+//
+// The file layout (all numbers big-endian):
+//
+// HEADER:
+//   [0] Magic number
+//   [4] Version
+//   [8] Slot count (a power of two)
+//   [12] Row count
+//   [16] Model count
+//
+// SLOTS: int[slot count], (row + 1) or 0 for an empty slot.
+//
+// COLUMNS, each with one value per row:
+//   long pathKey, long mtime (seconds), long dateTakenInMs,
+//   double latitude, double longitude,
+//   double aperture, double exposureTime, double focalLength (NaN if absent),
+//   int width, int height, int iso (-1 if absent),
+//   short rotation, short flash, short whiteBalance (-1 if absent),
+//   short model, short make (index into the model table or -1)
+//
+// MODEL TABLE: for each camera model or make, a short length followed by
+// UTF-8 bytes.
+//
+// A new index is produced by ExifIndex.Builder and swapped in atomically by
+// ExifIndexer; readers never observe a partially written file.
+public class ExifIndex {
+    private static final String TAG = "ExifIndex";
+
+    private static final int MAGIC_INDEX_FILE = 0xE81F1DE0;
+    private static final int VERSION = 2;
+
+    private static final int IH_MAGIC = 0;
+    private static final int IH_VERSION = 4;
+    private static final int IH_SLOT_COUNT = 8;
+    private static final int IH_ROW_COUNT = 12;
+    private static final int IH_MODEL_COUNT = 16;
+    private static final int INDEX_HEADER_SIZE = 32;
+
+    private static final int NO_MODEL = -1;
+
+    // Everything a reader needs to query one version of the sidecar.
+    private static class Table {
+        final ByteBuffer buffer;
+        final int slotCount;
+        final int rowCount;
+        final int pathKeyOffset;
+        final int mtimeOffset;
+        final int dateTakenOffset;
+        final int latitudeOffset;
+        final int longitudeOffset;
+        final int apertureOffset;
+        final int exposureTimeOffset;
+        final int focalLengthOffset;
+        final int widthOffset;
+        final int heightOffset;
+        final int isoOffset;
+        final int rotationOffset;
+        final int flashOffset;
+        final int whiteBalanceOffset;
+        final int modelOffset;
+        final int makeOffset;
+        final String[] models;
+
+        Table(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.getInt(IH_MAGIC) != MAGIC_INDEX_FILE
+                    || buffer.getInt(IH_VERSION) != VERSION) {
+                throw new IOException("cannot read exif index header");
+            }
+            slotCount = buffer.getInt(IH_SLOT_COUNT);
+            rowCount = buffer.getInt(IH_ROW_COUNT);
+            int modelCount = buffer.getInt(IH_MODEL_COUNT);
+            if (Integer.bitCount(slotCount) != 1 || rowCount < 0 || rowCount > slotCount
+                    || modelCount < 0) {
+                throw new IOException("invalid exif index header");
+            }
+            pathKeyOffset = INDEX_HEADER_SIZE + 4 * slotCount;
+            mtimeOffset = pathKeyOffset + 8 * rowCount;
+            dateTakenOffset = mtimeOffset + 8 * rowCount;
+            latitudeOffset = dateTakenOffset + 8 * rowCount;
+            longitudeOffset = latitudeOffset + 8 * rowCount;
+            apertureOffset = longitudeOffset + 8 * rowCount;
+            exposureTimeOffset = apertureOffset + 8 * rowCount;
+            focalLengthOffset = exposureTimeOffset + 8 * rowCount;
+            widthOffset = focalLengthOffset + 8 * rowCount;
+            heightOffset = widthOffset + 4 * rowCount;
+            isoOffset = heightOffset + 4 * rowCount;
+            rotationOffset = isoOffset + 4 * rowCount;
+            flashOffset = rotationOffset + 2 * rowCount;
+            whiteBalanceOffset = flashOffset + 2 * rowCount;
+            modelOffset = whiteBalanceOffset + 2 * rowCount;
+            makeOffset = modelOffset + 2 * rowCount;
+            int pos = makeOffset + 2 * rowCount;
+            if (pos > buffer.limit()) throw new IOException("truncated exif index");
+
+            models = new String[modelCount];
+            for (int i = 0; i < modelCount; i++) {
+                int length = buffer.getShort(pos) & 0xffff;
+                pos += 2;
+                if (pos + length > buffer.limit()) {
+                    throw new IOException("truncated exif index");
+                }
+                byte[] bytes = new byte[length];
+                for (int j = 0; j < length; j++) bytes[j] = buffer.get(pos + j);
+                models[i] = new String(bytes, "UTF-8");
+                pos += length;
+            }
+        }
+
+        // Returns the row for the given key, or -1.
+        int findRow(long key) {
+            int mask = slotCount - 1;
+            int slot = hash(key) & mask;
+            for (int i = 0; i < slotCount; i++) {
+                int row = buffer.getInt(INDEX_HEADER_SIZE + 4 * slot) - 1;
+                if (row < 0) return -1;
+                if (buffer.getLong(pathKeyOffset + 8 * row) == key) return row;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        long getMtime(int row) {
+            return buffer.getLong(mtimeOffset + 8 * row);
+        }
+
+        void read(int row, Record out) {
+            out.dateTakenInMs = buffer.getLong(dateTakenOffset + 8 * row);
+            out.latitude = buffer.getDouble(latitudeOffset + 8 * row);
+            out.longitude = buffer.getDouble(longitudeOffset + 8 * row);
+            out.aperture = buffer.getDouble(apertureOffset + 8 * row);
+            out.exposureTime = buffer.getDouble(exposureTimeOffset + 8 * row);
+            out.focalLength = buffer.getDouble(focalLengthOffset + 8 * row);
+            out.width = buffer.getInt(widthOffset + 4 * row);
+            out.height = buffer.getInt(heightOffset + 4 * row);
+            out.iso = buffer.getInt(isoOffset + 4 * row);
+            out.rotation = buffer.getShort(rotationOffset + 2 * row);
+            out.flash = buffer.getShort(flashOffset + 2 * row);
+            out.whiteBalance = buffer.getShort(whiteBalanceOffset + 2 * row);
+            out.model = getModel(buffer.getShort(modelOffset + 2 * row));
+            out.make = getModel(buffer.getShort(makeOffset + 2 * row));
+        }
+
+        private String getModel(int model) {
+            return model == NO_MODEL ? null : models[model];
+        }
+    }
+
+    /**
+     * One row of the index. Location fields are {@link MediaItem#INVALID_LATLNG}
+     * when the file carries no GPS data, the camera settings are -1 or NaN
+     * like in {@link ExifSummary} when the file does not have them.
+     */
+    public static class Record {
+        public int rotation;
+        public int width;
+        public int height;
+        public long dateTakenInMs;
+        public double latitude;
+        public double longitude;
+        public String model;
+        public String make;
+        public int flash;
+        public int iso;
+        public int whiteBalance;
+        public double aperture;
+        public double exposureTime;
+        public double focalLength;
+
+        public Record() {
+            latitude = MediaItem.INVALID_LATLNG;
+            longitude = MediaItem.INVALID_LATLNG;
+            flash = -1;
+            iso = -1;
+            whiteBalance = -1;
+            aperture = Double.NaN;
+            exposureTime = Double.NaN;
+            focalLength = Double.NaN;
+        }
+
+        public void set(ExifSummary summary) {
+            rotation = summary.rotation;
+            width = summary.width;
+            height = summary.height;
+            dateTakenInMs = summary.dateTakenInMs;
+            latitude = summary.hasLocation ? summary.latitude : MediaItem.INVALID_LATLNG;
+            longitude = summary.hasLocation ? summary.longitude : MediaItem.INVALID_LATLNG;
+            model = summary.model;
+            make = summary.make;
+            flash = summary.flash;
+            iso = summary.iso;
+            whiteBalance = summary.whiteBalance;
+            aperture = summary.aperture;
+            exposureTime = summary.exposureTime;
+            focalLength = summary.focalLength;
+        }
+    }
+
+    private final File mFile;
+    private volatile Table mTable;
+
+    public ExifIndex(File file) {
+        mFile = file;
+        try {
+            mTable = map(file);
+        } catch (IOException e) {
+            // Missing or corrupted; the next scan rebuilds it.
+            Log.i(TAG, "no usable exif index at " + file + ": " + e.getMessage());
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Looks up the summary of the file at <code>path</code>. The row is only
+     * returned if it was indexed at modification time <code>mtimeInSec</code>.
+     *
+     * @return true if a current row was found and copied into <code>out</code>.
+     */
+    public boolean lookup(String path, long mtimeInSec, Record out) {
+        Table table = mTable;
+        if (table == null || path == null) return false;
+        int row = table.findRow(Utils.crc64Long(path));
+        if (row < 0 || table.getMtime(row) != mtimeInSec) return false;
+        table.read(row, out);
+        return true;
+    }
+
+    // Maps the file written by the builder and makes it the current table.
+    void reload() throws IOException {
+        mTable = map(mFile);
+    }
+
+    private static Table map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Table(buffer);
+        } finally {
+            Utils.closeSilently(raf);
+        }
+    }
+
+    private static int hash(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Accumulates rows in growable primitive columns and writes them out in
+     * the sidecar format. Not thread safe.
+     */
+    public static class Builder {
+        private int mRowCount;
+        private long[] mPathKey = new long[64];
+        private long[] mMtime = new long[64];
+        private long[] mDateTaken = new long[64];
+        private double[] mLatitude = new double[64];
+        private double[] mLongitude = new double[64];
+        private double[] mAperture = new double[64];
+        private double[] mExposureTime = new double[64];
+        private double[] mFocalLength = new double[64];
+        private int[] mWidth = new int[64];
+        private int[] mHeight = new int[64];
+        private int[] mIso = new int[64];
+        private short[] mRotation = new short[64];
+        private short[] mFlash = new short[64];
+        private short[] mWhiteBalance = new short[64];
+        private short[] mModel = new short[64];
+        private short[] mMake = new short[64];
+        private final ArrayList<String> mModels = new ArrayList<>();
+        private final HashMap<String, Integer> mModelIndex = new HashMap<>();
+
+        public int size() {
+            return mRowCount;
+        }
+
+        public void add(String path, long mtimeInSec, Record record) {
+            addRow(Utils.crc64Long(path), mtimeInSec, record);
+        }
+
+        // Copies a row from an existing index without touching the file.
+        boolean addFrom(ExifIndex index, String path, long mtimeInSec, Record scratch) {
+            if (!index.lookup(path, mtimeInSec, scratch)) return false;
+            addRow(Utils.crc64Long(path), mtimeInSec, scratch);
+            return true;
+        }
+
+        private void addRow(long key, long mtime, Record record) {
+            if (mRowCount == mPathKey.length) grow();
+            int row = mRowCount++;
+            mPathKey[row] = key;
+            mMtime[row] = mtime;
+            mDateTaken[row] = record.dateTakenInMs;
+            mLatitude[row] = record.latitude;
+            mLongitude[row] = record.longitude;
+            mAperture[row] = record.aperture;
+            mExposureTime[row] = record.exposureTime;
+            mFocalLength[row] = record.focalLength;
+            mWidth[row] = record.width;
+            mHeight[row] = record.height;
+            mIso[row] = record.iso;
+            mRotation[row] = (short) record.rotation;
+            mFlash[row] = (short) record.flash;
+            mWhiteBalance[row] = (short) record.whiteBalance;
+            mModel[row] = (short) modelIndex(record.model);
+            mMake[row] = (short) modelIndex(record.make);
+        }
+
+        private int modelIndex(String model) {
+            if (model == null || model.isEmpty()) return NO_MODEL;
+            Integer index = mModelIndex.get(model);
+            if (index != null) return index;
+            if (mModels.size() >= Short.MAX_VALUE) return NO_MODEL;
+            index = mModels.size();
+            mModels.add(model);
+            mModelIndex.put(model, index);
+            return index;
+        }
+
+        private void grow() {
+            int n = mPathKey.length * 2;
+            mPathKey = Arrays.copyOf(mPathKey, n);
+            mMtime = Arrays.copyOf(mMtime, n);
+            mDateTaken = Arrays.copyOf(mDateTaken, n);
+            mLatitude = Arrays.copyOf(mLatitude, n);
+            mLongitude = Arrays.copyOf(mLongitude, n);
+            mAperture = Arrays.copyOf(mAperture, n);
+            mExposureTime = Arrays.copyOf(mExposureTime, n);
+            mFocalLength = Arrays.copyOf(mFocalLength, n);
+            mWidth = Arrays.copyOf(mWidth, n);
+            mHeight = Arrays.copyOf(mHeight, n);
+            mIso = Arrays.copyOf(mIso, n);
+            mRotation = Arrays.copyOf(mRotation, n);
+            mFlash = Arrays.copyOf(mFlash, n);
+            mWhiteBalance = Arrays.copyOf(mWhiteBalance, n);
+            mModel = Arrays.copyOf(mModel, n);
+            mMake = Arrays.copyOf(mMake, n);
+        }
+
+        /**
+         * Writes the index to <code>file</code>, going through a temporary
+         * file so that a reader mapping <code>file</code> never sees a
+         * partial write.
+         */
+        public void writeTo(File file) throws IOException {
+            int slotCount = Integer.highestOneBit(Math.max(mRowCount, 8) * 2 - 1) << 1;
+            byte[][] models = new byte[mModels.size()][];
+            int modelBytes = 0;
+            for (int i = 0; i < models.length; i++) {
+                byte[] bytes = mModels.get(i).getBytes("UTF-8");
+                if (bytes.length > 0xffff) bytes = Arrays.copyOf(bytes, 0xffff);
+                models[i] = bytes;
+                modelBytes += 2 + bytes.length;
+            }
+            int n = mRowCount;
+            int size = INDEX_HEADER_SIZE + 4 * slotCount + (8 * 8 + 4 * 3 + 2 * 5) * n
+                    + modelBytes;
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            buffer.putInt(IH_MAGIC, MAGIC_INDEX_FILE);
+            buffer.putInt(IH_VERSION, VERSION);
+            buffer.putInt(IH_SLOT_COUNT, slotCount);
+            buffer.putInt(IH_ROW_COUNT, n);
+            buffer.putInt(IH_MODEL_COUNT, models.length);
+
+            int mask = slotCount - 1;
+            for (int row = 0; row < n; row++) {
+                int slot = hash(mPathKey[row]) & mask;
+                while (buffer.getInt(INDEX_HEADER_SIZE + 4 * slot) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                buffer.putInt(INDEX_HEADER_SIZE + 4 * slot, row + 1);
+            }
+
+            buffer.position(INDEX_HEADER_SIZE + 4 * slotCount);
+            for (int i = 0; i < n; i++) buffer.putLong(mPathKey[i]);
+            for (int i = 0; i < n; i++) buffer.putLong(mMtime[i]);
+            for (int i = 0; i < n; i++) buffer.putLong(mDateTaken[i]);
+            for (int i = 0; i < n; i++) buffer.putDouble(mLatitude[i]);
+            for (int i = 0; i < n; i++) buffer.putDouble(mLongitude[i]);
+            for (int i = 0; i < n; i++) buffer.putDouble(mAperture[i]);
+            for (int i = 0; i < n; i++) buffer.putDouble(mExposureTime[i]);
+            for (int i = 0; i < n; i++) buffer.putDouble(mFocalLength[i]);
+            for (int i = 0; i < n; i++) buffer.putInt(mWidth[i]);
+            for (int i = 0; i < n; i++) buffer.putInt(mHeight[i]);
+            for (int i = 0; i < n; i++) buffer.putInt(mIso[i]);
+            for (int i = 0; i < n; i++) buffer.putShort(mRotation[i]);
+            for (int i = 0; i < n; i++) buffer.putShort(mFlash[i]);
+            for (int i = 0; i < n; i++) buffer.putShort(mWhiteBalance[i]);
+            for (int i = 0; i < n; i++) buffer.putShort(mModel[i]);
+            for (int i = 0; i < n; i++) buffer.putShort(mMake[i]);
+            for (byte[] model : models) {
+                buffer.putShort((short) model.length);
+                buffer.put(model);
+            }
+
+            File tmp = new File(file.getPath() + ".tmp");
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                raf.setLength(0);
+                raf.write(buffer.array(), 0, size);
+            } finally {
+                Utils.closeSilently(raf);
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("cannot rename " + tmp + " to " + file);
+            }
+        }
+    }
+}
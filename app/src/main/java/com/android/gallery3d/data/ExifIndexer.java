@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.data;
+
+import android.os.Process;
+
+import com.android.gallery3d.common.Utils;
+import com.android.gallery3d.exif.ExifInvalidFormatException;
+import com.android.gallery3d.exif.ExifSummary;
+import com.android.gallery3d.util.PriorityThreadFactory;
+import com.android.gallery3d.util.ThreadPool.Job;
+import com.android.gallery3d.util.ThreadPool.JobContext;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// ExifIndexer walks directory trees, reads the EXIF summary of every JPEG
+// and rewrites the ExifIndex sidecar. Files whose modification time matches
+// the current index are copied over without being opened, so a rescan only
+// parses new or changed files. Parsing runs on a small bounded pool: the
+// work is mostly I/O wait, but more readers than that only thrash storage.
+public class ExifIndexer implements Job<Void> {
+    private static final String TAG = "ExifIndexer";
+
+    private static final int PARALLELISM = 3;
+    private static final int MAX_PENDING = 32;
+    // EXIF sits at the head of the file, so small reads avoid pulling in
+    // image data.
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    // ExifSummary carries its own parser state and date format, so each
+    // worker keeps one instead of allocating it per file.
+    private static final ThreadLocal<ExifSummary> sSummary = new ThreadLocal<ExifSummary>() {
+        @Override
+        protected ExifSummary initialValue() {
+            return new ExifSummary();
+        }
+    };
+
+    private final ExifIndex mIndex;
+    private final File[] mRoots;
+
+    public ExifIndexer(ExifIndex index, File... roots) {
+        mIndex = index;
+        mRoots = roots;
+    }
+
+    @Override
+    public Void run(JobContext jc) {
+        ArrayList<File> changed = new ArrayList<>();
+        ExifIndex.Builder builder = new ExifIndex.Builder();
+        ExifIndex.Record scratch = new ExifIndex.Record();
+        for (File root : mRoots) {
+            collect(jc, root, builder, scratch, changed);
+            if (jc.isCancelled()) return null;
+        }
+        if (!changed.isEmpty() && !parse(jc, changed, builder)) return null;
+
+        try {
+            builder.writeTo(mIndex.getFile());
+            mIndex.reload();
+            Log.d(TAG, "indexed " + builder.size() + " files, parsed " + changed.size());
+        } catch (IOException e) {
+            Log.w(TAG, "cannot write exif index", e);
+        }
+        return null;
+    }
+
+    // Copies unchanged rows into the builder and collects the files that
+    // need parsing.
+    private void collect(JobContext jc, File dir, ExifIndex.Builder builder,
+            ExifIndex.Record scratch, ArrayList<File> changed) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (jc.isCancelled()) return;
+            String name = file.getName();
+            if (name.startsWith(".")) continue;
+            if (file.isDirectory()) {
+                collect(jc, file, builder, scratch, changed);
+            } else if (isJpeg(name)) {
+                String path = file.getAbsolutePath();
+                if (!builder.addFrom(mIndex, path, file.lastModified() / 1000, scratch)) {
+                    changed.add(file);
+                }
+            }
+        }
+    }
+
+    private boolean parse(JobContext jc, ArrayList<File> files, ExifIndex.Builder builder) {
+        // CallerRunsPolicy makes this thread parse too once MAX_PENDING files
+        // are queued, which keeps the queue short on very large trees.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                PARALLELISM, PARALLELISM, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING),
+                new PriorityThreadFactory("exif-indexer",
+                        Process.THREAD_PRIORITY_BACKGROUND),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            ArrayList<Future<ExifIndex.Record>> futures = new ArrayList<>(files.size());
+            for (final File file : files) {
+                if (jc.isCancelled()) return false;
+                futures.add(executor.submit(() -> readSummary(file)));
+            }
+            for (int i = 0, n = files.size(); i < n; i++) {
+                if (jc.isCancelled()) return false;
+                ExifIndex.Record record;
+                try {
+                    record = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    // One bad file must not keep the whole tree from being
+                    // indexed.
+                    Log.w(TAG, "failed to index " + files.get(i), e);
+                    record = null;
+                }
+                // Unreadable files are indexed with an empty record so that
+                // they are not retried until they change.
+                if (record == null) record = new ExifIndex.Record();
+                File file = files.get(i);
+                builder.add(file.getAbsolutePath(), file.lastModified() / 1000, record);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Log.w(TAG, "interrupted while indexing", e);
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExifIndex.Record readSummary(File file) {
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE);
+            ExifSummary summary = sSummary.get();
+            ExifIndex.Record record = new ExifIndex.Record();
+            if (summary.read(is)) record.set(summary);
+            return record;
+        } catch (IOException e) {
+            Log.w(TAG, "cannot read exif from " + file + ": " + e.getMessage());
+        } catch (ExifInvalidFormatException e) {
+            Log.w(TAG, "invalid exif in " + file + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Malformed files can make the parser fail in other ways; its
+            // state is not trusted afterwards.
+            Log.w(TAG, "cannot parse exif in " + file, e);
+            sSummary.remove();
+        } finally {
+            Utils.closeSilently(is);
+        }
+        return null;
+    }
+
+    private static boolean isJpeg(String name) {
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return false;
+        String ext = name.substring(dot + 1);
+        return ext.equalsIgnoreCase("jpg") || ext.equalsIgnoreCase("jpeg");
+    }
+}
@@ -323,11 +323,50 @@ public class LocalImage extends LocalMediaItem {
         if (MIME_TYPE_JPEG.equals(mimeType)) {
             // ExifInterface returns incorrect values for photos in other format.
             // For example, the width and height of an webp images is always '0'.
-            MediaDetails.extractExifInfo(details, filePath);
+            // The index is only used if it is current, the file is read otherwise.
+            ExifIndex.Record record = lookupExifIndex();
+            if (record != null) {
+                MediaDetails.extractIndexedInfo(details, record);
+            } else {
+                MediaDetails.extractExifInfo(details, filePath);
+            }
         }
         return details;
     }
 
+    @Override
+    public long getDateInMs() {
+        // Files scanned before their EXIF was readable have no date taken in
+        // the media provider; the index still knows the capture time.
+        if (dateTakenInMs == 0) {
+            ExifIndex.Record record = lookupExifIndex();
+            if (record != null && record.dateTakenInMs != 0) return record.dateTakenInMs;
+        }
+        return dateTakenInMs;
+    }
+
+    @Override
+    public void getLatLong(double[] latLong) {
+        super.getLatLong(latLong);
+        if (!GalleryUtils.isValidLocation(latLong[0], latLong[1])) {
+            ExifIndex.Record record = lookupExifIndex();
+            if (record != null) {
+                latLong[0] = record.latitude;
+                latLong[1] = record.longitude;
+            }
+        }
+    }
+
+    // Returns the indexed EXIF summary of this image, or null if the image is
+    // not a JPEG or has not been indexed at its current modification time.
+    private ExifIndex.Record lookupExifIndex() {
+        if (!MIME_TYPE_JPEG.equals(mimeType)) return null;
+        ExifIndex index = mApplication.getExifIndex();
+        if (index == null) return null;
+        ExifIndex.Record record = new ExifIndex.Record();
+        return index.lookup(filePath, dateModifiedInSec, record) ? record : null;
+    }
+
     @Override
     public int getRotation() {
         return rotation;
@@ -30,6 +30,7 @@ import com.android.gallery3d.util.GalleryUtils;
 import com.android.gallery3d.util.ThreadPool.Job;
 import com.android.gallery3d.util.ThreadPool.JobContext;
 import com.android.gallery3d.util.UpdateHelper;
+import com.android.gallery3d.util.VideoMetadata;
 
 // LocalVideo represents a video in the local storage.
 public class LocalVideo extends LocalMediaItem {
@@ -216,6 +217,11 @@ public class LocalVideo extends LocalMediaItem {
 
     @Override
     public MediaDetails getDetails() {
+        if (durationInSec <= 0 || width == 0 || height == 0) {
+            // The media scanner has not (or could not) fill in the columns,
+            // read them from the file header instead.
+            loadFromMetadata();
+        }
         MediaDetails details = super.getDetails();
         int s = durationInSec;
         if (s > 0) {
@@ -225,6 +231,18 @@ public class LocalVideo extends LocalMediaItem {
         return details;
     }
 
+    private void loadFromMetadata() {
+        if (filePath == null) return;
+        VideoMetadata metadata = VideoMetadata.get(
+                mApplication.getAndroidContext(), filePath);
+        if (metadata == null) return;
+        if (durationInSec <= 0) durationInSec = (int) (metadata.durationMs / 1000);
+        if (width == 0 || height == 0) {
+            width = metadata.width;
+            height = metadata.height;
+        }
+    }
+
     @Override
     public int getWidth() {
         return width;
@@ -19,6 +19,7 @@ package com.android.gallery3d.data;
 import com.android.gallery3d.R;
 import com.android.gallery3d.exif.ExifInterface;
 import com.android.gallery3d.exif.ExifTag;
+import com.android.gallery3d.util.GalleryUtils;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -163,4 +164,46 @@ public class MediaDetails implements Iterable<Entry<Integer, Object>> {
             details.setUnit(MediaDetails.INDEX_FOCAL_LENGTH, R.string.unit_mm);
         }
     }
+
+    /**
+     * Fills in the same details as {@link #extractExifInfo} from the EXIF
+     * index, without touching the file, and the location if the media
+     * provider is missing it.
+     */
+    public static void extractIndexedInfo(MediaDetails details, ExifIndex.Record record) {
+        if (record.flash >= 0) {
+            details.addDetail(MediaDetails.INDEX_FLASH, new FlashState(record.flash));
+        }
+        if (record.width > 0) {
+            details.addDetail(MediaDetails.INDEX_WIDTH, String.valueOf(record.width));
+        }
+        if (record.height > 0) {
+            details.addDetail(MediaDetails.INDEX_HEIGHT, String.valueOf(record.height));
+        }
+        if (record.make != null) details.addDetail(MediaDetails.INDEX_MAKE, record.make);
+        if (record.model != null) details.addDetail(MediaDetails.INDEX_MODEL, record.model);
+        if (!Double.isNaN(record.aperture)) {
+            details.addDetail(MediaDetails.INDEX_APERTURE, String.valueOf(record.aperture));
+        }
+        if (record.iso >= 0) {
+            details.addDetail(MediaDetails.INDEX_ISO, String.valueOf(record.iso));
+        }
+        if (record.whiteBalance >= 0) {
+            details.addDetail(MediaDetails.INDEX_WHITE_BALANCE,
+                    String.valueOf(record.whiteBalance));
+        }
+        if (!Double.isNaN(record.exposureTime)) {
+            details.addDetail(MediaDetails.INDEX_EXPOSURE_TIME,
+                    String.valueOf(record.exposureTime));
+        }
+        if (!Double.isNaN(record.focalLength)) {
+            details.addDetail(MediaDetails.INDEX_FOCAL_LENGTH, record.focalLength);
+            details.setUnit(MediaDetails.INDEX_FOCAL_LENGTH, R.string.unit_mm);
+        }
+        if (details.getDetail(MediaDetails.INDEX_LOCATION) == null
+                && GalleryUtils.isValidLocation(record.latitude, record.longitude)) {
+            details.addDetail(MediaDetails.INDEX_LOCATION,
+                    new double[] {record.latitude, record.longitude});
+        }
+    }
 }
@@ -199,9 +199,21 @@ public final class ImageLoader {
      * to that orientation.
      */
     public static Bitmap orientBitmap(Bitmap bitmap, int ori) {
+        Matrix matrix = getOrientationMatrix(ori, bitmap.getWidth(), bitmap.getHeight());
+        if (matrix == null) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(),
+                bitmap.getHeight(), matrix, true);
+    }
+
+    /**
+     * Returns the matrix orientBitmap() transforms a w x h bitmap with, or
+     * null if the orientation leaves the bitmap as it is. The result of
+     * Bitmap.createBitmap() is moved to the origin, the matrix is not.
+     */
+    public static Matrix getOrientationMatrix(int ori, int w, int h) {
         Matrix matrix = new Matrix();
-        int w = bitmap.getWidth();
-        int h = bitmap.getHeight();
         if (ori == ORI_ROTATE_90 ||
                 ori == ORI_ROTATE_270 ||
                 ori == ORI_TRANSPOSE ||
@@ -236,10 +248,9 @@ public final class ImageLoader {
                 break;
             case ORI_NORMAL:
             default:
-                return bitmap;
+                return null;
         }
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(),
-                bitmap.getHeight(), matrix, true);
+        return matrix;
     }
 
     /**
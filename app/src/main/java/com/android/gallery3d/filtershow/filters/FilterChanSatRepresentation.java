@@ -71,6 +71,7 @@ public class FilterChanSatRepresentation extends FilterRepresentation implements
         setFilterClass(ImageFilterChanSat.class);
         setEditorId(EditorChanSat.ID);
         setSupportsPartialRendering(true);
+        setStripOverlap(0);
     }
 
     public String toString() {
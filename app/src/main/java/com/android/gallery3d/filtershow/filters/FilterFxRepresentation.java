@@ -35,6 +35,7 @@ public class FilterFxRepresentation extends FilterRepresentation {
         setEditorId(ImageOnlyEditor.ID);
         setShowParameterValue(false);
         setSupportsPartialRendering(true);
+        setStripOverlap(0);
     }
 
     @Override
@@ -31,6 +31,7 @@ public class FilterRepresentation {
     private int mPriority = TYPE_NORMAL;
     private Class<?> mFilterClass;
     private boolean mSupportsPartialRendering = false;
+    private int mStripOverlap = -1;
     private int mTextId = 0;
     private int mEditorId = BasicEditor.ID;
     private int mButtonId = 0;
@@ -63,6 +64,7 @@ public class FilterRepresentation {
         representation.setFilterClass(getFilterClass());
         representation.setFilterType(getFilterType());
         representation.setSupportsPartialRendering(supportsPartialRendering());
+        representation.setStripOverlap(getStripOverlap());
         representation.setTextId(getTextId());
         representation.setEditorId(getEditorId());
         representation.setOverlayId(getOverlayId());
@@ -140,6 +142,19 @@ public class FilterRepresentation {
         mSupportsPartialRendering = value;
     }
 
+    /**
+     * Returns how many rows above and below a horizontal strip of the image
+     * the filter reads to render the strip, or -1 if it needs the whole image
+     * (e.g. geometry, borders, or filters depending on the pixel position).
+     */
+    public int getStripOverlap() {
+        return mStripOverlap;
+    }
+
+    public void setStripOverlap(int rows) {
+        mStripOverlap = rows;
+    }
+
     public void useParametersFrom(FilterRepresentation a) {
     }
 
@@ -29,6 +29,7 @@ public class FilterUserPresetRepresentation extends FilterRepresentation {
         setEditorId(ImageOnlyEditor.ID);
         setFilterType(FilterRepresentation.TYPE_FX);
         setSupportsPartialRendering(true);
+        setStripOverlap(0);
         mPreset = preset;
         mId = id;
     }
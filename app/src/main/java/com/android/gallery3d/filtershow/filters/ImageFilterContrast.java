@@ -39,6 +39,7 @@ public class ImageFilterContrast extends SimpleImageFilter {
         representation.setMaximum(100);
         representation.setDefaultValue(0);
         representation.setSupportsPartialRendering(true);
+        representation.setStripOverlap(0);
         return representation;
     }
 
@@ -33,6 +33,7 @@ public class ImageFilterEdge extends SimpleImageFilter {
         representation.setFilterClass(ImageFilterEdge.class);
         representation.setTextId(R.string.edge);
         representation.setSupportsPartialRendering(true);
+        representation.setStripOverlap(1);
         return representation;
     }
 
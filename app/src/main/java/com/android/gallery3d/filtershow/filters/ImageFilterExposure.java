@@ -37,6 +37,7 @@ public class ImageFilterExposure extends SimpleImageFilter {
         representation.setMaximum(100);
         representation.setDefaultValue(0);
         representation.setSupportsPartialRendering(true);
+        representation.setStripOverlap(0);
         return representation;
     }
 
@@ -19,6 +19,7 @@ public class ImageFilterNegative extends ImageFilter {
         representation.setShowParameterValue(false);
         representation.setEditorId(ImageOnlyEditor.ID);
         representation.setSupportsPartialRendering(true);
+        representation.setStripOverlap(0);
         representation.setIsBooleanFilter(true);
         return representation;
     }
@@ -157,7 +157,8 @@ public abstract class ImageFilterRS extends ImageFilter {
                 Allocation.USAGE_SCRIPT | Allocation.USAGE_GRAPHICS_TEXTURE);
     }
 
-    private static Allocation convertRGBAtoA(RenderScript RS, Bitmap bitmap) {
+    // mGreyConvert is shared by the filters of all pipelines.
+    private static synchronized Allocation convertRGBAtoA(RenderScript RS, Bitmap bitmap) {
         if (RS != mRScache || mGreyConvert == null) {
             mGreyConvert = new ScriptC_grey(RS);
             mRScache = RS;
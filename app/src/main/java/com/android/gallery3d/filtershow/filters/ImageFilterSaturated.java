@@ -38,6 +38,7 @@ public class ImageFilterSaturated extends SimpleImageFilter {
         representation.setMaximum(100);
         representation.setDefaultValue(0);
         representation.setSupportsPartialRendering(true);
+        representation.setStripOverlap(0);
         return representation;
     }
 
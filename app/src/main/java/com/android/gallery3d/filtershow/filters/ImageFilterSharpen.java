@@ -39,6 +39,7 @@ public class ImageFilterSharpen extends ImageFilterRS {
         representation.setOverlayId(R.drawable.filtershow_button_colors_sharpen);
         representation.setEditorId(BasicEditor.ID);
         representation.setSupportsPartialRendering(true);
+        representation.setStripOverlap(1);
         return representation;
     }
 
@@ -43,6 +43,11 @@ public class CachingPipeline implements PipelineInterface {
     private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
 
     private static volatile RenderScript sRS = null;
+    // Pipelines render concurrently, the RenderScript context is only created
+    // and destroyed when none renders.
+    // The filter instances of a FiltersManager are used by one pipeline at a
+    // time, pipelines that should not wait for each other need their own.
+    private static final RenderingLock sRenderingLock = new RenderingLock();
 
     private FiltersManager mFiltersManager = null;
     private volatile Bitmap mOriginalBitmap = null;
@@ -69,23 +74,41 @@ public class CachingPipeline implements PipelineInterface {
         mName = name;
     }
 
-    public static synchronized RenderScript getRenderScriptContext() {
+    public static RenderScript getRenderScriptContext() {
         return sRS;
     }
 
-    public static synchronized void createRenderscriptContext(Context context) {
-        if (sRS != null) {
-            Log.w(LOGTAG, "A prior RS context exists when calling setRenderScriptContext");
-            destroyRenderScriptContext();
+    public static void createRenderscriptContext(Context context) {
+        sRenderingLock.lockExclusive();
+        try {
+            if (sRS != null) {
+                Log.w(LOGTAG, "A prior RS context exists when calling setRenderScriptContext");
+                destroyRenderScriptContext();
+            }
+            sRS = RenderScript.create(context);
+        } finally {
+            sRenderingLock.unlockExclusive();
         }
-        sRS = RenderScript.create(context);
     }
 
-    public static synchronized void destroyRenderScriptContext() {
-        if (sRS != null) {
-            sRS.destroy();
+    public static void destroyRenderScriptContext() {
+        sRenderingLock.lockExclusive();
+        try {
+            if (sRS != null) {
+                sRS.destroy();
+            }
+            sRS = null;
+        } finally {
+            sRenderingLock.unlockExclusive();
         }
-        sRS = null;
+    }
+
+    /**
+     * Runs the teardown while no pipeline renders and none can start, so that
+     * the filter scripts and the context are not freed under a running save.
+     */
+    public static void runWithoutRendering(Runnable teardown) {
+        sRenderingLock.runExclusive(teardown);
     }
 
     public void stop() {
@@ -93,27 +116,32 @@ public class CachingPipeline implements PipelineInterface {
     }
 
     public synchronized void reset() {
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
-                return;
-            }
-            mOriginalBitmap = null; // just a reference to the bitmap in ImageLoader
-            if (mResizedOriginalBitmap != null) {
-                mResizedOriginalBitmap.recycle();
-                mResizedOriginalBitmap = null;
-            }
-            if (mOriginalAllocation != null) {
-                mOriginalAllocation.destroy();
-                mOriginalAllocation = null;
-            }
-            if (mFiltersOnlyOriginalAllocation != null) {
-                mFiltersOnlyOriginalAllocation.destroy();
-                mFiltersOnlyOriginalAllocation = null;
-            }
-            mPreviewScaleFactor = 1.0f;
-            mHighResPreviewScaleFactor = 1.0f;
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return;
+                }
+                mOriginalBitmap = null; // just a reference to the bitmap in ImageLoader
+                if (mResizedOriginalBitmap != null) {
+                    mResizedOriginalBitmap.recycle();
+                    mResizedOriginalBitmap = null;
+                }
+                if (mOriginalAllocation != null) {
+                    mOriginalAllocation.destroy();
+                    mOriginalAllocation = null;
+                }
+                if (mFiltersOnlyOriginalAllocation != null) {
+                    mFiltersOnlyOriginalAllocation.destroy();
+                    mFiltersOnlyOriginalAllocation = null;
+                }
+                mPreviewScaleFactor = 1.0f;
+                mHighResPreviewScaleFactor = 1.0f;
 
-            destroyPixelAllocations();
+                destroyPixelAllocations();
+            }
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
@@ -211,200 +239,253 @@ public class CachingPipeline implements PipelineInterface {
         return true;
     }
 
-    public void renderHighres(RenderingRequest request) {
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
-                return;
-            }
-            ImagePreset preset = request.getImagePreset();
-            setupEnvironment(preset, false);
-            Bitmap bitmap = MasterImage.getImage().getOriginalBitmapHighres();
-            if (bitmap == null) {
-                return;
-            }
-            bitmap = mEnvironment.getBitmapCopy(bitmap, BitmapCache.HIGHRES);
-            bitmap = preset.applyGeometry(bitmap, mEnvironment);
-
-            mEnvironment.setQuality(FilterEnvironment.QUALITY_PREVIEW);
-            Bitmap bmp = preset.apply(bitmap, mEnvironment);
-            if (!mEnvironment.needsStop()) {
-                request.setBitmap(bmp);
-            } else {
-                mEnvironment.cache(bmp);
+    public synchronized void renderHighres(RenderingRequest request) {
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return;
+                }
+                ImagePreset preset = request.getImagePreset();
+                setupEnvironment(preset, false);
+                Bitmap bitmap = MasterImage.getImage().getOriginalBitmapHighres();
+                if (bitmap == null) {
+                    return;
+                }
+                bitmap = mEnvironment.getBitmapCopy(bitmap, BitmapCache.HIGHRES);
+                bitmap = preset.applyGeometry(bitmap, mEnvironment);
+
+                mEnvironment.setQuality(FilterEnvironment.QUALITY_PREVIEW);
+                Bitmap bmp = preset.apply(bitmap, mEnvironment);
+                if (!mEnvironment.needsStop()) {
+                    request.setBitmap(bmp);
+                } else {
+                    mEnvironment.cache(bmp);
+                }
+                mFiltersManager.freeFilterResources(preset);
             }
-            mFiltersManager.freeFilterResources(preset);
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
-    public void renderGeometry(RenderingRequest request) {
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
-                return;
-            }
-            ImagePreset preset = request.getImagePreset();
-            setupEnvironment(preset, false);
-            Bitmap bitmap = MasterImage.getImage().getOriginalBitmapHighres();
-            if (bitmap == null) {
-                return;
-            }
-            bitmap = mEnvironment.getBitmapCopy(bitmap, BitmapCache.GEOMETRY);
-            bitmap = preset.applyGeometry(bitmap, mEnvironment);
-            if (!mEnvironment.needsStop()) {
-                request.setBitmap(bitmap);
-            } else {
-                mEnvironment.cache(bitmap);
+    public synchronized void renderGeometry(RenderingRequest request) {
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return;
+                }
+                ImagePreset preset = request.getImagePreset();
+                setupEnvironment(preset, false);
+                Bitmap bitmap = MasterImage.getImage().getOriginalBitmapHighres();
+                if (bitmap == null) {
+                    return;
+                }
+                bitmap = mEnvironment.getBitmapCopy(bitmap, BitmapCache.GEOMETRY);
+                bitmap = preset.applyGeometry(bitmap, mEnvironment);
+                if (!mEnvironment.needsStop()) {
+                    request.setBitmap(bitmap);
+                } else {
+                    mEnvironment.cache(bitmap);
+                }
+                mFiltersManager.freeFilterResources(preset);
             }
-            mFiltersManager.freeFilterResources(preset);
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
-    public void renderFilters(RenderingRequest request) {
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
-                return;
-            }
-            ImagePreset preset = request.getImagePreset();
-            setupEnvironment(preset, false);
-            Bitmap bitmap = MasterImage.getImage().getOriginalBitmapHighres();
-            if (bitmap == null) {
-                return;
-            }
-            bitmap = mEnvironment.getBitmapCopy(bitmap, BitmapCache.FILTERS);
-            bitmap = preset.apply(bitmap, mEnvironment);
-            if (!mEnvironment.needsStop()) {
-                request.setBitmap(bitmap);
-            } else {
-                mEnvironment.cache(bitmap);
+    public synchronized void renderFilters(RenderingRequest request) {
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return;
+                }
+                ImagePreset preset = request.getImagePreset();
+                setupEnvironment(preset, false);
+                Bitmap bitmap = MasterImage.getImage().getOriginalBitmapHighres();
+                if (bitmap == null) {
+                    return;
+                }
+                bitmap = mEnvironment.getBitmapCopy(bitmap, BitmapCache.FILTERS);
+                bitmap = preset.apply(bitmap, mEnvironment);
+                if (!mEnvironment.needsStop()) {
+                    request.setBitmap(bitmap);
+                } else {
+                    mEnvironment.cache(bitmap);
+                }
+                mFiltersManager.freeFilterResources(preset);
             }
-            mFiltersManager.freeFilterResources(preset);
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
     public synchronized void render(RenderingRequest request) {
         // TODO: cleanup/remove GEOMETRY / FILTERS paths
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
-                return;
-            }
-            if ((request.getType() != RenderingRequest.PARTIAL_RENDERING
-                  && request.getType() != RenderingRequest.ICON_RENDERING
-                    && request.getBitmap() == null)
-                    || request.getImagePreset() == null) {
-                return;
-            }
-
-            if (DEBUG) {
-                Log.v(LOGTAG, "render image of type " + getType(request));
-            }
-
-            Bitmap bitmap = request.getBitmap();
-            ImagePreset preset = request.getImagePreset();
-            setupEnvironment(preset, true);
-            mFiltersManager.freeFilterResources(preset);
-
-            if (request.getType() == RenderingRequest.PARTIAL_RENDERING) {
-                MasterImage master = MasterImage.getImage();
-                bitmap = ImageLoader.getScaleOneImageForPreset(master.getActivity(),
-                        mEnvironment.getBimapCache(),
-                        master.getUri(), request.getBounds(),
-                        request.getDestination());
-                if (bitmap == null) {
-                    Log.w(LOGTAG, "could not get bitmap for: " + getType(request));
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return;
+                }
+                if ((request.getType() != RenderingRequest.PARTIAL_RENDERING
+                      && request.getType() != RenderingRequest.ICON_RENDERING
+                        && request.getBitmap() == null)
+                        || request.getImagePreset() == null) {
                     return;
                 }
-            }
 
-            if (request.getType() == RenderingRequest.FULL_RENDERING
-                    || request.getType() == RenderingRequest.GEOMETRY_RENDERING
-                    || request.getType() == RenderingRequest.FILTERS_RENDERING) {
-                updateOriginalAllocation(preset);
-            }
+                if (DEBUG) {
+                    Log.v(LOGTAG, "render image of type " + getType(request));
+                }
 
-            if (DEBUG && bitmap != null) {
-                Log.v(LOGTAG, "after update, req bitmap (" + bitmap.getWidth() + "x" + bitmap.getHeight()
-                        + " ? resizeOriginal (" + mResizedOriginalBitmap.getWidth() + "x"
-                        + mResizedOriginalBitmap.getHeight());
-            }
+                Bitmap bitmap = request.getBitmap();
+                ImagePreset preset = request.getImagePreset();
+                setupEnvironment(preset, true);
+                mFiltersManager.freeFilterResources(preset);
 
-            if (request.getType() == RenderingRequest.FULL_RENDERING
-                    || request.getType() == RenderingRequest.GEOMETRY_RENDERING) {
-                mOriginalAllocation.copyTo(bitmap);
-            } else if (request.getType() == RenderingRequest.FILTERS_RENDERING) {
-                mFiltersOnlyOriginalAllocation.copyTo(bitmap);
-            }
+                if (request.getType() == RenderingRequest.PARTIAL_RENDERING) {
+                    MasterImage master = MasterImage.getImage();
+                    bitmap = ImageLoader.getScaleOneImageForPreset(master.getActivity(),
+                            mEnvironment.getBimapCache(),
+                            master.getUri(), request.getBounds(),
+                            request.getDestination());
+                    if (bitmap == null) {
+                        Log.w(LOGTAG, "could not get bitmap for: " + getType(request));
+                        return;
+                    }
+                }
 
-            if (request.getType() == RenderingRequest.FULL_RENDERING
-                    || request.getType() == RenderingRequest.FILTERS_RENDERING
-                    || request.getType() == RenderingRequest.ICON_RENDERING
-                    || request.getType() == RenderingRequest.PARTIAL_RENDERING
-                    || request.getType() == RenderingRequest.STYLE_ICON_RENDERING) {
+                if (request.getType() == RenderingRequest.FULL_RENDERING
+                        || request.getType() == RenderingRequest.GEOMETRY_RENDERING
+                        || request.getType() == RenderingRequest.FILTERS_RENDERING) {
+                    updateOriginalAllocation(preset);
+                }
 
-                if (request.getType() == RenderingRequest.ICON_RENDERING) {
-                    mEnvironment.setQuality(FilterEnvironment.QUALITY_ICON);
-                } else {
-                    mEnvironment.setQuality(FilterEnvironment.QUALITY_PREVIEW);
+                if (DEBUG && bitmap != null) {
+                    Log.v(LOGTAG, "after update, req bitmap (" + bitmap.getWidth() + "x" + bitmap.getHeight()
+                            + " ? resizeOriginal (" + mResizedOriginalBitmap.getWidth() + "x"
+                            + mResizedOriginalBitmap.getHeight());
                 }
 
-                if (request.getType() == RenderingRequest.ICON_RENDERING) {
-                    Rect iconBounds = request.getIconBounds();
-                    Bitmap source = MasterImage.getImage().getThumbnailBitmap();
-                    if (iconBounds.width() > source.getWidth() * 2) {
-                        source = MasterImage.getImage().getLargeThumbnailBitmap();
-                    }
-                    if (iconBounds != null) {
-                        bitmap = mEnvironment.getBitmap(iconBounds.width(),
-                                iconBounds.height(), BitmapCache.ICON);
-                        Canvas canvas = new Canvas(bitmap);
-                        Matrix m = new Matrix();
-                        float minSize = Math.min(source.getWidth(), source.getHeight());
-                        float maxSize = Math.max(iconBounds.width(), iconBounds.height());
-                        float scale = maxSize / minSize;
-                        m.setScale(scale, scale);
-                        float dx = (iconBounds.width() - (source.getWidth() * scale))/2.0f;
-                        float dy = (iconBounds.height() - (source.getHeight() * scale))/2.0f;
-                        m.postTranslate(dx, dy);
-                        canvas.drawBitmap(source, m, new Paint(Paint.FILTER_BITMAP_FLAG));
+                if (request.getType() == RenderingRequest.FULL_RENDERING
+                        || request.getType() == RenderingRequest.GEOMETRY_RENDERING) {
+                    mOriginalAllocation.copyTo(bitmap);
+                } else if (request.getType() == RenderingRequest.FILTERS_RENDERING) {
+                    mFiltersOnlyOriginalAllocation.copyTo(bitmap);
+                }
+
+                if (request.getType() == RenderingRequest.FULL_RENDERING
+                        || request.getType() == RenderingRequest.FILTERS_RENDERING
+                        || request.getType() == RenderingRequest.ICON_RENDERING
+                        || request.getType() == RenderingRequest.PARTIAL_RENDERING
+                        || request.getType() == RenderingRequest.STYLE_ICON_RENDERING) {
+
+                    if (request.getType() == RenderingRequest.ICON_RENDERING) {
+                        mEnvironment.setQuality(FilterEnvironment.QUALITY_ICON);
                     } else {
-                        bitmap = mEnvironment.getBitmapCopy(source, BitmapCache.ICON);
+                        mEnvironment.setQuality(FilterEnvironment.QUALITY_PREVIEW);
                     }
+
+                    if (request.getType() == RenderingRequest.ICON_RENDERING) {
+                        Rect iconBounds = request.getIconBounds();
+                        Bitmap source = MasterImage.getImage().getThumbnailBitmap();
+                        if (iconBounds.width() > source.getWidth() * 2) {
+                            source = MasterImage.getImage().getLargeThumbnailBitmap();
+                        }
+                        if (iconBounds != null) {
+                            bitmap = mEnvironment.getBitmap(iconBounds.width(),
+                                    iconBounds.height(), BitmapCache.ICON);
+                            Canvas canvas = new Canvas(bitmap);
+                            Matrix m = new Matrix();
+                            float minSize = Math.min(source.getWidth(), source.getHeight());
+                            float maxSize = Math.max(iconBounds.width(), iconBounds.height());
+                            float scale = maxSize / minSize;
+                            m.setScale(scale, scale);
+                            float dx = (iconBounds.width() - (source.getWidth() * scale))/2.0f;
+                            float dy = (iconBounds.height() - (source.getHeight() * scale))/2.0f;
+                            m.postTranslate(dx, dy);
+                            canvas.drawBitmap(source, m, new Paint(Paint.FILTER_BITMAP_FLAG));
+                        } else {
+                            bitmap = mEnvironment.getBitmapCopy(source, BitmapCache.ICON);
+                        }
+                    }
+                    Bitmap bmp = preset.apply(bitmap, mEnvironment);
+                    if (!mEnvironment.needsStop()) {
+                        request.setBitmap(bmp);
+                    }
+                    mFiltersManager.freeFilterResources(preset);
                 }
-                Bitmap bmp = preset.apply(bitmap, mEnvironment);
-                if (!mEnvironment.needsStop()) {
-                    request.setBitmap(bmp);
-                }
-                mFiltersManager.freeFilterResources(preset);
             }
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
     public synchronized void renderImage(ImagePreset preset, Allocation in, Allocation out) {
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
-                return;
-            }
-            setupEnvironment(preset, false);
-            mFiltersManager.freeFilterResources(preset);
-            preset.applyFilters(-1, -1, in, out, mEnvironment);
-            boolean copyOut = false;
-            if (preset.nbFilters() > 0) {
-                copyOut = true;
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return;
+                }
+                setupEnvironment(preset, false);
+                mFiltersManager.freeFilterResources(preset);
+                preset.applyFilters(-1, -1, in, out, mEnvironment);
+                boolean copyOut = false;
+                if (preset.nbFilters() > 0) {
+                    copyOut = true;
+                }
+                preset.applyBorder(in, out, copyOut, mEnvironment);
             }
-            preset.applyBorder(in, out, copyOut, mEnvironment);
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
     public synchronized Bitmap renderFinalImage(Bitmap bitmap, ImagePreset preset) {
-        synchronized (CachingPipeline.class) {
-            if (getRenderScriptContext() == null) {
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return bitmap;
+                }
+                setupEnvironment(preset, false);
+                mEnvironment.setQuality(FilterEnvironment.QUALITY_FINAL);
+                mEnvironment.setScaleFactor(1.0f);
+                mFiltersManager.freeFilterResources(preset);
+                bitmap = preset.applyGeometry(bitmap, mEnvironment);
+                bitmap = preset.apply(bitmap, mEnvironment);
                 return bitmap;
             }
-            setupEnvironment(preset, false);
-            mEnvironment.setQuality(FilterEnvironment.QUALITY_FINAL);
-            mEnvironment.setScaleFactor(1.0f);
-            mFiltersManager.freeFilterResources(preset);
-            bitmap = preset.applyGeometry(bitmap, mEnvironment);
-            bitmap = preset.apply(bitmap, mEnvironment);
-            return bitmap;
+        } finally {
+            sRenderingLock.unlockRendering();
+        }
+    }
+
+    /**
+     * Renders a strip of the full resolution image, for presets whose
+     * ImagePreset.getStripOverlap() is not negative. The strip must include
+     * that many rows of the image above and below the rows that are used.
+     */
+    public synchronized Bitmap renderFinalStrip(Bitmap strip, ImagePreset preset) {
+        sRenderingLock.lockRendering();
+        try {
+            synchronized (mFiltersManager) {
+                if (getRenderScriptContext() == null) {
+                    return strip;
+                }
+                setupEnvironment(preset, false);
+                mEnvironment.setQuality(FilterEnvironment.QUALITY_FINAL);
+                mEnvironment.setScaleFactor(1.0f);
+                mFiltersManager.freeFilterResources(preset);
+                return preset.apply(strip, mEnvironment);
+            }
+        } finally {
+            sRenderingLock.unlockRendering();
         }
     }
 
@@ -212,6 +212,26 @@ public class ImagePreset {
         return true;
     }
 
+    /**
+     * Returns how many rows a horizontal strip of the image has to be
+     * extended by above and below for apply() to render it as part of the
+     * whole image, or -1 if the preset can only be applied to the whole image.
+     */
+    public int getStripOverlap() {
+        int overlap = 0;
+        for (FilterRepresentation representation : mFilters) {
+            if (representation.isNil()) {
+                continue;
+            }
+            if (representation.getStripOverlap() < 0) {
+                return -1;
+            }
+            // each filter reads further into the rows the previous one wrote
+            overlap += representation.getStripOverlap();
+        }
+        return overlap;
+    }
+
     public boolean same(ImagePreset preset) {
         if (preset == null) {
             return false;
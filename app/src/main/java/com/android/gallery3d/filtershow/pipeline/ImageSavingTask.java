@@ -153,7 +153,7 @@ public class ImageSavingTask extends ProcessingTask {
         }
         Bitmap bitmap = ImageLoader.loadConstrainedBitmap(sourceUri, getContext(),
                 notificationBitmapSize, null, true);
-        CachingPipeline pipeline = new CachingPipeline(FiltersManager.getManager(), "Thumb");
+        CachingPipeline pipeline = new CachingPipeline(FiltersManager.getSavingManager(), "Thumb");
         return pipeline.renderFinalImage(bitmap, preset);
     }
 
@@ -310,15 +310,24 @@ public class ProcessingService extends Service {
         highresFiltersManager.addBorders(this);
         highresFiltersManager.addTools(this);
         highresFiltersManager.addEffects();
+
+        FiltersManager savingFiltersManager = FiltersManager.getSavingManager();
+        savingFiltersManager.addLooks(this);
+        savingFiltersManager.addBorders(this);
+        savingFiltersManager.addTools(this);
+        savingFiltersManager.addEffects();
     }
 
     private void tearDownPipeline() {
-        ImageFilter.resetStatics();
-        FiltersManager.getPreviewManager().freeRSFilterScripts();
-        FiltersManager.getManager().freeRSFilterScripts();
-        FiltersManager.getHighresManager().freeRSFilterScripts();
-        FiltersManager.reset();
-        CachingPipeline.destroyRenderScriptContext();
+        CachingPipeline.runWithoutRendering(() -> {
+            ImageFilter.resetStatics();
+            FiltersManager.getPreviewManager().freeRSFilterScripts();
+            FiltersManager.getManager().freeRSFilterScripts();
+            FiltersManager.getHighresManager().freeRSFilterScripts();
+            FiltersManager.getSavingManager().freeRSFilterScripts();
+            FiltersManager.reset();
+            CachingPipeline.destroyRenderScriptContext();
+        });
     }
 
     static {
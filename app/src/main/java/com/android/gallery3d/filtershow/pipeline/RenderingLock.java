@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.filtershow.pipeline;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Guards the state all pipelines share: any number of pipelines may render
+ * at the same time, while the RenderScript context and the filter resources
+ * are only created and freed when none renders. Both sides are reentrant, an
+ * exclusive section may call code that takes the lock again.
+ */
+class RenderingLock {
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    /** Waits until no exclusive section runs, then lets the caller render. */
+    public void lockRendering() {
+        mLock.readLock().lock();
+    }
+
+    public void unlockRendering() {
+        mLock.readLock().unlock();
+    }
+
+    /** Waits until no pipeline renders and blocks pipelines from starting. */
+    public void lockExclusive() {
+        mLock.writeLock().lock();
+    }
+
+    public void unlockExclusive() {
+        mLock.writeLock().unlock();
+    }
+
+    public void runExclusive(Runnable runnable) {
+        lockExclusive();
+        try {
+            runnable.run();
+        } finally {
+            unlockExclusive();
+        }
+    }
+}
@@ -22,6 +22,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.net.Uri;
 import android.os.Environment;
 import android.provider.MediaStore;
@@ -41,6 +46,8 @@ import com.android.gallery3d.filtershow.imageshow.MasterImage;
 import com.android.gallery3d.filtershow.pipeline.CachingPipeline;
 import com.android.gallery3d.filtershow.pipeline.ImagePreset;
 import com.android.gallery3d.filtershow.pipeline.ProcessingService;
+import com.android.gallery3d.jpegstream.JPEGOutputStream;
+import com.android.gallery3d.jpegstream.JpegConfig;
 import com.android.gallery3d.util.XmpUtilHelper;
 
 import java.io.File;
@@ -49,6 +56,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
@@ -76,6 +84,10 @@ public class SaveImage {
     private static final String PREFIX_IMG = "IMG";
     private static final String POSTFIX_JPG = ".jpg";
     private static final String AUX_DIR_NAME = ".aux";
+    // Pixels rendered at a time when saving in strips, 4MB per strip.
+    private static final int STRIP_PIXELS = 1024 * 1024;
+    // Whether the jpegstream library could be loaded, null until tried.
+    private static Boolean sJpegStreamAvailable;
 
     private final Context mContext;
     private final Uri mSourceUri;
@@ -271,6 +283,148 @@ public class SaveImage {
         return ret;
     }
 
+    /**
+     * Renders the preset on the full resolution source a horizontal strip at
+     * a time and streams the rows to the JPEG encoder, so that only a few
+     * strips are in memory however large the image is.
+     *
+     * Only call this if isJpegStreamAvailable(), the destination file is
+     * overwritten before the first strip is encoded.
+     *
+     * @param overlap the preset's ImagePreset.getStripOverlap(), not negative
+     * @return false if the source can't be decoded in regions, the file has
+     *         to be written from a whole bitmap then.
+     */
+    private boolean putExifDataInStrips(File file, ExifInterface exif, Uri sourceUri,
+            ImagePreset preset, int overlap, int jpegCompressQuality) {
+        InputStream is = null;
+        BitmapRegionDecoder decoder = null;
+        OutputStream out = null;
+        OutputStream s = null;
+        try {
+            is = mContext.getContentResolver().openInputStream(sourceUri);
+            decoder = BitmapRegionDecoder.newInstance(is, false);
+            int sourceWidth = decoder.getWidth();
+            int sourceHeight = decoder.getHeight();
+
+            // The strips are rows of the oriented image, they are decoded
+            // from the region of the source that is rotated into them.
+            int orientation = ImageLoader.getMetadataOrientation(mContext, sourceUri);
+            RectF bounds = new RectF(0, 0, sourceWidth, sourceHeight);
+            Matrix toSource = new Matrix();
+            Matrix toOriented = ImageLoader.getOrientationMatrix(orientation,
+                    sourceWidth, sourceHeight);
+            if (toOriented != null) {
+                toOriented.mapRect(bounds);
+                toOriented.postTranslate(-bounds.left, -bounds.top);
+                toOriented.invert(toSource);
+            }
+            int width = Math.round(bounds.width());
+            int height = Math.round(bounds.height());
+            int stripHeight = Math.max(1, STRIP_PIXELS / width);
+            int rowBytes = width * 4;
+
+            CachingPipeline pipeline = new CachingPipeline(FiltersManager.getSavingManager(),
+                    "Saving");
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            byte[] pixels = null;
+
+            out = exif.getExifWriterStream(file.getAbsolutePath());
+            s = new JPEGOutputStream(out, width, height,
+                    (jpegCompressQuality > 0) ? jpegCompressQuality : 1, JpegConfig.FORMAT_RGBA);
+            for (int top = 0; top < height; top += stripHeight) {
+                int bottom = Math.min(top + stripHeight, height);
+                // Filters reading neighboring pixels need the rows around
+                // the strip, these are rendered but not written.
+                int extendedTop = Math.max(top - overlap, 0);
+                int extendedBottom = Math.min(bottom + overlap, height);
+                RectF strip = new RectF(0, extendedTop, width, extendedBottom);
+                toSource.mapRect(strip);
+                Rect region = new Rect();
+                strip.round(region);
+                region.intersect(0, 0, sourceWidth, sourceHeight);
+
+                Bitmap decoded = decoder.decodeRegion(region, options);
+                if (decoded == null) {
+                    throw new IOException("Cannot decode region " + region);
+                }
+                Bitmap bitmap = ImageLoader.orientBitmap(decoded, orientation);
+                if (bitmap != decoded) {
+                    decoded.recycle();
+                }
+                bitmap = pipeline.renderFinalStrip(bitmap, preset);
+                if (bitmap.getWidth() != width
+                        || bitmap.getHeight() != extendedBottom - extendedTop
+                        || bitmap.getRowBytes() != rowBytes) {
+                    throw new IOException("Unexpected strip " + bitmap.getWidth() + "x"
+                            + bitmap.getHeight() + " for rows " + extendedTop + "-"
+                            + extendedBottom);
+                }
+
+                // ARGB_8888 pixels are stored as R, G, B, A bytes.
+                int size = rowBytes * bitmap.getHeight();
+                if (pixels == null || pixels.length < size) {
+                    pixels = new byte[size];
+                }
+                bitmap.copyPixelsToBuffer(ByteBuffer.wrap(pixels, 0, size));
+                s.write(pixels, (top - extendedTop) * rowBytes, (bottom - top) * rowBytes);
+
+                // The strips take the steps between decoding and saving.
+                int step = 1 + (MAX_PROCESSING_STEPS - 2) * bottom / height;
+                if (step > mCurrentProcessingStep) {
+                    mCurrentProcessingStep = step;
+                    if (mCallback != null) {
+                        mCallback.onProgress(MAX_PROCESSING_STEPS, step);
+                    }
+                }
+            }
+            s.close();
+            s = null;
+            out = null;
+            return true;
+        } catch (FileNotFoundException e) {
+            Log.w(LOGTAG, "File not found: " + sourceUri, e);
+        } catch (IOException e) {
+            Log.w(LOGTAG, "Could not save in strips: ", e);
+        } catch (IllegalArgumentException e) {
+            Log.w(LOGTAG, "Could not save in strips: ", e);
+        } catch (LinkageError e) {
+            Log.w(LOGTAG, "Could not save in strips: ", e);
+        } catch (OutOfMemoryError e) {
+            Log.w(LOGTAG, "Could not save in strips: ", e);
+        } finally {
+            Utils.closeSilently(s);
+            Utils.closeSilently(out);
+            Utils.closeSilently(is);
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The jpegstream library is not part of every build, without it
+     * JPEGOutputStream can't be used and images are saved from a whole bitmap.
+     * This tree has neither its native sources nor a prebuilt copy in
+     * src/main/libs, so until one ships with the app this returns false and
+     * the strip path below is never taken.
+     */
+    private static synchronized boolean isJpegStreamAvailable() {
+        if (sJpegStreamAvailable == null) {
+            try {
+                System.loadLibrary("jni_jpegstream");
+                sJpegStreamAvailable = true;
+            } catch (UnsatisfiedLinkError e) {
+                Log.w(LOGTAG, "No jpegstream library, cannot save in strips");
+                sJpegStreamAvailable = false;
+            }
+        }
+        return sJpegStreamAvailable;
+    }
+
     private Uri resetToOriginalImageIfNeeded(ImagePreset preset, boolean doAuxBackup) {
         Uri uri = null;
         if (!preset.hasModifications()) {
@@ -374,6 +528,25 @@ public class SaveImage {
             }
         }
 
+        int overlap = preset.getStripOverlap();
+        if (sizeFactor == 1f && overlap >= 0 && isJpegStreamAvailable()) {
+            // The full resolution image can be saved without ever holding it
+            // in memory, nothing has to be downsampled. Inactive until the
+            // jni_jpegstream library is built with the app.
+            updateProgress();
+            Object xmp = getPanoramaXMPData(newSourceUri, preset);
+            ExifInterface exif = getExifData(newSourceUri);
+            long time = System.currentTimeMillis();
+            updateExifData(exif, time);
+            if (putExifDataInStrips(mDestinationFile, exif, newSourceUri, preset, overlap,
+                    quality)) {
+                uri = updateSavedFile(newSourceUri, savedUri, preset, xmp, flatten, time);
+                updateProgress();
+                return uri;
+            }
+            resetProgress();
+        }
+
         // Stopgap fix for low-memory devices.
         while (noBitmap) {
             try {
@@ -395,7 +568,7 @@ public class SaveImage {
                     bitmap = Bitmap.createScaledBitmap(bitmap, w, h, true);
                 }
                 updateProgress();
-                CachingPipeline pipeline = new CachingPipeline(FiltersManager.getManager(),
+                CachingPipeline pipeline = new CachingPipeline(FiltersManager.getSavingManager(),
                         "Saving");
 
                 bitmap = pipeline.renderFinalImage(bitmap, preset);
@@ -411,19 +584,7 @@ public class SaveImage {
 
                 // If we succeed in writing the bitmap as a jpeg, return a uri.
                 if (putExifData(mDestinationFile, exif, bitmap, quality)) {
-                    putPanoramaXMPData(mDestinationFile, xmp);
-                    // mDestinationFile will save the newSourceUri info in the XMP.
-                    if (!flatten) {
-                        XmpPresets.writeFilterXMP(mContext, newSourceUri,
-                                mDestinationFile, preset);
-                        uri = updateFile(mContext, savedUri, mDestinationFile, time);
-
-                    } else {
-
-                        ContentValues values = getContentValues(mContext, mSelectedImageUri, mDestinationFile, time);
-                        Object result = mContext.getContentResolver().insert(
-                                Images.Media.EXTERNAL_CONTENT_URI, values);
-                    }
+                    uri = updateSavedFile(newSourceUri, savedUri, preset, xmp, flatten, time);
                 }
                 updateProgress();
 
@@ -441,6 +602,28 @@ public class SaveImage {
         return uri;
     }
 
+    /**
+     * Adds the XMP data to the file written to mDestinationFile and updates
+     * the media store.
+     *
+     * @return the uri of the updated file, null if it is flattened.
+     */
+    private Uri updateSavedFile(Uri newSourceUri, Uri savedUri, ImagePreset preset,
+            Object xmp, boolean flatten, long time) {
+        Uri uri = null;
+        putPanoramaXMPData(mDestinationFile, xmp);
+        // mDestinationFile will save the newSourceUri info in the XMP.
+        if (!flatten) {
+            XmpPresets.writeFilterXMP(mContext, newSourceUri,
+                    mDestinationFile, preset);
+            uri = updateFile(mContext, savedUri, mDestinationFile, time);
+        } else {
+            ContentValues values = getContentValues(mContext, mSelectedImageUri, mDestinationFile, time);
+            mContext.getContentResolver().insert(Images.Media.EXTERNAL_CONTENT_URI, values);
+        }
+        return uri;
+    }
+
     /**
      *  Move the source file to auxiliary directory if needed and return the Uri
      *  pointing to this new source file. If any file error happens, then just
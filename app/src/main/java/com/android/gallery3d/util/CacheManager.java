@@ -78,5 +78,7 @@ public class CacheManager {
         BlobCache.deleteFiles(prefix + "imgcache");
         BlobCache.deleteFiles(prefix + "rev_geocoding");
         BlobCache.deleteFiles(prefix + "bookmark");
+        BlobCache.deleteFiles(prefix + "videometa");
+        BlobCache.deleteFiles(prefix + "videoseek");
     }
 }
@@ -124,6 +124,16 @@ public class SaveVideoFileUtils {
     }
 
     public static int retriveVideoDurationMs(String path) {
+        // The saved file is an MP4 written by us or the muxer, its header
+        // has the duration.
+        try {
+            VideoMetadata metadata = VideoMetadata.probe(new File(path));
+            if (metadata != null && metadata.durationMs > 0) {
+                return (int) metadata.durationMs;
+            }
+        } catch (Throwable t) {
+            // Let the retriever try.
+        }
         int durationMs = 0;
         // Calculate the duration of the destination file.
         MediaMetadataRetriever retriever = new MediaMetadataRetriever();
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore.Video.VideoColumns;
+
+import com.android.gallery3d.common.BlobCache;
+import com.android.gallery3d.common.Utils;
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.HandlerBox;
+import com.coremedia.iso.boxes.MediaBox;
+import com.coremedia.iso.boxes.MediaHeaderBox;
+import com.coremedia.iso.boxes.MovieBox;
+import com.coremedia.iso.boxes.MovieHeaderBox;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.SampleTableBox;
+import com.coremedia.iso.boxes.SyncSampleBox;
+import com.coremedia.iso.boxes.TrackBox;
+import com.coremedia.iso.boxes.TrackHeaderBox;
+import com.coremedia.iso.boxes.sampleentry.SampleEntry;
+import com.coremedia.iso.boxes.sampleentry.VisualSampleEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Duration, size, rotation, codec and sync sample count of an MP4/3GP
+ * video, read from the 'moov' box only (mvhd, tkhd, mdhd, stsd, stss).
+ * {@link #probe(File)} opens the file with an on-demand {@link IsoFile}, so
+ * media data and boxes that are not looked at are never read, and no
+ * platform extractor is started.
+ * <p>
+ * {@link #get(Context, String)} keeps the results in a BlobCache keyed by
+ * the file path and validated against its modification time, so the player,
+ * the trim and mute tools and the album views probe each file only once.
+ */
+public class VideoMetadata {
+    private static final String TAG = "VideoMetadata";
+
+    private static final String CACHE_FILE = "videometa";
+    private static final int CACHE_MAX_ENTRIES = 1000;
+    private static final int CACHE_MAX_BYTES = 200 * 1024;
+    private static final int CACHE_VERSION = 1;
+
+    /** Duration in milliseconds, or 0 if unknown. */
+    public long durationMs;
+    public int width;
+    public int height;
+    /** Clockwise rotation in degrees: 0, 90, 180 or 270. */
+    public int rotation;
+    /** Sample entry type of the video track, e.g. "avc1", or null. */
+    public String codec;
+    /**
+     * Number of sync samples, or -1 if the track has no sync sample table:
+     * every sample is a sync sample or the samples are in movie fragments.
+     */
+    public int syncSampleCount = -1;
+
+    /**
+     * Returns the metadata of the video at the given path, probing the file
+     * only if the cache has no entry for its current modification time.
+     * This does file I/O and must not be called from the UI thread.
+     *
+     * @return null if the file cannot be read or is not an MP4/3GP file.
+     */
+    public static VideoMetadata get(Context context, String path) {
+        File file = new File(path);
+        long mtime = file.lastModified();
+        if (mtime == 0) return null;
+
+        long key = Utils.crc64Long(path);
+        BlobCache cache = CacheManager.getCache(context, CACHE_FILE,
+                CACHE_MAX_ENTRIES, CACHE_MAX_BYTES, CACHE_VERSION);
+        if (cache != null) {
+            try {
+                byte[] data;
+                synchronized (cache) {
+                    data = cache.lookup(key);
+                }
+                if (data != null) {
+                    DataInputStream dis = new DataInputStream(
+                            new ByteArrayInputStream(data));
+                    if (path.equals(dis.readUTF()) && mtime == dis.readLong()) {
+                        return dis.readBoolean() ? read(dis) : null;
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "cannot read cached metadata of " + path, e);
+            }
+        }
+
+        VideoMetadata metadata;
+        try {
+            metadata = probe(file);
+        } catch (Throwable t) {
+            // Anything but a well-formed MP4 ends up here, the caller falls
+            // back to the platform.
+            Log.w(TAG, "cannot probe " + path, t);
+            metadata = null;
+        }
+
+        if (cache != null) {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(bos);
+                dos.writeUTF(path);
+                dos.writeLong(mtime);
+                dos.writeBoolean(metadata != null);
+                if (metadata != null) metadata.write(dos);
+                dos.flush();
+                synchronized (cache) {
+                    cache.insert(key, bos.toByteArray());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "cannot cache metadata of " + path, e);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Same as {@link #get(Context, String)} for a file or MediaStore uri.
+     *
+     * @return null if the uri is not backed by a local file.
+     */
+    public static VideoMetadata get(Context context, Uri uri) {
+        String path = getFilePath(context.getContentResolver(), uri);
+        return path == null ? null : get(context, path);
+    }
+
+    private static String getFilePath(ContentResolver resolver, Uri uri) {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            return uri.getPath();
+        }
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return null;
+        }
+        try (Cursor cursor = resolver.query(uri,
+                new String[] {VideoColumns.DATA}, null, null, null)) {
+            if (cursor != null && cursor.moveToNext()) {
+                return cursor.getString(0);
+            }
+        } catch (Exception e) {
+            // Providers other than MediaStore may lack the data column.
+        }
+        return null;
+    }
+
+    /**
+     * Reads the metadata from the 'moov' box of the file, bypassing the cache.
+     *
+     * @return null if the file has no 'moov' box.
+     */
+    public static VideoMetadata probe(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            IsoFile isoFile = new IsoFile(raf.getChannel(), true);
+            MovieBox moov = isoFile.getMovieBox();
+            if (moov == null) return null;
+
+            VideoMetadata metadata = new VideoMetadata();
+            MovieHeaderBox mvhd = moov.getMovieHeaderBox();
+            if (mvhd != null && mvhd.getTimescale() > 0) {
+                metadata.durationMs = mvhd.getDuration() * 1000 / mvhd.getTimescale();
+            }
+            for (TrackBox trak : moov.getBoxes(TrackBox.class)) {
+                MediaBox mdia = trak.getMediaBox();
+                HandlerBox hdlr = mdia != null ? mdia.getHandlerBox() : null;
+                if (hdlr == null || !"vide".equals(hdlr.getHandlerType())) continue;
+                metadata.readVideoTrack(trak, mdia);
+                break;
+            }
+            return metadata;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void readVideoTrack(TrackBox trak, MediaBox mdia) {
+        TrackHeaderBox tkhd = trak.getTrackHeaderBox();
+        if (tkhd != null) {
+            width = (int) tkhd.getWidth();
+            height = (int) tkhd.getHeight();
+            rotation = getRotation(tkhd.getMatrix());
+        }
+        MediaHeaderBox mdhd = mdia.getMediaHeaderBox();
+        if (durationMs == 0 && mdhd != null && mdhd.getTimescale() > 0) {
+            durationMs = mdhd.getDuration() * 1000 / mdhd.getTimescale();
+        }
+        SampleTableBox stbl = trak.getSampleTableBox();
+        if (stbl == null) return;
+        SampleDescriptionBox stsd = stbl.getSampleDescriptionBox();
+        SampleEntry entry = stsd != null ? stsd.getSampleEntry() : null;
+        if (entry != null) {
+            codec = entry.getType();
+            // The track header may leave the size to the sample entry.
+            if ((width == 0 || height == 0) && entry instanceof VisualSampleEntry) {
+                width = ((VisualSampleEntry) entry).getWidth();
+                height = ((VisualSampleEntry) entry).getHeight();
+            }
+        }
+        SyncSampleBox stss = stbl.getSyncSampleBox();
+        syncSampleCount = stss != null ? stss.getSampleNumber().length : -1;
+    }
+
+    // The matrix is { a, b, u, c, d, v, x, y, w } with a..d in 16.16 fixed
+    // point; a rotation by t degrees clockwise has a = cos(t), b = sin(t).
+    private static int getRotation(long[] matrix) {
+        if (matrix == null || matrix.length < 2) return 0;
+        int a = (int) matrix[0];
+        int b = (int) matrix[1];
+        int degrees = (int) Math.round(Math.toDegrees(Math.atan2(b, a)) / 90) * 90;
+        return (degrees + 360) % 360;
+    }
+
+    private void write(DataOutputStream dos) throws IOException {
+        dos.writeLong(durationMs);
+        dos.writeInt(width);
+        dos.writeInt(height);
+        dos.writeInt(rotation);
+        dos.writeUTF(codec == null ? "" : codec);
+        dos.writeInt(syncSampleCount);
+    }
+
+    private static VideoMetadata read(DataInputStream dis) throws IOException {
+        VideoMetadata metadata = new VideoMetadata();
+        metadata.durationMs = dis.readLong();
+        metadata.width = dis.readInt();
+        metadata.height = dis.readInt();
+        metadata.rotation = dis.readInt();
+        String codec = dis.readUTF();
+        metadata.codec = codec.isEmpty() ? null : codec;
+        metadata.syncSampleCount = dis.readInt();
+        return metadata;
+    }
+}
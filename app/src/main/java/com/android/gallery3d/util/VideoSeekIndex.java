@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2012 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.util;
+
+import android.content.Context;
+
+import com.android.gallery3d.common.BlobCache;
+import com.android.gallery3d.common.Utils;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import com.googlecode.mp4parser.util.TimeToSampleTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The sync samples of an MP4/3GP video with their exact decoding times, so
+ * that trim points can be snapped to the frames a cut can start at with a
+ * binary search instead of walking the time-to-sample table again.
+ * <p>
+ * The index covers the first track that has sync samples, which is the
+ * track the trim corrects its times with. {@link #get(Context, String)}
+ * keeps the indexes in a BlobCache keyed by the file path and validated
+ * against its modification time, so they survive across trim sessions.
+ */
+public class VideoSeekIndex {
+    private static final String TAG = "VideoSeekIndex";
+
+    private static final String CACHE_FILE = "videoseek";
+    private static final int CACHE_MAX_ENTRIES = 100;
+    private static final int CACHE_MAX_BYTES = 5 * 1024 * 1024;
+    private static final int CACHE_VERSION = 1;
+
+    private final long mTimescale;
+    // Zero-based sample numbers and decoding times (in mTimescale units) of
+    // the sync samples, both ascending.
+    private final int[] mSamples;
+    private final long[] mTimes;
+
+    private VideoSeekIndex(long timescale, int[] samples, long[] times) {
+        mTimescale = timescale;
+        mSamples = samples;
+        mTimes = times;
+    }
+
+    /**
+     * Returns the index of the video at the given path, building it only if
+     * the cache has no entry for its current modification time. This does
+     * file I/O and must not be called from the UI thread.
+     *
+     * @return null if the file cannot be read or is not an MP4/3GP file.
+     */
+    public static VideoSeekIndex get(Context context, String path) {
+        File file = new File(path);
+        long mtime = file.lastModified();
+        if (mtime == 0) return null;
+
+        long key = Utils.crc64Long(path);
+        BlobCache cache = CacheManager.getCache(context, CACHE_FILE,
+                CACHE_MAX_ENTRIES, CACHE_MAX_BYTES, CACHE_VERSION);
+        if (cache != null) {
+            try {
+                byte[] data;
+                synchronized (cache) {
+                    data = cache.lookup(key);
+                }
+                if (data != null) {
+                    DataInputStream dis = new DataInputStream(
+                            new ByteArrayInputStream(data));
+                    if (path.equals(dis.readUTF()) && mtime == dis.readLong()) {
+                        return dis.readBoolean() ? read(dis) : null;
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "cannot read cached index of " + path, e);
+            }
+        }
+
+        VideoSeekIndex index;
+        try {
+            index = build(file);
+        } catch (Throwable t) {
+            Log.w(TAG, "cannot index " + path, t);
+            index = null;
+        }
+
+        if (cache != null) {
+            try {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(bos);
+                dos.writeUTF(path);
+                dos.writeLong(mtime);
+                dos.writeBoolean(index != null);
+                if (index != null) index.write(dos);
+                dos.flush();
+                synchronized (cache) {
+                    cache.insert(key, bos.toByteArray());
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "cannot cache index of " + path, e);
+            }
+        }
+        return index;
+    }
+
+    private static VideoSeekIndex build(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            Movie movie = MovieCreator.build(raf.getChannel());
+            for (Track track : movie.getTracks()) {
+                long[] syncSamples = track.getSyncSamples();
+                if (syncSamples != null && syncSamples.length > 0) {
+                    return of(track);
+                }
+            }
+            // Every sample is a sync sample, nothing needs to be snapped.
+            return new VideoSeekIndex(1000, new int[0], new long[0]);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Indexes the sync samples of a track, bypassing the cache.
+     */
+    public static VideoSeekIndex of(Track track) {
+        TimeToSampleTable decodingTimes =
+                TimeToSampleTable.of(track.getDecodingTimeEntries());
+        long[] syncSamples = track.getSyncSamples();
+        if (syncSamples == null) syncSamples = new long[0];
+
+        int sampleCount = decodingTimes.getSampleCount();
+        int[] samples = new int[syncSamples.length];
+        long[] times = new long[syncSamples.length];
+        int count = 0;
+        for (long syncSample : syncSamples) {
+            // Sync sample numbers start with 1, ours with 0.
+            int sample = (int) Math.min(syncSample - 1, sampleCount - 1);
+            if (sample < 0 || (count > 0 && sample <= samples[count - 1])) continue;
+            samples[count] = sample;
+            times[count] = decodingTimes.getDecodingTime(sample);
+            count++;
+        }
+        if (count < samples.length) {
+            int[] s = new int[count];
+            long[] t = new long[count];
+            System.arraycopy(samples, 0, s, 0, count);
+            System.arraycopy(times, 0, t, 0, count);
+            samples = s;
+            times = t;
+        }
+        long timescale = track.getTrackMetaData().getTimescale();
+        return new VideoSeekIndex(timescale > 0 ? timescale : 1000, samples, times);
+    }
+
+    /** Returns the number of sync samples, 0 if every sample is one. */
+    public int getSyncSampleCount() {
+        return mSamples.length;
+    }
+
+    /** Returns the zero-based sample number of the i-th sync sample. */
+    public int getSample(int i) {
+        return mSamples[i];
+    }
+
+    /** Returns the decoding time of the i-th sync sample in seconds. */
+    public double getTime(int i) {
+        return (double) mTimes[i] / mTimescale;
+    }
+
+    /**
+     * Returns the decoding time of the i-th sync sample in milliseconds,
+     * rounded down.
+     */
+    public int getTimeMs(int i) {
+        return (int) (mTimes[i] * 1000 / mTimescale);
+    }
+
+    /**
+     * Returns the position of the last sync sample at or before the given
+     * time in milliseconds, or -1 if there is none.
+     */
+    public int findAtOrBefore(int timeMs) {
+        return findAfter(timeMs) - 1;
+    }
+
+    /**
+     * Returns the position of the first sync sample strictly after the given
+     * time in milliseconds, or {@link #getSyncSampleCount()} if there is none.
+     */
+    public int findAfter(int timeMs) {
+        // t > time <=> t * 1000 > time * timescale, exact in timescale units.
+        long time = (long) timeMs * mTimescale;
+        int low = 0;
+        int high = mTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTimes[mid] * 1000 > time) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the time of the last sync sample at or before the given time,
+     * the time itself if every sample is a sync sample or 0 if there is none.
+     */
+    public int snapBackward(int timeMs) {
+        if (mTimes.length == 0) return timeMs;
+        int i = findAtOrBefore(timeMs);
+        return i >= 0 ? getTimeMs(i) : 0;
+    }
+
+    /**
+     * Returns the time of the first sync sample after the given time, the
+     * time itself if every sample is a sync sample or the time of the last
+     * sync sample if there is none after.
+     */
+    public int snapForward(int timeMs) {
+        if (mTimes.length == 0) return timeMs;
+        int i = findAfter(timeMs);
+        return getTimeMs(i < mTimes.length ? i : mTimes.length - 1);
+    }
+
+    private void write(DataOutputStream dos) throws IOException {
+        dos.writeLong(mTimescale);
+        dos.writeInt(mSamples.length);
+        for (int i = 0; i < mSamples.length; i++) {
+            dos.writeInt(mSamples[i]);
+            dos.writeLong(mTimes[i]);
+        }
+    }
+
+    private static VideoSeekIndex read(DataInputStream dis) throws IOException {
+        long timescale = dis.readLong();
+        int count = dis.readInt();
+        int[] samples = new int[count];
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = dis.readInt();
+            times[i] = dis.readLong();
+        }
+        return new VideoSeekIndex(timescale, samples, times);
+    }
+}
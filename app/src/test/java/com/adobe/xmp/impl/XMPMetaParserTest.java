@@ -0,0 +1,122 @@
+// =================================================================================================
+// ADOBE SYSTEMS INCORPORATED
+// Copyright 2006 Adobe Systems Incorporated
+// All Rights Reserved
+//
+// NOTICE:  Adobe permits you to use, modify, and distribute this file in accordance with the terms
+// of the Adobe license agreement accompanying it.
+// =================================================================================================
+
+package com.adobe.xmp.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.ParseOptions;
+import com.adobe.xmp.options.SerializeOptions;
+
+
+/**
+ * Conformance test of the SAX based {@link XMPMetaParser} against the W3C DOM parser it
+ * replaced. Each packet in <code>packets/</code> has a <code>.expected</code> file with the
+ * results the DOM parser gave for it: the serialization in the parsed order and sorted, and the
+ * packet header, or the error code, for each of the parse options below.
+ * <p>
+ * The packets cover the RDF forms (attribute properties, parseType="Resource", rdf:value
+ * qualifiers, alt-lang, Bag and Seq, rdf:resource), the xpacket wrapper, UTF-16, Latin-1
+ * and control character input and malformed packets.
+ */
+public class XMPMetaParserTest
+{
+	/** number of packets in <code>packets/</code>, named 01.xml, 02.xml, ... */
+	private static final int PACKETS = 15;
+
+
+	/**
+	 * Compares the results for every packet with those recorded from the DOM parser.
+	 *
+	 * @throws IOException if a packet can't be read
+	 */
+	@Test
+	public void testConformsToDomParser() throws IOException
+	{
+		for (int i = 1; i <= PACKETS; i++)
+		{
+			String name = (i < 10 ? "0" : "") + i;
+			byte[] packet = read(name + ".xml");
+			String expected = new String(read(name + ".expected"), "UTF-8");
+			assertEquals("packet " + name, expected, render(packet));
+		}
+	}
+
+
+	/**
+	 * @param packet a serialized packet
+	 * @return the results of parsing the packet with each set of parse options
+	 */
+	static String render(byte[] packet)
+	{
+		ParseOptions[] options = {
+			new ParseOptions(),
+			new ParseOptions().setAcceptLatin1(true).setFixControlChars(true),
+			new ParseOptions().setRequireXMPMeta(true).setOmitNormalization(true),
+			new ParseOptions().setStrictAliasing(true)
+		};
+		StringBuffer result = new StringBuffer();
+		for (int i = 0; i < options.length; i++)
+		{
+			result.append("== options ").append(i).append('\n');
+			try
+			{
+				XMPMeta meta = XMPMetaFactory.parseFromBuffer(packet, options[i]);
+				result.append(XMPMetaFactory.serializeToString(meta,
+					new SerializeOptions().setOmitPacketWrapper(true)));
+				result.append("\n== sorted\n");
+				result.append(XMPMetaFactory.serializeToString(meta,
+					new SerializeOptions().setOmitPacketWrapper(true).setSort(true)));
+				result.append("\n== header ").append(meta.getPacketHeader()).append('\n');
+			}
+			catch (XMPException e)
+			{
+				result.append("ERR ").append(e.getErrorCode()).append('\n');
+			}
+		}
+		return result.toString();
+	}
+
+
+	/**
+	 * @param name a file in <code>packets/</code>
+	 * @return the contents of the file
+	 * @throws IOException if the file can't be read
+	 */
+	private static byte[] read(String name) throws IOException
+	{
+		InputStream in = XMPMetaParserTest.class.getResourceAsStream("packets/" + name);
+		assertNotNull("missing " + name, in);
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+			{
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
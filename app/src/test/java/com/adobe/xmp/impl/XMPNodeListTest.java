@@ -0,0 +1,160 @@
+// =================================================================================================
+// ADOBE SYSTEMS INCORPORATED
+// Copyright 2006 Adobe Systems Incorporated
+// All Rights Reserved
+//
+// NOTICE:  Adobe permits you to use, modify, and distribute this file in accordance with the terms
+// of the Adobe license agreement accompanying it.
+// =================================================================================================
+
+package com.adobe.xmp.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.adobe.xmp.XMPConst;
+import com.adobe.xmp.XMPException;
+import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.SerializeOptions;
+
+
+/**
+ * Tests the name index of {@link XMPNodeList}. The lists are well above the size at which
+ * lookups switch from scanning to the index, results must be the same as a scan would give.
+ */
+public class XMPNodeListTest
+{
+	/** number of properties, far more than the index threshold */
+	private static final int COUNT = 1200;
+
+
+	/**
+	 * Sets, gets and deletes many properties of one schema and checks that they keep their order.
+	 *
+	 * @throws XMPException Forwards exceptions
+	 */
+	@Test
+	public void testManyProperties() throws XMPException
+	{
+		XMPMeta meta = XMPMetaFactory.create();
+		for (int i = 0; i < COUNT; i++)
+		{
+			meta.setProperty(XMPConst.NS_DC, "p" + i, "value " + i);
+		}
+		for (int i = 0; i < COUNT; i++)
+		{
+			assertEquals("value " + i, meta.getPropertyString(XMPConst.NS_DC, "p" + i));
+		}
+		assertFalse(meta.doesPropertyExist(XMPConst.NS_DC, "p" + COUNT));
+
+		for (int i = 0; i < COUNT; i += 3)
+		{
+			meta.deleteProperty(XMPConst.NS_DC, "p" + i);
+		}
+		for (int i = 0; i < COUNT; i++)
+		{
+			assertEquals("p" + i, i % 3 != 0, meta.doesPropertyExist(XMPConst.NS_DC, "p" + i));
+		}
+
+		// the serialization and its parse give the remaining properties in insertion order
+		String packet = XMPMetaFactory.serializeToString(meta,
+			new SerializeOptions().setOmitPacketWrapper(true));
+		XMPNode schema = ((XMPMetaImpl) XMPMetaFactory.parseFromString(packet)).getRoot()
+			.findChildByName(XMPConst.NS_DC);
+		assertEquals(COUNT - (COUNT + 2) / 3, schema.getChildrenLength());
+		for (int i = 1, j = 1; i < COUNT; i++)
+		{
+			if (i % 3 != 0)
+			{
+				XMPNode node = schema.getChild(j++);
+				assertEquals("dc:p" + i, node.getName());
+				assertSame(node, schema.findChildByName("dc:p" + i));
+			}
+		}
+	}
+
+
+	/**
+	 * Sets and gets many qualifiers of one property.
+	 *
+	 * @throws XMPException Forwards exceptions
+	 */
+	@Test
+	public void testManyQualifiers() throws XMPException
+	{
+		XMPMeta meta = XMPMetaFactory.create();
+		meta.setProperty(XMPConst.NS_DC, "p", "value");
+		for (int i = 0; i < COUNT; i++)
+		{
+			meta.setQualifier(XMPConst.NS_DC, "p", XMPConst.NS_XMP, "q" + i, "qualifier " + i);
+		}
+		for (int i = 0; i < COUNT; i++)
+		{
+			assertEquals("qualifier " + i,
+				meta.getQualifier(XMPConst.NS_DC, "p", XMPConst.NS_XMP, "q" + i).getValue());
+		}
+		meta.deleteQualifier(XMPConst.NS_DC, "p", XMPConst.NS_XMP, "q7");
+		assertFalse(meta.doesQualifierExist(XMPConst.NS_DC, "p", XMPConst.NS_XMP, "q7"));
+		assertTrue(meta.doesQualifierExist(XMPConst.NS_DC, "p", XMPConst.NS_XMP, "q8"));
+	}
+
+
+	/**
+	 * The index gives the first node of a name, like a scan, after duplicates are added,
+	 * nodes are removed, replaced or renamed.
+	 */
+	@Test
+	public void testFirstNodeWins()
+	{
+		XMPNode parent = new XMPNode("parent", null);
+		XMPNodeList list = new XMPNodeList(0);
+		XMPNode[] nodes = new XMPNode[COUNT];
+		for (int i = 0; i < COUNT; i++)
+		{
+			nodes[i] = new XMPNode("n" + i, null);
+			nodes[i].setParent(parent);
+			list.add(nodes[i]);
+		}
+		assertSame(nodes[100], list.find("n100"));
+
+		// a duplicate in front of the indexed node
+		XMPNode duplicate = new XMPNode("n100", null);
+		list.add(0, duplicate);
+		assertSame(duplicate, list.find("n100"));
+		list.remove(0);
+		assertSame(nodes[100], list.find("n100"));
+
+		// a duplicate behind the indexed node takes over when that is removed
+		list.add(duplicate);
+		assertSame(nodes[100], list.find("n100"));
+		list.remove(nodes[100]);
+		assertSame(duplicate, list.find("n100"));
+
+		// replaced nodes
+		XMPNode replacement = new XMPNode("r", null);
+		list.set(5, replacement);
+		assertNull(list.find("n5"));
+		assertSame(replacement, list.find("r"));
+
+		// renamed nodes
+		XMPNode renamed = (XMPNode) list.get(10);
+		renamed.setName("renamed");
+		list.invalidateIndex();
+		assertNull(list.find("n10"));
+		assertSame(renamed, list.find("renamed"));
+
+		// array items are never indexed
+		XMPNode item = new XMPNode(XMPConst.ARRAY_ITEM_NAME, null);
+		list.add(item);
+		assertSame(item, list.find(XMPConst.ARRAY_ITEM_NAME));
+
+		list.clear();
+		assertNull(list.find("n200"));
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.gallery3d.filtershow.pipeline;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The locking CachingPipeline does around rendering and around the teardown
+ * of the shared RenderScript state. A save is a rendering that does not end
+ * until the test releases it.
+ */
+public class RenderingLockTest {
+    private static final long WAIT_MS = 5000;
+    // how long a blocked thread is given to get through when it should not
+    private static final long BLOCKED_MS = 200;
+
+    private final RenderingLock mLock = new RenderingLock();
+    private final CountDownLatch mSaveStarted = new CountDownLatch(1);
+    private final CountDownLatch mSaveRelease = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        mSaveRelease.countDown();
+    }
+
+    @Test
+    public void testPreviewRendersWhileSaving() throws InterruptedException {
+        startSave();
+        final CountDownLatch rendered = new CountDownLatch(1);
+        start(new Runnable() {
+            public void run() {
+                mLock.lockRendering();
+                try {
+                    rendered.countDown();
+                } finally {
+                    mLock.unlockRendering();
+                }
+            }
+        });
+        assertTrue("preview waited for the save", rendered.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTeardownWaitsForSave() throws InterruptedException {
+        startSave();
+        final CountDownLatch tornDown = new CountDownLatch(1);
+        start(new Runnable() {
+            public void run() {
+                mLock.runExclusive(new Runnable() {
+                    public void run() {
+                        tornDown.countDown();
+                    }
+                });
+            }
+        });
+        assertFalse("teardown ran during the save", tornDown.await(BLOCKED_MS, TimeUnit.MILLISECONDS));
+        mSaveRelease.countDown();
+        assertTrue(tornDown.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRenderingWaitsForTeardown() throws InterruptedException {
+        final CountDownLatch teardownStarted = new CountDownLatch(1);
+        final CountDownLatch teardownRelease = new CountDownLatch(1);
+        final AtomicBoolean tornDown = new AtomicBoolean();
+        start(new Runnable() {
+            public void run() {
+                mLock.runExclusive(new Runnable() {
+                    public void run() {
+                        teardownStarted.countDown();
+                        await(teardownRelease);
+                        tornDown.set(true);
+                    }
+                });
+            }
+        });
+        assertTrue(teardownStarted.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        final CountDownLatch rendered = new CountDownLatch(1);
+        final AtomicBoolean renderedAfterTeardown = new AtomicBoolean();
+        start(new Runnable() {
+            public void run() {
+                mLock.lockRendering();
+                try {
+                    renderedAfterTeardown.set(tornDown.get());
+                    rendered.countDown();
+                } finally {
+                    mLock.unlockRendering();
+                }
+            }
+        });
+        assertFalse("rendered during the teardown", rendered.await(BLOCKED_MS, TimeUnit.MILLISECONDS));
+        teardownRelease.countDown();
+        assertTrue(rendered.await(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(renderedAfterTeardown.get());
+    }
+
+    @Test
+    public void testTeardownIsReentrant() {
+        final AtomicBoolean destroyed = new AtomicBoolean();
+        // like tearDownPipeline calling destroyRenderScriptContext
+        mLock.runExclusive(new Runnable() {
+            public void run() {
+                mLock.lockExclusive();
+                try {
+                    destroyed.set(true);
+                } finally {
+                    mLock.unlockExclusive();
+                }
+            }
+        });
+        assertTrue(destroyed.get());
+    }
+
+    private void startSave() throws InterruptedException {
+        start(new Runnable() {
+            public void run() {
+                mLock.lockRendering();
+                try {
+                    mSaveStarted.countDown();
+                    await(mSaveRelease);
+                } finally {
+                    mLock.unlockRendering();
+                }
+            }
+        });
+        assertTrue(mSaveStarted.await(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private static void start(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.coremedia.iso;
+
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.TrackBox;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IsoFileTest {
+
+    /**
+     * An <code>IsoFile</code> parsed on demand writes the file back unchanged, whatever part of
+     * the box tree has been accessed.
+     */
+    @Test
+    public void testParseOnDemandRoundTrip() throws IOException, URISyntaxException {
+        File file = getFile();
+        byte[] original = readFully(file);
+
+        FileInputStream untouched = new FileInputStream(file);
+        try {
+            assertArrayEquals(original, write(new IsoFile(untouched.getChannel(), true)));
+        } finally {
+            untouched.close();
+        }
+
+        FileInputStream touched = new FileInputStream(file);
+        try {
+            IsoFile isoFile = new IsoFile(touched.getChannel(), true);
+            for (Box box : isoFile.getMovieBox().getBoxes()) {
+                if (box instanceof TrackBox) {
+                    ((TrackBox) box).getBoxes();
+                }
+            }
+            assertArrayEquals(original, write(isoFile));
+        } finally {
+            touched.close();
+        }
+    }
+
+    /**
+     * The content of a container nested in a container parsed on demand stays in the file until
+     * the nested container is accessed.
+     */
+    @Test
+    public void testNestedContainersReadOnDemand() throws IOException, URISyntaxException {
+        FileChannel channel = new FileInputStream(getFile()).getChannel();
+        List<Box> moov = new IsoFile(channel, true).getMovieBox().getBoxes();
+        channel.close();
+        boolean hasTrack = false;
+        for (Box box : moov) {
+            if (box instanceof TrackBox) {
+                hasTrack = true;
+                try {
+                    ((TrackBox) box).getBoxes();
+                    fail("trak content has been read with moov");
+                } catch (RuntimeException e) {
+                    // expected, the channel is closed
+                }
+            }
+        }
+        assertTrue(hasTrack);
+    }
+
+    private static File getFile() throws URISyntaxException {
+        return new File(IsoFileTest.class.getResource("/com/coremedia/iso/boxes/mdat/init.mp4").toURI());
+    }
+
+    private static byte[] write(IsoFile isoFile) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        isoFile.getBox(Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.coremedia.iso;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class IsoTypeReaderTest {
+    private static final String[] TYPES = {"moov", "uuid", "\u00A9nam", "ac-3", "\0\0\0\0"};
+    private static final String[] STRINGS = {"", "abc", "\u00E4\u00F6\u00FC", "\u20AC 1",
+            "\uD83D\uDE00", "a\uD800b", "b\uDC00"};
+
+    @Test
+    public void testFourCC() {
+        for (String type : TYPES) {
+            ByteBuffer bb = ByteBuffer.allocate(4);
+            IsoTypeWriter.write4cc(bb, type);
+            assertArrayEquals(type, IsoFile.fourCCtoBytes(type), bb.array());
+            bb.rewind();
+            String read = IsoTypeReader.read4cc(bb);
+            assertEquals(type, read);
+            assertSame(read, IsoFile.bytesToFourCC(IsoFile.fourCCtoBytes(type)));
+            assertEquals(ByteBuffer.wrap(IsoFile.fourCCtoBytes(type)).getInt(), IsoFile.fourCCtoInt(type));
+        }
+        // types sharing a slot of the table replace each other
+        Random random = new Random(47);
+        for (int i = 0; i < 100000; i++) {
+            int code = random.nextInt();
+            String type = IsoFile.intToFourCC(code);
+            assertEquals(code, IsoFile.fourCCtoInt(type));
+            assertEquals(new String(IsoFile.fourCCtoBytes(type), StandardCharsets.ISO_8859_1), type);
+        }
+        assertEquals("moo\0", IsoFile.bytesToFourCC(new byte[]{'m', 'o', 'o'}));
+        assertEquals(IsoFile.fourCCtoInt("moov"), IsoFile.fourCCtoInt("moovx"));
+    }
+
+    @Test
+    public void testString() {
+        for (String s : STRINGS) {
+            byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+            assertEquals(s, expected.length, Utf8.utf8StringLengthInBytes(s));
+
+            ByteBuffer bb = ByteBuffer.allocate(expected.length + 3);
+            bb.put((byte) 'x');
+            IsoTypeWriter.writeUtf8String(bb, s);
+            bb.put((byte) 'y');
+            byte[] written = new byte[expected.length];
+            System.arraycopy(bb.array(), 1, written, 0, written.length);
+            assertArrayEquals(s, expected, written);
+
+            String decoded = new String(expected, StandardCharsets.UTF_8);
+            // heap buffer at an offset, direct buffer and with a length
+            bb.position(1);
+            assertEquals(decoded, IsoTypeReader.readString(bb.slice()));
+            ByteBuffer direct = ByteBuffer.allocateDirect(bb.capacity());
+            bb.rewind();
+            direct.put(bb);
+            direct.position(1);
+            assertEquals(decoded, IsoTypeReader.readString(direct));
+            assertEquals('y', direct.get());
+            bb.position(1);
+            assertEquals(decoded, IsoTypeReader.readString(bb, expected.length));
+            assertEquals(0, bb.get());
+        }
+    }
+
+    @Test
+    public void testTruncatedString() {
+        try {
+            IsoTypeReader.readString(ByteBuffer.wrap(new byte[]{'a', 'b'}));
+            fail("no terminating zero");
+        } catch (BufferUnderflowException e) {
+            // expected
+        }
+        try {
+            IsoTypeReader.readString(ByteBuffer.wrap(new byte[]{'a', 'b'}), 3);
+            fail("too short");
+        } catch (BufferUnderflowException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIso639() {
+        for (String language : new String[]{"eng", "und", "deu", "jpn"}) {
+            ByteBuffer bb = ByteBuffer.allocate(2);
+            IsoTypeWriter.writeIso639(bb, language);
+            bb.rewind();
+            assertEquals(language, IsoTypeReader.readIso639(bb));
+        }
+    }
+
+    @Test
+    public void testFixedPoint() {
+        for (double v : new double[]{0, 1, -1, 1.5, -2.25, 0.00390625, 255.5}) {
+            ByteBuffer bb = ByteBuffer.allocate(6);
+            IsoTypeWriter.writeFixedPont1616(bb, v);
+            IsoTypeWriter.writeFixedPont88(bb, v);
+            bb.rewind();
+            assertEquals(v, IsoTypeReader.readFixedPoint1616(bb), 0);
+            if (Math.abs(v) < 128) {
+                assertEquals(v, IsoTypeReader.readFixedPoint88(bb), 0);
+            }
+        }
+    }
+}
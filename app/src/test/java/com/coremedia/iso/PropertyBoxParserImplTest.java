@@ -0,0 +1,99 @@
+package com.coremedia.iso;
+
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.ContainerBox;
+import com.coremedia.iso.boxes.CopyrightBox;
+import com.coremedia.iso.boxes.FreeBox;
+import com.coremedia.iso.boxes.MovieBox;
+import com.coremedia.iso.boxes.UnknownBox;
+import com.coremedia.iso.boxes.UserBox;
+import com.coremedia.iso.boxes.apple.AppleCopyrightBox;
+import com.coremedia.iso.boxes.sampleentry.AudioSampleEntry;
+import com.googlecode.mp4parser.boxes.piff.PiffSampleEncryptionBox;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyBoxParserImplTest {
+
+    @Test
+    public void testLookupOrder() {
+        PropertyBoxParserImpl parser = new PropertyBoxParserImpl();
+        // parent-specific entry before the plain fourcc entry
+        assertSame(AppleCopyrightBox.class, parser.createBox("cprt", null, "ilst").getClass());
+        assertSame(CopyrightBox.class, parser.createBox("cprt", null, "udta").getClass());
+        assertSame(MovieBox.class, parser.createBox("moov", null, null).getClass());
+        // constructor arguments are passed on
+        Box mp4a = parser.createBox("mp4a", null, "stsd");
+        assertSame(AudioSampleEntry.class, mp4a.getClass());
+        assertEquals("mp4a", mp4a.getType());
+        Box unknown = parser.createBox("xxxx", null, "moov");
+        assertSame(UnknownBox.class, unknown.getClass());
+        assertEquals("xxxx", unknown.getType());
+        // uuid boxes by user type, then the plain uuid entry
+        assertSame(PiffSampleEncryptionBox.class, parser.createBox("uuid",
+                Hex.decodeHex("A2394F525A9B4F14A2446C427C648DF4"), "traf").getClass());
+        assertSame(UserBox.class, parser.createBox("uuid", new byte[16], "traf").getClass());
+    }
+
+    @Test
+    public void testNewBoxPerCall() {
+        PropertyBoxParserImpl parser = new PropertyBoxParserImpl();
+        Box first = parser.createBox("mp4a", null, "stsd");
+        Box second = parser.createBox("enca", null, "stsd");
+        assertNotSame(first, second);
+        assertSame(first.getClass(), second.getClass());
+        assertEquals("enca", second.getType());
+    }
+
+    @Test
+    public void testCustomProperties() {
+        assertSame(FreeBox.class, new PropertyBoxParserImpl().createBox("free", null, "moov").getClass());
+        Box free = new PropertyBoxParserImpl("/com/coremedia/iso/custom.properties").createBox("free", null, "moov");
+        assertSame(UnknownBox.class, free.getClass());
+        assertEquals("free", free.getType());
+
+        Properties mapping = new Properties();
+        mapping.setProperty("default", "com.coremedia.iso.boxes.UnknownBox(type)");
+        assertSame(UnknownBox.class, new PropertyBoxParserImpl(mapping).createBox("moov", null, null).getClass());
+    }
+
+    /**
+     * One parser parses a file twice with the cached constructors, each box is of the class
+     * the mapping gives for it.
+     */
+    @Test
+    public void testParse() throws IOException {
+        PropertyBoxParserImpl parser = new PropertyBoxParserImpl();
+        for (int i = 0; i < 2; i++) {
+            InputStream in = PropertyBoxParserImplTest.class.getResourceAsStream("/com/coremedia/iso/boxes/mdat/init.mp4");
+            try {
+                IsoFile isoFile = new IsoFile(Channels.newChannel(in), parser);
+                assertTrue(isoFile.getBoxes().size() > 1);
+                PropertyBoxParserImpl reference = new PropertyBoxParserImpl();
+                for (Box box : isoFile.getBoxes()) {
+                    assertMapped(reference, box);
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static void assertMapped(PropertyBoxParserImpl reference, Box box) {
+        assertSame(box.getType(), reference.createBox(box.getType(), null, box.getParent().getType()).getClass(), box.getClass());
+        if (box instanceof ContainerBox) {
+            for (Box child : ((ContainerBox) box).getBoxes()) {
+                assertMapped(reference, child);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.coremedia.iso.boxes.mdat;
+
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SampleListTest {
+
+    /**
+     * An initialization segment has a 'mvex' but no 'moof' - the tracks exist but have no
+     * samples.
+     */
+    @Test
+    public void testInitializationSegment() throws IOException {
+        InputStream in = SampleListTest.class.getResourceAsStream("init.mp4");
+        try {
+            Movie movie = MovieCreator.build(Channels.newChannel(in));
+            assertFalse(movie.getTracks().isEmpty());
+            for (Track track : movie.getTracks()) {
+                assertEquals(0, track.getSamples().size());
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -22,6 +22,7 @@ public class FiltersManager extends BaseFiltersManager {
     private static FiltersManager sInstance = null;
     private static FiltersManager sPreviewInstance = null;
     private static FiltersManager sHighresInstance = null;
+    private static FiltersManager sSavingInstance = null;
 
     public FiltersManager() {
         init();
@@ -48,15 +49,28 @@ public class FiltersManager extends BaseFiltersManager {
         return sHighresInstance;
     }
 
+    /**
+     * Returns the filters used to render saved images, so that saving does
+     * not wait for the pipelines rendering the previews.
+     */
+    public static FiltersManager getSavingManager() {
+        if (sSavingInstance == null) {
+            sSavingInstance = new FiltersManager();
+        }
+        return sSavingInstance;
+    }
+
     public static void reset() {
         sInstance = null;
         sPreviewInstance = null;
         sHighresInstance = null;
+        sSavingInstance = null;
     }
 
     public static void setResources(Resources resources) {
         FiltersManager.getManager().setFilterResources(resources);
         FiltersManager.getPreviewManager().setFilterResources(resources);
         FiltersManager.getHighresManager().setFilterResources(resources);
+        FiltersManager.getSavingManager().setFilterResources(resources);
     }
 }
@@ -16,18 +16,274 @@
 
 package com.android.gallery3d.util;
 
+import android.util.Log;
+
+import com.adobe.xmp.XMPException;
 import com.adobe.xmp.XMPMeta;
+import com.adobe.xmp.XMPMetaFactory;
+import com.adobe.xmp.options.SerializeOptions;
+import com.android.gallery3d.common.Utils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Reads and writes the XMP packet of JPEG files.
+ * <p>
+ * Both directions walk the JPEG marker segments without decoding any pixel
+ * data. Reading stops at the first SOS marker, so probing even a very large
+ * file only touches its header segments. Writing copies the header segments,
+ * replaces any XMP APP1 segment with a new one and streams the entropy-coded
+ * data through unchanged.
+ */
 public class XmpUtilHelper {
+    private static final String TAG = "XmpUtilHelper";
+
+    private static final int M_SOI = 0xd8; // File start marker.
+    private static final int M_APP0 = 0xe0; // Marker for JFIF.
+    private static final int M_APP1 = 0xe1; // Marker for EXIF or XMP.
+    private static final int M_SOS = 0xda; // Image data marker.
+    private static final int M_EOI = 0xd9; // End of image.
+    private static final int M_TEM = 0x01; // Standalone marker without length.
+    private static final int M_RST0 = 0xd0;
+    private static final int M_RST7 = 0xd7;
+
+    private static final String XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0";
+    private static final byte[] XMP_HEADER_BYTES =
+            XMP_HEADER.getBytes(StandardCharsets.US_ASCII);
+    private static final int XMP_HEADER_SIZE = XMP_HEADER_BYTES.length;
+    // A segment length is 16 bits and includes the two length bytes.
+    private static final int MAX_SEGMENT_SIZE = 0xffff - 2;
+    private static final int MAX_XMP_BUFFER_SIZE = MAX_SEGMENT_SIZE - XMP_HEADER_SIZE;
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Extracts the XMP metadata of a JPEG stream. The stream is consumed up
+     * to the start of the image data at most, and is always closed.
+     *
+     * @return the XMP metadata, or null if the stream has none or is not a
+     *         JPEG.
+     */
     public static XMPMeta extractXMPMeta(InputStream is) {
+        if (is == null) return null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+            if (in.readUnsignedByte() != 0xff || in.readUnsignedByte() != M_SOI) {
+                return null;
+            }
+            byte[] header = new byte[XMP_HEADER_SIZE];
+            int marker;
+            while ((marker = readMarker(in)) != M_SOS && marker != M_EOI) {
+                if (isStandalone(marker)) continue;
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) return null;
+                if (marker == M_APP1 && length >= XMP_HEADER_SIZE) {
+                    in.readFully(header);
+                    length -= XMP_HEADER_SIZE;
+                    if (isXmpHeader(header)) {
+                        byte[] buffer = new byte[length];
+                        in.readFully(buffer);
+                        return XMPMetaFactory.parseFromBuffer(buffer);
+                    }
+                }
+                skipFully(in, length);
+            }
+        } catch (EOFException e) {
+            Log.w(TAG, "Truncated JPEG while looking for XMP");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read XMP", e);
+        } catch (XMPException e) {
+            Log.w(TAG, "Could not parse XMP", e);
+        } finally {
+            Utils.closeSilently(is);
+        }
         return null;
     }
 
+    /**
+     * Replaces the XMP metadata of the JPEG file at <code>filename</code> with
+     * <code>meta</code>. The file is rewritten through a temporary file in the
+     * same directory; on failure the original is left untouched.
+     *
+     * @param meta an {@link XMPMeta}; anything else is rejected.
+     * @return true if the file was rewritten.
+     */
     public static boolean writeXMPMeta(String filename, Object meta) {
-        return false;
+        if (!(meta instanceof XMPMeta)) return false;
+
+        byte[] packet;
+        try {
+            SerializeOptions options = new SerializeOptions();
+            options.setUseCompactFormat(true);
+            // The packet wrapper is only useful for in-place editing, which
+            // we never do; leaving it out keeps the segment small.
+            options.setOmitPacketWrapper(true);
+            packet = XMPMetaFactory.serializeToBuffer((XMPMeta) meta, options);
+        } catch (XMPException e) {
+            Log.w(TAG, "Could not serialize XMP", e);
+            return false;
+        }
+        if (packet.length > MAX_XMP_BUFFER_SIZE) {
+            Log.w(TAG, "XMP packet too large for a single APP1 segment: " + packet.length);
+            return false;
+        }
+
+        File file = new File(filename);
+        File tmp = new File(file.getPath() + ".xmp.tmp");
+        InputStream is = null;
+        OutputStream os = null;
+        boolean success = false;
+        try {
+            is = new FileInputStream(file);
+            os = new BufferedOutputStream(new FileOutputStream(tmp), COPY_BUFFER_SIZE);
+            success = spliceXmp(new DataInputStream(
+                    new BufferedInputStream(is, COPY_BUFFER_SIZE)), os, packet);
+            os.close();
+            os = null;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write XMP to " + filename, e);
+            success = false;
+        } finally {
+            Utils.closeSilently(is);
+            Utils.closeSilently(os);
+        }
+        if (success && !tmp.renameTo(file)) {
+            Log.w(TAG, "Could not replace " + filename);
+            success = false;
+        }
+        if (!success) tmp.delete();
+        return success;
     }
 
+    // Copies the JPEG from in to out, dropping existing XMP segments and
+    // inserting packet after the leading APP0/APP1 (JFIF/EXIF) segments or
+    // in place of the first XMP segment.
+    private static boolean spliceXmp(DataInputStream in, OutputStream out, byte[] packet)
+            throws IOException {
+        if (in.readUnsignedByte() != 0xff || in.readUnsignedByte() != M_SOI) {
+            return false;
+        }
+        out.write(0xff);
+        out.write(M_SOI);
+
+        byte[] header = new byte[XMP_HEADER_SIZE];
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        boolean inserted = false;
+        while (true) {
+            int marker = readMarker(in);
+            if (marker == M_SOS || marker == M_EOI || isStandalone(marker)) {
+                if (!inserted) {
+                    writeXmpSegment(out, packet);
+                    inserted = true;
+                }
+                out.write(0xff);
+                out.write(marker);
+                if (marker == M_SOS || marker == M_EOI) break;
+                continue;
+            }
+
+            int length = in.readUnsignedShort();
+            if (length < 2) return false;
+            int remaining = length - 2;
+            boolean hasHeader = false;
+            if (marker == M_APP1 && remaining >= XMP_HEADER_SIZE) {
+                in.readFully(header);
+                remaining -= XMP_HEADER_SIZE;
+                hasHeader = true;
+                if (isXmpHeader(header)) {
+                    // Drop the old packet, putting the new one in its place
+                    // if it has not been written yet.
+                    skipFully(in, remaining);
+                    if (!inserted) {
+                        writeXmpSegment(out, packet);
+                        inserted = true;
+                    }
+                    continue;
+                }
+            }
+            if (!inserted && marker != M_APP0 && marker != M_APP1) {
+                writeXmpSegment(out, packet);
+                inserted = true;
+            }
+            out.write(0xff);
+            out.write(marker);
+            out.write(length >> 8);
+            out.write(length);
+            if (hasHeader) out.write(header);
+            copy(in, out, remaining, buffer);
+        }
+
+        // Entropy-coded data and trailing bytes are copied as they are.
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return true;
+    }
+
+    private static void writeXmpSegment(OutputStream out, byte[] packet) throws IOException {
+        out.write(0xff);
+        out.write(M_APP1);
+        writeXmpBody(out, packet);
+    }
+
+    private static void writeXmpBody(OutputStream out, byte[] packet) throws IOException {
+        int length = 2 + XMP_HEADER_SIZE + packet.length;
+        out.write(length >> 8);
+        out.write(length);
+        out.write(XMP_HEADER_BYTES);
+        out.write(packet);
+    }
+
+    // Reads the next marker code, skipping fill bytes.
+    private static int readMarker(DataInputStream in) throws IOException {
+        if (in.readUnsignedByte() != 0xff) throw new IOException("Invalid JPEG marker");
+        int marker;
+        do {
+            marker = in.readUnsignedByte();
+        } while (marker == 0xff);
+        return marker;
+    }
+
+    private static boolean isStandalone(int marker) {
+        return marker == M_TEM || (marker >= M_RST0 && marker <= M_RST7);
+    }
+
+    private static boolean isXmpHeader(byte[] header) {
+        for (int i = 0; i < XMP_HEADER_SIZE; i++) {
+            if (header[i] != XMP_HEADER_BYTES[i]) return false;
+        }
+        return true;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException();
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, int n, byte[] buffer)
+            throws IOException {
+        while (n > 0) {
+            int read = in.read(buffer, 0, Math.min(n, buffer.length));
+            if (read < 0) throw new EOFException();
+            out.write(buffer, 0, read);
+            n -= read;
+        }
+    }
 }